@@ -98,6 +98,7 @@ import com.google.common.base.Predicate;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multiset;
 
 import com.samskivert.swing.GroupLayout;
@@ -107,6 +108,7 @@ import com.samskivert.swing.util.SwingUtil;
 import com.samskivert.util.ObserverList;
 import com.samskivert.util.QuickSort;
 import com.samskivert.util.RunQueue;
+import com.samskivert.util.StringUtil;
 
 import com.threerings.media.image.ColorPository;
 import com.threerings.resource.ResourceManager;
@@ -603,7 +605,7 @@ public class ConfigEditor extends BaseConfigEditor
       ConfigSearcher.Presence.getReporter(clazz,
         ref -> exact ? ref.getName().equals(cfgNameOrPrefix)
                      : ref.getName().startsWith(cfgNameOrPrefix)),
-      getSearcherDomains());
+      getIndexedDomains());
   }
 
   /**
@@ -614,6 +616,60 @@ public class ConfigEditor extends BaseConfigEditor
     return ImmutableList.<ConfigSearcher.Domain>of(new ConfigSearcher.ConfigDomain(this));
   }
 
+  /**
+   * Returns the searcher domains, with a persistent reference index attached to any file
+   * domains that lack one.
+   */
+  protected Iterable<ConfigSearcher.Domain> getIndexedDomains ()
+  {
+    Iterable<ConfigSearcher.Domain> domains = getSearcherDomains();
+    for (ConfigSearcher.Domain domain : domains) {
+      if (domain instanceof ConfigSearcher.FileDomain) {
+        ConfigSearcher.FileDomain fdomain = (ConfigSearcher.FileDomain)domain;
+        if (fdomain.getIndex() == null) {
+          fdomain.setIndex(getReferenceIndex(fdomain.getLabel()));
+        }
+      }
+    }
+    return domains;
+  }
+
+  /**
+   * Returns the reference index for the labeled file domain, or <code>null</code> if indices
+   * are disabled.
+   */
+  protected ReferenceIndex getReferenceIndex (String label)
+  {
+    ReferenceIndex index = _indices.get(label);
+    if (index == null) {
+      File dir = getReferenceIndexDir();
+      if (dir == null || !(dir.isDirectory() || dir.mkdirs())) {
+        return null;
+      }
+      String name = ResourceUtil.getPrefsPrefix() + label;
+      _indices.put(label, index = new ReferenceIndex(
+        new File(dir, name.replaceAll("[^\\w.-]", "_") + ".idx")));
+    }
+    return index;
+  }
+
+  /**
+   * Returns the directory in which to store the reference indices, or <code>null</code> to
+   * disable them.
+   */
+  protected File getReferenceIndexDir ()
+  {
+    String appdir = System.getProperty("appdir");
+    if (StringUtil.isBlank(appdir)) {
+      String home = System.getProperty("user.home");
+      if (StringUtil.isBlank(home)) {
+        return null;
+      }
+      appdir = home + File.separator + ".clyde";
+    }
+    return new File(appdir, "refindex");
+  }
+
   /**
    * Validates the references.
    */
@@ -638,6 +694,11 @@ public class ConfigEditor extends BaseConfigEditor
   protected void validateReferences (Validator validator)
   {
     _cfgmgr.validateReferences(validator);
+    for (ConfigSearcher.Domain domain : getIndexedDomains()) {
+      if (domain instanceof ConfigSearcher.FileDomain) {
+        ((ConfigSearcher.FileDomain)domain).validateReferences(_cfgmgr, validator);
+      }
+    }
   }
 
   /**
@@ -1670,6 +1731,9 @@ public class ConfigEditor extends BaseConfigEditor
   /** The class of the clipboard selection. */
   protected Class<?> _clipclass;
 
+  /** The reference indices for the file domains, mapped by domain label. */
+  protected Map<String, ReferenceIndex> _indices = Maps.newHashMap();
+
   protected ConfigGroupListener _editListener = new ConfigGroupListener() {
     public void configAdded (ConfigEvent<ManagedConfig> event) {
 //            log.info("Config added",
@@ -62,6 +62,7 @@ import com.threerings.editor.Strippable;
 import com.threerings.editor.util.PropertyUtil;
 
 import com.threerings.export.Exporter;
+import com.threerings.export.tools.BuildHashes;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static com.threerings.ClydeLog.log;
@@ -126,12 +127,17 @@ public class ConfigFlattener
     String outDir;
     boolean isXML = true;
     String ext = ".xml";
+    ConfigFlattener flattener = new ConfigFlattener();
 
     switch (args.length) {
     default:
       errUsageAndExit();
       return;
 
+    case 4:
+      flattener.setHashFile(new File(args[3]));
+      // fall-through
+
     case 3:
       ext = args[2];
       isXML = ".xml".equalsIgnoreCase(ext);
@@ -143,7 +149,7 @@ public class ConfigFlattener
       break;
     }
 
-    new ConfigFlattener().flattenAndStrip(rsrcDir, outDir, ext, isXML);
+    flattener.setTimings(true).flattenAndStrip(rsrcDir, outDir, ext, isXML);
   }
 
   /**
@@ -151,8 +157,11 @@ public class ConfigFlattener
    */
   protected static void errUsageAndExit ()
   {
-    System.err.println("Args: <rsrcDir> <outDir> [fileExtension (default='.xml')]");
+    System.err.println(
+      "Args: <rsrcDir> <outDir> [fileExtension (default='.xml') [hashFile]]");
     System.err.println("If the extension is provided and not '.xml', output will be binary.");
+    System.err.println(
+      "If a hash file is provided, flattening is skipped when the configs haven't changed.");
     System.exit(1);
   }
 
@@ -197,6 +206,27 @@ public class ConfigFlattener
     return this;
   }
 
+  /**
+   * Sets the file in which to record the content hash of the source configs.  When set, the
+   * flattening is skipped if the configs (and output options) are unchanged since the last
+   * run.  Note that the hash only covers the config files: it should be deleted when the
+   * config classes change.
+   */
+  public ConfigFlattener setHashFile (File hashFile)
+  {
+    _hashFile = hashFile;
+    return this;
+  }
+
+  /**
+   * Sets whether or not to log the time spent in each phase and saving each group.
+   */
+  public ConfigFlattener setTimings (boolean timings)
+  {
+    _timings = timings;
+    return this;
+  }
+
   /**
    * Potential entry point for other tools.
    */
@@ -212,20 +242,75 @@ public class ConfigFlattener
   public void flattenAndStrip (String rsrcDir, String outDir, String extension, boolean isXML)
     throws IOException
   {
+    // see if we can skip the whole thing
+    BuildHashes hashes = null;
+    String hashKey = null, hash = null;
+    if (_hashFile != null) {
+      File configDir = new ResourceManager(rsrcDir).getResourceFile("config/");
+      List<File> files = Lists.newArrayList();
+      findFiles(configDir, files);
+      hashes = new BuildHashes(_hashFile);
+      hashKey = new File(outDir).getAbsolutePath();
+      hash = BuildHashes.hash(files, extension, String.valueOf(isXML));
+      if (hashes.isCurrent(hashKey, hash) && new File(outDir, "manager.txt").exists()) {
+        log.info("Configs unchanged; skipping flattening.", "dir", configDir);
+        return;
+      }
+      hashes.remove(hashKey);
+    }
+
+    long start = System.currentTimeMillis();
     FlattenContext ctx = new FlattenContext(rsrcDir, outDir, true);
+    long loaded = System.currentTimeMillis();
 
     Exporter.Replacer replacer = flatten(ctx.cfgmgr);
+    long flattened = System.currentTimeMillis();
 
     // Save everything!
-//        log.info("Saving...");
     // TODO: use the replacer for the "superflat" bundle
-    ctx.cfgmgr.saveAll(ctx.destDir, extension, isXML);
-//        log.info("Done!");
+    for (ConfigGroup<?> group : ctx.cfgmgr.getGroups()) {
+      long gstart = System.currentTimeMillis();
+      group.save(new File(ctx.destDir, group.getName() + extension), isXML);
+      if (_timings) {
+        log.info("Saved group.", "group", group.getName(),
+          "ms", System.currentTimeMillis() - gstart);
+      }
+    }
 
     // also copy the manager properties over
     copyManagerProperties(
         new File(ctx.configDir, "manager.properties"),
         new File(ctx.destDir, "manager.txt"));
+    if (_timings) {
+      long now = System.currentTimeMillis();
+      log.info("Flattened configs.", "load", loaded - start, "flatten", flattened - loaded,
+        "save", now - flattened, "total", now - start);
+    }
+
+    if (hashes != null) {
+      hashes.put(hashKey, hash);
+      hashes.save();
+    }
+  }
+
+  /**
+   * Adds all of the files under the specified directory to the supplied list, in a stable
+   * order.
+   */
+  protected static void findFiles (File dir, List<File> files)
+  {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        findFiles(child, files);
+      } else {
+        files.add(child);
+      }
+    }
   }
 
   /**
@@ -694,6 +779,12 @@ public class ConfigFlattener
 //        protected final Set<Object> _writeNoReplace = Sets.newIdentityHashSet();
   }
 
+  /** The file in which to record the content hash of the configs, if any. */
+  protected File _hashFile;
+
+  /** Whether or not to log timings. */
+  protected boolean _timings;
+
   /** The suppressable warnings that are currently suppressed. */
   protected Set<SuppressableWarning> _suppressedWarnings =
       EnumSet.noneOf(SuppressableWarning.class);
@@ -51,12 +51,14 @@ import com.threerings.util.ResourceUtil;
 import com.threerings.util.ToolUtil;
 
 import com.threerings.config.ConfigGroup;
+import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
 import com.threerings.config.ManagedConfig;
 import com.threerings.config.Reference;
 import com.threerings.config.util.FieldCache;
 
 import com.threerings.editor.util.EditorContext;
+import com.threerings.editor.util.Validator;
 
 import com.threerings.export.util.ExportFileUtil;
 
@@ -327,13 +329,100 @@ public class ConfigSearcher extends JFrame
       return _label;
     }
 
+    /**
+     * Configures the index used to answer searches without reading the files.  The index only
+     * records the names and types of references, so domains searched with detectors that
+     * examine reference arguments shouldn't use one.
+     */
+    public FileDomain setIndex (ReferenceIndex index)
+    {
+      _index = index;
+      return this;
+    }
+
+    /**
+     * Returns the reference index, if any.
+     */
+    public ReferenceIndex getIndex ()
+    {
+      return _index;
+    }
+
+    /**
+     * Brings the index (if any) up to date with the files in the domain.
+     *
+     * @return the number of files reindexed.
+     */
+    public int updateIndex ()
+    {
+      return (_index == null) ? 0 : _index.update(getAllFiles(), this::indexFile);
+    }
+
+    /**
+     * Checks that the configs referenced by the indexed files exist, reporting those that don't
+     * to the validator.  The index is brought up to date first.
+     *
+     * @return true if all references of known type were valid.
+     */
+    public boolean validateReferences (ConfigManager cfgmgr, Validator validator)
+    {
+      if (_index == null) {
+        return true;
+      }
+      updateIndex();
+      boolean valid = true;
+      for (String path : _index.getPaths()) {
+        File file = new File(path);
+        Multiset<ReferenceIndex.Key> keys = _index.getKeys(file);
+        if (keys != null) {
+          valid &= validateReferences(file, keys.elementSet(), cfgmgr, validator);
+        }
+      }
+      return valid;
+    }
+
+    /**
+     * Checks the references indexed for a single file.
+     *
+     * @return true if all references of known type were valid.
+     */
+    protected boolean validateReferences (
+      File file, Set<ReferenceIndex.Key> keys, ConfigManager cfgmgr, Validator validator)
+    {
+      boolean valid = true;
+      for (ReferenceIndex.Key key : keys) {
+        Class<? extends ManagedConfig> type = getConfigType(key);
+        if (type != null && cfgmgr.getRawConfig(type, key.name) == null) {
+          validator.output(file.getPath().substring(_dir.getAbsolutePath().length()) +
+            ": missing " + type.getSimpleName() + " reference: " + key.name);
+          valid = false;
+        }
+      }
+      return valid;
+    }
+
     @Override
     public <T> Iterator<Result> getResults (final SearchReporter<T> detector)
     {
-      Iterable<File> allFiles = Iterables.concat(Iterables.transform(_dirs, this::findFiles));
+      Iterable<File> allFiles = getAllFiles();
+      if (_index != null) {
+        updateIndex();
+        return Iterables.<File, Result>transform(allFiles, f -> {
+          Multiset<T> attrs = _index.findAttributes(f, detector);
+          return attrs.isEmpty() ? null : new FileResult(_dir, f, detector, attrs);
+        }).iterator();
+      }
       return Iterables.transform(allFiles, f -> resultForFile(f, detector)).iterator();
     }
 
+    /**
+     * Returns all of the searchable files in the domain.
+     */
+    protected Iterable<File> getAllFiles ()
+    {
+      return Iterables.concat(Iterables.transform(_dirs, this::findFiles));
+    }
+
     /**
      * Find all the searchable files in the specified top-level directory.
      */
@@ -369,6 +458,19 @@ public class ConfigSearcher extends JFrame
      */
     protected abstract <T> Multiset<T> attrsForFile (File file, SearchReporter<T> detector);
 
+    /**
+     * Gathers the reference keys in the specified file for the index.  This may be called from
+     * several threads at once: the default implementation serializes calls to
+     * {@link #attrsForFile}, so subclasses that can read their files independently should
+     * override it.
+     */
+    protected Multiset<ReferenceIndex.Key> indexFile (File file)
+    {
+      synchronized (this) {
+        return attrsForFile(file, ReferenceIndex.KEY_REPORTER);
+      }
+    }
+
     /**
      * Called to edit the file. You must implement this.
      */
@@ -386,6 +488,9 @@ public class ConfigSearcher extends JFrame
     /** The directories, under the top-level _dir, which are the roots for our search. */
     protected List<File> _dirs;
 
+    /** The reference index, if any. */
+    protected ReferenceIndex _index;
+
     /**
      * A Result from a file.
      */
@@ -438,14 +543,62 @@ public class ConfigSearcher extends JFrame
     @Override
     protected <T> Multiset<T> attrsForFile (File file, SearchReporter<T> detector)
     {
-      TudeySceneModel model;
-      try {
-        model = ExportFileUtil.readObject(file, TudeySceneModel.class);
-      } catch (Exception e) {
+      TudeySceneModel model = readModel(file);
+      if (model == null) {
         return ImmutableMultiset.<T>of();
       }
       model.init(_ctx.getConfigManager());
+      return attrsForModel(model, detector);
+    }
+
+    @Override
+    protected Multiset<ReferenceIndex.Key> indexFile (File file)
+    {
+      // the entry references are available without initializing the model (which would
+      // access the shared config manager), so files can be indexed in parallel
+      TudeySceneModel model = readModel(file);
+      return (model == null)
+        ? ImmutableMultiset.<ReferenceIndex.Key>of()
+        : attrsForModel(model, ReferenceIndex.KEY_REPORTER);
+    }
+
+    @Override
+    protected boolean validateReferences (
+      File file, Set<ReferenceIndex.Key> keys, ConfigManager cfgmgr, Validator validator)
+    {
+      // scenes may reference configs of their own, so if the global manager is missing any,
+      // check them against the scene's config manager (which falls back to the global one)
+      for (ReferenceIndex.Key key : keys) {
+        Class<? extends ManagedConfig> type = getConfigType(key);
+        if (type != null && cfgmgr.getRawConfig(type, key.name) == null) {
+          TudeySceneModel model = readModel(file);
+          if (model == null) {
+            break;
+          }
+          model.init(cfgmgr);
+          return super.validateReferences(file, keys, model.getConfigManager(), validator);
+        }
+      }
+      return super.validateReferences(file, keys, cfgmgr, validator);
+    }
+
+    /**
+     * Reads the scene model in the specified file, returning null on failure.
+     */
+    protected TudeySceneModel readModel (File file)
+    {
+      try {
+        return ExportFileUtil.readObject(file, TudeySceneModel.class);
+      } catch (Exception e) {
+        return null;
+      }
+    }
 
+    /**
+     * Finds the attributes of the entries in the supplied model.
+     */
+    protected <T> Multiset<T> attrsForModel (TudeySceneModel model, SearchReporter<T> detector)
+    {
       Multiset<T> attrs = null;
       for (TudeySceneModel.Entry entry : model.getEntries()) {
         attrs = addAll(attrs,
@@ -637,6 +790,18 @@ public class ConfigSearcher extends JFrame
     return accum;
   }
 
+  /**
+   * Resolves the managed config class of an indexed reference, or returns null if it is
+   * unknown or not a managed config.
+   */
+  protected static Class<? extends ManagedConfig> getConfigType (ReferenceIndex.Key key)
+  {
+    Class<?> type = key.getType();
+    return (type != null && ManagedConfig.class.isAssignableFrom(type))
+      ? type.asSubclass(ManagedConfig.class)
+      : null;
+  }
+
   /**
    * Turn the Type into a class, if possible.
    */
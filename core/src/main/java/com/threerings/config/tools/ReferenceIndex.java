@@ -0,0 +1,412 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.config.ManagedConfig;
+
+import static com.threerings.ClydeLog.log;
+
+/**
+ * A persistent index of the config references contained in a set of files, used to answer
+ * searches without reading the files.  Entries are brought up to date by comparing the files'
+ * modification times and lengths, and stale files are reread in parallel.
+ */
+public class ReferenceIndex
+{
+  /**
+   * Identifies a reference: the name of the referenced config and the type of config, if known.
+   */
+  public static final class Key
+  {
+    /** The name of the referenced config class, or null if unknown. */
+    @Nullable public final String type;
+
+    /** The name of the referenced config. */
+    public final String name;
+
+    public Key (@Nullable String type, String name)
+    {
+      this.type = type;
+      this.name = name;
+    }
+
+    /**
+     * Resolves the referenced config class, returning null if it is unknown or unavailable.
+     */
+    public Class<?> getType ()
+    {
+      if (type != null && !_resolved) {
+        try {
+          _clazz = Class.forName(type);
+        } catch (ClassNotFoundException e) {
+          // leave it null
+        }
+        _resolved = true;
+      }
+      return _clazz;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return Objects.hashCode(type) * 31 + name.hashCode();
+    }
+
+    @Override
+    public boolean equals (Object other)
+    {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key okey = (Key)other;
+      return Objects.equals(type, okey.type) && name.equals(okey.name);
+    }
+
+    @Override
+    public String toString ()
+    {
+      return (type == null ? "?" : type) + ":" + name;
+    }
+
+    /** The resolved config class, if any. */
+    protected Class<?> _clazz;
+
+    /** Whether or not we've attempted to resolve the config class. */
+    protected boolean _resolved;
+  }
+
+  /** An attribute detector that reports the key of every reference it encounters. */
+  public static final ConfigSearcher.SearchReporter<Key> KEY_REPORTER =
+    new ConfigSearcher.SearchReporter<Key>() {
+      public Multiset<Key> apply (ConfigReference<?> ref, @Nullable Class<?> type) {
+        String name = ref.getName();
+        return (name == null)
+          ? ImmutableMultiset.<Key>of()
+          : ImmutableMultiset.of(new Key(type == null ? null : type.getName(), name));
+      }
+      public String formatLabel (String label, Multiset<Key> attrs) {
+        return label;
+      }
+    };
+
+  /**
+   * Creates a new index stored in the specified file, loading its contents if the file exists.
+   */
+  public ReferenceIndex (File file)
+  {
+    _file = file;
+    if (file.exists()) {
+      try {
+        read();
+      } catch (IOException e) {
+        log.warning("Failed to read reference index, rebuilding.", "file", file, e);
+        _entries.clear();
+      }
+    }
+  }
+
+  /**
+   * Sets the number of threads to use when reindexing files.
+   */
+  public void setThreads (int threads)
+  {
+    _threads = Math.max(threads, 1);
+  }
+
+  /**
+   * Brings the index up to date with the supplied set of files, rereading any that have changed
+   * since they were last indexed and dropping any that are no longer present.  The index is
+   * saved if anything changed.
+   *
+   * @param indexer gathers the reference keys in a file.  Will be called from multiple threads
+   * at once.
+   * @return the number of files reindexed.
+   */
+  public synchronized int update (Iterable<File> files, Function<File, Multiset<Key>> indexer)
+  {
+    // find the stale files
+    Set<String> paths = Sets.newHashSet();
+    List<File> stale = Lists.newArrayList();
+    for (File file : files) {
+      String path = file.getAbsolutePath();
+      paths.add(path);
+      Entry entry = _entries.get(path);
+      if (entry == null || entry.lastModified != file.lastModified() ||
+          entry.length != file.length()) {
+        stale.add(file);
+      }
+    }
+    boolean changed = _entries.keySet().retainAll(paths);
+
+    // reindex them
+    if (!stale.isEmpty()) {
+      for (Entry entry : reindex(stale, indexer)) {
+        _entries.put(entry.path, entry);
+      }
+      changed = true;
+    }
+    if (changed) {
+      try {
+        write();
+      } catch (IOException e) {
+        log.warning("Failed to write reference index.", "file", _file, e);
+      }
+    }
+    return stale.size();
+  }
+
+  /**
+   * Returns the paths of all indexed files.
+   */
+  public synchronized Set<String> getPaths ()
+  {
+    return Sets.newHashSet(_entries.keySet());
+  }
+
+  /**
+   * Returns the reference keys found in the specified file, or null if it hasn't been indexed.
+   */
+  public synchronized Multiset<Key> getKeys (File file)
+  {
+    Entry entry = _entries.get(file.getAbsolutePath());
+    return (entry == null) ? null : entry.keys;
+  }
+
+  /**
+   * Applies the supplied detector to the references indexed for the specified file, producing
+   * the same attributes as {@link ConfigSearcher#findAttributes} would for detectors that only
+   * examine the names and types of the references (not their arguments).
+   */
+  public <T> Multiset<T> findAttributes (File file, ConfigSearcher.AttributeDetector<T> detector)
+  {
+    Multiset<Key> keys = getKeys(file);
+    if (keys == null) {
+      return ImmutableMultiset.<T>of();
+    }
+    Multiset<T> attrs = null;
+    for (Multiset.Entry<Key> entry : keys.entrySet()) {
+      Key key = entry.getElement();
+      Multiset<T> result = detector.apply(
+        new ConfigReference<ManagedConfig>(key.name), key.getType());
+      if (result.isEmpty()) {
+        continue;
+      }
+      if (attrs == null) {
+        attrs = HashMultiset.create();
+      }
+      for (Multiset.Entry<T> rentry : result.entrySet()) {
+        attrs.add(rentry.getElement(), rentry.getCount() * entry.getCount());
+      }
+    }
+    return (attrs == null) ? ImmutableMultiset.<T>of() : attrs;
+  }
+
+  /**
+   * Rereads the specified files in parallel.
+   */
+  protected List<Entry> reindex (List<File> files, final Function<File, Multiset<Key>> indexer)
+  {
+    List<Entry> entries = Lists.newArrayListWithCapacity(files.size());
+    int threads = Math.min(_threads, files.size());
+    if (threads <= 1) {
+      for (File file : files) {
+        entries.add(createEntry(file, indexer));
+      }
+      return entries;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Entry>> futures = Lists.newArrayListWithCapacity(files.size());
+      for (final File file : files) {
+        futures.add(executor.submit(() -> createEntry(file, indexer)));
+      }
+      for (Future<Entry> future : futures) {
+        try {
+          entries.add(future.get());
+        } catch (ExecutionException e) {
+          log.warning("Failed to index file.", e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return entries;
+  }
+
+  /**
+   * Creates an entry for the specified file.
+   */
+  protected static Entry createEntry (File file, Function<File, Multiset<Key>> indexer)
+  {
+    // record the timestamp before reading so that changes made while reading will be noticed
+    long lastModified = file.lastModified(), length = file.length();
+    Multiset<Key> keys;
+    try {
+      keys = indexer.apply(file);
+    } catch (Exception e) {
+      log.warning("Failed to index file.", "file", file, e);
+      keys = null;
+    }
+    return new Entry(file.getAbsolutePath(), lastModified, length,
+      (keys == null) ? ImmutableMultiset.<Key>of() : ImmutableMultiset.copyOf(keys));
+  }
+
+  /**
+   * Reads the index from its file.
+   */
+  protected void read ()
+    throws IOException
+  {
+    DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(_file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return; // incompatible; rebuild
+      }
+      for (int ii = 0, nn = in.readInt(); ii < nn; ii++) {
+        String path = in.readUTF();
+        long lastModified = in.readLong(), length = in.readLong();
+        ImmutableMultiset.Builder<Key> keys = ImmutableMultiset.builder();
+        for (int jj = 0, mm = in.readInt(); jj < mm; jj++) {
+          String type = in.readBoolean() ? in.readUTF() : null;
+          keys.addCopies(new Key(type, in.readUTF()), in.readInt());
+        }
+        _entries.put(path, new Entry(path, lastModified, length, keys.build()));
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the index to its file.
+   */
+  protected void write ()
+    throws IOException
+  {
+    // write to a temporary file and swap it in so that we never leave a partial index
+    File tmp = new File(_file.getPath() + ".tmp");
+    DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(new FileOutputStream(tmp)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(_entries.size());
+      for (Entry entry : _entries.values()) {
+        out.writeUTF(entry.path);
+        out.writeLong(entry.lastModified);
+        out.writeLong(entry.length);
+        Collection<Multiset.Entry<Key>> keys = entry.keys.entrySet();
+        out.writeInt(keys.size());
+        for (Multiset.Entry<Key> kentry : keys) {
+          Key key = kentry.getElement();
+          out.writeBoolean(key.type != null);
+          if (key.type != null) {
+            out.writeUTF(key.type);
+          }
+          out.writeUTF(key.name);
+          out.writeInt(kentry.getCount());
+        }
+      }
+    } finally {
+      out.close();
+    }
+    if (!tmp.renameTo(_file) && !(_file.delete() && tmp.renameTo(_file))) {
+      throw new IOException("Failed to replace index file.");
+    }
+  }
+
+  /**
+   * The indexed references of a single file.
+   */
+  protected static class Entry
+  {
+    /** The absolute path of the file. */
+    public final String path;
+
+    /** The modification time and length of the file when it was indexed. */
+    public final long lastModified, length;
+
+    /** The references found in the file. */
+    public final ImmutableMultiset<Key> keys;
+
+    public Entry (String path, long lastModified, long length, ImmutableMultiset<Key> keys)
+    {
+      this.path = path;
+      this.lastModified = lastModified;
+      this.length = length;
+      this.keys = keys;
+    }
+  }
+
+  /** The file in which we store the index. */
+  protected File _file;
+
+  /** The entries, mapped by path. */
+  protected Map<String, Entry> _entries = Maps.newHashMap();
+
+  /** The number of threads to use when reindexing. */
+  protected int _threads = Runtime.getRuntime().availableProcessors();
+
+  /** Identifies index files. */
+  protected static final int MAGIC = 0x52494458; // "RIDX"
+
+  /** The version of the index format. */
+  protected static final int VERSION = 1;
+}
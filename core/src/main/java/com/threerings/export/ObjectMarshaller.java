@@ -32,8 +32,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.Sets;
 
@@ -48,6 +48,17 @@ public class ObjectMarshaller
    * Retrieves or creates a marshaller for objects of the specified class.
    */
   public static ObjectMarshaller getObjectMarshaller (Class<?> clazz)
+  {
+    // registered entries can be read without locking; only creation is serialized
+    ObjectMarshaller marshaller = _marshallers.get(clazz);
+    return (marshaller == null) ? createObjectMarshaller(clazz) : marshaller;
+  }
+
+  /**
+   * Creates and registers the marshaller for the specified class (unless another thread has
+   * already done so).
+   */
+  protected static synchronized ObjectMarshaller createObjectMarshaller (Class<?> clazz)
   {
     ObjectMarshaller marshaller = _marshallers.get(clazz);
     if (marshaller == null) {
@@ -238,6 +249,6 @@ public class ObjectMarshaller
   protected Object _prototype;
 
   /** Maps classes to created marshallers. */
-  protected static HashMap<Class<?>, ObjectMarshaller> _marshallers =
-    new HashMap<Class<?>, ObjectMarshaller>();
+  protected static ConcurrentHashMap<Class<?>, ObjectMarshaller> _marshallers =
+    new ConcurrentHashMap<Class<?>, ObjectMarshaller>();
 }
@@ -38,7 +38,7 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.lwjgl.BufferUtils;
 
@@ -75,7 +75,18 @@ public abstract class Streamer<T>
   /**
    * Returns the streamer, if any, for the specified class.
    */
-  public static Streamer<?> getStreamer (final Class<?> clazz)
+  public static Streamer<?> getStreamer (Class<?> clazz)
+  {
+    // registered entries can be read without locking; only creation is serialized
+    Streamer<?> streamer = _streamers.get(clazz);
+    return (streamer == null) ? createStreamer(clazz) : streamer;
+  }
+
+  /**
+   * Creates and registers a streamer for the specified class (unless another thread has already
+   * done so), if it is of a type for which we can create one.
+   */
+  protected static synchronized Streamer<?> createStreamer (final Class<?> clazz)
   {
     // look for a specific one
     Streamer<?> streamer = _streamers.get(clazz);
@@ -128,8 +139,8 @@ public abstract class Streamer<T>
     throws IOException, ClassNotFoundException;
 
   /** Registered streamers. */
-  protected static HashMap<Class<?>, Streamer<?>> _streamers =
-      new HashMap<Class<?>, Streamer<?>>();
+  protected static ConcurrentHashMap<Class<?>, Streamer<?>> _streamers =
+      new ConcurrentHashMap<Class<?>, Streamer<?>>();
   static {
     // register basic streamers for wrapper types, primitive arrays
     Streamer<?> streamer = new Streamer<Boolean>() {
@@ -0,0 +1,554 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+import com.threerings.util.ReflectionUtil;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Exports to the same XML format as {@link XMLExporter}, but writes the elements straight to the
+ * stream rather than building a DOM document first.
+ *
+ * <p>Because an object's element must carry its id (or depth) before anything refers to it, the
+ * objects passed to {@link #writeObject} are held until {@link #finish}, at which point they're
+ * traversed once to find the objects that are referred to more than once and once more to write
+ * them out.  Unlike {@link XMLExporter}, a value written to a field of an object cannot later be
+ * replaced by writing the same field again.
+ */
+public class StreamingXMLExporter extends Exporter
+{
+  /**
+   * Creates an exporter to write to the specified stream.
+   */
+  public StreamingXMLExporter (OutputStream out)
+  {
+    _out = out;
+  }
+
+  @Override
+  public StreamingXMLExporter setReplacer (Replacer replacer)
+  {
+    super.setReplacer(replacer);
+    return this;
+  }
+
+  @Override
+  public void writeObject (Object object)
+    throws IOException
+  {
+    _pending.add(object);
+  }
+
+  @Override
+  public void write (String name, boolean value)
+    throws IOException
+  {
+    setValue(name, Boolean.toString(value));
+  }
+
+  @Override
+  public void write (String name, byte value)
+    throws IOException
+  {
+    setValue(name, Byte.toString(value));
+  }
+
+  @Override
+  public void write (String name, char value)
+    throws IOException
+  {
+    setValue(name, Character.toString(value));
+  }
+
+  @Override
+  public void write (String name, double value)
+    throws IOException
+  {
+    setValue(name, Double.toString(value));
+  }
+
+  @Override
+  public void write (String name, float value)
+    throws IOException
+  {
+    setValue(name, Float.toString(value));
+  }
+
+  @Override
+  public void write (String name, int value)
+    throws IOException
+  {
+    setValue(name, Integer.toString(value));
+  }
+
+  @Override
+  public void write (String name, long value)
+    throws IOException
+  {
+    setValue(name, Long.toString(value));
+  }
+
+  @Override
+  public void write (String name, short value)
+    throws IOException
+  {
+    setValue(name, Short.toString(value));
+  }
+
+  @Override
+  public <T> void write (String name, T value, Class<T> clazz)
+    throws IOException
+  {
+    append(name, value, clazz);
+  }
+
+  @Override
+  public void close ()
+    throws IOException
+  {
+    // finish up, then close the underlying stream
+    finish();
+    _out.write('\n');
+    _out.close();
+  }
+
+  @Override
+  public void finish ()
+    throws IOException
+  {
+    if (_pending.isEmpty()) {
+      return;
+    }
+    try {
+      // first pass: find the objects that are referenced more than once
+      _scanning = true;
+      for (Object object : _pending) {
+        append("object", object, Object.class);
+      }
+      _scanning = false;
+      _written.clear();
+
+      // second pass: write everything out
+      _writer = new BufferedWriter(new OutputStreamWriter(_out, UTF_8));
+      _writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<java class=\"");
+      _writer.write(XMLImporter.class.getName());
+      _writer.write("\" version=\"");
+      _writer.write(XMLExporter.VERSION);
+      _writer.write("\">\n");
+      for (Object object : _pending) {
+        append("object", object, Object.class);
+      }
+      _writer.write("</java>");
+      _writer.flush();
+
+    } finally {
+      _scanning = false;
+      _pending.clear();
+      _written.clear();
+      _ids.clear();
+      _referencedDepths.clear();
+      _lastObjectId = 0;
+    }
+  }
+
+  /**
+   * Writes an element containing the supplied object.
+   */
+  protected void append (String name, Object value, Class<?> clazz)
+    throws IOException
+  {
+    if (_replacer != null) {
+      Replacement repl = _replacer.getReplacement(value, clazz);
+      if (repl != null) {
+        value = repl.value;
+        clazz = repl.clazz;
+      }
+    }
+
+    if (value == null) {
+      writeEmpty(name, null, null);
+      return;
+    }
+
+    // to help readability, always write the values for certain (immutable) types
+    if (value instanceof Boolean || value instanceof Byte || value instanceof Character ||
+      value instanceof Class<?> || value instanceof Double || value instanceof Enum ||
+      value instanceof Float || value instanceof Integer || value instanceof Long ||
+      value instanceof Short || value instanceof String || value instanceof File) {
+      writeValue(name, value, clazz, null, null);
+      return;
+    }
+    Integer depth = _depths.get(value);
+    if (depth != null) {
+      if (_scanning) {
+        _referencedDepths.add(value);
+      }
+      writeEmpty(name, "rdepth", depth.toString());
+      return;
+    }
+    if (_written.contains(value)) {
+      Integer id = _ids.get(value);
+      if (id == null && _scanning) {
+        _ids.put(value, id = ++_lastObjectId);
+      }
+      if (id != null) {
+        writeEmpty(name, "ref", id.toString());
+        return;
+      }
+      // if the first pass didn't see this reference, all we can do is write the value again
+    }
+    _written.add(value);
+    Integer id = _ids.get(value);
+    String dstr = _referencedDepths.contains(value) ? Integer.toString(_depth) : null;
+    _depths.put(value, _depth++);
+    try {
+      writeValue(name, value, clazz, dstr, (id == null) ? null : id.toString());
+    } finally {
+      _depths.remove(value);
+      _depth--;
+    }
+  }
+
+  /**
+   * Writes an element containing the value of an object.
+   */
+  protected void writeValue (String name, Object value, Class<?> clazz, String depth, String id)
+    throws IOException
+  {
+    // write the class unless we can determine that implicitly
+    Class<?> cclazz = getClass(value);
+    String cname = (cclazz != clazz) ? cclazz.getName() : null;
+
+    // see if we can convert the value to a string
+    @SuppressWarnings("unchecked") Stringifier<Object> stringifier =
+      (Stringifier<Object>)Stringifier.getStringifier(cclazz);
+    if (stringifier != null) {
+      if (_scanning) {
+        return;
+      }
+      // because empty text nodes are removed, we must include a comment to
+      // signify an empty string
+      String str = stringifier.toString(value);
+      writeStart(name, cname, depth, null, id);
+      if (str.isEmpty()) {
+        _writer.write("<!--empty-->");
+      } else {
+        writeEscaped(str, false);
+      }
+      writeEnd(name);
+      return;
+    }
+    String eclass = null;
+    if (value instanceof EnumSet) {
+      // the enum class of an EnumSet must be written first; this will fail if the enum class
+      // has no defined enums
+      EnumSet<?> set = (EnumSet<?>)value;
+      EnumSet<?> typer = set.isEmpty() ? EnumSet.complementOf(set) : set;
+      eclass = typer.iterator().next().getDeclaringClass().getName();
+    }
+    writeStart(name, cname, depth, eclass, id);
+    writeln();
+    String oindent = _indent;
+    _indent = _indent + "  ";
+    try {
+      // write the outer class information, if applicable
+      if (!(value instanceof Collection) && !(value instanceof Map)) {
+        Object outer = ReflectionUtil.getOuter(value);
+        if (outer != null) {
+          append("outer", outer, Object.class);
+        }
+      }
+      if (value instanceof Exportable) {
+        writeFields((Exportable)value);
+      } else if (value instanceof Object[]) {
+        writeEntries((Object[])value, cclazz.getComponentType());
+      } else if (value instanceof Collection) {
+        if (value instanceof Multiset) {
+          writeEntries((Multiset<?>)value);
+        } else {
+          writeEntries((Collection<?>)value);
+        }
+      } else if (value instanceof Map) {
+        writeEntries((Map<?, ?>)value);
+      } else {
+        throw new IOException("Value is not exportable [class=" + cclazz + "].");
+      }
+    } finally {
+      _indent = oindent;
+    }
+    writeIndent();
+    writeEnd(name);
+  }
+
+  /**
+   * Writes out the entries of an array.
+   */
+  protected void writeEntries (Object[] array, Class<?> ctype)
+    throws IOException
+  {
+    for (Object entry : array) {
+      append("entry", entry, ctype);
+    }
+  }
+
+  /**
+   * Writes out the entries of a collection.
+   */
+  protected void writeEntries (Collection<?> collection)
+    throws IOException
+  {
+    for (Object entry : collection) {
+      append("entry", entry, Object.class);
+    }
+  }
+
+  /**
+   * Writes out the entries of a multiset.
+   */
+  protected void writeEntries (Multiset<?> multiset)
+    throws IOException
+  {
+    for (Multiset.Entry<?> entry : multiset.entrySet()) {
+      append("element", entry.getElement(), Object.class);
+      append("count", entry.getCount(), Integer.class);
+    }
+  }
+
+  /**
+   * Writes out the entries of a map.
+   */
+  protected void writeEntries (Map<?, ?> map)
+    throws IOException
+  {
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      append("key", entry.getKey(), Object.class);
+      append("value", entry.getValue(), Object.class);
+    }
+  }
+
+  /**
+   * Writes a simple value element.
+   */
+  protected void setValue (String name, String value)
+    throws IOException
+  {
+    if (value.isEmpty()) {
+      writeEmpty(name, null, null);
+    } else if (!_scanning) {
+      writeStart(name, null, null, null, null);
+      writeEscaped(value, false);
+      writeEnd(name);
+    }
+  }
+
+  /**
+   * Writes an element with no content and at most one attribute.
+   */
+  protected void writeEmpty (String name, String attr, String value)
+    throws IOException
+  {
+    if (_scanning) {
+      return;
+    }
+    writeIndent();
+    _writer.write('<');
+    _writer.write(name);
+    if (attr != null) {
+      writeAttribute(attr, value);
+    }
+    _writer.write("/>\n");
+  }
+
+  /**
+   * Writes the indentation and start tag of an element.  The attributes are written in
+   * alphabetical order, as the DOM serializer does.
+   */
+  protected void writeStart (String name, String cname, String depth, String eclass, String id)
+    throws IOException
+  {
+    if (_scanning) {
+      return;
+    }
+    writeIndent();
+    _writer.write('<');
+    _writer.write(name);
+    writeAttribute("class", cname);
+    writeAttribute("depth", depth);
+    writeAttribute("eclass", eclass);
+    writeAttribute("id", id);
+    _writer.write('>');
+  }
+
+  /**
+   * Writes the end tag of an element and the following newline.
+   */
+  protected void writeEnd (String name)
+    throws IOException
+  {
+    if (_scanning) {
+      return;
+    }
+    _writer.write("</");
+    _writer.write(name);
+    _writer.write(">\n");
+  }
+
+  /**
+   * Writes an attribute, if it has a value.
+   */
+  protected void writeAttribute (String name, String value)
+    throws IOException
+  {
+    if (value != null) {
+      _writer.write(' ');
+      _writer.write(name);
+      _writer.write("=\"");
+      writeEscaped(value, true);
+      _writer.write('"');
+    }
+  }
+
+  /**
+   * Writes the current indentation.
+   */
+  protected void writeIndent ()
+    throws IOException
+  {
+    if (!_scanning) {
+      _writer.write(_indent);
+    }
+  }
+
+  /**
+   * Writes a newline.
+   */
+  protected void writeln ()
+    throws IOException
+  {
+    if (!_scanning) {
+      _writer.write('\n');
+    }
+  }
+
+  /**
+   * Writes a string, escaping it in the same way as the DOM serializer.
+   */
+  protected void writeEscaped (String string, boolean attribute)
+    throws IOException
+  {
+    for (int ii = 0, nn = string.length(); ii < nn; ii++) {
+      char c = string.charAt(ii);
+      switch (c) {
+        case '&': _writer.write("&amp;"); break;
+        case '<': _writer.write("&lt;"); break;
+        case '>': _writer.write("&gt;"); break;
+        case '\r': _writer.write("&#13;"); break;
+        case '"':
+          _writer.write(attribute ? "&quot;" : "\"");
+          break;
+        case '\n':
+          _writer.write(attribute ? "&#10;" : "\n");
+          break;
+        case '\t':
+          _writer.write(attribute ? "&#9;" : "\t");
+          break;
+        default:
+          if (c < ' ') {
+            writeCharacterReference(c);
+          } else if (Character.isHighSurrogate(c) && ii + 1 < nn &&
+              Character.isLowSurrogate(string.charAt(ii + 1))) {
+            writeCharacterReference(Character.toCodePoint(c, string.charAt(++ii)));
+          } else {
+            _writer.write(c);
+          }
+          break;
+      }
+    }
+  }
+
+  /**
+   * Writes a numeric character reference.
+   */
+  protected void writeCharacterReference (int codePoint)
+    throws IOException
+  {
+    _writer.write("&#");
+    _writer.write(Integer.toString(codePoint));
+    _writer.write(';');
+  }
+
+  /** The output stream. */
+  protected OutputStream _out;
+
+  /** The writer wrapping the output stream during the second pass. */
+  protected Writer _writer;
+
+  /** The objects to write on {@link #finish}. */
+  protected List<Object> _pending = Lists.newArrayList();
+
+  /** Whether we're in the first (scanning) pass, in which nothing is actually written. */
+  protected boolean _scanning;
+
+  /** The objects written so far in the current pass. */
+  protected Set<Object> _written = Sets.newIdentityHashSet();
+
+  /** The ids assigned in the first pass to the objects referenced more than once. */
+  protected IdentityHashMap<Object, Integer> _ids = new IdentityHashMap<Object, Integer>();
+
+  /** The objects referenced (in the first pass) while they were still being written. */
+  protected Set<Object> _referencedDepths = Sets.newIdentityHashSet();
+
+  /** The depths of the objects currently being written. */
+  protected IdentityHashMap<Object, Integer> _depths = new IdentityHashMap<Object, Integer>();
+
+  /** The current indentation string. */
+  protected String _indent = "";
+
+  /** The last object id assigned. */
+  protected int _lastObjectId;
+
+  /** The current depth of the element being written. */
+  protected int _depth;
+}
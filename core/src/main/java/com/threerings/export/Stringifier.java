@@ -35,8 +35,8 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
-import java.util.HashMap;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.lwjgl.BufferUtils;
 
@@ -50,7 +50,18 @@ public abstract class Stringifier<T>
   /**
    * Returns the stringifier, if any, for the specified class.
    */
-  public static Stringifier<?> getStringifier (final Class<?> clazz)
+  public static Stringifier<?> getStringifier (Class<?> clazz)
+  {
+    // registered entries can be read without locking; only creation is serialized
+    Stringifier<?> stringifier = _stringifiers.get(clazz);
+    return (stringifier == null) ? createStringifier(clazz) : stringifier;
+  }
+
+  /**
+   * Creates and registers a stringifier for the specified class (unless another thread has
+   * already done so), if it is of a type for which we can create one.
+   */
+  protected static synchronized Stringifier<?> createStringifier (final Class<?> clazz)
   {
     // look for a specific one
     Stringifier<?> stringifier = _stringifiers.get(clazz);
@@ -96,8 +107,8 @@ public abstract class Stringifier<T>
     throws Exception;
 
   /** Registered stringifiers. */
-  protected static HashMap<Class<?>, Stringifier<?>> _stringifiers =
-    new HashMap<Class<?>, Stringifier<?>>();
+  protected static ConcurrentHashMap<Class<?>, Stringifier<?>> _stringifiers =
+    new ConcurrentHashMap<Class<?>, Stringifier<?>>();
   static {
     // register basic stringifiers for wrapper types, primitive arrays
     _stringifiers.put(Boolean.class, new Stringifier<Boolean>() {
@@ -31,19 +31,17 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.EnumSet;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.Text;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
@@ -60,7 +58,13 @@ import com.threerings.util.ReflectionUtil;
 import static com.threerings.export.Log.log;
 
 /**
- * Imports from the XML format generated by {@link XMLExporter}.
+ * Imports from the XML format generated by {@link XMLExporter} (or {@link StreamingXMLExporter}).
+ *
+ * <p>Rather than parsing the entire document into a DOM up front, the importer pulls elements
+ * from a StAX reader as the objects are read.  Fields are normally read in the order in which
+ * they were written, in which case nothing is buffered; elements skipped over while looking for
+ * a field are retained until the enclosing object has been read, and the contents of elements
+ * that have been read are released as soon as they are no longer needed.
  */
 public class XMLImporter extends Importer
 {
@@ -76,35 +80,39 @@ public class XMLImporter extends Importer
   public Object readObject ()
     throws IOException
   {
-    Node first;
-    if (_document == null) {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    if (_reader == null) {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
       try {
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        _document = builder.parse(_in);
-      } catch (Exception e) {
+        _reader = factory.createXMLStreamReader(_in);
+        _reader.nextTag();
+      } catch (XMLStreamException e) {
         throw new IOException("Failed to parse input [error=" + e + "].");
       }
-      Element top = _document.getDocumentElement();
-      if (!top.getTagName().equals("java")) {
-        throw new IOException("Invalid top-level element [name=" +
-          top.getTagName() + "].");
+      _root = new Element(_reader);
+      _stack.add(_root);
+      if (!_root.name.equals("java")) {
+        throw new IOException("Invalid top-level element [name=" + _root.name + "].");
       }
-      String vstr = top.getAttribute("version");
+      String vstr = _root.getAttribute("version");
       if (!vstr.equals(XMLExporter.VERSION)) {
         throw new IOException("Invalid version [version=" + vstr + ", expected=" +
           XMLExporter.VERSION + "].");
       }
-      String cstr = top.getAttribute("class");
+      String cstr = _root.getAttribute("class");
       if (!cstr.equals(getClass().getName())) {
         throw new IOException("Invalid importer class [class=" + cstr + ", expected=" +
           getClass().getName() + "].");
       }
-      first = top.getFirstChild();
-    } else {
-      first = (_element == null) ? null : _element.getNextSibling();
     }
-    if ((_element = findElement(first, "object")) == null) {
+    // the previous objects have been read; we no longer need their elements
+    _root.children = null;
+    while ((_element = pullChild(_root)) != null && !_element.name.equals("object")) {
+      skip(_element);
+    }
+    if (_element == null) {
       throw new EOFException();
     }
     return read(_element, Object.class);
@@ -208,7 +216,7 @@ public class XMLImporter extends Importer
   public <T> T read (String name, T defvalue, Class<T> clazz)
     throws IOException
   {
-    Element child = findElement(_element.getFirstChild(), name);
+    Element child = findChild(_element, name);
     if (child == null) {
       return defvalue;
     }
@@ -219,6 +227,13 @@ public class XMLImporter extends Importer
   public void close ()
     throws IOException
   {
+    if (_reader != null) {
+      try {
+        _reader.close();
+      } catch (XMLStreamException e) {
+        log.warning("Failed to close reader.", e);
+      }
+    }
     _in.close();
   }
 
@@ -228,17 +243,27 @@ public class XMLImporter extends Importer
   protected Object read (Element element, Class<?> clazz)
     throws IOException
   {
+    if (element.read) {
+      return element.value;
+    }
     String ref = element.getAttribute("ref");
     String rdepth = element.getAttribute("rdepth");
     if (rdepth.length() > 0) {
       return _depths.get(rdepth);
     } else if (ref.length() > 0) {
       return _objects.get(ref);
-    } else if (element.getFirstChild() == null) {
+    } else if (!hasContent(element)) {
       return null;
-    } else {
-      return readValue(element, clazz);
     }
+    Object value = readValue(element, clazz);
+
+    // discard anything we didn't read and remember the value in case it's requested again
+    skip(element);
+    element.read = true;
+    element.value = value;
+    element.children = null;
+    element.text = null;
+    return value;
   }
 
   /**
@@ -270,7 +295,7 @@ public class XMLImporter extends Importer
     @SuppressWarnings("unchecked")
     Stringifier<Object> stringifier = (Stringifier<Object>)Stringifier.getStringifier(cclazz);
     if (stringifier != null) {
-      String string = element.getTextContent();
+      String string = getTextContent(element);
       Object value = null;
       try {
         if ((value = stringifier.fromString(string)) == null) {
@@ -296,7 +321,16 @@ public class XMLImporter extends Importer
       Object value;
       boolean wasRead = false;
       if (cclazz.isArray()) {
-        value = Array.newInstance(cclazz.getComponentType(), countEntries());
+        Class<?> ctype = cclazz.getComponentType();
+        if (id.length() > 0 || depth.length() > 0 || ctype.isPrimitive()) {
+          // the entries may refer back to the array, so it must exist before they're read
+          value = Array.newInstance(ctype, countEntries());
+        } else {
+          // otherwise, read the entries as they stream by rather than counting them first
+          List<Object> entries = readEntries(Lists.newArrayList(), ctype);
+          value = entries.toArray((Object[])Array.newInstance(ctype, entries.size()));
+          wasRead = true;
+        }
 
       } else if (cclazz == ImmutableList.class) {
         value = ImmutableList.copyOf(readEntries(Lists.newArrayList()));
@@ -385,13 +419,16 @@ public class XMLImporter extends Importer
   }
 
   /**
-   * Returns the number of entries under the current element.
+   * Returns the number of entries under the current element.  Note that this requires buffering
+   * all of the entries.
    */
   protected int countEntries ()
+    throws IOException
   {
     int count = 0;
-    for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-      if (node instanceof Element && node.getNodeName().equals("entry")) {
+    Element child;
+    for (int ii = 0; (child = getChild(_element, ii)) != null; ii++) {
+      if (child.name.equals("entry")) {
         count++;
       }
     }
@@ -405,13 +442,33 @@ public class XMLImporter extends Importer
     throws IOException
   {
     int idx = 0;
-    for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-      if (node instanceof Element && node.getNodeName().equals("entry")) {
-        array[idx++] = read((Element)node, cclazz);
+    Element child;
+    for (int ii = 0; (child = getChild(_element, ii)) != null; ii++) {
+      if (child.name.equals("entry")) {
+        array[idx++] = read(child, cclazz);
+        release(_element, ii);
       }
     }
   }
 
+  /**
+   * Populates the supplied list with the entries of the given type under the current element.
+   *
+   * @return a reference to the list passed, for chaining.
+   */
+  protected List<Object> readEntries (List<Object> list, Class<?> cclazz)
+    throws IOException
+  {
+    Element child;
+    for (int ii = 0; (child = getChild(_element, ii)) != null; ii++) {
+      if (child.name.equals("entry")) {
+        list.add(read(child, cclazz));
+        release(_element, ii);
+      }
+    }
+    return list;
+  }
+
   /**
    * Populates the supplied collection with the entries under the current element.
    *
@@ -420,9 +477,11 @@ public class XMLImporter extends Importer
   protected Collection<Object> readEntries (Collection<Object> collection)
     throws IOException
   {
-    for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-      if (node instanceof Element && node.getNodeName().equals("entry")) {
-        collection.add(read((Element)node, Object.class));
+    Element child;
+    for (int ii = 0; (child = getChild(_element, ii)) != null; ii++) {
+      if (child.name.equals("entry")) {
+        collection.add(read(child, Object.class));
+        release(_element, ii);
       }
     }
     return collection;
@@ -436,12 +495,15 @@ public class XMLImporter extends Importer
   protected Multiset<Object> readEntries (Multiset<Object> multiset)
     throws IOException
   {
-    for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-      if (node instanceof Element && node.getNodeName().equals("element")) {
-        Object element = read((Element)node, Object.class);
-        for (node = node.getNextSibling(); node != null; node = node.getNextSibling()) {
-          if (node instanceof Element && node.getNodeName().equals("count")) {
-            multiset.setCount(element, (Integer)read((Element)node, Integer.class));
+    Element child;
+    for (int ii = 0; (child = getChild(_element, ii)) != null; ii++) {
+      if (child.name.equals("element")) {
+        Object element = read(child, Object.class);
+        release(_element, ii);
+        for (ii++; (child = getChild(_element, ii)) != null; ii++) {
+          if (child.name.equals("count")) {
+            multiset.setCount(element, (Integer)read(child, Integer.class));
+            release(_element, ii);
             break;
           }
         }
@@ -458,12 +520,15 @@ public class XMLImporter extends Importer
   protected Map<Object, Object> readEntries (Map<Object, Object> map)
     throws IOException
   {
-    for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-      if (node instanceof Element && node.getNodeName().equals("key")) {
-        Object key = read((Element)node, Object.class);
-        for (node = node.getNextSibling(); node != null; node = node.getNextSibling()) {
-          if (node instanceof Element && node.getNodeName().equals("value")) {
-            map.put(key, read((Element)node, Object.class));
+    Element child;
+    for (int ii = 0; (child = getChild(_element, ii)) != null; ii++) {
+      if (child.name.equals("key")) {
+        Object key = read(child, Object.class);
+        release(_element, ii);
+        for (ii++; (child = getChild(_element, ii)) != null; ii++) {
+          if (child.name.equals("value")) {
+            map.put(key, read(child, Object.class));
+            release(_element, ii);
             break;
           }
         }
@@ -476,37 +541,284 @@ public class XMLImporter extends Importer
    * For simple text fields, retrieves the value from a child element.
    */
   protected String getValue (String name)
+    throws IOException
   {
-    Element child = findElement(_element.getFirstChild(), name);
+    Element child = findChild(_element, name);
     if (child == null) {
       return null;
     }
-    for (Node node = child.getFirstChild(); node != null; node = node.getNextSibling()) {
-      if (node instanceof Text) {
-        return node.getNodeValue();
+    complete(child);
+    return child.text;
+  }
+
+  /**
+   * Returns the text content of the specified element, reading it in its entirety.
+   */
+  protected String getTextContent (Element element)
+    throws IOException
+  {
+    complete(element);
+    return (element.text == null) ? "" : element.text;
+  }
+
+  /**
+   * Finds the first child of the given element with the given name, pulling children from the
+   * stream as necessary.
+   */
+  protected Element findChild (Element parent, String name)
+    throws IOException
+  {
+    if (parent.children != null) {
+      for (int ii = 0, nn = parent.children.size(); ii < nn; ii++) {
+        Element child = parent.children.get(ii);
+        if (child != null && child.name.equals(name)) {
+          return child;
+        }
+      }
+    }
+    Element child;
+    while ((child = pullChild(parent)) != null) {
+      if (child.name.equals(name)) {
+        return child;
       }
     }
     return null;
   }
 
   /**
-   * Finds the first element in the sibling chain with the given name.
+   * Returns the child of the given element at the specified index, pulling children from the
+   * stream as necessary.
+   *
+   * @return the child, or null if the element has no more children or the child at the index
+   * has been released.
    */
-  protected static Element findElement (Node first, String name)
+  protected Element getChild (Element parent, int idx)
+    throws IOException
   {
-    for (Node node = first; node != null; node = node.getNextSibling()) {
-      if (node instanceof Element && node.getNodeName().equals(name)) {
-        return (Element)node;
+    while (parent.children == null || parent.children.size() <= idx) {
+      if (pullChild(parent) == null) {
+        return null;
+      }
+    }
+    return parent.children.get(idx);
+  }
+
+  /**
+   * Releases the child of the given element at the specified index once it's been read.
+   */
+  protected void release (Element parent, int idx)
+  {
+    parent.children.set(idx, null);
+  }
+
+  /**
+   * Pulls the next child of the given element from the stream, first buffering any earlier
+   * children that haven't been read in their entirety.
+   *
+   * @return the new child, or null if the element has no more children.
+   */
+  protected Element pullChild (Element parent)
+    throws IOException
+  {
+    ensureTop(parent);
+    while (!parent.complete) {
+      Element child = pump();
+      if (child != null) {
+        return child;
       }
     }
     return null;
   }
 
+  /**
+   * Determines whether the given element has any content (that is, any child nodes at all).
+   */
+  protected boolean hasContent (Element element)
+    throws IOException
+  {
+    ensureTop(element);
+    while (!(element.complete || element.hasContent)) {
+      pump();
+    }
+    return element.hasContent;
+  }
+
+  /**
+   * Reads the remainder of the given element from the stream, buffering its children.
+   */
+  protected void complete (Element element)
+    throws IOException
+  {
+    while (!element.complete) {
+      pump();
+    }
+  }
+
+  /**
+   * Makes sure that the given element is the one being read from the stream (if it hasn't been
+   * read in its entirety), buffering any children that are in progress.
+   */
+  protected void ensureTop (Element element)
+    throws IOException
+  {
+    while (!element.complete && _stack.get(_stack.size() - 1) != element) {
+      complete(_stack.get(_stack.size() - 1));
+    }
+  }
+
+  /**
+   * Skips over the remainder of the given element (if it hasn't been read in its entirety)
+   * without buffering anything.
+   */
+  protected void skip (Element element)
+    throws IOException
+  {
+    if (element.complete) {
+      return;
+    }
+    // anything above the element on the stack is one of its descendants
+    for (Element top; (top = _stack.remove(_stack.size() - 1)) != element; ) {
+      top.complete = true;
+    }
+    element.complete = true;
+    try {
+      for (int depth = 0; depth >= 0; ) {
+        switch (_reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            depth--;
+            break;
+          case XMLStreamConstants.END_DOCUMENT:
+            throw new EOFException();
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to parse input [error=" + e + "].");
+    }
+  }
+
+  /**
+   * Reads the next event from the stream into the element at the top of the stack.
+   *
+   * @return the newly started child element, if the event was the start of one.
+   */
+  protected Element pump ()
+    throws IOException
+  {
+    Element top = _stack.get(_stack.size() - 1);
+    try {
+      switch (_reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          Element child = new Element(_reader);
+          if (top.children == null) {
+            top.children = new ArrayList<Element>();
+          }
+          top.children.add(child);
+          top.hasContent = true;
+          top.text = null;
+          _stack.add(child);
+          return child;
+
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          // we only keep the text of elements without child elements
+          top.hasContent = true;
+          if (top.children == null) {
+            top.text = (top.text == null) ? _reader.getText() : (top.text + _reader.getText());
+          }
+          return null;
+
+        case XMLStreamConstants.COMMENT:
+          top.hasContent = true;
+          return null;
+
+        case XMLStreamConstants.END_ELEMENT:
+          top.complete = true;
+          _stack.remove(_stack.size() - 1);
+          return null;
+
+        case XMLStreamConstants.END_DOCUMENT:
+          throw new EOFException();
+
+        default:
+          return null;
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to parse input [error=" + e + "].");
+    }
+  }
+
+  /**
+   * The portion of an element that has been read from the stream.
+   */
+  protected static class Element
+  {
+    /** The name of the element. */
+    public final String name;
+
+    /** The element's attributes, as alternating names and values. */
+    public final String[] attributes;
+
+    /** The child elements read so far (with nulls for those released), or null for none. */
+    public ArrayList<Element> children;
+
+    /** The text content, if the element has no child elements. */
+    public String text;
+
+    /** Whether the element has any content (text, comments, or child elements). */
+    public boolean hasContent;
+
+    /** Whether we've read the end of the element. */
+    public boolean complete;
+
+    /** Whether the element's value has been read. */
+    public boolean read;
+
+    /** The value read from the element, if any. */
+    public Object value;
+
+    /**
+     * Creates an element from the start element at the reader's current position.
+     */
+    public Element (XMLStreamReader reader)
+    {
+      name = reader.getLocalName();
+      int count = reader.getAttributeCount();
+      attributes = new String[count * 2];
+      for (int ii = 0; ii < count; ii++) {
+        attributes[ii * 2] = reader.getAttributeLocalName(ii);
+        attributes[ii * 2 + 1] = reader.getAttributeValue(ii);
+      }
+    }
+
+    /**
+     * Returns the value of the named attribute, or the empty string if it isn't present.
+     */
+    public String getAttribute (String aname)
+    {
+      for (int ii = 0; ii < attributes.length; ii += 2) {
+        if (attributes[ii].equals(aname)) {
+          return attributes[ii + 1];
+        }
+      }
+      return "";
+    }
+  }
+
   /** The source stream. */
   protected InputStream _in;
 
-  /** The parsed XML document. */
-  protected Document _document;
+  /** The reader pulling events from the stream. */
+  protected XMLStreamReader _reader;
+
+  /** The top-level element. */
+  protected Element _root;
+
+  /** The elements that have been started but not yet ended, from the root down. */
+  protected ArrayList<Element> _stack = new ArrayList<Element>();
 
   /** The element associated with the current object. */
   protected Element _element;
@@ -31,6 +31,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.tools.ant.DirectoryScanner;
 
@@ -54,7 +58,7 @@ public class BinaryToBinaryConverter
     throws Exception
   {
     // consume the options
-    boolean compress = true;
+    boolean compress = true, timings = false;
     while (args.length > 0 && args[0].startsWith("-")) {
       String options = args[0];
       args = ArrayUtil.splice(args, 0, 1);
@@ -64,6 +68,9 @@ public class BinaryToBinaryConverter
           case 'u':
             compress = false;
             break;
+          case 't':
+            timings = true;
+            break;
           default:
             System.err.println("Unrecognized option: -" + option);
             System.exit(1);
@@ -74,7 +81,7 @@ public class BinaryToBinaryConverter
     if (args.length == 2) {
       convert(args[0], args[1], compress);
     } else if (args.length == 1) {
-      convert(args[0], compress);
+      convert(args[0], compress, Runtime.getRuntime().availableProcessors(), timings);
     } else {
       System.err.println(
         "Usage: BinaryToBinaryConverter [-options] <binary input file> " +
@@ -86,6 +93,8 @@ public class BinaryToBinaryConverter
         "where options include:");
       System.err.println(
         "    -u            do not compress output");
+      System.err.println(
+        "    -t            report the time taken to convert each file");
       return;
     }
   }
@@ -95,17 +104,56 @@ public class BinaryToBinaryConverter
    */
   public static void convert (String pattern, boolean compress)
     throws IOException
+  {
+    convert(pattern, compress, 1, false);
+  }
+
+  /**
+   * Converts the file(s) identified by the given pattern using the specified number of threads.
+   *
+   * @param timings if true, log the time taken to convert each file.
+   */
+  public static void convert (
+    String pattern, final boolean compress, int threads, final boolean timings)
+    throws IOException
   {
     DirectoryScanner scanner = new DirectoryScanner();
     scanner.setBasedir(".");
     scanner.setIncludes(new String[] { pattern });
     scanner.scan();
-    for (String source : scanner.getIncludedFiles()) {
-      try {
-        convert(source, source, compress);
-      } catch (IOException e) {
-        log.warning("Error converting file.", "file", source, e);
+    String[] sources = scanner.getIncludedFiles();
+    long start = System.currentTimeMillis();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+    try {
+      List<Future<?>> results = Lists.newArrayList();
+      for (final String source : sources) {
+        results.add(executor.submit(() -> {
+          long fstart = System.nanoTime();
+          try {
+            convert(source, source, compress);
+          } catch (IOException e) {
+            log.warning("Error converting file.", "file", source, e);
+            return;
+          }
+          if (timings) {
+            log.info("Converted file.", "file", source,
+              "ms", (System.nanoTime() - fstart) / 1000000L);
+          }
+        }));
       }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    if (timings) {
+      log.info("Converted files.", "count", sources.length,
+        "ms", System.currentTimeMillis() - start);
     }
   }
 
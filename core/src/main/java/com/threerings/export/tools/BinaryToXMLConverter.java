@@ -36,7 +36,7 @@ import org.apache.tools.ant.DirectoryScanner;
 import com.samskivert.util.FileUtil;
 
 import com.threerings.export.BinaryImporter;
-import com.threerings.export.XMLExporter;
+import com.threerings.export.StreamingXMLExporter;
 
 import static com.threerings.export.Log.log;
 
@@ -93,7 +93,7 @@ public class BinaryToXMLConverter
     throws IOException
   {
     BinaryImporter in = new BinaryImporter(new FileInputStream(source));
-    XMLExporter out = new XMLExporter(
+    StreamingXMLExporter out = new StreamingXMLExporter(
         "-".equals(dest) ? System.out : new FileOutputStream(dest));
     try {
       while (true) {
@@ -0,0 +1,171 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.threerings.export.Log.log;
+
+/**
+ * Records content hashes of build inputs so that incremental builds can skip outputs whose
+ * inputs haven't changed.  Safe for use by multiple threads.
+ */
+public class BuildHashes
+{
+  /**
+   * Computes a hex-encoded hash of the contents of the specified files (in order) and the
+   * supplied extra strings (build options and the like).
+   */
+  public static String hash (Iterable<File> files, String... extras)
+    throws IOException
+  {
+    MessageDigest digest = createDigest();
+    byte[] buf = new byte[8192];
+    for (File file : files) {
+      digest.update(file.getPath().getBytes("UTF-8"));
+      InputStream in = new BufferedInputStream(new FileInputStream(file));
+      try {
+        for (int read; (read = in.read(buf)) != -1; ) {
+          digest.update(buf, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+    }
+    for (String extra : extras) {
+      digest.update(extra.getBytes("UTF-8"));
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+      hex.append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Creates a new set of hashes stored in the specified file, loading the existing hashes if
+   * the file exists.
+   */
+  public BuildHashes (File file)
+  {
+    _file = file;
+    if (!file.exists()) {
+      return;
+    }
+    Properties props = new Properties();
+    try {
+      InputStream in = new BufferedInputStream(new FileInputStream(file));
+      try {
+        props.load(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      log.warning("Failed to read build hashes, rebuilding.", "file", file, e);
+      return;
+    }
+    for (String key : props.stringPropertyNames()) {
+      _hashes.put(key, props.getProperty(key));
+    }
+  }
+
+  /**
+   * Checks whether the hash recorded for the specified output matches the one supplied.
+   */
+  public boolean isCurrent (String key, String hash)
+  {
+    return hash.equals(_hashes.get(key));
+  }
+
+  /**
+   * Records the hash of the inputs from which the specified output was built.
+   */
+  public void put (String key, String hash)
+  {
+    _hashes.put(key, hash);
+  }
+
+  /**
+   * Removes the hash recorded for the specified output (when building it fails, for instance).
+   */
+  public void remove (String key)
+  {
+    _hashes.remove(key);
+  }
+
+  /**
+   * Writes the hashes to the file.
+   */
+  public void save ()
+    throws IOException
+  {
+    Properties props = new Properties();
+    props.putAll(_hashes);
+    File parent = _file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(_file));
+    try {
+      props.store(out, null);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Creates the digest used to hash contents.
+   */
+  protected static MessageDigest createDigest ()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e); // required to be present
+    }
+  }
+
+  /** The file in which the hashes are stored. */
+  protected File _file;
+
+  /** The recorded hashes, mapped by output. */
+  protected Map<String, String> _hashes = new ConcurrentHashMap<String, String>();
+}
@@ -29,6 +29,12 @@ import java.io.File;
 import java.io.IOException;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
@@ -36,7 +42,10 @@ import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
 
 /**
- * Converts XML export files into binary export files.
+ * Converts XML export files into binary export files.  Files are converted in parallel.  By
+ * default, a file is converted when its target is older than the source; if a hash file is
+ * configured, the content hashes of the sources are recorded there instead and files whose
+ * contents haven't changed since the last build are skipped.
  */
 public class XMLToBinaryTask extends Task
 {
@@ -56,6 +65,31 @@ public class XMLToBinaryTask extends Task
     _compress = compress;
   }
 
+  /**
+   * Sets the file in which to record the content hashes of the converted files, enabling
+   * hash-based incremental conversion.
+   */
+  public void setHashFile (File hashFile)
+  {
+    _hashFile = hashFile;
+  }
+
+  /**
+   * Sets the number of threads to use for conversion (defaults to the number of processors).
+   */
+  public void setThreads (int threads)
+  {
+    _threads = Math.max(threads, 1);
+  }
+
+  /**
+   * Sets whether or not to report the time taken to convert each file.
+   */
+  public void setTimings (boolean timings)
+  {
+    _timings = timings;
+  }
+
   /**
    * Adds a fileset to the list of sets to process.
    */
@@ -68,23 +102,57 @@ public class XMLToBinaryTask extends Task
   public void execute ()
     throws BuildException
   {
-    for (FileSet fs : _filesets) {
-      DirectoryScanner ds = fs.getDirectoryScanner(getProject());
-      File fromDir = fs.getDir(getProject());
-      for (String file : ds.getIncludedFiles()) {
+    long start = System.currentTimeMillis();
+    final BuildHashes hashes = (_hashFile == null) ? null : new BuildHashes(_hashFile);
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    ExecutorService executor = Executors.newFixedThreadPool(_threads);
+    try {
+      for (FileSet fs : _filesets) {
+        DirectoryScanner ds = fs.getDirectoryScanner(getProject());
+        final File fromDir = fs.getDir(getProject());
+        for (final String file : ds.getIncludedFiles()) {
+          results.add(executor.submit(() -> {
+            try {
+              return convert(fromDir, file, hashes);
+            } catch (Exception e) {
+              System.err.println("Error converting " + new File(fromDir, file) + ": " + e);
+              return false;
+            }
+          }));
+        }
+      }
+      int converted = 0;
+      for (Future<Boolean> result : results) {
+        if (result.get()) {
+          converted++;
+        }
+      }
+      System.out.println("Converted " + converted + " of " + results.size() + " file(s) in " +
+        (System.currentTimeMillis() - start) + " ms.");
+
+    } catch (InterruptedException e) {
+      throw new BuildException(e);
+    } catch (ExecutionException e) {
+      throw new BuildException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+      if (hashes != null) {
         try {
-          convert(fromDir, file);
-        } catch (Exception e) {
-          System.err.println("Error converting " + new File(fromDir, file) + ": " + e);
+          hashes.save();
+        } catch (IOException e) {
+          System.err.println("Error writing hashes to " + _hashFile + ": " + e);
         }
       }
     }
   }
 
   /**
-   * Converts a single file.
+   * Converts a single file.  May be called from multiple threads at once.
+   *
+   * @param hashes the recorded content hashes, or null to compare modification times.
+   * @return true if the file was converted, false if it was up to date.
    */
-  protected void convert (File sourceDir, String sourceName)
+  protected boolean convert (File sourceDir, String sourceName, BuildHashes hashes)
     throws IOException
   {
     // find the path of the target file
@@ -94,9 +162,16 @@ public class XMLToBinaryTask extends Task
 
     // no need to compile if nothing has been modified
     File source = new File(sourceDir, sourceName);
-    long lastmod = target.lastModified();
-    if (source.lastModified() < lastmod) {
-      return;
+    String key = target.getPath(), hash = null;
+    if (hashes == null) {
+      if (source.lastModified() < target.lastModified()) {
+        return false;
+      }
+    } else {
+      hash = BuildHashes.hash(Collections.singletonList(source), String.valueOf(_compress));
+      if (target.exists() && hashes.isCurrent(key, hash)) {
+        return false;
+      }
     }
     System.out.println("Converting " + source + " to " + target + "...");
 
@@ -106,8 +181,20 @@ public class XMLToBinaryTask extends Task
       parent.mkdirs();
     }
 
-    // perform the conversion
+    // perform the conversion, forgetting the old hash until it succeeds
+    if (hashes != null) {
+      hashes.remove(key);
+    }
+    long start = System.nanoTime();
     XMLToBinaryConverter.convert(source.getPath(), target.getPath(), _compress);
+    if (hashes != null) {
+      hashes.put(key, hash);
+    }
+    if (_timings) {
+      System.out.println("Converted " + source + " in " +
+        (System.nanoTime() - start) / 1000000L + " ms.");
+    }
+    return true;
   }
 
   /** The directory in which we will generate our output (in a directory tree mirroring the
@@ -117,6 +204,15 @@ public class XMLToBinaryTask extends Task
   /** Whether or not to compress the output files. */
   protected boolean _compress = true;
 
+  /** The file in which to record content hashes, if any. */
+  protected File _hashFile;
+
+  /** The number of threads to use for conversion. */
+  protected int _threads = Runtime.getRuntime().availableProcessors();
+
+  /** Whether or not to report per-file timings. */
+  protected boolean _timings;
+
   /** A list of filesets that contain XML exports. */
   protected ArrayList<FileSet> _filesets = new ArrayList<FileSet>();
 }
@@ -0,0 +1,149 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.math;
+
+import java.util.Arrays;
+
+/**
+ * A list of axis-aligned boxes whose extents are stored in parallel primitive arrays, so that
+ * they can be tested in batches (see {@link Frustum#getIntersectionTypes}).
+ */
+public class BoxArray
+{
+  /** The extents of the boxes.  Only the first {@link #size} elements are valid. */
+  public float[] minX, minY, minZ, maxX, maxY, maxZ;
+
+  /**
+   * Creates an empty array with the specified initial capacity.
+   */
+  public BoxArray (int capacity)
+  {
+    allocate(capacity);
+  }
+
+  /**
+   * Creates an empty array with a small initial capacity.
+   */
+  public BoxArray ()
+  {
+    this(4);
+  }
+
+  /**
+   * Returns the number of boxes in the array.
+   */
+  public int size ()
+  {
+    return _size;
+  }
+
+  /**
+   * Appends a box to the end of the array.
+   */
+  public void add (Box box)
+  {
+    if (_size == minX.length) {
+      allocate(_size * 2);
+    }
+    set(_size++, box);
+  }
+
+  /**
+   * Sets the box at the specified index.
+   */
+  public void set (int idx, Box box)
+  {
+    Vector3f min = box.getMinimumExtent(), max = box.getMaximumExtent();
+    minX[idx] = min.x;
+    minY[idx] = min.y;
+    minZ[idx] = min.z;
+    maxX[idx] = max.x;
+    maxY[idx] = max.y;
+    maxZ[idx] = max.z;
+  }
+
+  /**
+   * Retrieves the box at the specified index.
+   *
+   * @return a reference to the result box, for chaining.
+   */
+  public Box get (int idx, Box result)
+  {
+    result.getMinimumExtent().set(minX[idx], minY[idx], minZ[idx]);
+    result.getMaximumExtent().set(maxX[idx], maxY[idx], maxZ[idx]);
+    return result;
+  }
+
+  /**
+   * Removes the box at the specified index, shifting the following boxes down.
+   */
+  public void remove (int idx)
+  {
+    int count = --_size - idx;
+    if (count > 0) {
+      System.arraycopy(minX, idx + 1, minX, idx, count);
+      System.arraycopy(minY, idx + 1, minY, idx, count);
+      System.arraycopy(minZ, idx + 1, minZ, idx, count);
+      System.arraycopy(maxX, idx + 1, maxX, idx, count);
+      System.arraycopy(maxY, idx + 1, maxY, idx, count);
+      System.arraycopy(maxZ, idx + 1, maxZ, idx, count);
+    }
+  }
+
+  /**
+   * Removes all boxes from the array.
+   */
+  public void clear ()
+  {
+    _size = 0;
+  }
+
+  /**
+   * (Re)allocates the extent arrays with the given capacity, preserving their contents.
+   */
+  protected void allocate (int capacity)
+  {
+    capacity = Math.max(capacity, 1);
+    if (minX == null) {
+      minX = new float[capacity];
+      minY = new float[capacity];
+      minZ = new float[capacity];
+      maxX = new float[capacity];
+      maxY = new float[capacity];
+      maxZ = new float[capacity];
+    } else {
+      minX = Arrays.copyOf(minX, capacity);
+      minY = Arrays.copyOf(minY, capacity);
+      minZ = Arrays.copyOf(minZ, capacity);
+      maxX = Arrays.copyOf(maxX, capacity);
+      maxY = Arrays.copyOf(maxY, capacity);
+      maxZ = Arrays.copyOf(maxZ, capacity);
+    }
+  }
+
+  /** The number of boxes in the array. */
+  protected int _size;
+}
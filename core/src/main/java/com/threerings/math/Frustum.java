@@ -219,24 +219,67 @@ public class Frustum
       return IntersectionType.NONE;
     }
 
-    // consider each side of the frustum as a potential separating axis
-    int ccount = 0;
-    for (int ii = 0; ii < 6; ii++) {
-      // determine how many vertices fall inside/outside the plane
-      int inside = 0;
-      Plane plane = _planes[ii];
-      for (int jj = 0; jj < 8; jj++) {
-        if (plane.getDistance(box.getVertex(jj, _vertex)) <= 0f) {
-          inside++;
-        }
-      }
-      if (inside == 0) {
+    // consider each side of the frustum as a potential separating axis, checking only the
+    // vertices nearest to and farthest from the plane
+    Vector3f min = box.getMinimumExtent(), max = box.getMaximumExtent();
+    boolean contains = true;
+    for (Plane plane : _planes) {
+      Vector3f normal = plane.getNormal();
+      float nx = normal.x, ny = normal.y, nz = normal.z;
+      float near = nx*(nx > 0f ? min.x : max.x) + ny*(ny > 0f ? min.y : max.y) +
+        nz*(nz > 0f ? min.z : max.z) + plane.constant;
+      if (near > 0f) {
         return IntersectionType.NONE;
-      } else if (inside == 8) {
-        ccount++;
+      }
+      contains &= (nx*(nx > 0f ? max.x : min.x) + ny*(ny > 0f ? max.y : min.y) +
+        nz*(nz > 0f ? max.z : min.z) + plane.constant) <= 0f;
+    }
+    return contains ? IntersectionType.CONTAINS : IntersectionType.INTERSECTS;
+  }
+
+  /**
+   * Determines the intersection types of a batch of boxes, storing them in the supplied array
+   * (which must be at least as long as the box array).  This gives the same results as
+   * calling {@link #getIntersectionType(Box)} for each box, but processes one plane at a time
+   * over all of the boxes.
+   */
+  public void getIntersectionTypes (BoxArray boxes, IntersectionType[] results)
+  {
+    int size = boxes.size();
+    if (_flags.length < size) {
+      _flags = new int[Math.max(size, _flags.length * 2)];
+    }
+    int[] flags = _flags;
+    float[] minX = boxes.minX, minY = boxes.minY, minZ = boxes.minZ;
+    float[] maxX = boxes.maxX, maxY = boxes.maxY, maxZ = boxes.maxZ;
+
+    // check against the bounding box
+    Vector3f bmin = _bounds.getMinimumExtent(), bmax = _bounds.getMaximumExtent();
+    for (int ii = 0; ii < size; ii++) {
+      flags[ii] = (bmax.x >= minX[ii] && bmin.x <= maxX[ii] &&
+        bmax.y >= minY[ii] && bmin.y <= maxY[ii] &&
+        bmax.z >= minZ[ii] && bmin.z <= maxZ[ii]) ? 0 : OUTSIDE;
+    }
+
+    // check against each plane
+    for (Plane plane : _planes) {
+      Vector3f normal = plane.getNormal();
+      float nx = normal.x, ny = normal.y, nz = normal.z, constant = plane.constant;
+      float[] nearX = (nx > 0f) ? minX : maxX, farX = (nx > 0f) ? maxX : minX;
+      float[] nearY = (ny > 0f) ? minY : maxY, farY = (ny > 0f) ? maxY : minY;
+      float[] nearZ = (nz > 0f) ? minZ : maxZ, farZ = (nz > 0f) ? maxZ : minZ;
+      for (int ii = 0; ii < size; ii++) {
+        float near = nx*nearX[ii] + ny*nearY[ii] + nz*nearZ[ii] + constant;
+        float far = nx*farX[ii] + ny*farY[ii] + nz*farZ[ii] + constant;
+        flags[ii] |= (near > 0f ? OUTSIDE : 0) | (far > 0f ? PARTIAL : 0);
       }
     }
-    return (ccount == 6) ? IntersectionType.CONTAINS : IntersectionType.INTERSECTS;
+
+    for (int ii = 0; ii < size; ii++) {
+      int flag = flags[ii];
+      results[ii] = ((flag & OUTSIDE) != 0) ? IntersectionType.NONE :
+        ((flag & PARTIAL) != 0 ? IntersectionType.INTERSECTS : IntersectionType.CONTAINS);
+    }
   }
 
   /**
@@ -278,6 +321,15 @@ public class Frustum
   /** The frustum's bounding box (as derived from the vertices). */
   protected Box _bounds = new Box();
 
+  /** Holds per-box flags for {@link #getIntersectionTypes}. */
+  protected int[] _flags = new int[0];
+
   /** A working vertex. */
   protected static Vector3f _vertex = new Vector3f();
+
+  /** Flags a box as lying entirely outside a plane (or the bounds). */
+  protected static final int OUTSIDE = 1 << 0;
+
+  /** Flags a box as lying partially outside a plane. */
+  protected static final int PARTIAL = 1 << 1;
 }
@@ -0,0 +1,171 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.compositor;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.threerings.opengl.compositor.config.RenderQueueConfig.SortMode;
+import com.threerings.opengl.renderer.Batch;
+
+/**
+ * Sorts lists of batches by the unsigned 64-bit keys provided by a {@link SortMode}, using a
+ * stable least-significant-digit radix sort over reusable arrays (so that, once the arrays
+ * have grown to fit, sorting allocates nothing).  Digits on which all keys agree are skipped,
+ * so keys that only use their low bits cost proportionally fewer passes.
+ */
+public class BatchSorter
+{
+  /**
+   * Sorts the supplied list in place according to the given mode.
+   */
+  public void sort (List<Batch> batches, SortMode mode)
+  {
+    int size = batches.size();
+    if (size < 2 || mode == SortMode.NONE) {
+      return;
+    }
+    ensureCapacity(size);
+    Batch[] items = _items;
+    long[] keys = _keys;
+    int version;
+    do {
+      // if a new state arrives partway through, the ranks in the earlier keys are stale
+      version = Batch.getStateVersion();
+      for (int ii = 0; ii < size; ii++) {
+        Batch batch = batches.get(ii);
+        items[ii] = batch;
+        keys[ii] = mode.getSortKey(batch);
+      }
+    } while (Batch.getStateVersion() != version);
+    if (size <= INSERTION_SORT_THRESHOLD) {
+      insertionSort(size);
+    } else {
+      radixSort(size);
+    }
+    items = _items;
+    for (int ii = 0; ii < size; ii++) {
+      batches.set(ii, items[ii]);
+    }
+    Arrays.fill(items, 0, size, null);
+  }
+
+  /**
+   * Sorts the first <code>size</code> items by insertion.
+   */
+  protected void insertionSort (int size)
+  {
+    Batch[] items = _items;
+    long[] keys = _keys;
+    for (int ii = 1; ii < size; ii++) {
+      long key = keys[ii];
+      Batch item = items[ii];
+      int jj = ii - 1;
+      for (; jj >= 0 && Long.compareUnsigned(keys[jj], key) > 0; jj--) {
+        keys[jj + 1] = keys[jj];
+        items[jj + 1] = items[jj];
+      }
+      keys[jj + 1] = key;
+      items[jj + 1] = item;
+    }
+  }
+
+  /**
+   * Sorts the first <code>size</code> items by radix, a byte at a time.
+   */
+  protected void radixSort (int size)
+  {
+    // find the bytes that actually vary
+    long first = _keys[0], diff = 0L;
+    for (int ii = 1; ii < size; ii++) {
+      diff |= _keys[ii] ^ first;
+    }
+    int[] counts = _counts;
+    for (int shift = 0; shift < Long.SIZE && (diff >>> shift) != 0L; shift += RADIX_BITS) {
+      if (((diff >>> shift) & RADIX_MASK) == 0L) {
+        continue;
+      }
+      long[] keys = _keys, okeys = _tmpKeys;
+      Batch[] items = _items, oitems = _tmpItems;
+
+      // count the occurrences of each digit and convert to starting offsets
+      Arrays.fill(counts, 0);
+      for (int ii = 0; ii < size; ii++) {
+        counts[(int)((keys[ii] >>> shift) & RADIX_MASK)]++;
+      }
+      for (int ii = 0, offset = 0; ii < counts.length; ii++) {
+        int count = counts[ii];
+        counts[ii] = offset;
+        offset += count;
+      }
+
+      // scatter into the other arrays and swap
+      for (int ii = 0; ii < size; ii++) {
+        long key = keys[ii];
+        int idx = counts[(int)((key >>> shift) & RADIX_MASK)]++;
+        okeys[idx] = key;
+        oitems[idx] = items[ii];
+      }
+      _keys = okeys;
+      _tmpKeys = keys;
+      _items = oitems;
+      _tmpItems = items;
+    }
+    Arrays.fill(_tmpItems, 0, size, null);
+  }
+
+  /**
+   * Makes sure the working arrays can hold the specified number of elements.
+   */
+  protected void ensureCapacity (int size)
+  {
+    if (_keys.length < size) {
+      int capacity = Math.max(size, _keys.length * 2);
+      _keys = new long[capacity];
+      _tmpKeys = new long[capacity];
+      _items = new Batch[capacity];
+      _tmpItems = new Batch[capacity];
+    }
+  }
+
+  /** The keys being sorted and their scratch counterparts. */
+  protected long[] _keys = new long[0], _tmpKeys = new long[0];
+
+  /** The batches being sorted and their scratch counterparts. */
+  protected Batch[] _items = new Batch[0], _tmpItems = new Batch[0];
+
+  /** Digit counts/offsets. */
+  protected int[] _counts = new int[1 << RADIX_BITS];
+
+  /** The number of bits in each radix digit. */
+  protected static final int RADIX_BITS = 8;
+
+  /** The mask for a radix digit. */
+  protected static final long RADIX_MASK = (1L << RADIX_BITS) - 1;
+
+  /** Lists at or below this size are sorted by insertion. */
+  protected static final int INSERTION_SORT_THRESHOLD = 32;
+}
@@ -39,6 +39,7 @@ import com.samskivert.util.QuickSort;
 
 import com.threerings.opengl.camera.Camera;
 import com.threerings.opengl.compositor.config.RenderEffectConfig;
+import com.threerings.opengl.renderer.Batch;
 import com.threerings.opengl.renderer.Color4f;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.renderer.state.ColorMaskState;
@@ -191,6 +192,9 @@ public class Compositor
    */
   public void renderView ()
   {
+    // keep the table of batch state keys from growing without bound
+    Batch.pruneStateKeys();
+
     // request that the roots register their dependencies and enqueueables
     for (int ii = 0, nn = _roots.size(); ii < nn; ii++) {
       _roots.get(ii).composite();
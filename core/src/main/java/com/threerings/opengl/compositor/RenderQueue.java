@@ -239,7 +239,7 @@ public class RenderQueue
 
     // sort each list
     for (int ii = 0, nn = _lists.size(); ii < nn; ii++) {
-      _config.sortMode.sort(_lists.get(ii));
+      _sorter.sort(_lists.get(ii), _config.sortMode);
     }
   }
 
@@ -388,7 +388,9 @@ public class RenderQueue
           for (int kk = 0, ll = list.size(); kk < ll; kk++) {
             Batch batch = list.get(kk);
             depth += batch.depth;
-            key = (batch.key == null) ? key : batch.key;
+            if (batch.key != null) {
+              key = batch.key;
+            }
             total++;
           }
         }
@@ -468,4 +470,7 @@ public class RenderQueue
 
   /** The set of group batches. */
   protected ArrayList<GroupBatch> _batches = Lists.newArrayList();
+
+  /** Sorts the batch lists. */
+  protected BatchSorter _sorter = new BatchSorter();
 }
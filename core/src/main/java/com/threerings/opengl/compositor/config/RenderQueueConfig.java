@@ -60,6 +60,9 @@ public class RenderQueueConfig extends ManagedConfig
       public void sort (List<Batch> batches) {
         // no-op
       }
+      public long getSortKey (Batch batch) {
+        return 0L;
+      }
     },
 
     /** Sorts batches by state, then front-to-back. */
@@ -68,30 +71,59 @@ public class RenderQueueConfig extends ManagedConfig
         int comp = Batch.compareKeys(b1.key, b2.key);
         return (comp == 0) ? Float.compare(b2.depth, b1.depth) : comp;
       }
-    }),
+    }) {
+      public long getSortKey (Batch batch) {
+        // state rank in the upper 48 bits, quantized (reversed) depth in the lower 16
+        return (long)batch.getStateRank() << 16 | (~getDepthBits(batch.depth) >>> 16);
+      }
+    },
 
     /** Sorts batches by depth, back-to-front. */
     BACK_TO_FRONT(new Comparator<Batch>() {
       public int compare (Batch b1, Batch b2) {
         return Float.compare(b1.depth, b2.depth);
       }
-    }),
+    }) {
+      public long getSortKey (Batch batch) {
+        return getDepthBits(batch.depth) & 0xFFFFFFFFL;
+      }
+    },
 
     /** Sorts batches by depth, front-to-back. */
     FRONT_TO_BACK(new Comparator<Batch>() {
       public int compare (Batch b1, Batch b2) {
         return Float.compare(b2.depth, b1.depth);
       }
-    });
+    }) {
+      public long getSortKey (Batch batch) {
+        return ~getDepthBits(batch.depth) & 0xFFFFFFFFL;
+      }
+    };
 
     /**
-     * Sorts the supplied list of batches.
+     * Sorts the supplied list of batches using the comparator.
      */
     public void sort (List<Batch> batches)
     {
       QuickSort.sort(batches, _comparator);
     }
 
+    /**
+     * Returns the key by which to sort the specified batch in this mode (as an unsigned
+     * value; see {@link com.threerings.opengl.compositor.BatchSorter}).
+     */
+    public abstract long getSortKey (Batch batch);
+
+    /**
+     * Returns the bits of the given depth transformed so that their unsigned order matches
+     * the order of the depths.
+     */
+    protected static int getDepthBits (float depth)
+    {
+      int bits = Float.floatToIntBits(depth);
+      return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+    }
+
     SortMode (Comparator<Batch> comparator)
     {
       _comparator = comparator;
@@ -183,36 +183,40 @@ public abstract class BaseParticleSystem extends Model.Implementation
       if (!_config.moveParticlesWithEmitter) {
         scale = _worldTransform.approximateUniformScale();
       }
-      for (int ii = 0; ii < _living.value; ii++) {
-        Particle particle = _particles[ii];
-        if (particle.tick(elapsed)) {
-          // apply the influences
-          for (Influence influence : _influences) {
-            influence.apply(particle);
-          }
-          // modulate by the inherited color, if any
-          if (_colorState != null) {
-            particle.getColor().multLocal(_colorState.getColor());
-          }
-          // multiply by the inherited scale, if any
-          if (!_config.moveParticlesWithEmitter) {
-            particle.setSize(particle.getSize() * scale);
-          }
-          // add to bounds
-          _bounds.addLocal(particle.getPosition());
-          msize = Math.max(msize, particle.getSize());
-
-        } else {
-          killParticle(ii);
-
-          // move this particle to the end of the list
-          if (ii != --_living.value) {
-            swapParticles(ii, _living.value);
-            ii--; // update the swapped particle on the next iteration
-          }
-          // then to the end of the preliving list
-          if (_preliving != 0) {
-            swapParticles(_living.value, _living.value + _preliving);
+      if (_particleArrays != null) {
+        msize = tickArrays(elapsed, scale);
+      } else {
+        for (int ii = 0; ii < _living.value; ii++) {
+          Particle particle = _particles[ii];
+          if (particle.tick(elapsed)) {
+            // apply the influences
+            for (Influence influence : _influences) {
+              influence.apply(particle);
+            }
+            // modulate by the inherited color, if any
+            if (_colorState != null) {
+              particle.getColor().multLocal(_colorState.getColor());
+            }
+            // multiply by the inherited scale, if any
+            if (!_config.moveParticlesWithEmitter) {
+              particle.setSize(particle.getSize() * scale);
+            }
+            // add to bounds
+            _bounds.addLocal(particle.getPosition());
+            msize = Math.max(msize, particle.getSize());
+
+          } else {
+            killParticle(ii);
+
+            // move this particle to the end of the list
+            if (ii != --_living.value) {
+              swapParticles(ii, _living.value);
+              ii--; // update the swapped particle on the next iteration
+            }
+            // then to the end of the preliving list
+            if (_preliving != 0) {
+              swapParticles(_living.value, _living.value + _preliving);
+            }
           }
         }
       }
@@ -241,6 +245,9 @@ public abstract class BaseParticleSystem extends Model.Implementation
           vectorToLayer(particle.getAngularVelocity(), emitter);
         }
         initParticle(ii);
+        if (_particleArrays != null) {
+          _particleArrays.store(ii);
+        }
         _living.value++;
         _preliving = Math.max(_preliving - 1, 0);
         _bounds.addLocal(particle.getPosition());
@@ -324,6 +331,30 @@ public abstract class BaseParticleSystem extends Model.Implementation
       return "layer";
     }
 
+    /**
+     * Updates the living particles using the flat attribute arrays, compacting the dead ones
+     * out of the living range and adding the survivors to the bounds.
+     *
+     * @return the maximum size of the living particles.
+     */
+    protected float tickArrays (float elapsed, float scale)
+    {
+      ParticleArrays arrays = _particleArrays;
+      int living = _living.value = arrays.age(_living.value, elapsed);
+      arrays.step(living, elapsed);
+      arrays.evaluate(living);
+      for (Influence influence : _influences) {
+        influence.applyAll(arrays, living);
+      }
+      if (_colorState != null) {
+        arrays.modulate(living, _colorState.getColor());
+      }
+      if (!_config.moveParticlesWithEmitter) {
+        arrays.scale(living, scale);
+      }
+      return arrays.addBounds(0, living, _bounds);
+    }
+
     /**
      * Swaps the two particles at the specified indices.
      */
@@ -405,6 +436,10 @@ public abstract class BaseParticleSystem extends Model.Implementation
     @Scoped
     protected Particle[] _particles;
 
+    /** The particle state in flat arrays, if the layer simulates that way (else null). */
+    @Scoped
+    protected ParticleArrays _particleArrays;
+
     /** The particle counter. */
     protected Counter _counter;
 
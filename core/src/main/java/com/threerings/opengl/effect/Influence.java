@@ -39,4 +39,17 @@ public interface Influence
    * Applies this influence to the specified particle.
    */
   public void apply (Particle particle);
+
+  /**
+   * Applies this influence to the first <code>count</code> particles in the provided arrays.
+   * The default implementation round-trips each particle through its object and calls
+   * {@link #apply}; influences that can operate on the arrays directly should override it.
+   */
+  public default void applyAll (ParticleArrays arrays, int count)
+  {
+    for (int ii = 0; ii < count; ii++) {
+      apply(arrays.load(ii));
+      arrays.store(ii);
+    }
+  }
 }
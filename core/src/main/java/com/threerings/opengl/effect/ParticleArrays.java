@@ -0,0 +1,340 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.effect;
+
+import com.threerings.math.Box;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.renderer.Color4f;
+
+/**
+ * Stores the simulated state of a layer's particles in flat arrays (one per attribute) so that
+ * the per-frame updates and influences can run as simple loops over primitive data.  The
+ * {@link Particle} objects remain parallel to the arrays and hold the per-particle functions;
+ * their state is only synchronized when particles are spawned or when an influence has no
+ * batch implementation.
+ */
+public final class ParticleArrays
+{
+  /** The particle positions. */
+  public final float[] positionX, positionY, positionZ;
+
+  /** The particle (linear) velocities. */
+  public final float[] velocityX, velocityY, velocityZ;
+
+  /** The particle orientations. */
+  public final float[] orientationX, orientationY, orientationZ, orientationW;
+
+  /** The particle angular velocities. */
+  public final float[] angularVelocityX, angularVelocityY, angularVelocityZ;
+
+  /** The particle colors. */
+  public final float[] colorR, colorG, colorB, colorA;
+
+  /** The particle sizes. */
+  public final float[] size;
+
+  /** The particle texture frames. */
+  public final float[] frame;
+
+  /** The particles' proportional ages. */
+  public final float[] age;
+
+  /** The reciprocals of the particles' lifespans. */
+  public final float[] lifescale;
+
+  /** The particle objects parallel to the arrays. */
+  public final Particle[] particles;
+
+  /**
+   * Creates a new set of arrays for the supplied particles.
+   */
+  public ParticleArrays (Particle[] particles)
+  {
+    this.particles = particles;
+    int capacity = particles.length;
+    positionX = new float[capacity];
+    positionY = new float[capacity];
+    positionZ = new float[capacity];
+    velocityX = new float[capacity];
+    velocityY = new float[capacity];
+    velocityZ = new float[capacity];
+    orientationX = new float[capacity];
+    orientationY = new float[capacity];
+    orientationZ = new float[capacity];
+    orientationW = new float[capacity];
+    angularVelocityX = new float[capacity];
+    angularVelocityY = new float[capacity];
+    angularVelocityZ = new float[capacity];
+    colorR = new float[capacity];
+    colorG = new float[capacity];
+    colorB = new float[capacity];
+    colorA = new float[capacity];
+    size = new float[capacity];
+    frame = new float[capacity];
+    age = new float[capacity];
+    lifescale = new float[capacity];
+  }
+
+  /**
+   * Returns the number of particles the arrays can hold.
+   */
+  public int getCapacity ()
+  {
+    return particles.length;
+  }
+
+  /**
+   * Copies the state of the particle object at the specified index into the arrays.
+   */
+  public void store (int idx)
+  {
+    Particle particle = particles[idx];
+    Vector3f position = particle._position;
+    positionX[idx] = position.x;
+    positionY[idx] = position.y;
+    positionZ[idx] = position.z;
+    Vector3f velocity = particle._velocity;
+    velocityX[idx] = velocity.x;
+    velocityY[idx] = velocity.y;
+    velocityZ[idx] = velocity.z;
+    Quaternion orientation = particle._orientation;
+    orientationX[idx] = orientation.x;
+    orientationY[idx] = orientation.y;
+    orientationZ[idx] = orientation.z;
+    orientationW[idx] = orientation.w;
+    Vector3f angularVelocity = particle._angularVelocity;
+    angularVelocityX[idx] = angularVelocity.x;
+    angularVelocityY[idx] = angularVelocity.y;
+    angularVelocityZ[idx] = angularVelocity.z;
+    Color4f color = particle._color;
+    colorR[idx] = color.r;
+    colorG[idx] = color.g;
+    colorB[idx] = color.b;
+    colorA[idx] = color.a;
+    size[idx] = particle._size;
+    frame[idx] = particle._frame;
+    age[idx] = particle._age;
+    lifescale[idx] = particle._lifescale;
+  }
+
+  /**
+   * Copies the state in the arrays at the specified index back into the particle object.
+   *
+   * @return a reference to the particle, for chaining.
+   */
+  public Particle load (int idx)
+  {
+    Particle particle = particles[idx];
+    particle._position.set(positionX[idx], positionY[idx], positionZ[idx]);
+    particle._velocity.set(velocityX[idx], velocityY[idx], velocityZ[idx]);
+    particle._orientation.set(
+      orientationX[idx], orientationY[idx], orientationZ[idx], orientationW[idx]);
+    particle._angularVelocity.set(
+      angularVelocityX[idx], angularVelocityY[idx], angularVelocityZ[idx]);
+    particle._color.set(colorR[idx], colorG[idx], colorB[idx], colorA[idx]);
+    particle._size = size[idx];
+    particle._frame = frame[idx];
+    particle._age = age[idx];
+    particle._lifescale = lifescale[idx];
+    return particle;
+  }
+
+  /**
+   * Ages the first <code>count</code> particles and compacts the survivors to the front of the
+   * arrays, preserving their order.  The particle objects of the dead particles end up just
+   * past the survivors.
+   *
+   * @return the number of particles still alive.
+   */
+  public int age (int count, float elapsed)
+  {
+    int living = 0;
+    for (int ii = 0; ii < count; ii++) {
+      float nage = age[ii] + elapsed * lifescale[ii];
+      if (nage >= 1f) {
+        continue;
+      }
+      age[ii] = nage;
+      if (ii != living) {
+        move(ii, living);
+      }
+      living++;
+    }
+    return living;
+  }
+
+  /**
+   * Takes an Euler step for the positions and orientations of the first <code>count</code>
+   * particles.
+   */
+  public void step (int count, float elapsed)
+  {
+    // positions (separate loops per component keep these trivially vectorizable)
+    for (int ii = 0; ii < count; ii++) {
+      positionX[ii] += velocityX[ii] * elapsed;
+    }
+    for (int ii = 0; ii < count; ii++) {
+      positionY[ii] += velocityY[ii] * elapsed;
+    }
+    for (int ii = 0; ii < count; ii++) {
+      positionZ[ii] += velocityZ[ii] * elapsed;
+    }
+
+    // orientations (see Quaternion.integrate)
+    float hstep = 0.5f * elapsed;
+    for (int ii = 0; ii < count; ii++) {
+      float qx = hstep * angularVelocityX[ii];
+      float qy = hstep * angularVelocityY[ii];
+      float qz = hstep * angularVelocityZ[ii];
+      float x = orientationX[ii], y = orientationY[ii];
+      float z = orientationZ[ii], w = orientationW[ii];
+      float nx = x + (qx*w + qy*z - qz*y);
+      float ny = y + (qy*w + qz*x - qx*z);
+      float nz = z + (qz*w + qx*y - qy*x);
+      float nw = w + (-qx*x - qy*y - qz*z);
+      float rlen = 1f / FloatMath.sqrt(nx*nx + ny*ny + nz*nz + nw*nw);
+      orientationX[ii] = nx * rlen;
+      orientationY[ii] = ny * rlen;
+      orientationZ[ii] = nz * rlen;
+      orientationW[ii] = nw * rlen;
+    }
+  }
+
+  /**
+   * Evaluates the color, size, and frame functions of the first <code>count</code> particles
+   * at their current ages.
+   */
+  public void evaluate (int count)
+  {
+    Color4f color = _color;
+    for (int ii = 0; ii < count; ii++) {
+      Particle particle = particles[ii];
+      float page = age[ii];
+      particle._alphaMode.apply(particle._colorfunc.getValue(page, color));
+      colorR[ii] = color.r;
+      colorG[ii] = color.g;
+      colorB[ii] = color.b;
+      colorA[ii] = color.a;
+      size[ii] = particle._sizefunc.getValue(page);
+      if (particle._framefunc != null) {
+        frame[ii] = particle._framefunc.getValue(page);
+      }
+    }
+  }
+
+  /**
+   * Modulates the colors of the first <code>count</code> particles by the specified color.
+   */
+  public void modulate (int count, Color4f color)
+  {
+    float r = color.r, g = color.g, b = color.b, a = color.a;
+    for (int ii = 0; ii < count; ii++) {
+      colorR[ii] *= r;
+      colorG[ii] *= g;
+      colorB[ii] *= b;
+      colorA[ii] *= a;
+    }
+  }
+
+  /**
+   * Multiplies the sizes of the first <code>count</code> particles by the specified scale.
+   */
+  public void scale (int count, float scale)
+  {
+    for (int ii = 0; ii < count; ii++) {
+      size[ii] *= scale;
+    }
+  }
+
+  /**
+   * Expands the provided bounds to include the positions of the particles in the specified
+   * range.
+   *
+   * @return the maximum size of the particles in the range.
+   */
+  public float addBounds (int start, int end, Box bounds)
+  {
+    if (start >= end) {
+      return 0f;
+    }
+    Vector3f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+    float minX = min.x, minY = min.y, minZ = min.z;
+    float maxX = max.x, maxY = max.y, maxZ = max.z;
+    float msize = 0f;
+    for (int ii = start; ii < end; ii++) {
+      float x = positionX[ii], y = positionY[ii], z = positionZ[ii];
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      minZ = Math.min(minZ, z);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+      maxZ = Math.max(maxZ, z);
+      msize = Math.max(msize, size[ii]);
+    }
+    min.set(minX, minY, minZ);
+    max.set(maxX, maxY, maxZ);
+    return msize;
+  }
+
+  /**
+   * Moves the state at one index to another, swapping the particle objects so that each object
+   * remains referenced exactly once.
+   */
+  protected void move (int from, int to)
+  {
+    positionX[to] = positionX[from];
+    positionY[to] = positionY[from];
+    positionZ[to] = positionZ[from];
+    velocityX[to] = velocityX[from];
+    velocityY[to] = velocityY[from];
+    velocityZ[to] = velocityZ[from];
+    orientationX[to] = orientationX[from];
+    orientationY[to] = orientationY[from];
+    orientationZ[to] = orientationZ[from];
+    orientationW[to] = orientationW[from];
+    angularVelocityX[to] = angularVelocityX[from];
+    angularVelocityY[to] = angularVelocityY[from];
+    angularVelocityZ[to] = angularVelocityZ[from];
+    colorR[to] = colorR[from];
+    colorG[to] = colorG[from];
+    colorB[to] = colorB[from];
+    colorA[to] = colorA[from];
+    size[to] = size[from];
+    frame[to] = frame[from];
+    age[to] = age[from];
+    lifescale[to] = lifescale[from];
+
+    Particle tmp = particles[to];
+    particles[to] = particles[from];
+    particles[from] = tmp;
+  }
+
+  /** Holds colors during evaluation. */
+  protected Color4f _color = new Color4f();
+}
@@ -127,6 +127,10 @@ public abstract class ParticleGeometry extends DynamicGeometry
       int colorIdx = _colorOffset;
       int normalIdx = _normalOffset;
       int vertexIdx = _vertexOffset;
+      if (_particleArrays != null) {
+        updateArrayData(texCoordIdx, colorIdx, normalIdx, vertexIdx, udivs, uscale, vscale);
+        return;
+      }
       for (int ii = 0, nn = _living.value; ii < nn; ii++) {
         Particle particle = particles[ii];
 
@@ -144,6 +148,44 @@ public abstract class ParticleGeometry extends DynamicGeometry
         vertexIdx = write(data, vertexIdx, stride, particle.getPosition());
       }
     }
+
+    /**
+     * Updates the vertex data from the particle arrays, one attribute at a time.
+     */
+    protected void updateArrayData (
+      int texCoordIdx, int colorIdx, int normalIdx, int vertexIdx,
+      int udivs, float uscale, float vscale)
+    {
+      ParticleArrays arrays = _particleArrays;
+      float[] data = _data;
+      int stride = _stride;
+      int nn = _living.value;
+
+      float[] frames = arrays.frame;
+      for (int ii = 0; ii < nn; ii++) {
+        int frame = FloatMath.round(frames[ii]);
+        texCoordIdx = write(data, texCoordIdx, stride,
+          (frame % udivs) * uscale, (frame / udivs) * vscale);
+      }
+      float[] cr = arrays.colorR, cg = arrays.colorG, cb = arrays.colorB, ca = arrays.colorA;
+      for (int ii = 0; ii < nn; ii++) {
+        colorIdx = write(data, colorIdx, stride, cr[ii], cg[ii], cb[ii], ca[ii]);
+      }
+      if (normalIdx >= 0) {
+        float[] ox = arrays.orientationX, oy = arrays.orientationY;
+        float[] oz = arrays.orientationZ, ow = arrays.orientationW;
+        for (int ii = 0; ii < nn; ii++) {
+          // see Quaternion.transformUnitZ
+          float x = ox[ii], y = oy[ii], z = oz[ii], w = ow[ii];
+          normalIdx = write(data, normalIdx, stride,
+            2f*(x*z + y*w), 2f*(y*z - x*w), 1f - 2f*(x*x + y*y));
+        }
+      }
+      float[] px = arrays.positionX, py = arrays.positionY, pz = arrays.positionZ;
+      for (int ii = 0; ii < nn; ii++) {
+        vertexIdx = write(data, vertexIdx, stride, px[ii], py[ii], pz[ii]);
+      }
+    }
   }
 
   /**
@@ -445,25 +487,53 @@ public abstract class ParticleGeometry extends DynamicGeometry
       int colorIdx = _colorOffset;
       int normalIdx = _normalOffset;
       int vertexIdx = _vertexOffset;
+      ParticleArrays arrays = _particleArrays;
+      Vector3f avelocity = _avelocity;
+      Quaternion aorientation = _aorientation;
       for (int ii = 0, nn = _living.value; ii < nn; ii++) {
-        Particle particle = particles[ii];
+        float frameValue, cr, cg, cb, ca, px, py, pz, size;
+        Vector3f velocity;
+        Quaternion orientation;
+        if (arrays == null) {
+          Particle particle = particles[ii];
+          frameValue = particle.getFrame();
+          Color4f color = particle.getColor();
+          cr = color.r;
+          cg = color.g;
+          cb = color.b;
+          ca = color.a;
+          Vector3f position = particle.getPosition();
+          px = position.x;
+          py = position.y;
+          pz = position.z;
+          size = particle.getSize();
+          velocity = particle.getVelocity();
+          orientation = particle.getOrientation();
+
+        } else {
+          // read straight from the attribute arrays
+          frameValue = arrays.frame[ii];
+          cr = arrays.colorR[ii];
+          cg = arrays.colorG[ii];
+          cb = arrays.colorB[ii];
+          ca = arrays.colorA[ii];
+          px = arrays.positionX[ii];
+          py = arrays.positionY[ii];
+          pz = arrays.positionZ[ii];
+          size = arrays.size[ii];
+          velocity = (alignment == Alignment.VELOCITY) ? avelocity.set(
+            arrays.velocityX[ii], arrays.velocityY[ii], arrays.velocityZ[ii]) : null;
+          orientation = (alignment == Alignment.VELOCITY) ? null : aorientation.set(
+            arrays.orientationX[ii], arrays.orientationY[ii],
+            arrays.orientationZ[ii], arrays.orientationW[ii]);
+        }
 
         // determine the texture coordinate offsets
-        int frame = FloatMath.round(particle.getFrame());
+        int frame = FloatMath.round(frameValue);
         float uoff = (frame % udivs) * uscale, voff = (frame / udivs) * vscale;
 
-        // extract the color
-        Color4f color = particle.getColor();
-        float cr = color.r, cg = color.g, cb = color.b, ca = color.a;
-
-        // and the position
-        Vector3f position = particle.getPosition();
-        float px = position.x, py = position.y, pz = position.z;
-
         // compute the offsets
-        float size = particle.getSize();
         if (alignment == Alignment.VELOCITY) {
-          Vector3f velocity = particle.getVelocity();
           view.cross(velocity, t);
           float length = t.length();
           if (length > FloatMath.EPSILON) {
@@ -478,8 +548,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
           }
         } else {
           Quaternion rot = (alignment == Alignment.BILLBOARD) ?
-            vrot.mult(particle.getOrientation(), rotation) :
-            particle.getOrientation();
+            vrot.mult(orientation, rotation) : orientation;
           rot.transformUnitX(s).multLocal(size);
           rot.transformUnitY(t).multLocal(size);
           if (normals) {
@@ -1206,6 +1275,10 @@ public abstract class ParticleGeometry extends DynamicGeometry
   @Bound
   protected Particle[] _particles;
 
+  /** The particle state in flat arrays, if the layer simulates that way. */
+  @Bound
+  protected ParticleArrays _particleArrays;
+
   /** The number of particles currently active. */
   @Bound
   protected MutableInteger _living;
@@ -1256,4 +1329,10 @@ public abstract class ParticleGeometry extends DynamicGeometry
 
   /** Used to compute particle normals. */
   protected Vector3f _n = new Vector3f();
+
+  /** Holds velocities read from the particle arrays. */
+  protected Vector3f _avelocity = new Vector3f();
+
+  /** Holds orientations read from the particle arrays. */
+  protected Quaternion _aorientation = new Quaternion();
 }
@@ -100,10 +100,26 @@ public class ParticleSystem extends BaseParticleSystem
     @Override
     public void setConfig (BaseParticleSystemConfig.Layer config)
     {
+      // if we were using arrays, bring the particle objects up to date
+      if (_particleArrays != null) {
+        for (int ii = 0, nn = _living.value; ii < nn; ii++) {
+          _particleArrays.load(ii);
+        }
+      }
       super.setConfig(config);
 
-      // transform state depends on whether we use local or world coordinates
+      // (re)create the particle arrays if the layer uses them
       ParticleSystemConfig.Layer psconfig = (ParticleSystemConfig.Layer)config;
+      if (psconfig.useArrayStorage()) {
+        _particleArrays = new ParticleArrays(_particles);
+        for (int ii = 0, nn = _living.value; ii < nn; ii++) {
+          _particleArrays.store(ii);
+        }
+      } else {
+        _particleArrays = null;
+      }
+
+      // transform state depends on whether we use local or world coordinates
       _ownTransformState = psconfig.moveParticlesWithEmitter &&
         psconfig.geometry.getMoveTrailsWithParticles();
       _transformState = _ownTransformState ? new TransformState() :
@@ -38,6 +38,7 @@ import com.threerings.util.NoiseUtil;
 import com.threerings.opengl.effect.BaseParticleSystem.Layer;
 import com.threerings.opengl.effect.Influence;
 import com.threerings.opengl.effect.Particle;
+import com.threerings.opengl.effect.ParticleArrays;
 
 /**
  * Modifies the state of a set of particles.
@@ -74,6 +75,10 @@ public abstract class InfluenceConfig extends DeepObject
         public void apply (Particle particle) {
           particle.getVelocity().addLocal(_delta);
         }
+        @Override
+        public void applyAll (ParticleArrays arrays, int count) {
+          addAll(arrays.velocityX, arrays.velocityY, arrays.velocityZ, count, _delta);
+        }
         protected Vector3f _delta = new Vector3f();
       };
     }
@@ -107,6 +112,10 @@ public abstract class InfluenceConfig extends DeepObject
         public void apply (Particle particle) {
           particle.getVelocity().addLocal(_delta);
         }
+        @Override
+        public void applyAll (ParticleArrays arrays, int count) {
+          addAll(arrays.velocityX, arrays.velocityY, arrays.velocityZ, count, _delta);
+        }
         protected Vector3f _delta = new Vector3f();
       };
     }
@@ -131,6 +140,12 @@ public abstract class InfluenceConfig extends DeepObject
         public void apply (Particle particle) {
           particle.getVelocity().multLocal(_drag);
         }
+        @Override
+        public void applyAll (ParticleArrays arrays, int count) {
+          multAll(arrays.velocityX, count, _drag);
+          multAll(arrays.velocityY, count, _drag);
+          multAll(arrays.velocityZ, count, _drag);
+        }
         protected float _drag;
       };
     }
@@ -157,6 +172,17 @@ public abstract class InfluenceConfig extends DeepObject
           Vector3f velocity = particle.getVelocity();
           velocity.multLocal(Math.max(0f, 1f - _drag*velocity.length()));
         }
+        @Override
+        public void applyAll (ParticleArrays arrays, int count) {
+          float[] vx = arrays.velocityX, vy = arrays.velocityY, vz = arrays.velocityZ;
+          for (int ii = 0; ii < count; ii++) {
+            float x = vx[ii], y = vy[ii], z = vz[ii];
+            float scale = Math.max(0f, 1f - _drag*FloatMath.sqrt(x*x + y*y + z*z));
+            vx[ii] = x * scale;
+            vy[ii] = y * scale;
+            vz[ii] = z * scale;
+          }
+        }
         protected float _drag;
       };
     }
@@ -333,6 +359,11 @@ public abstract class InfluenceConfig extends DeepObject
             NoiseUtil.getNoise(time, pid + 1) * _sstrength,
             NoiseUtil.getNoise(time, pid + 2) * _sstrength);
         }
+        @Override
+        public void applyAll (ParticleArrays arrays, int count) {
+          addNoise(arrays.velocityX, arrays.velocityY, arrays.velocityZ,
+            arrays.particles, count, _time, _sstrength);
+        }
         protected float _time, _sstrength;
       };
     }
@@ -368,6 +399,11 @@ public abstract class InfluenceConfig extends DeepObject
             NoiseUtil.getNoise(time, pid + 1) * _sstrength,
             NoiseUtil.getNoise(time, pid + 2) * _sstrength);
         }
+        @Override
+        public void applyAll (ParticleArrays arrays, int count) {
+          addNoise(arrays.positionX, arrays.positionY, arrays.positionZ,
+            arrays.particles, count, _time, _sstrength);
+        }
         protected float _time, _sstrength;
       };
     }
@@ -392,6 +428,11 @@ public abstract class InfluenceConfig extends DeepObject
         public void apply (Particle particle) {
           particle.getAngularVelocity().addLocal(_delta);
         }
+        @Override
+        public void applyAll (ParticleArrays arrays, int count) {
+          addAll(arrays.angularVelocityX, arrays.angularVelocityY,
+            arrays.angularVelocityZ, count, _delta);
+        }
         protected Vector3f _delta = new Vector3f();
       };
     }
@@ -401,4 +442,48 @@ public abstract class InfluenceConfig extends DeepObject
    * Creates the influence corresponding to this config for the specified layer.
    */
   public abstract Influence createInfluence (Layer layer);
+
+  /**
+   * Adds the specified vector to the first <code>count</code> elements of the given arrays.
+   */
+  protected static void addAll (float[] x, float[] y, float[] z, int count, Vector3f vector)
+  {
+    float vx = vector.x, vy = vector.y, vz = vector.z;
+    for (int ii = 0; ii < count; ii++) {
+      x[ii] += vx;
+    }
+    for (int ii = 0; ii < count; ii++) {
+      y[ii] += vy;
+    }
+    for (int ii = 0; ii < count; ii++) {
+      z[ii] += vz;
+    }
+  }
+
+  /**
+   * Multiplies the first <code>count</code> elements of the given array by the specified scale.
+   */
+  protected static void multAll (float[] values, int count, float scale)
+  {
+    for (int ii = 0; ii < count; ii++) {
+      values[ii] *= scale;
+    }
+  }
+
+  /**
+   * Adds per-particle noise to the first <code>count</code> elements of the given arrays, using
+   * the same particle identities as {@link Wander} and {@link Jitter}.
+   */
+  protected static void addNoise (
+    float[] x, float[] y, float[] z, Particle[] particles, int count,
+    float time, float strength)
+  {
+    for (int ii = 0; ii < count; ii++) {
+      int pid = System.identityHashCode(particles[ii]);
+      float ptime = time + (pid & 255) / 256f;
+      x[ii] += NoiseUtil.getNoise(ptime, pid) * strength;
+      y[ii] += NoiseUtil.getNoise(ptime, pid + 1) * strength;
+      z[ii] += NoiseUtil.getNoise(ptime, pid + 2) * strength;
+    }
+  }
 }
@@ -91,6 +91,11 @@ public class ParticleSystemConfig extends BaseParticleSystemConfig
     @Editable(category="appearance", weight=2.5)
     public boolean depthSort;
 
+    /** Whether or not to simulate the particles using flat attribute arrays (only supported for
+     * unsorted point and quad geometry without trails). */
+    @Editable(category="appearance", weight=2.5)
+    public boolean arrayStorage;
+
     /** The render priority (higher priority layers are rendered above lower priority ones). */
     @Editable(category="appearance", weight=2.5, nullable=true)
     public GroupPriority priorityMode;
@@ -127,6 +132,15 @@ public class ParticleSystemConfig extends BaseParticleSystemConfig
       elementArrayBuffer = null;
     }
 
+    /**
+     * Checks whether the layer should (and can) store its particles in flat arrays.
+     */
+    public boolean useArrayStorage ()
+    {
+      return arrayStorage && !depthSort && geometry.getSegments() == 0 &&
+        (geometry instanceof Points || geometry instanceof Quads);
+    }
+
     @Override
     public boolean shouldRotateOrientations ()
     {
@@ -465,14 +465,13 @@ public abstract class GeometryConfig extends DeepObject
         Stored stored = (Stored)tgeom.geometry;
         merged.bounds.addLocal(stored.bounds.transform(tgeom.transform));
 
-        // perform a bulk transfer of the array data
-        FloatBuffer obuf = stored.vertexArray.floatArray;
-        int olimit = obuf.limit(), opos = obuf.position();
-        int npos = opos + stored.getFirst() * stride;
+        // perform a bulk transfer of the array data (through a duplicate, so that the source
+        // geometry may be merged on several threads at once)
+        FloatBuffer obuf = stored.vertexArray.floatArray.duplicate();
+        int npos = obuf.position() + stored.getFirst() * stride;
         int count = stored.getCount();
         obuf.limit(npos + count * stride).position(npos);
-        vbuf.put(stored.vertexArray.floatArray);
-        obuf.limit(olimit).position(opos);
+        vbuf.put(obuf);
 
         // then transform the vertices and normals in-place
         tgeom.transform.update(Transform3D.AFFINE);
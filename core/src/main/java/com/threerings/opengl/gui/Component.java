@@ -328,8 +328,8 @@ public class Component
         hhint -= insets.getVertical();
       }
 
-      // compute our "natural" preferred size
-      ps = computePreferredSize(whint, hhint);
+      // compute our "natural" preferred size (or reuse the one we computed last time)
+      ps = getComputedPreferredSize(whint, hhint);
 
       // now add our insets back in
       ps.width += insets.getHorizontal();
@@ -500,7 +500,10 @@ public class Component
    */
   public void setAlpha (float alpha)
   {
-    _alpha = alpha;
+    if (_alpha != alpha) {
+      _alpha = alpha;
+      repaint();
+    }
   }
 
   /**
@@ -712,6 +715,7 @@ public class Component
   public void setOffset (Transform2D offset)
   {
     _offset = offset;
+    repaint();
   }
 
   /**
@@ -911,6 +915,7 @@ public class Component
     if (!_valid) {
       if (isVisible()) {
         layout();
+        Root._layoutCount++;
       }
       _valid = true;
     }
@@ -918,16 +923,48 @@ public class Component
 
   /**
    * Marks this component as invalid and needing a relayout. If the component is valid, its
-   * parent will also be marked as invalid.
+   * parent will also be marked as invalid.  In any case, the cached preferred sizes of the
+   * component and its ancestors are cleared and its window is marked as needing a repaint.
    */
   public void invalidate ()
   {
+    // if we've been invalidated since our size was last computed, our ancestors were cleared
+    // and our window marked at the time (and we'll be validated before the next render)
+    if (!_valid && _cachedSize == null) {
+      return;
+    }
     if (_valid) {
       _valid = false;
       if (_parent != null) {
         _parent.invalidate();
       }
     }
+
+    // clear the cached sizes up to the first ancestor that has itself been invalidated (which
+    // our parent will be, unless it was already), marking any window we reach
+    for (Component comp = this; comp != null; comp = comp._parent) {
+      if (comp != this && !comp._valid && comp._cachedSize == null) {
+        break;
+      }
+      comp._cachedSize = null;
+      if (comp instanceof Window) {
+        ((Window)comp)._dirty = true;
+      }
+    }
+  }
+
+  /**
+   * Notes that the appearance of this component has changed without otherwise invalidating it,
+   * so that its window will be redrawn if it caches its rendered contents.  Components that
+   * animate without being invalidated (and aren't tick participants of the root) should call
+   * this when they change.
+   */
+  public void repaint ()
+  {
+    Window window = getWindow();
+    if (window != null) {
+      window._dirty = true;
+    }
   }
 
   /**
@@ -947,14 +984,7 @@ public class Component
     }
 
     try {
-      // render our background
-      renderBackground(renderer);
-
-      // render any custom component bits
-      renderComponent(renderer);
-
-      // render our border
-      renderBorder(renderer);
+      renderContents(renderer);
 
     } finally {
       if (_offset != null) {
@@ -1144,6 +1174,29 @@ public class Component
       null : config.background.getBackground(_ctx);
   }
 
+  /**
+   * Returns the result of {@link #computePreferredSize}, reusing the last computed size if it
+   * was computed with the same hints in the same state and the component hasn't been
+   * invalidated since.
+   *
+   * @return the computed preferred size in a newly created Dimension instance.
+   */
+  protected Dimension getComputedPreferredSize (int whint, int hhint)
+  {
+    int state = getState();
+    if (_cachedSize != null && _cachedWhint == whint && _cachedHhint == hhint &&
+        _cachedState == state) {
+      Root._sizeCacheHits++;
+    } else {
+      Root._sizeCacheMisses++;
+      _cachedSize = computePreferredSize(whint, hhint);
+      _cachedWhint = whint;
+      _cachedHhint = hhint;
+      _cachedState = state;
+    }
+    return new Dimension(_cachedSize);
+  }
+
   /**
    * Instructs this component to lay itself out. This is called as a result of the component
    * changing size.
@@ -1228,6 +1281,22 @@ public class Component
     GL11.glTranslatef(-hwidth, -hheight, 0f);
   }
 
+  /**
+   * Renders the background, custom component bits, and border.  This is called with the graphics
+   * context translated to (0, 0) relative to this component.
+   */
+  protected void renderContents (Renderer renderer)
+  {
+    // render our background
+    renderBackground(renderer);
+
+    // render any custom component bits
+    renderComponent(renderer);
+
+    // render our border
+    renderBorder(renderer);
+  }
+
   /**
    * Renders the background for this component.
    */
@@ -1413,7 +1482,13 @@ public class Component
   protected static Rectangle intersectScissor (
     Component comp, Renderer renderer, Rectangle store, int x, int y, int width, int height)
   {
-    float scale = comp.getWindow().getRoot().getScale();
+    // when rendering a window into its cache, coordinates are relative to the window
+    Window window = comp.getWindow();
+    float scale = window.getRoot().getScale();
+    if (window.isRenderingCache()) {
+      x -= window.getX();
+      y -= window.getY();
+    }
     if (scale != 1f) {
       x = FloatMath.round(x * scale);
       y = FloatMath.round(y * scale);
@@ -1444,6 +1519,12 @@ public class Component
 
   protected Container _parent;
   protected Dimension _preferredSize;
+
+  /** The last preferred size computed by {@link #computePreferredSize}, if still valid. */
+  protected Dimension _cachedSize;
+
+  /** The hints and state with which the cached preferred size was computed. */
+  protected int _cachedWhint, _cachedHhint, _cachedState;
   protected int _x, _y, _width, _height;
   protected CopyOnWriteArrayList<ComponentListener> _listeners;
   protected HashMap<String, Object> _properties;
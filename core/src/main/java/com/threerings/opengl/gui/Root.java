@@ -80,6 +80,59 @@ public abstract class Root extends SimpleOverlay
   /** The name of the default cursor config. */
   public static final String DEFAULT_CURSOR = "Default";
 
+  /**
+   * Returns the number of component layouts performed since the last call to
+   * {@link #resetStats}.
+   */
+  public static int getLayoutCount ()
+  {
+    return _layoutCount;
+  }
+
+  /**
+   * Returns the number of computed preferred sizes reused since the last call to
+   * {@link #resetStats}.
+   */
+  public static int getSizeCacheHitCount ()
+  {
+    return _sizeCacheHits;
+  }
+
+  /**
+   * Returns the number of preferred sizes computed since the last call to {@link #resetStats}.
+   */
+  public static int getSizeCacheMissCount ()
+  {
+    return _sizeCacheMisses;
+  }
+
+  /**
+   * Returns the number of cached window renders since the last call to {@link #resetStats}.
+   */
+  public static int getRenderCacheHitCount ()
+  {
+    return _renderCacheHits;
+  }
+
+  /**
+   * Returns the number of window render cache updates since the last call to
+   * {@link #resetStats}.
+   */
+  public static int getRenderCacheMissCount ()
+  {
+    return _renderCacheMisses;
+  }
+
+  /**
+   * Resets the layout and cache stats.
+   */
+  public static void resetStats ()
+  {
+    _layoutCount = 0;
+    _sizeCacheHits = _sizeCacheMisses = 0;
+    _renderCacheHits = _renderCacheMisses = 0;
+  }
+
   public Root (GlContext ctx)
   {
     super(ctx);
@@ -1010,6 +1063,12 @@ public abstract class Root extends SimpleOverlay
    */
   protected boolean dispatchEvent (Component target, Event event)
   {
+    // events other than simple mouse motion may change the target's appearance
+    if (target != null && !(event instanceof MouseEvent &&
+        ((MouseEvent)event).getType() == MouseEvent.MOUSE_MOVED)) {
+      target.repaint();
+    }
+
     // notify our global listeners if we have any
     for (ComponentListener listener : _globals) {
       try {
@@ -1298,6 +1357,10 @@ public abstract class Root extends SimpleOverlay
     public boolean apply (Tickable tickable)
     {
       tickable.tick(_elapsed);
+      if (tickable instanceof Component) {
+        // assume that ticking components change their appearance
+        ((Component)tickable).repaint();
+      }
       return true;
     }
 
@@ -1390,6 +1453,15 @@ public abstract class Root extends SimpleOverlay
   /** The distance from the press location at which we can start a drag operation. */
   protected static final int DRAG_DISTANCE = 16;
 
+  /** The number of component layouts performed since the stats were last reset. */
+  protected static int _layoutCount;
+
+  /** The preferred size cache hits and misses since the stats were last reset. */
+  protected static int _sizeCacheHits, _sizeCacheMisses;
+
+  /** The window render cache hits and misses since the stats were last reset. */
+  protected static int _renderCacheHits, _renderCacheMisses;
+
   /** The number of sound sources to allocate. */
   protected static final int SOUND_SOURCES = 2;
 }
@@ -291,6 +291,7 @@ public abstract class ScrollingList<V, C extends Component> extends Container
 
       _valid = false;
       root.rootInvalidated(this);
+      window.repaint();
     }
 
     @Override // from Component
@@ -25,12 +25,24 @@
 
 package com.threerings.opengl.gui;
 
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.renderer.Color4f;
+import com.threerings.opengl.renderer.Renderer;
+import com.threerings.opengl.renderer.Texture2D;
+import com.threerings.opengl.renderer.TextureRenderer;
 import com.threerings.opengl.util.GlContext;
+import com.threerings.opengl.util.GlUtil;
 
 import com.threerings.opengl.gui.event.ActionListener;
 import com.threerings.opengl.gui.event.WindowEvent;
 import com.threerings.opengl.gui.layout.LayoutManager;
 import com.threerings.opengl.gui.util.Dimension;
+import com.threerings.opengl.gui.util.Rectangle;
 
 /**
  * A window defines the top-level of a component hierarchy. It must be created with a stylesheet
@@ -126,6 +138,38 @@ public class Window extends Container
     return false;
   }
 
+  /**
+   * Configures whether this window caches its rendered contents in a texture, redrawing them
+   * only when a component in the window is invalidated or repainted (see
+   * {@link Component#repaint}).  Windows whose components change every frame gain nothing from
+   * caching, and their contents are simply rendered directly.
+   */
+  public void setRenderCached (boolean cached)
+  {
+    if (_renderCached != cached) {
+      _renderCached = cached;
+      if (!cached) {
+        disposeCache();
+      }
+    }
+  }
+
+  /**
+   * Checks whether this window caches its rendered contents.
+   */
+  public boolean isRenderCached ()
+  {
+    return _renderCached;
+  }
+
+  /**
+   * Checks whether we are currently rendering our contents into the cache texture.
+   */
+  public boolean isRenderingCache ()
+  {
+    return _renderingCache;
+  }
+
   /**
    * Returns the root node that manages this window.
    */
@@ -244,10 +288,110 @@ public class Window extends Container
     return "Default/Window";
   }
 
+  @Override
+  protected void renderContents (Renderer renderer)
+  {
+    if (!_renderCached || _width <= 0 || _height <= 0 || _renderingCache) {
+      super.renderContents(renderer);
+      return;
+    }
+    // if we've changed since the last frame, render directly; we'll update the cache once
+    // we've stopped changing
+    if (_dirty) {
+      _dirty = false;
+      _cacheStale = true;
+      super.renderContents(renderer);
+      return;
+    }
+    if (_cacheStale || _cache == null) {
+      Root._renderCacheMisses++;
+      updateCache(renderer);
+    } else {
+      Root._renderCacheHits++;
+    }
+    _cache.render(renderer, 0, 0, _width, _height, 1f);
+  }
+
+  /**
+   * Renders our contents into the cache texture (creating it if necessary).
+   */
+  protected void updateCache (Renderer renderer)
+  {
+    // render at the scaled size so that the cached image is no blurrier than the original
+    float scale = (_root == null) ? 1f : _root.getScale();
+    int width = Math.max(FloatMath.round(_width * scale), 1);
+    int height = Math.max(FloatMath.round(_height * scale), 1);
+    if (_cache == null || _cache.getWidth() != width || _cache.getHeight() != height) {
+      Texture2D texture = (_cache == null) ? null : _cache.getTexture(renderer);
+      if (texture == null) {
+        texture = new Texture2D(renderer);
+        texture.setFilters(GL11.GL_LINEAR, GL11.GL_LINEAR);
+        texture.setWrap(GL12.GL_CLAMP_TO_EDGE, GL12.GL_CLAMP_TO_EDGE);
+      }
+      int twidth = GlUtil.nextPowerOfTwo(width), theight = GlUtil.nextPowerOfTwo(height);
+      if (texture.getWidth() != twidth || texture.getHeight() != theight) {
+        texture.setImage(GL11.GL_RGBA, twidth, theight, false, false);
+      }
+      _cache = new Image(texture, width, height);
+      if (_cacheRenderer != null) {
+        _cacheRenderer.dispose();
+      }
+      _cacheRenderer = new TextureRenderer(_ctx, texture, null, width, height, false, false);
+    }
+
+    // save the projection and scissor state, which the texture renderer will change
+    float oleft = renderer.getLeft(), oright = renderer.getRight();
+    float obottom = renderer.getBottom(), otop = renderer.getTop();
+    float onear = renderer.getNear(), ofar = renderer.getFar();
+    _onormal.set(renderer.getNearFarNormal());
+    boolean oortho = renderer.isOrtho();
+    Rectangle oscissor = renderer.getScissor();
+    if (oscissor != null) {
+      oscissor = _oscissor.set(oscissor);
+    }
+
+    _cacheRenderer.startRender();
+    _renderingCache = true;
+    renderer.setScissor(null);
+    renderer.setMatrixMode(GL11.GL_MODELVIEW);
+    GL11.glPushMatrix();
+    try {
+      renderer.setProjection(
+        0f, width, 0f, height, -1f, +1f, Vector3f.UNIT_Z, true);
+      renderer.setClearColor(Color4f.TRANSPARENT_BLACK);
+      GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+      GL11.glLoadIdentity();
+      GL11.glScalef(scale, scale, 1f);
+      super.renderContents(renderer);
+
+    } finally {
+      GL11.glPopMatrix();
+      _renderingCache = false;
+      _cacheRenderer.commitRender();
+      renderer.setProjection(oleft, oright, obottom, otop, onear, ofar, _onormal, oortho);
+      renderer.setScissor(oscissor);
+    }
+    _cacheStale = false;
+  }
+
+  /**
+   * Releases the resources held by the render cache.
+   */
+  protected void disposeCache ()
+  {
+    if (_cacheRenderer != null) {
+      _cacheRenderer.dispose();
+      _cacheRenderer = null;
+    }
+    _cache = null;
+    _dirty = true;
+  }
+
   @Override
   protected void wasRemoved ()
   {
     super.wasRemoved();
+    disposeCache();
 
     dispatchEvent(new WindowEvent(this, -1L, WindowEvent.WINDOW_REMOVED));
   }
@@ -327,4 +471,28 @@ public class Window extends Container
 
   /** Used to associate this window with a parent window. */
   protected Window _parentWindow;
+
+  /** Whether or not we cache our rendered contents. */
+  protected boolean _renderCached;
+
+  /** Set when our contents have changed since we last rendered them. */
+  protected boolean _dirty = true;
+
+  /** Set when the cache doesn't reflect our current contents. */
+  protected boolean _cacheStale = true;
+
+  /** Set while we're rendering our contents into the cache. */
+  protected boolean _renderingCache;
+
+  /** The image containing our cached contents, if any. */
+  protected Image _cache;
+
+  /** The texture renderer used to update the cache. */
+  protected TextureRenderer _cacheRenderer;
+
+  /** Stores the near/far clip plane normal while updating the cache. */
+  protected Vector3f _onormal = new Vector3f();
+
+  /** Stores the scissor region while updating the cache. */
+  protected Rectangle _oscissor = new Rectangle();
 }
@@ -58,7 +58,9 @@ import com.threerings.opengl.gui.util.Rectangle;
 
 /**
  * Formats text by rendering individual characters into a set of shared textures, then returning
- * {@link Text} instances that render groups of quads, one for each character.
+ * {@link Text} instances that render groups of quads, one for each character.  The quads of
+ * each text (including those of its effects) are packed into a single {@link GlyphMesh} when the
+ * text is created, so that rendering requires only a draw call per color and texture page.
  */
 public class CharacterTextFactory extends TextFactory
   implements UIConstants
@@ -156,7 +158,34 @@ public class CharacterTextFactory extends TextFactory
       }
     }
 
-    return new Text() {
+    // lay out the quads for all passes
+    GlyphMesh.Builder builder = new GlyphMesh.Builder();
+    int x = 0, y = _metrics.getDescent() + _descentOffset;
+
+    // multi-pixel outlines go below the character
+    if (outlines != null && effectSize > 1) {
+      addGlyphs(builder.beginPass(GlyphMesh.EFFECT_COLOR), outlines, x, y);
+    }
+    // as do shadows
+    if (effect == SHADOW) {
+      addGlyphs(builder.beginPass(GlyphMesh.EFFECT_COLOR), glyphs,
+        x + effectSize - 1, y - effectSize);
+      x += 1;
+    }
+
+    // now the characters
+    addGlyphs(builder.beginPass(GlyphMesh.TEXT_COLOR), glyphs, x, y);
+
+    // single-pixel outlines go on top of the character
+    if (outlines != null && effectSize == 1) {
+      addGlyphs(builder.beginPass(GlyphMesh.EFFECT_COLOR), outlines, x, y);
+    }
+    final GlyphMesh mesh = builder.build();
+
+    return new MeshText() {
+      public GlyphMesh getMesh () {
+        return mesh;
+      }
       public int getLength () {
         return glyphs.length;
       }
@@ -183,36 +212,7 @@ public class CharacterTextFactory extends TextFactory
         return x;
       }
       public void render (Renderer renderer, int x, int y, float alpha) {
-        // add the descent above the baseline
-        y += _metrics.getDescent() + _descentOffset;
-
-        // multi-pixel outlines go below the character
-        if (outlines != null && effectSize > 1) {
-          renderGlyphs(renderer, outlines, effectColor, x, y, alpha);
-        }
-        // as do shadows
-        if (effect == SHADOW) {
-          renderGlyphs(
-            renderer, glyphs, effectColor, x + effectSize - 1, y - effectSize, alpha);
-          x += 1;
-        }
-
-        // now draw the characters
-        renderGlyphs(renderer, glyphs, color, x, y, alpha);
-
-        // single-pixel outlines go on top of the character
-        if (outlines != null && effectSize == 1) {
-          renderGlyphs(renderer, outlines, effectColor, x, y, alpha);
-        }
-      }
-      protected void renderGlyphs (
-        Renderer renderer, Glyph[] glyphs, Color4f color, int x, int y, float alpha) {
-        float a = color.a * alpha;
-        renderer.setColorState(color.r * a, color.g * a, color.b * a, a);
-        for (Glyph glyph : glyphs) {
-          glyph.render(renderer, x, y);
-          x += glyph.width;
-        }
+        mesh.render(renderer, x, y, color, effectColor, alpha);
       }
     };
   }
@@ -259,6 +259,17 @@ public class CharacterTextFactory extends TextFactory
     return lines.toArray(new Text[lines.size()]);
   }
 
+  /**
+   * Adds quads for a row of glyphs to the supplied mesh builder.
+   */
+  protected void addGlyphs (GlyphMesh.Builder builder, Glyph[] glyphs, int x, int y)
+  {
+    for (Glyph glyph : glyphs) {
+      glyph.addQuad(builder, x, y);
+      x += glyph.width;
+    }
+  }
+
   /**
    * Returns the normal glyph for the given character.
    */
@@ -322,23 +333,32 @@ public class CharacterTextFactory extends TextFactory
   /**
    * Inserts the glyph image in the scratch pad into the current texture (creating a new
    * texture if there is no current texture or the current texture doesn't have enough
-   * room), returns the texture unit data, and populates the supplied array with the
-   * texture coordinates.
+   * room), returns the texture, and populates the supplied array with the texture
+   * coordinates.
    */
-  protected TextureUnit[] addGlyphToTexture (
-    Renderer renderer, int width, int height, float[] tcoords)
+  protected GlyphTexture addGlyphToTexture (int width, int height, float[] tcoords)
   {
     // make sure the width and height don't exceed the borders of the scratchpad
     width = Math.min(Math.max(width, 0), _scratch.getWidth());
     height = Math.min(Math.max(height, 0), _scratch.getHeight());
 
     // try to add to the current texture; if there's not enough room, create a new one
-    TextureUnit[] units = (_texture == null) ? null : _texture.add(width, height, tcoords);
-    if (units == null) {
-      _texture = new GlyphTexture(renderer);
-      units = _texture.add(width, height, tcoords);
+    if (_texture == null || !_texture.add(width, height, tcoords)) {
+      _texture = new GlyphTexture();
+      _texture.add(width, height, tcoords);
     }
-    return units;
+    return _texture;
+  }
+
+  /**
+   * A text whose quads are stored in a {@link GlyphMesh}.
+   */
+  protected abstract class MeshText extends Text
+  {
+    /**
+     * Returns the mesh containing the text's quads.
+     */
+    public abstract GlyphMesh getMesh ();
   }
 
   /**
@@ -357,12 +377,46 @@ public class CharacterTextFactory extends TextFactory
       FontRenderContext ctx = _graphics.getFontRenderContext();
       _vector = _font.createGlyphVector(ctx, Character.toString(c));
       java.awt.Rectangle bounds = _vector.getPixelBounds(ctx, 0f, 0f);
-      if (bounds.width > 0 && bounds.height > 0) {
-        _bounds = new Rectangle(
-          bounds.x, -bounds.y - bounds.height, bounds.width, bounds.height);
-        int grow = 1 + (_effect == OUTLINE ? Math.round(size/2f) : 0);
-        _bounds.grow(grow, grow);
+      if (bounds.width <= 0 || bounds.height <= 0) {
+        return; // whitespace
+      }
+      _bounds = new Rectangle(
+        bounds.x, -bounds.y - bounds.height, bounds.width, bounds.height);
+      int grow = 1 + (_effect == OUTLINE ? Math.round(size/2f) : 0);
+      _bounds.grow(grow, grow);
+
+      // render the glyph to the scratch image and add it to the texture (which will be
+      // uploaded when first rendered)
+      _graphics.clearRect(0, 0, _scratch.getWidth(), _scratch.getHeight());
+      Shape outline = _vector.getOutline(-_bounds.x, _bounds.y + _bounds.height);
+      if (_effect == OUTLINE) {
+        _graphics.setStroke(new BasicStroke(
+          _size, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_ROUND));
+        _graphics.draw(outline);
+      } else {
+        _graphics.fill(outline);
       }
+      float[] tcoords = new float[4];
+      _page = addGlyphToTexture(_bounds.width, _bounds.height, tcoords);
+      _s1 = tcoords[0];
+      _t1 = tcoords[1];
+      _s2 = tcoords[2];
+      _t2 = tcoords[3];
+      _vector = null;
+    }
+
+    /**
+     * Adds the quad for this glyph at the specified position to the supplied builder.
+     */
+    public void addQuad (GlyphMesh.Builder builder, int x, int y)
+    {
+      if (_bounds == null) {
+        return; // whitespace
+      }
+      int lx = x + _bounds.x;
+      int ly = y + _bounds.y;
+      builder.addQuad(_page, lx, ly, lx + _bounds.width, ly + _bounds.height,
+        _s1, _t1, _s2, _t2);
     }
 
     /**
@@ -370,34 +424,15 @@ public class CharacterTextFactory extends TextFactory
      */
     public void render (Renderer renderer, int x, int y)
     {
-      if (_units == null) {
-        if (_bounds == null) {
-          return; // whitespace
-        }
-        // render the glyph to the scratch image
-        _graphics.clearRect(0, 0, _scratch.getWidth(), _scratch.getHeight());
-        Shape outline = _vector.getOutline(-_bounds.x, _bounds.y + _bounds.height);
-        if (_effect == OUTLINE) {
-          _graphics.setStroke(new BasicStroke(
-            _size, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_ROUND));
-          _graphics.draw(outline);
-        } else {
-          _graphics.fill(outline);
-        }
-        float[] tcoords = new float[4];
-        _units = addGlyphToTexture(renderer, _bounds.width, _bounds.height, tcoords);
-        _s1 = tcoords[0];
-        _t1 = tcoords[1];
-        _s2 = tcoords[2];
-        _t2 = tcoords[3];
-        _vector = null;
+      if (_bounds == null) {
+        return; // whitespace
       }
       int lx = x + _bounds.x;
       int ly = y + _bounds.y;
       int ux = lx + _bounds.width;
       int uy = ly + _bounds.height;
 
-      renderer.setTextureState(_units);
+      renderer.setTextureState(_page.getUnits(renderer));
       renderer.setMatrixMode(GL11.GL_MODELVIEW);
       GL11.glBegin(GL11.GL_QUADS);
       GL11.glTexCoord2f(_s1, _t1);
@@ -423,30 +458,45 @@ public class CharacterTextFactory extends TextFactory
     /** The glyph bounds. */
     protected Rectangle _bounds;
 
-    /** The glyph texture units. */
-    protected TextureUnit[] _units;
+    /** The texture containing the glyph image. */
+    protected GlyphTexture _page;
 
     /** The texture coordinates of the glyph. */
     protected float _s1, _t1, _s2, _t2;
   }
 
   /**
-   * A shared texture.
+   * A shared texture.  Glyph images are allocated space as they're added, but the texture
+   * itself isn't created (or updated) until it's needed for rendering.
    */
   protected class GlyphTexture
+    implements GlyphMesh.Page
   {
-    public GlyphTexture (Renderer renderer)
+    // documentation inherited from interface GlyphMesh.Page
+    public TextureUnit[] getUnits (Renderer renderer)
     {
-      _texture = new Texture2D(renderer);
-      _texture.setImage(GL11.GL_RGBA, TEXTURE_SIZE, TEXTURE_SIZE, false, false);
-      _texture.setFilters(GL11.GL_LINEAR, GL11.GL_NEAREST);
-      _units = new TextureUnit[] { new TextureUnit(_texture) };
+      if (_texture == null) {
+        _texture = new Texture2D(renderer);
+        _texture.setImage(GL11.GL_RGBA, TEXTURE_SIZE, TEXTURE_SIZE, false, false);
+        _texture.setFilters(GL11.GL_LINEAR, GL11.GL_NEAREST);
+        _units = new TextureUnit[] { new TextureUnit(_texture) };
+      }
+      for (int ii = 0, nn = _pending.size(); ii < nn; ii++) {
+        PendingImage pending = _pending.get(ii);
+        _texture.setSubimage(pending.image, true, pending.x, pending.y,
+          pending.image.getWidth(), pending.image.getHeight());
+      }
+      _pending.clear();
+      return _units;
     }
 
     /**
-     * Attempts to copy the glyph in the scratch image into this texture.
+     * Attempts to allocate space for the glyph in the scratch image in this texture, copying
+     * it to be uploaded on the next render.
+     *
+     * @return true if the glyph was added, false if there wasn't enough room.
      */
-    public TextureUnit[] add (int width, int height, float[] tcoords)
+    public boolean add (int width, int height, float[] tcoords)
     {
       // move up to the next row if necessary
       if (_x + width > TEXTURE_SIZE) {
@@ -455,12 +505,15 @@ public class CharacterTextFactory extends TextFactory
         _height = 0;
       }
       if (_y + height > TEXTURE_SIZE) {
-        return null; // out of room in this texture
+        return false; // out of room in this texture
       }
 
-      // copy the scratch image into the texture
-      _texture.setSubimage(
-        _scratch.getSubimage(0, 0, width, height), true, _x, _y, width, height);
+      // copy the scratch image for uploading
+      if (width > 0 && height > 0) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setData(_scratch.getData(new java.awt.Rectangle(0, 0, width, height)));
+        _pending.add(new PendingImage(image, _x, _y));
+      }
 
       // set the texture coordinates
       tcoords[0] = (float)_x / TEXTURE_SIZE;
@@ -472,8 +525,7 @@ public class CharacterTextFactory extends TextFactory
       _x += width;
       _height = Math.max(_height, height);
 
-      // return the texture units
-      return _units;
+      return true;
     }
 
     /** The shared texture unit array. */
@@ -482,6 +534,9 @@ public class CharacterTextFactory extends TextFactory
     /** The casted texture. */
     protected Texture2D _texture;
 
+    /** The glyph images waiting to be uploaded. */
+    protected ArrayList<PendingImage> _pending = new ArrayList<PendingImage>();
+
     /** The current x and y position within the texture. */
     protected int _x, _y;
 
@@ -489,6 +544,25 @@ public class CharacterTextFactory extends TextFactory
     protected int _height;
   }
 
+  /**
+   * A glyph image waiting to be uploaded to its texture.
+   */
+  protected static class PendingImage
+  {
+    /** The glyph image. */
+    public BufferedImage image;
+
+    /** The location of the image within the texture. */
+    public int x, y;
+
+    public PendingImage (BufferedImage image, int x, int y)
+    {
+      this.image = image;
+      this.x = x;
+      this.y = y;
+    }
+  }
+
   protected static class FactoryKey
   {
     public Font font;
@@ -0,0 +1,292 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.gui.text;
+
+import java.nio.FloatBuffer;
+
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.opengl.renderer.ClientArray;
+import com.threerings.opengl.renderer.Color4f;
+import com.threerings.opengl.renderer.Renderer;
+import com.threerings.opengl.renderer.TextureUnit;
+
+/**
+ * A packed array of textured quads representing a run of text (including any effects), divided
+ * into batches that share a color and a texture page so that the whole run may be drawn with a
+ * handful of calls.  Meshes are built without a GL context; only {@link #render} requires one.
+ */
+public class GlyphMesh
+{
+  /** Indicates that a batch uses the text color. */
+  public static final int TEXT_COLOR = 0;
+
+  /** Indicates that a batch uses the effect color. */
+  public static final int EFFECT_COLOR = 1;
+
+  /** The number of floats per vertex (the texture coordinates followed by the position). */
+  public static final int VERTEX_SIZE = 4;
+
+  /**
+   * A texture page containing glyph images.
+   */
+  public interface Page
+  {
+    /**
+     * Returns the texture units with which to render the page, creating/updating the texture
+     * as necessary.
+     */
+    public TextureUnit[] getUnits (Renderer renderer);
+  }
+
+  /**
+   * Builds meshes one pass at a time.  Passes are drawn in the order in which they're begun;
+   * within each pass, quads are grouped by page.
+   */
+  public static class Builder
+  {
+    /**
+     * Starts a new pass whose quads are drawn with the specified color.
+     *
+     * @param color {@link #TEXT_COLOR} or {@link #EFFECT_COLOR}.
+     */
+    public Builder beginPass (int color)
+    {
+      flushPass();
+      _color = color;
+      return this;
+    }
+
+    /**
+     * Adds a quad to the current pass.
+     */
+    public Builder addQuad (
+      Page page, float lx, float ly, float ux, float uy, float s1, float t1, float s2, float t2)
+    {
+      List<float[]> quads = _quads.get(page);
+      if (quads == null) {
+        _quads.put(page, quads = Lists.newArrayList());
+      }
+      quads.add(new float[] {
+        s1, t1, lx, ly,
+        s2, t1, ux, ly,
+        s2, t2, ux, uy,
+        s1, t2, lx, uy });
+      return this;
+    }
+
+    /**
+     * Builds the mesh.
+     */
+    public GlyphMesh build ()
+    {
+      flushPass();
+      float[] vertices = new float[_quadCount * 4 * VERTEX_SIZE];
+      int nbatches = _batches.size();
+      int[] starts = new int[nbatches], counts = new int[nbatches], colors = new int[nbatches];
+      Page[] pages = new Page[nbatches];
+      int vidx = 0;
+      for (int ii = 0; ii < nbatches; ii++) {
+        Batch batch = _batches.get(ii);
+        starts[ii] = vidx / VERTEX_SIZE;
+        counts[ii] = batch.quads.size() * 4;
+        colors[ii] = batch.color;
+        pages[ii] = batch.page;
+        for (float[] quad : batch.quads) {
+          System.arraycopy(quad, 0, vertices, vidx, quad.length);
+          vidx += quad.length;
+        }
+      }
+      return new GlyphMesh(vertices, starts, counts, colors, pages);
+    }
+
+    /**
+     * Moves the quads of the current pass into batches.
+     */
+    protected void flushPass ()
+    {
+      for (Map.Entry<Page, List<float[]>> entry : _quads.entrySet()) {
+        Batch batch = new Batch();
+        batch.color = _color;
+        batch.page = entry.getKey();
+        batch.quads = entry.getValue();
+        _batches.add(batch);
+        _quadCount += batch.quads.size();
+      }
+      _quads.clear();
+    }
+
+    /** The color of the current pass. */
+    protected int _color = TEXT_COLOR;
+
+    /** The quads of the current pass, grouped by page in order of first use. */
+    protected Map<Page, List<float[]>> _quads = Maps.newLinkedHashMap();
+
+    /** The completed batches. */
+    protected List<Batch> _batches = Lists.newArrayList();
+
+    /** The total number of quads in the completed batches. */
+    protected int _quadCount;
+  }
+
+  /**
+   * Creates a new mesh.
+   */
+  public GlyphMesh (float[] vertices, int[] starts, int[] counts, int[] colors, Page[] pages)
+  {
+    _vertices = vertices;
+    _starts = starts;
+    _counts = counts;
+    _colors = colors;
+    _pages = pages;
+  }
+
+  /**
+   * Returns the packed vertex data: for each vertex, the texture coordinates followed by the
+   * position (as in {@link GL11#GL_T2F_V3F}, but with two-dimensional positions).
+   */
+  public float[] getVertices ()
+  {
+    return _vertices;
+  }
+
+  /**
+   * Returns the total number of vertices in the mesh.
+   */
+  public int getVertexCount ()
+  {
+    return _vertices.length / VERTEX_SIZE;
+  }
+
+  /**
+   * Returns the number of batches (draw calls) in the mesh.
+   */
+  public int getBatchCount ()
+  {
+    return _starts.length;
+  }
+
+  /**
+   * Returns the index of the first vertex of the specified batch.
+   */
+  public int getBatchStart (int idx)
+  {
+    return _starts[idx];
+  }
+
+  /**
+   * Returns the number of vertices in the specified batch.
+   */
+  public int getBatchVertexCount (int idx)
+  {
+    return _counts[idx];
+  }
+
+  /**
+   * Returns the color ({@link #TEXT_COLOR} or {@link #EFFECT_COLOR}) of the specified batch.
+   */
+  public int getBatchColor (int idx)
+  {
+    return _colors[idx];
+  }
+
+  /**
+   * Returns the page of the specified batch.
+   */
+  public Page getBatchPage (int idx)
+  {
+    return _pages[idx];
+  }
+
+  /**
+   * Renders the mesh at the specified position.
+   */
+  public void render (
+    Renderer renderer, int x, int y, Color4f color, Color4f effectColor, float alpha)
+  {
+    if (_starts.length == 0) {
+      return;
+    }
+    if (_vertexArray == null) {
+      FloatBuffer buf = BufferUtils.createFloatBuffer(_vertices.length);
+      buf.put(_vertices).rewind();
+      int stride = VERTEX_SIZE * 4;
+      _texCoordArrays = new ClientArray[] { new ClientArray(2, stride, 0, buf) };
+      _vertexArray = new ClientArray(2, stride, 8, buf);
+    }
+    renderer.setArrayState(0, null, _texCoordArrays, null, null, _vertexArray, null);
+    renderer.setMatrixMode(GL11.GL_MODELVIEW);
+    GL11.glTranslatef(x, y, 0f);
+    for (int ii = 0; ii < _starts.length; ii++) {
+      Color4f bcolor = (_colors[ii] == EFFECT_COLOR) ? effectColor : color;
+      float a = bcolor.a * alpha;
+      renderer.setColorState(bcolor.r * a, bcolor.g * a, bcolor.b * a, a);
+      renderer.setTextureState(_pages[ii].getUnits(renderer));
+      GL11.glDrawArrays(GL11.GL_QUADS, _starts[ii], _counts[ii]);
+    }
+    GL11.glTranslatef(-x, -y, 0f);
+  }
+
+  /**
+   * A batch under construction.
+   */
+  protected static class Batch
+  {
+    /** The color of the batch. */
+    public int color;
+
+    /** The page of the batch. */
+    public Page page;
+
+    /** The quads in the batch. */
+    public List<float[]> quads;
+  }
+
+  /** The packed vertex data. */
+  protected float[] _vertices;
+
+  /** The first vertex and vertex count of each batch. */
+  protected int[] _starts, _counts;
+
+  /** The color of each batch. */
+  protected int[] _colors;
+
+  /** The page of each batch. */
+  protected Page[] _pages;
+
+  /** The texture coordinate array, created on first render. */
+  protected ClientArray[] _texCoordArrays;
+
+  /** The vertex array, created on first render. */
+  protected ClientArray _vertexArray;
+}
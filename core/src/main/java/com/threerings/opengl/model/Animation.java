@@ -27,7 +27,6 @@ package com.threerings.opengl.model;
 
 import java.util.ArrayList;
 
-import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.ObserverList;
 import com.samskivert.util.Randoms;
 
@@ -47,6 +46,7 @@ import com.threerings.expr.util.ScopeUtil;
 import com.threerings.math.Transform3D;
 import com.threerings.util.DeepUtil;
 
+import com.threerings.opengl.model.config.AnimationClip;
 import com.threerings.opengl.model.config.AnimationConfig;
 import com.threerings.opengl.util.GlContext;
 
@@ -154,6 +154,24 @@ public class Animation extends SimpleScope
       return false;
     }
 
+    /**
+     * Checks whether ticking this animation only affects the state of its model.
+     */
+    public boolean isTickIsolated ()
+    {
+      return false;
+    }
+
+    /**
+     * Checks whether updating or blending the transforms of this animation only reads its
+     * own state and writes the transforms of its targets, so that it may be done on a worker
+     * thread.
+     */
+    public boolean isPoseIsolated ()
+    {
+      return false;
+    }
+
     /**
      * Updates the transforms directly from this animation.
      */
@@ -274,7 +292,7 @@ public class Animation extends SimpleScope
         }
       }
       if (config.modifiers.length == 0) {
-        _transforms = config.transforms;
+        _clip = config.clip;
       } else {
         Transform3D[] nodeDefaults = new Transform3D[_targets.length];
         for (int ii = 0; ii < _targets.length; ii++) {
@@ -282,7 +300,7 @@ public class Animation extends SimpleScope
             new Transform3D() : _targets[ii].getConfig().transform)
             .promote(Transform3D.UNIFORM);
         }
-        _transforms = config.getModifiedTransforms(nodeDefaults);
+        _clip = config.getModifiedClip(nodeDefaults);
       }
 
       // create the executors
@@ -294,14 +312,12 @@ public class Animation extends SimpleScope
       }
 
       if (config.reverseTransforms) {
-        // clone the array if we're using the one from the config!
-        if (config.transforms == _transforms) _transforms = _transforms.clone();
-        ArrayUtil.reverse(_transforms); // reverse in place
+        _clip = _clip.reverse();
         // TODO: reverse other things too?
 //        ArrayUtil.reverse(_executors);
       }
 
-      if (_fidx >= _transforms.length) {
+      if (_fidx >= _clip.getFrameCount()) {
         _fidx = 0;
         _eidx = 0;
       }
@@ -312,7 +328,7 @@ public class Animation extends SimpleScope
     {
       // initialize frame counter
       int offset = Math.round(_config.offset.getValue() * getFrameRate());
-      _fidx = _eidx = Math.max(0, offset) % _transforms.length;
+      _fidx = _eidx = Math.max(0, offset) % _clip.getFrameCount();
       _accum = 0f;
       _completed = false;
 
@@ -387,7 +403,7 @@ public class Animation extends SimpleScope
       executeActions();
 
       // check for loop or completion
-      int fcount = _transforms.length;
+      int fcount = _clip.getFrameCount();
       if (_config.loop) {
         if (_fidx >= fcount) {
           _fidx %= fcount;
@@ -410,22 +426,27 @@ public class Animation extends SimpleScope
       return _completed;
     }
 
+    @Override
+    public boolean isTickIsolated ()
+    {
+      // frame actions may spawn effects, play sounds, etc.
+      return _executors.length == 0;
+    }
+
+    @Override
+    public boolean isPoseIsolated ()
+    {
+      return true;
+    }
+
     @Override
     public void updateTransforms ()
     {
-      Transform3D[] t1, t2;
-      if (_transitioning) {
-        t1 = _snapshot;
-        t2 = _transforms[_fidx];
-      } else {
-        t1 = _transforms[_fidx];
-        t2 = _transforms[(_fidx + 1) % _transforms.length];
-      }
       for (int ii = 0; ii < _targets.length; ii++) {
         // lerp into the target transform
         Articulated.Node target = _targets[ii];
         if (target != null) {
-          t1[ii].lerp(t2[ii], _accum, target.getLocalTransform());
+          sample(ii, target.getLocalTransform());
         }
       }
     }
@@ -433,14 +454,6 @@ public class Animation extends SimpleScope
     @Override
     public void blendTransforms (int update)
     {
-      Transform3D[] t1, t2;
-      if (_transitioning) {
-        t1 = _snapshot;
-        t2 = _transforms[_fidx];
-      } else {
-        t1 = _transforms[_fidx];
-        t2 = _transforms[(_fidx + 1) % _transforms.length];
-      }
       for (int ii = 0; ii < _targets.length; ii++) {
         // first make sure the target exists
         Articulated.Node target = _targets[ii];
@@ -449,7 +462,7 @@ public class Animation extends SimpleScope
         }
         // then see if we're the first to touch it, in which case we can lerp directly
         if (target.lastUpdate != update) {
-          t1[ii].lerp(t2[ii], _accum, target.getLocalTransform());
+          sample(ii, target.getLocalTransform());
           target.lastUpdate = update;
           target.totalWeight = _weight;
           continue;
@@ -460,7 +473,7 @@ public class Animation extends SimpleScope
           continue;
         }
         float mweight = Math.min(_weight, 1f - target.totalWeight);
-        t1[ii].lerp(t2[ii], _accum, _xform);
+        sample(ii, _xform);
         target.getLocalTransform().lerpLocal(
           _xform, mweight / (target.totalWeight += mweight));
       }
@@ -534,14 +547,26 @@ public class Animation extends SimpleScope
       return true;
     }
 
+    /**
+     * Samples the current transform of the identified target into the supplied result.
+     */
+    protected Transform3D sample (int idx, Transform3D result)
+    {
+      if (!_transitioning) {
+        return _clip.sample(idx, _fidx, _accum, result);
+      }
+      _clip.sample(idx, _fidx, 0f, _frame);
+      return _snapshot[idx].lerp(_frame, _accum, result);
+    }
+
     /** The implementation configuration. */
     protected AnimationConfig.Imported _config;
 
     /** The targets of the animation. */
     protected Articulated.Node[] _targets;
 
-    /** The animation transforms after modifications are applied. */
-    protected Transform3D[][] _transforms;
+    /** The animation clip after modifications are applied. */
+    protected AnimationClip _clip;
 
     /** A snapshot of the original transforms of the targets, for transitioning. */
     protected Transform3D[] _snapshot;
@@ -572,6 +597,9 @@ public class Animation extends SimpleScope
 
     /** A temporary transform for interpolation. */
     protected Transform3D _xform = new Transform3D();
+
+    /** Holds the sampled target frame while transitioning. */
+    protected Transform3D _frame = new Transform3D();
   }
 
   /**
@@ -1243,6 +1271,23 @@ public class Animation extends SimpleScope
     return _impl.hasCompleted();
   }
 
+  /**
+   * Checks whether ticking the animation only affects the state of its model (that is, it has
+   * no observers or actions to notify).
+   */
+  public boolean isTickIsolated ()
+  {
+    return _observers == null && _impl.isTickIsolated();
+  }
+
+  /**
+   * Checks whether the transforms of the animation may be updated on a worker thread.
+   */
+  public boolean isPoseIsolated ()
+  {
+    return _impl.isPoseIsolated();
+  }
+
   /**
    * Updates the transforms directly from this animation.
    */
@@ -0,0 +1,205 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Gathers the skeletal models that need posing on the current frame, poses them concurrently
+ * (sampling and blending their animations and updating their node world transforms), then
+ * completes their ticks on the calling thread.  Models directly in a scene with a job system
+ * (see {@link com.threerings.opengl.scene.Scene#setAnimationJobs}) add themselves when they
+ * tick; the scene runs the jobs once all of its elements have ticked.
+ */
+public class AnimationJobs
+{
+  /**
+   * A deferred posing job.
+   */
+  public interface Job
+  {
+    /**
+     * Poses the skeleton.  Called on a worker thread, so this must only touch the state of
+     * the job's own model.
+     */
+    public void pose ();
+
+    /**
+     * Completes the job.  Called on the thread that runs the jobs, after all jobs in the
+     * batch have been posed.
+     */
+    public void finish ();
+  }
+
+  /**
+   * Creates a new job system that poses on the specified pool.
+   */
+  public AnimationJobs (ForkJoinPool pool)
+  {
+    _pool = pool;
+  }
+
+  /**
+   * Returns a reference to the pool on which jobs are posed.
+   */
+  public ForkJoinPool getPool ()
+  {
+    return _pool;
+  }
+
+  /**
+   * Adds a job to be run on the next call to {@link #run}.  May be called from any thread.
+   */
+  public synchronized void add (Job job)
+  {
+    if (_count == _pending.length) {
+      _pending = Arrays.copyOf(_pending, Math.max(16, _count * 2));
+    }
+    _pending[_count++] = job;
+  }
+
+  /**
+   * Poses all pending jobs concurrently, then finishes them in the order in which they were
+   * added.  Jobs added while finishing (by attachments, for instance) are run in a further
+   * batch.
+   */
+  public void run ()
+  {
+    _jobCount = 0;
+    _poseTime = _finishTime = 0L;
+    while (true) {
+      Job[] jobs;
+      int count;
+      synchronized (this) {
+        if ((count = _count) == 0) {
+          return;
+        }
+        jobs = _pending;
+        _pending = _running;
+        _running = jobs;
+        _count = 0;
+      }
+      _jobCount += count;
+      try {
+        long start = System.nanoTime();
+        if (count <= POSE_GRANULARITY) {
+          for (int ii = 0; ii < count; ii++) {
+            jobs[ii].pose();
+          }
+        } else {
+          _pool.invoke(new PoseTask(jobs, 0, count));
+        }
+        long posed = System.nanoTime();
+        for (int ii = 0; ii < count; ii++) {
+          jobs[ii].finish();
+        }
+        _poseTime += posed - start;
+        _finishTime += System.nanoTime() - posed;
+      } finally {
+        Arrays.fill(jobs, 0, count, null);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of jobs run on the last call to {@link #run}.
+   */
+  public int getJobCount ()
+  {
+    return _jobCount;
+  }
+
+  /**
+   * Returns the time (in nanoseconds) spent posing on the last call to {@link #run}.
+   */
+  public long getPoseTime ()
+  {
+    return _poseTime;
+  }
+
+  /**
+   * Returns the time (in nanoseconds) spent finishing on the last call to {@link #run}.
+   */
+  public long getFinishTime ()
+  {
+    return _finishTime;
+  }
+
+  /**
+   * Poses a range of jobs, splitting it between workers.
+   */
+  protected static class PoseTask extends RecursiveAction
+  {
+    public PoseTask (Job[] jobs, int start, int end)
+    {
+      _jobs = jobs;
+      _start = start;
+      _end = end;
+    }
+
+    @Override
+    protected void compute ()
+    {
+      if (_end - _start <= POSE_GRANULARITY) {
+        for (int ii = _start; ii < _end; ii++) {
+          _jobs[ii].pose();
+        }
+      } else {
+        int mid = (_start + _end) >>> 1;
+        invokeAll(new PoseTask(_jobs, _start, mid), new PoseTask(_jobs, mid, _end));
+      }
+    }
+
+    /** The jobs to pose. */
+    protected Job[] _jobs;
+
+    /** The range of jobs to pose. */
+    protected int _start, _end;
+  }
+
+  /** The pool on which to pose. */
+  protected ForkJoinPool _pool;
+
+  /** The jobs added since the last batch. */
+  protected Job[] _pending = new Job[0];
+
+  /** The jobs in the batch being run. */
+  protected Job[] _running = new Job[0];
+
+  /** The number of jobs in {@link #_pending}. */
+  protected int _count;
+
+  /** The number of jobs run on the last call to {@link #run}. */
+  protected int _jobCount;
+
+  /** The time spent posing and finishing on the last call to {@link #run}. */
+  protected long _poseTime, _finishTime;
+
+  /** The maximum number of jobs to pose in a single task. */
+  protected static final int POSE_GRANULARITY = 4;
+}
@@ -454,6 +454,8 @@ public class Articulated extends Model.Implementation
   @Override
   public Transform3D getPointWorldTransform (String point)
   {
+    // whoever asked may read the transform while ticking, before a deferred pose would run
+    _externalReaders = true;
     Node node = _nodesByName.get(point);
     return (node == null) ? null : node.getWorldTransform();
   }
@@ -599,6 +601,31 @@ public class Articulated extends Model.Implementation
     return _tickPolicy;
   }
 
+  @Override
+  public boolean isTickIsolated ()
+  {
+    // the automatic animations are started on the first tick
+    if (!_started) {
+      return false;
+    }
+    for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
+      if (!_playing.get(ii).isTickIsolated()) {
+        return false;
+      }
+    }
+    for (Model model : _configAttachments) {
+      if (!model.isTickIsolated()) {
+        return false;
+      }
+    }
+    for (int ii = 0, nn = _userAttachments.size(); ii < nn; ii++) {
+      if (!_userAttachments.get(ii).isTickIsolated()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public void wasAdded ()
   {
@@ -658,56 +685,20 @@ public class Articulated extends Model.Implementation
 
     // copy the tracks to an array so that callbacks can manipulate the list;
     // note if any tracks have completed
-    boolean tracksCompleted = false;
+    _tracksCompleted = false;
     _playingArray = _playing.toArray(_playingArray);
     for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
-      tracksCompleted |= _playingArray[ii].tick(elapsed);
+      _tracksCompleted |= _playingArray[ii].tick(elapsed);
     }
 
-    // update the local node transforms
-    updateTransforms();
-
-    // if any tracks have completed, remove them
-    if (tracksCompleted) {
-      for (int ii = _playing.size() - 1; ii >= 0; ii--) {
-        Animation animation = _playing.get(ii);
-        if (animation.hasCompleted()) {
-          _playing.remove(ii);
-        }
-      }
-    }
-
-    // update the nodes and expand the bounds
-    for (Node node : _nodes) {
-      node.update();
-    }
-
-    // tick the configured attachments
-    _completed = _config.completable && _playing.isEmpty();
-    for (Model model : _configAttachments) {
-      model.tick(elapsed);
-      _nbounds.addLocal(model.getBounds());
-      _completed &= model.hasCompleted();
-    }
-
-    // and the user attachments
-    for (int ii = 0, nn = _userAttachments.size(); ii < nn; ii++) {
-      Model model = _userAttachments.get(ii);
-      model.tick(elapsed);
-      _nbounds.addLocal(model.getBounds());
-      _completed &= model.hasCompleted();
-    }
-
-    // update the bounds if necessary
-    if (!_bounds.equals(_nbounds)) {
-      ((Model)_parentScope).boundsWillChange(this);
-      _bounds.set(_nbounds);
-      ((Model)_parentScope).boundsDidChange(this);
-    }
-
-    // notify containing model if completed
-    if (_completed) {
-      ((Model)_parentScope).completed(this);
+    // defer the rest of the tick to the scene's job system if we can
+    _elapsed = elapsed;
+    AnimationJobs jobs = ((Model)_parentScope).getAnimationJobs(this);
+    if (jobs != null && isPoseIsolated()) {
+      jobs.add(_poseJob);
+    } else {
+      pose();
+      finishTick();
     }
   }
 
@@ -997,6 +988,89 @@ public class Articulated extends Model.Implementation
     }
   }
 
+  /**
+   * Checks whether the {@link #pose} pass may be deferred and run on a worker thread.  The
+   * deferred passes run after all scene elements have ticked, so we only defer if nothing
+   * outside of the model reads our node transforms.
+   */
+  protected boolean isPoseIsolated ()
+  {
+    if (_externalReaders) {
+      return false;
+    }
+    for (int ii = 0, nn = _playing.size(); ii < nn; ii++) {
+      if (!_playing.get(ii).isPoseIsolated()) {
+        return false;
+      }
+    }
+    for (Node node : _nodes) {
+      if (node._updater instanceof WorldTransformUpdater) {
+        return false; // may read the transforms of other models
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Updates the local node transforms from the playing animations, then the node world
+   * transforms and the bounds that depend on them.
+   */
+  protected void pose ()
+  {
+    // update the local node transforms
+    updateTransforms();
+
+    // update the nodes and expand the bounds
+    for (Node node : _nodes) {
+      node.update();
+    }
+  }
+
+  /**
+   * Completes the tick after posing: removes the completed tracks, ticks the attachments, and
+   * updates the bounds.
+   */
+  protected void finishTick ()
+  {
+    // if any tracks have completed, remove them
+    if (_tracksCompleted) {
+      for (int ii = _playing.size() - 1; ii >= 0; ii--) {
+        Animation animation = _playing.get(ii);
+        if (animation.hasCompleted()) {
+          _playing.remove(ii);
+        }
+      }
+    }
+
+    // tick the configured attachments
+    _completed = _config.completable && _playing.isEmpty();
+    for (Model model : _configAttachments) {
+      model.tick(_elapsed);
+      _nbounds.addLocal(model.getBounds());
+      _completed &= model.hasCompleted();
+    }
+
+    // and the user attachments
+    for (int ii = 0, nn = _userAttachments.size(); ii < nn; ii++) {
+      Model model = _userAttachments.get(ii);
+      model.tick(_elapsed);
+      _nbounds.addLocal(model.getBounds());
+      _completed &= model.hasCompleted();
+    }
+
+    // update the bounds if necessary
+    if (!_bounds.equals(_nbounds)) {
+      ((Model)_parentScope).boundsWillChange(this);
+      _bounds.set(_nbounds);
+      ((Model)_parentScope).boundsDidChange(this);
+    }
+
+    // notify containing model if completed
+    if (_completed) {
+      ((Model)_parentScope).completed(this);
+    }
+  }
+
   /**
    * Updates the node transforms based on the current animation state.
    */
@@ -1127,4 +1201,23 @@ public class Articulated extends Model.Implementation
 
   /** If true, the model has completed. */
   protected boolean _completed;
+
+  /** The elapsed time of the current tick, held while the tick is deferred. */
+  protected float _elapsed;
+
+  /** Whether any tracks completed on the current tick. */
+  protected boolean _tracksCompleted;
+
+  /** Set when a node transform has been handed out to be read from outside the model. */
+  protected boolean _externalReaders;
+
+  /** Runs the deferred part of our tick through the scene's job system. */
+  protected AnimationJobs.Job _poseJob = new AnimationJobs.Job() {
+    public void pose () {
+      Articulated.this.pose();
+    }
+    public void finish () {
+      finishTick();
+    }
+  };
 }
@@ -283,6 +283,15 @@ public class Model extends DynamicScope
       return TickPolicy.NEVER;
     }
 
+    /**
+     * Checks whether the implementation can be ticked concurrently with other isolated
+     * elements.
+     */
+    public boolean isTickIsolated ()
+    {
+      return false;
+    }
+
     /**
      * Notes that the model was added to a scene.
      */
@@ -961,6 +970,13 @@ public class Model extends DynamicScope
     return _impl.getTickPolicy();
   }
 
+  // documentation inherited from interface SceneElement
+  public boolean isTickIsolated ()
+  {
+    // observers may do anything at all in response to completion or animation events
+    return _observers == null && _impl.isTickIsolated();
+  }
+
   // documentation inherited from interface SceneElement
   public Object getUserObject ()
   {
@@ -1120,6 +1136,17 @@ public class Model extends DynamicScope
     return (_impl.isImplementation(impl)) ? _scene : null;
   }
 
+  /**
+   * Returns the job system to which the implementation may defer its posing pass, or null
+   * if it should pose immediately (because the model isn't directly in a scene or the scene
+   * has no job system).  This should only be called by the {@link #_impl}.
+   */
+  public AnimationJobs getAnimationJobs (Implementation impl)
+  {
+    return (_scene != null && _parentScope == _scene && _impl.isImplementation(impl)) ?
+      _scene.getAnimationJobs() : null;
+  }
+
   /**
    * Notes that the model has completed.  This should only be called by the {@link #_impl}.
    */
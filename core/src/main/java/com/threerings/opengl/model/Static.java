@@ -106,6 +106,12 @@ public class Static extends Model.Implementation
     }
   }
 
+  @Override
+  public boolean isTickIsolated ()
+  {
+    return true;
+  }
+
   @Override
   public void drawBounds ()
   {
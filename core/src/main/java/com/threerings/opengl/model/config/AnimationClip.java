@@ -0,0 +1,550 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model.config;
+
+import java.util.Arrays;
+
+import com.threerings.export.Exportable;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Matrix4f;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+/**
+ * A packed, immutable representation of the per-frame transforms of an imported animation.
+ * Each target has a track of keys; tracks whose values never change are reduced to a single
+ * key, and the frames that can be reconstructed by interpolating between their neighbors are
+ * dropped.  Rigid and uniform keys are stored as 16-bit quantized translations, rotations, and
+ * scales; affine and general keys are stored as raw matrices.
+ */
+public class AnimationClip
+  implements Exportable
+{
+  /**
+   * Packs the supplied transforms (indexed by frame, then target), reducing keyframes.
+   */
+  public AnimationClip (Transform3D[][] transforms)
+  {
+    this(transforms, true);
+  }
+
+  /**
+   * Packs the supplied transforms (indexed by frame, then target).
+   *
+   * @param reduce if true, drop keys that can be reconstructed by interpolation (constant
+   * tracks are always reduced to a single key).
+   */
+  public AnimationClip (Transform3D[][] transforms, boolean reduce)
+  {
+    _frameCount = transforms.length;
+    int tracks = (_frameCount == 0) ? 0 : transforms[0].length;
+    _types = new int[tracks];
+    _keyStarts = new int[tracks + 1];
+    _valueStarts = new int[tracks];
+    _ranges = new float[tracks * RANGE_STRIDE];
+
+    int[] keyFrames = new int[tracks * Math.max(_frameCount, 1)];
+    short[] values = new short[0];
+    float[] matrices = new float[0];
+    int keyCount = 0, valueCount = 0, matrixCount = 0;
+    float[][] frames = new float[_frameCount][];
+    for (int ii = 0; ii < tracks; ii++) {
+      _keyStarts[ii] = keyCount;
+
+      // find the common type of the track
+      int type = Transform3D.IDENTITY;
+      for (Transform3D[] frame : transforms) {
+        type = Math.max(type, frame[ii].getType());
+      }
+      _types[ii] = type;
+      if (type == Transform3D.IDENTITY) {
+        keyFrames[keyCount++] = 0;
+        continue;
+      }
+
+      // extract the components of each frame
+      for (int ff = 0; ff < _frameCount; ff++) {
+        frames[ff] = getComponents(transforms[ff][ii], type, (ff == 0) ? null : frames[ff - 1]);
+      }
+
+      // determine which frames to keep
+      int first = keyCount;
+      keyFrames[keyCount++] = 0;
+      if (!isConstant(frames, type)) {
+        int start = 0;
+        for (int ff = 1; ff < _frameCount; ff++) {
+          if (!reduce || ff + 1 == _frameCount || ff - start >= MAX_KEY_SPAN ||
+              !canInterpolate(frames, type, start, ff + 1)) {
+            keyFrames[keyCount++] = start = ff;
+          }
+        }
+      }
+      int nkeys = keyCount - first;
+
+      // store the key values
+      if (type >= Transform3D.AFFINE) {
+        _valueStarts[ii] = matrixCount;
+        matrices = ensureCapacity(matrices, matrixCount + nkeys*MATRIX_STRIDE);
+        for (int kk = first; kk < keyCount; kk++) {
+          System.arraycopy(frames[keyFrames[kk]], 0, matrices, matrixCount, MATRIX_STRIDE);
+          matrixCount += MATRIX_STRIDE;
+        }
+        continue;
+      }
+      int stride = getStride(type);
+      _valueStarts[ii] = valueCount;
+      values = ensureCapacity(values, valueCount + nkeys*stride);
+      int ridx = ii * RANGE_STRIDE;
+      computeRange(frames, keyFrames, first, keyCount, 0, _ranges, ridx);
+      computeRange(frames, keyFrames, first, keyCount, 1, _ranges, ridx + 2);
+      computeRange(frames, keyFrames, first, keyCount, 2, _ranges, ridx + 4);
+      if (type == Transform3D.UNIFORM) {
+        computeRange(frames, keyFrames, first, keyCount, 7, _ranges, ridx + 6);
+      }
+      for (int kk = first; kk < keyCount; kk++) {
+        float[] frame = frames[keyFrames[kk]];
+        for (int cc = 0; cc < 3; cc++) {
+          values[valueCount++] = quantize(frame[cc], _ranges[ridx + cc*2], _ranges[ridx + cc*2 + 1]);
+        }
+        for (int cc = 3; cc < 7; cc++) {
+          values[valueCount++] = (short)Math.round(frame[cc] * Short.MAX_VALUE);
+        }
+        if (type == Transform3D.UNIFORM) {
+          values[valueCount++] = quantize(frame[7], _ranges[ridx + 6], _ranges[ridx + 7]);
+        }
+      }
+    }
+    _keyStarts[tracks] = keyCount;
+    _keyFrames = Arrays.copyOf(keyFrames, keyCount);
+    _values = Arrays.copyOf(values, valueCount);
+    _matrices = Arrays.copyOf(matrices, matrixCount);
+  }
+
+  /**
+   * No-argument constructor for deserialization.
+   */
+  public AnimationClip ()
+  {
+  }
+
+  /**
+   * Returns the number of frames in the clip.
+   */
+  public int getFrameCount ()
+  {
+    return _frameCount;
+  }
+
+  /**
+   * Returns the number of tracks (targets) in the clip.
+   */
+  public int getTrackCount ()
+  {
+    return _types.length;
+  }
+
+  /**
+   * Returns the total number of keys stored across all tracks.
+   */
+  public int getKeyCount ()
+  {
+    return _keyFrames.length;
+  }
+
+  /**
+   * Samples a track between the specified frame and the next (wrapping around to the first
+   * frame after the last), storing the result directly in the provided transform.
+   *
+   * @param t the interpolation parameter between the frame and the next.
+   * @return a reference to the result, for chaining.
+   */
+  public Transform3D sample (int track, int frame, float t, Transform3D result)
+  {
+    int type = _types[track];
+    if (type == Transform3D.IDENTITY) {
+      return result.setToIdentity();
+    }
+
+    // find the key at or before the frame
+    int kstart = _keyStarts[track], kend = _keyStarts[track + 1];
+    int kidx = Arrays.binarySearch(_keyFrames, kstart, kend, frame);
+    if (kidx < 0) {
+      kidx = -kidx - 2;
+    }
+
+    // find the key after it, the parameter between the two
+    int nidx;
+    float u;
+    if (kidx + 1 < kend) {
+      nidx = kidx + 1;
+      int kframe = _keyFrames[kidx];
+      u = (frame - kframe + t) / (_keyFrames[nidx] - kframe);
+    } else {
+      // either a constant track or the last frame, which wraps around to the first
+      nidx = kstart;
+      u = (kend - kstart == 1) ? 0f : t;
+    }
+    kidx -= kstart;
+    nidx -= kstart;
+
+    if (type >= Transform3D.AFFINE) {
+      result.setType(type);
+      sampleMatrix(_valueStarts[track], kidx, nidx, u, type, result.getMatrix());
+      return result;
+    }
+
+    int stride = getStride(type);
+    int idx0 = _valueStarts[track] + kidx*stride, idx1 = _valueStarts[track] + nidx*stride;
+    int ridx = track * RANGE_STRIDE;
+    short[] values = _values;
+    float[] ranges = _ranges;
+    result.setType(type);
+
+    // translation
+    float tx0 = dequantize(values[idx0], ranges[ridx], ranges[ridx + 1]);
+    float ty0 = dequantize(values[idx0 + 1], ranges[ridx + 2], ranges[ridx + 3]);
+    float tz0 = dequantize(values[idx0 + 2], ranges[ridx + 4], ranges[ridx + 5]);
+    float tx1 = dequantize(values[idx1], ranges[ridx], ranges[ridx + 1]);
+    float ty1 = dequantize(values[idx1 + 1], ranges[ridx + 2], ranges[ridx + 3]);
+    float tz1 = dequantize(values[idx1 + 2], ranges[ridx + 4], ranges[ridx + 5]);
+    result.getTranslation().set(
+      tx0 + u*(tx1 - tx0), ty0 + u*(ty1 - ty0), tz0 + u*(tz1 - tz0));
+
+    // rotation (normalized linear interpolation along the shorter arc)
+    float qx0 = values[idx0 + 3], qy0 = values[idx0 + 4];
+    float qz0 = values[idx0 + 5], qw0 = values[idx0 + 6];
+    float qx1 = values[idx1 + 3], qy1 = values[idx1 + 4];
+    float qz1 = values[idx1 + 5], qw1 = values[idx1 + 6];
+    if (qx0*qx1 + qy0*qy1 + qz0*qz1 + qw0*qw1 < 0f) {
+      qx1 = -qx1;
+      qy1 = -qy1;
+      qz1 = -qz1;
+      qw1 = -qw1;
+    }
+    setNormalized(result.getRotation(),
+      qx0 + u*(qx1 - qx0), qy0 + u*(qy1 - qy0), qz0 + u*(qz1 - qz0), qw0 + u*(qw1 - qw0));
+
+    // scale
+    if (type == Transform3D.UNIFORM) {
+      float s0 = dequantize(values[idx0 + 7], ranges[ridx + 6], ranges[ridx + 7]);
+      float s1 = dequantize(values[idx1 + 7], ranges[ridx + 6], ranges[ridx + 7]);
+      result.setScale(s0 + u*(s1 - s0));
+    }
+    return result;
+  }
+
+  /**
+   * Decodes the clip into a new array of transforms indexed by frame, then target.
+   */
+  public Transform3D[][] decode ()
+  {
+    Transform3D[][] transforms = new Transform3D[_frameCount][_types.length];
+    for (int ii = 0; ii < _frameCount; ii++) {
+      for (int jj = 0; jj < _types.length; jj++) {
+        transforms[ii][jj] = sample(jj, ii, 0f, new Transform3D());
+      }
+    }
+    return transforms;
+  }
+
+  /**
+   * Creates a new clip containing the frames of this one in reverse order.
+   */
+  public AnimationClip reverse ()
+  {
+    AnimationClip clip = new AnimationClip();
+    clip._frameCount = _frameCount;
+    clip._types = _types;
+    clip._keyStarts = _keyStarts;
+    clip._valueStarts = _valueStarts;
+    clip._ranges = _ranges;
+    clip._keyFrames = new int[_keyFrames.length];
+    clip._values = new short[_values.length];
+    clip._matrices = new float[_matrices.length];
+    for (int ii = 0; ii < _types.length; ii++) {
+      int kstart = _keyStarts[ii], kend = _keyStarts[ii + 1];
+      int type = _types[ii];
+      int stride = (type >= Transform3D.AFFINE) ? MATRIX_STRIDE : getStride(type);
+      for (int kk = kstart, rk = kend - 1; kk < kend; kk++, rk--) {
+        clip._keyFrames[rk] = (kend - kstart == 1) ? 0 : (_frameCount - 1 - _keyFrames[kk]);
+        if (type == Transform3D.IDENTITY) {
+          continue;
+        }
+        int from = _valueStarts[ii] + (kk - kstart)*stride;
+        int to = _valueStarts[ii] + (rk - kstart)*stride;
+        if (type >= Transform3D.AFFINE) {
+          System.arraycopy(_matrices, from, clip._matrices, to, stride);
+        } else {
+          System.arraycopy(_values, from, clip._values, to, stride);
+        }
+      }
+    }
+    return clip;
+  }
+
+  /**
+   * Samples a matrix track.
+   */
+  protected void sampleMatrix (
+    int start, int kidx, int nidx, float u, int type, Matrix4f result)
+  {
+    int i0 = start + kidx*MATRIX_STRIDE, i1 = start + nidx*MATRIX_STRIDE;
+    boolean affine = (type == Transform3D.AFFINE);
+    result.set(
+      lerp(i0, i1, 0, u), lerp(i0, i1, 1, u), lerp(i0, i1, 2, u),
+      affine ? 0f : lerp(i0, i1, 3, u),
+      lerp(i0, i1, 4, u), lerp(i0, i1, 5, u), lerp(i0, i1, 6, u),
+      affine ? 0f : lerp(i0, i1, 7, u),
+      lerp(i0, i1, 8, u), lerp(i0, i1, 9, u), lerp(i0, i1, 10, u),
+      affine ? 0f : lerp(i0, i1, 11, u),
+      lerp(i0, i1, 12, u), lerp(i0, i1, 13, u), lerp(i0, i1, 14, u),
+      affine ? 1f : lerp(i0, i1, 15, u));
+  }
+
+  /**
+   * Interpolates between two matrix elements.
+   */
+  protected float lerp (int i0, int i1, int offset, float u)
+  {
+    float v0 = _matrices[i0 + offset];
+    return v0 + u*(_matrices[i1 + offset] - v0);
+  }
+
+  /**
+   * Extracts the components of a transform promoted to the given type: translation, rotation,
+   * and scale for rigid and uniform types; the matrix elements for affine and general types.
+   *
+   * @param previous the components of the previous frame, used to keep the rotations in the
+   * same hemisphere.
+   */
+  protected static float[] getComponents (Transform3D transform, int type, float[] previous)
+  {
+    Transform3D xform = new Transform3D(transform).promote(type);
+    if (type >= Transform3D.AFFINE) {
+      Matrix4f m = xform.getMatrix();
+      return new float[] {
+        m.m00, m.m10, m.m20, m.m30, m.m01, m.m11, m.m21, m.m31,
+        m.m02, m.m12, m.m22, m.m32, m.m03, m.m13, m.m23, m.m33 };
+    }
+    Vector3f translation = xform.getTranslation();
+    Quaternion rotation = xform.getRotation();
+    float[] components = new float[] {
+      translation.x, translation.y, translation.z,
+      rotation.x, rotation.y, rotation.z, rotation.w,
+      (type == Transform3D.UNIFORM) ? xform.getScale() : 1f };
+    if (previous != null && components[3]*previous[3] + components[4]*previous[4] +
+        components[5]*previous[5] + components[6]*previous[6] < 0f) {
+      for (int ii = 3; ii < 7; ii++) {
+        components[ii] = -components[ii];
+      }
+    }
+    return components;
+  }
+
+  /**
+   * Checks whether all frames of a track match the first within tolerance.
+   */
+  protected static boolean isConstant (float[][] frames, int type)
+  {
+    for (int ii = 1; ii < frames.length; ii++) {
+      if (!matches(frames[0], frames[ii], type)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether all frames strictly between the specified ones can be reconstructed within
+   * tolerance by interpolating between them.
+   */
+  protected static boolean canInterpolate (float[][] frames, int type, int start, int end)
+  {
+    float[] first = frames[start], last = frames[end];
+    float[] interp = new float[first.length];
+    for (int ii = start + 1; ii < end; ii++) {
+      float u = (float)(ii - start) / (end - start);
+      for (int cc = 0; cc < interp.length; cc++) {
+        interp[cc] = first[cc] + u*(last[cc] - first[cc]);
+      }
+      if (type < Transform3D.AFFINE) {
+        float rlen = 1f / FloatMath.sqrt(interp[3]*interp[3] + interp[4]*interp[4] +
+          interp[5]*interp[5] + interp[6]*interp[6]);
+        for (int cc = 3; cc < 7; cc++) {
+          interp[cc] *= rlen;
+        }
+      }
+      if (!matches(interp, frames[ii], type)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether two sets of components match within tolerance.
+   */
+  protected static boolean matches (float[] c1, float[] c2, int type)
+  {
+    if (type >= Transform3D.AFFINE) {
+      for (int ii = 0; ii < MATRIX_STRIDE; ii++) {
+        if (Math.abs(c1[ii] - c2[ii]) > MATRIX_TOLERANCE) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (int ii = 0; ii < 3; ii++) {
+      if (Math.abs(c1[ii] - c2[ii]) > TRANSLATION_TOLERANCE) {
+        return false;
+      }
+    }
+    for (int ii = 3; ii < 7; ii++) {
+      if (Math.abs(c1[ii] - c2[ii]) > ROTATION_TOLERANCE) {
+        return false;
+      }
+    }
+    return Math.abs(c1[7] - c2[7]) <= SCALE_TOLERANCE;
+  }
+
+  /**
+   * Computes the midpoint and quantization step of a component over the specified keys.
+   */
+  protected static void computeRange (
+    float[][] frames, int[] keyFrames, int first, int end, int component,
+    float[] ranges, int idx)
+  {
+    float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+    for (int ii = first; ii < end; ii++) {
+      float value = frames[keyFrames[ii]][component];
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+    ranges[idx] = (min + max) * 0.5f;
+    ranges[idx + 1] = (max - min) * 0.5f / Short.MAX_VALUE;
+  }
+
+  /**
+   * Quantizes a value given its range midpoint and step.
+   */
+  protected static short quantize (float value, float mid, float step)
+  {
+    return (step == 0f) ? 0 : (short)Math.max(Short.MIN_VALUE + 1,
+      Math.min(Short.MAX_VALUE, Math.round((value - mid) / step)));
+  }
+
+  /**
+   * Recovers a quantized value given its range midpoint and step.
+   */
+  protected static float dequantize (short value, float mid, float step)
+  {
+    return mid + value*step;
+  }
+
+  /**
+   * Sets a quaternion to the normalized version of the supplied components.
+   */
+  protected static void setNormalized (Quaternion result, float x, float y, float z, float w)
+  {
+    float len = FloatMath.sqrt(x*x + y*y + z*z + w*w);
+    if (len < FloatMath.EPSILON) {
+      result.set(Quaternion.IDENTITY);
+    } else {
+      float rlen = 1f / len;
+      result.set(x*rlen, y*rlen, z*rlen, w*rlen);
+    }
+  }
+
+  /**
+   * Returns the number of quantized values per key for the given (rigid or uniform) type.
+   */
+  protected static int getStride (int type)
+  {
+    return (type == Transform3D.UNIFORM) ? 8 : 7;
+  }
+
+  /**
+   * Grows the supplied array if necessary to hold the specified number of elements.
+   */
+  protected static short[] ensureCapacity (short[] array, int size)
+  {
+    return (array.length >= size) ? array : Arrays.copyOf(array, Math.max(size, array.length*2));
+  }
+
+  /**
+   * Grows the supplied array if necessary to hold the specified number of elements.
+   */
+  protected static float[] ensureCapacity (float[] array, int size)
+  {
+    return (array.length >= size) ? array : Arrays.copyOf(array, Math.max(size, array.length*2));
+  }
+
+  /** The number of frames in the clip. */
+  protected int _frameCount;
+
+  /** The transform type of each track. */
+  protected int[] _types;
+
+  /** The index of each track's first key in {@link #_keyFrames} (plus the end index). */
+  protected int[] _keyStarts;
+
+  /** The frame index of each key, ordered by track and frame. */
+  protected int[] _keyFrames;
+
+  /** The index of each track's first value in {@link #_values} or {@link #_matrices}. */
+  protected int[] _valueStarts;
+
+  /** The quantization midpoint and step of each track's translation and scale components. */
+  protected float[] _ranges;
+
+  /** The quantized translation, rotation, and scale components of the rigid/uniform keys. */
+  protected short[] _values;
+
+  /** The matrix elements of the affine/general keys. */
+  protected float[] _matrices;
+
+  /** The number of range values per track. */
+  protected static final int RANGE_STRIDE = 8;
+
+  /** The number of values per matrix key. */
+  protected static final int MATRIX_STRIDE = 16;
+
+  /** The maximum number of frames between keys (bounds the cost of reduction). */
+  protected static final int MAX_KEY_SPAN = 64;
+
+  /** The tolerance for reconstructed translation components. */
+  protected static final float TRANSLATION_TOLERANCE = 0.0001f;
+
+  /** The tolerance for reconstructed rotation components. */
+  protected static final float ROTATION_TOLERANCE = 0.0001f;
+
+  /** The tolerance for reconstructed scales. */
+  protected static final float SCALE_TOLERANCE = 0.0001f;
+
+  /** The tolerance for reconstructed matrix elements. */
+  protected static final float MATRIX_TOLERANCE = 0.0001f;
+}
@@ -25,6 +25,7 @@
 
 package com.threerings.opengl.model.config;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 import java.util.List;
@@ -40,6 +41,7 @@ import com.threerings.editor.EditorTypes;
 import com.threerings.editor.FileConstraints;
 import com.threerings.editor.util.EditorContext;
 import com.threerings.export.Exportable;
+import com.threerings.export.Importer;
 import com.threerings.expr.Scope;
 import com.threerings.expr.Transform3DExpression;
 import com.threerings.math.Transform3D;
@@ -189,9 +191,9 @@ public class AnimationConfig extends ParameterizedConfig
     @Shallow
     public String[] targets;
 
-    /** The transforms for each target, each frame. */
+    /** The packed transforms for each target, each frame. */
     @Shallow
-    public Transform3D[][] transforms;
+    public AnimationClip clip;
 
     /**
      * Sets the source file from which to load the animation data.
@@ -234,7 +236,7 @@ public class AnimationConfig extends ParameterizedConfig
     public float getDuration ()
     {
       return transition +
-        (transforms == null ? 0f : (transforms.length - 1) / getScaledRate());
+        (clip == null ? 0f : (clip.getFrameCount() - 1) / getScaledRate());
     }
 
     /**
@@ -300,18 +302,21 @@ public class AnimationConfig extends ParameterizedConfig
     }
 
     /**
-     * Returns the modified transform array.  If there are no modifiers then this simply returns
-     * the 2D transforms array.
+     * Returns the modified clip.  If there are no modifiers then this simply returns the
+     * shared clip.
+     */
+    public AnimationClip getModifiedClip (Transform3D[] defaults)
+    {
+      return (modifiers.length == 0) ? clip : new AnimationClip(
+        getModifiedTransforms(defaults), false);
+    }
+
+    /**
+     * Returns the modified transform array, decoded from the clip.
      */
     public Transform3D[][] getModifiedTransforms (Transform3D[] defaults)
     {
-      if (modifiers.length == 0) {
-        return transforms;
-      }
-      Transform3D[][] result = new Transform3D[transforms.length][];
-      for (int ii = 0; ii < result.length; ii++) {
-        result[ii] = transforms[ii].clone();
-      }
+      Transform3D[][] result = clip.decode();
       for (TargetModifier modifier : modifiers) {
         int idx = ArrayUtil.indexOf(targets, modifier.target);
         if (idx != -1) {
@@ -331,12 +336,27 @@ public class AnimationConfig extends ParameterizedConfig
     {
       if (def == null) {
         targets = null;
-        transforms = null;
+        clip = null;
       } else {
         def.update(this);
       }
     }
 
+    /**
+     * Custom read method.
+     */
+    public void readFields (Importer in)
+      throws IOException
+    {
+      in.defaultReadFields();
+
+      // convert unpacked transforms written by older versions
+      Transform3D[][] transforms = in.read("transforms", null, Transform3D[][].class);
+      if (clip == null && transforms != null) {
+        clip = new AnimationClip(transforms);
+      }
+    }
+
     /** The resource from which we read the animation data. */
     protected String _source;
 
@@ -25,17 +25,42 @@
 
 package com.threerings.opengl.model.config;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 import java.lang.ref.SoftReference;
 
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 
 import com.threerings.config.ConfigManager;
 import com.threerings.editor.Editable;
+import com.threerings.export.BinaryExporter;
+import com.threerings.export.BinaryImporter;
+import com.threerings.export.Exportable;
 import com.threerings.expr.Scope;
 import com.threerings.math.Box;
 import com.threerings.math.FloatMath;
@@ -98,6 +123,18 @@ public class MergedStaticConfig extends ModelConfig.Implementation
     GlContext ctx, Scope scope, Model.Implementation impl)
   {
     Resolved resolved = (_resolved == null) ? null : _resolved.get();
+    if (resolved == null && _pending != null && _pendingModels == models) {
+      try {
+        resolved = _pending.get();
+      } catch (Exception e) {
+        log.warning("Failed to resolve merged models in background.", e);
+      }
+      _pending = null;
+      _pendingModels = null;
+      if (resolved != null) {
+        _resolved = new SoftReference<Resolved>(resolved);
+      }
+    }
     if (resolved == null) {
       _resolved = new SoftReference<Resolved>(resolved = resolve(ctx));
     }
@@ -115,19 +152,117 @@ public class MergedStaticConfig extends ModelConfig.Implementation
     _resolved = null;
   }
 
+  /**
+   * Starts resolving the data on the supplied executor, so that when the implementation is next
+   * requested only the creation of buffers remains to be done on the GL thread.  Config and
+   * material lookups happen on the calling thread; merging happens on the executor.  The
+   * result is discarded if the component models are replaced before it is used.
+   *
+   * @param cacheDir if non-null, the directory in which to look for the merged geometry before
+   * merging it, and to which to write the merged geometry if it isn't found.
+   * @param cacheName the prefix of the cache file name, to which is appended a digest of the
+   * resolved component configs and materials (so that editing any of them, or the mapping of
+   * their materials, invalidates the entry).
+   * @return a future that completes when the data has been resolved.
+   */
+  public Future<?> resolveInBackground (
+    GlContext ctx, ExecutorService executor, final File cacheDir, final String cacheName)
+  {
+    final Gathered gathered = gather(ctx);
+    _pendingModels = models;
+    return _pending = executor.submit(new Callable<Resolved>() {
+      public Resolved call () throws Exception {
+        String digest = (cacheDir == null) ? null : gathered.computeDigest();
+        File cacheFile = (digest == null) ?
+          null : new File(cacheDir, cacheName + "-" + digest + ".dat");
+        MergedGeometry merged = (cacheFile == null) ? null : gathered.readCache(cacheFile, digest);
+        if (merged == null) {
+          merged = gathered.merge();
+          if (cacheFile != null) {
+            merged.digest = digest;
+            gathered.writeCache(cacheFile, merged);
+          }
+        }
+        return gathered.createResolved(merged);
+      }
+    });
+  }
+
+  /**
+   * Deletes the least recently used entries from a merged geometry cache directory until its
+   * total size is within the specified limit, along with any temporary files abandoned by
+   * interrupted writes.  This does disk I/O and so should be called off the main thread.
+   */
+  public static void pruneCache (File dir, long maxSize)
+  {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    long now = System.currentTimeMillis(), total = 0L;
+    final Map<File, Long> used = Maps.newHashMap();
+    List<File> entries = Lists.newArrayList();
+    for (File file : files) {
+      String name = file.getName();
+      long modified = file.lastModified();
+      if (name.endsWith(".tmp")) {
+        if (now - modified > STALE_TEMP_AGE) {
+          file.delete();
+        }
+      } else if (name.endsWith(".dat")) {
+        entries.add(file);
+        used.put(file, modified);
+        total += file.length();
+      }
+    }
+    if (total <= maxSize) {
+      return;
+    }
+    // entries are touched when read, so the last modified time is the last used time
+    Collections.sort(entries, new Comparator<File>() {
+      public int compare (File f1, File f2) {
+        return Longs.compare(used.get(f1), used.get(f2));
+      }
+    });
+    for (int ii = 0, nn = entries.size(); ii < nn && total > maxSize; ii++) {
+      File file = entries.get(ii);
+      long length = file.length();
+      if (file.delete()) {
+        total -= length;
+      }
+    }
+  }
+
+  /**
+   * Checks whether a background resolution started with {@link #resolveInBackground} is still
+   * in progress.
+   */
+  public boolean isResolving ()
+  {
+    Future<Resolved> pending = _pending;
+    return pending != null && !pending.isDone();
+  }
+
   /**
    * (Re)resolves the data.
    */
   protected Resolved resolve (GlContext ctx)
   {
-    // process the component models, mapping geometry by material
+    Gathered gathered = gather(ctx);
+    return gathered.createResolved(gathered.merge());
+  }
+
+  /**
+   * Processes the component models, mapping geometry by material.  This requires access to the
+   * config manager and so must be done on the main thread.
+   */
+  protected Gathered gather (GlContext ctx)
+  {
     ConfigManager cfgmgr = ctx.getConfigManager();
+    Gathered gathered = new Gathered(models);
     IdentityHashMap<MaterialConfig, List<TransformedGeometry>> glists =
       Maps.newIdentityHashMap();
     Map<String, MaterialConfig> mmap = Maps.newHashMap();
-    List<TransformedCollision> cmeshes = Lists.newArrayList();
-    final Box bounds = new Box();
-    int influenceFlags = 0;
     for (ComponentModel cmodel : models) {
       ModelConfig config = cfgmgr.getConfig(ModelConfig.class, cmodel.model);
       ModelConfig.Implementation original = (config == null) ? null : config.getOriginal();
@@ -147,9 +282,10 @@ public class MergedStaticConfig extends ModelConfig.Implementation
       if (mset == null) {
         continue;
       }
-      bounds.addLocal(mset.bounds.transform(cmodel.transform));
+      gathered.configs.add(original);
+      gathered.bounds.addLocal(mset.bounds.transform(cmodel.transform));
       if (mset.collision != null) {
-        cmeshes.add(new TransformedCollision(mset.collision, cmodel.transform));
+        gathered.collisions.add(new TransformedCollision(mset.collision, cmodel.transform));
       }
       ModelConfig.Imported imported = (ModelConfig.Imported)original;
       for (VisibleMesh mesh : mset.visible) {
@@ -158,52 +294,247 @@ public class MergedStaticConfig extends ModelConfig.Implementation
         List<TransformedGeometry> glist = glists.get(material);
         if (glist == null) {
           glists.put(material, glist = Lists.newArrayList());
+          gathered.materials.add(material);
+          gathered.geometry.add(glist);
         }
         glist.add(new TransformedGeometry(mesh.geometry, cmodel.transform));
       }
       mmap.clear();
-      influenceFlags |= imported.influences.getFlags();
-    }
-
-    // merge geometry of the same material
-    List<GeometryMaterial> gmats = Lists.newArrayList();
-    for (Map.Entry<MaterialConfig, List<TransformedGeometry>> entry : glists.entrySet()) {
-      MaterialConfig material = entry.getKey();
-      List<TransformedGeometry> glist = entry.getValue();
-      while (!glist.isEmpty()) {
-        GeometryConfig merged = glist.get(0).geometry.merge(glist);
-        if (merged != null) {
-          gmats.add(new GeometryMaterial(merged, material));
-        } else {
-          glist.remove(0);
+      gathered.influenceFlags |= imported.influences.getFlags();
+    }
+    return gathered;
+  }
+
+  /**
+   * The result of merging geometry, in a form that may be cached on disk.
+   */
+  public static class MergedGeometry
+    implements Exportable
+  {
+    /** The digest of the component configs and materials from which the geometry was merged. */
+    public String digest;
+
+    /** The merged geometry. */
+    public GeometryConfig[] geometry;
+
+    /** For each merged geometry, the index of its material in the gathered list. */
+    public int[] materials;
+
+    public MergedGeometry (GeometryConfig[] geometry, int[] materials)
+    {
+      this.geometry = geometry;
+      this.materials = materials;
+    }
+
+    public MergedGeometry ()
+    {
+    }
+  }
+
+  /**
+   * The component model data gathered on the main thread, from which the merged geometry and
+   * resolved data may be created on any thread.
+   */
+  protected static class Gathered
+  {
+    /** The component models. */
+    public final ComponentModel[] models;
+
+    /** The distinct resolved configs of the component models. */
+    public final Set<ModelConfig.Implementation> configs = Sets.newLinkedHashSet();
+
+    /** The combined bounds. */
+    public final Box bounds = new Box();
+
+    /** The collision meshes of the components. */
+    public final List<TransformedCollision> collisions = Lists.newArrayList();
+
+    /** The distinct materials, in the order in which they were encountered. */
+    public final List<MaterialConfig> materials = Lists.newArrayList();
+
+    /** The geometry lists corresponding to each material. */
+    public final List<List<TransformedGeometry>> geometry = Lists.newArrayList();
+
+    /** The combined influence flags. */
+    public int influenceFlags;
+
+    public Gathered (ComponentModel[] models)
+    {
+      this.models = models;
+    }
+
+    /**
+     * Computes a hex-encoded digest of the exported component models, their resolved configs
+     * (including geometry), and the materials in the order in which they were gathered (so that
+     * cached material indices remain valid for any data with the same digest).
+     *
+     * @return the digest, or <code>null</code> if the data couldn't be exported.
+     */
+    public String computeDigest ()
+    {
+      MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-1");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e); // required to be present
+      }
+      OutputStream dout = new DigestOutputStream(ByteStreams.nullOutputStream(), digest);
+      try {
+        BinaryExporter out = new BinaryExporter(dout, false);
+        try {
+          out.writeObject(models);
+          for (ModelConfig.Implementation config : configs) {
+            out.writeObject(config);
+          }
+          for (MaterialConfig material : materials) {
+            out.writeObject(material);
+          }
+        } finally {
+          out.close();
+        }
+      } catch (Exception e) {
+        log.warning("Failed to compute merged geometry digest.", e);
+        return null;
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+        hex.append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    }
+
+    /**
+     * Merges the geometry of each material.  This consumes the geometry lists.
+     */
+    public MergedGeometry merge ()
+    {
+      List<GeometryConfig> merged = Lists.newArrayList();
+      List<Integer> indices = Lists.newArrayList();
+      for (int ii = 0, nn = geometry.size(); ii < nn; ii++) {
+        List<TransformedGeometry> glist = geometry.get(ii);
+        while (!glist.isEmpty()) {
+          GeometryConfig geom = glist.get(0).geometry.merge(glist);
+          if (geom != null) {
+            merged.add(geom);
+            indices.add(ii);
+          } else {
+            glist.remove(0);
+          }
         }
       }
+      return new MergedGeometry(merged.toArray(new GeometryConfig[merged.size()]),
+        Ints.toArray(indices));
     }
 
-    // create the combined collision mesh
-    final TransformedCollision[] tcollisions = cmeshes.toArray(
-      new TransformedCollision[cmeshes.size()]);
-    CollisionMesh collision = new CollisionMesh() {
-      @Override public Box getBounds () {
-        return bounds;
+    /**
+     * Reads previously merged geometry from the specified file, marking it as recently used.
+     *
+     * @param digest the {@link #computeDigest digest} of the data being merged.
+     * @return the merged geometry, or <code>null</code> if the file is absent, unreadable, or
+     * was written for different data.
+     */
+    public MergedGeometry readCache (File file, String digest)
+    {
+      if (!file.exists()) {
+        return null;
       }
-      @Override public boolean getIntersection (Ray3D ray, Vector3f result) {
-        // check the component meshes (transforming the ray into their space and back out
-        // again if we detect a hit)
-        Vector3f closest = result;
-        for (TransformedCollision tcoll : tcollisions) {
-          if (tcoll.bounds.intersects(ray) && tcoll.collision.getIntersection(
-              ray.transform(tcoll.invTransform), result)) {
-            tcoll.transform.transformPointLocal(result);
-            result = FloatMath.updateClosest(ray.getOrigin(), result, closest);
+      try {
+        BinaryImporter in = new BinaryImporter(
+          new BufferedInputStream(new FileInputStream(file)));
+        try {
+          MergedGeometry merged = (MergedGeometry)in.readObject();
+          if (!digest.equals(merged.digest) || merged.geometry == null ||
+              merged.materials == null || merged.materials.length != merged.geometry.length) {
+            return null;
           }
+          for (int index : merged.materials) {
+            if (index < 0 || index >= materials.size()) {
+              return null;
+            }
+          }
+          file.setLastModified(System.currentTimeMillis());
+          return merged;
+        } finally {
+          in.close();
         }
-        // if we ever changed the result reference, that means we hit something
-        return (result != closest);
+      } catch (Exception e) {
+        log.warning("Failed to read merged geometry cache.", "file", file, e);
+        return null;
+      }
+    }
+
+    /**
+     * Writes merged geometry to the specified file.  The data is written to a temporary file
+     * that is then renamed, so that readers never see a partially written entry.
+     */
+    public void writeCache (File file, MergedGeometry merged)
+    {
+      File dir = file.getParentFile();
+      if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+        log.warning("Failed to create merged geometry cache directory.", "dir", dir);
+        return;
       }
-    };
-    return new Resolved(bounds, collision,
-      gmats.toArray(new GeometryMaterial[gmats.size()]), influenceFlags);
+      File temp = null;
+      try {
+        temp = File.createTempFile(file.getName(), ".tmp", dir);
+        BinaryExporter out = new BinaryExporter(
+          new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+          out.writeObject(merged);
+        } finally {
+          out.close();
+        }
+        // on some platforms, renaming won't replace an existing file
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+          throw new IOException("Failed to rename temporary file [file=" + temp + "].");
+        }
+        temp = null;
+      } catch (IOException e) {
+        log.warning("Failed to write merged geometry cache.", "file", file, e);
+      } finally {
+        if (temp != null) {
+          temp.delete();
+        }
+      }
+    }
+
+    /**
+     * Creates the resolved data from the supplied merged geometry.
+     */
+    public Resolved createResolved (MergedGeometry merged)
+    {
+      GeometryMaterial[] gmats = new GeometryMaterial[merged.geometry.length];
+      for (int ii = 0; ii < gmats.length; ii++) {
+        gmats[ii] = new GeometryMaterial(
+          merged.geometry[ii], materials.get(merged.materials[ii]));
+      }
+
+      // create the combined collision mesh
+      final Box bounds = this.bounds;
+      final TransformedCollision[] tcollisions = collisions.toArray(
+        new TransformedCollision[collisions.size()]);
+      CollisionMesh collision = new CollisionMesh() {
+        @Override public Box getBounds () {
+          return bounds;
+        }
+        @Override public boolean getIntersection (Ray3D ray, Vector3f result) {
+          // check the component meshes (transforming the ray into their space and back out
+          // again if we detect a hit)
+          Vector3f closest = result;
+          for (TransformedCollision tcoll : tcollisions) {
+            if (tcoll.bounds.intersects(ray) && tcoll.collision.getIntersection(
+                ray.transform(tcoll.invTransform), result)) {
+              tcoll.transform.transformPointLocal(result);
+              result = FloatMath.updateClosest(ray.getOrigin(), result, closest);
+            }
+          }
+          // if we ever changed the result reference, that means we hit something
+          return (result != closest);
+        }
+      };
+      return new Resolved(bounds, collision, gmats, influenceFlags);
+    }
   }
 
   /**
@@ -232,7 +563,18 @@ public class MergedStaticConfig extends ModelConfig.Implementation
     }
   }
 
+  /** Temporary cache files older than this (in milliseconds) are considered abandoned. */
+  protected static final long STALE_TEMP_AGE = 60L * 60L * 1000L;
+
   /** The cached resolved config bits. */
   @DeepOmit
   protected transient SoftReference<Resolved> _resolved;
+
+  /** The result of the background resolution in progress, if any. */
+  @DeepOmit
+  protected transient volatile Future<Resolved> _pending;
+
+  /** The component model array for which the background resolution was started. */
+  @DeepOmit
+  protected transient ComponentModel[] _pendingModels;
 }
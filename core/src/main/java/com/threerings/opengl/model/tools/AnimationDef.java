@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import com.threerings.math.Transform3D;
+import com.threerings.opengl.model.config.AnimationClip;
 import com.threerings.opengl.model.config.AnimationConfig;
 
 import static com.threerings.opengl.Log.log;
@@ -111,8 +112,8 @@ public class AnimationDef
   {
     config.rate = frameRate;
     config.targets = getTargets();
-    config.transforms = getTransforms(
-      config.targets, config.scale, config.loop && config.skipLastFrame);
+    config.clip = new AnimationClip(getTransforms(
+      config.targets, config.scale, config.loop && config.skipLastFrame));
   }
 
   /**
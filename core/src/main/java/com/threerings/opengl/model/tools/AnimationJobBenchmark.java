@@ -0,0 +1,301 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model.tools;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.model.AnimationJobs;
+import com.threerings.opengl.model.Articulated;
+import com.threerings.opengl.model.config.AnimationClip;
+import com.threerings.opengl.model.config.ArticulatedConfig;
+import com.threerings.opengl.util.GlContext;
+
+/**
+ * A headless benchmark for {@link AnimationJobs}.  Creates a number of synthetic skeletons
+ * playing a synthetic clip and times the sample/world transform/bone matrix pass, first
+ * serially and then through the job system.  No display is required: the nodes are given a
+ * stub context, since they only use it for rendering.
+ */
+public class AnimationJobBenchmark
+{
+  /**
+   * Runs the benchmark.
+   */
+  public static void main (String[] args)
+  {
+    int skeletons = 200, bones = 60, frames = 600;
+    int threads = Runtime.getRuntime().availableProcessors();
+    try {
+      for (int ii = 0; ii < args.length; ii++) {
+        String arg = args[ii];
+        if (arg.equals("-m")) {
+          skeletons = Integer.parseInt(args[++ii]);
+        } else if (arg.equals("-b")) {
+          bones = Integer.parseInt(args[++ii]);
+        } else if (arg.equals("-f")) {
+          frames = Integer.parseInt(args[++ii]);
+        } else if (arg.equals("-t")) {
+          threads = Integer.parseInt(args[++ii]);
+        } else {
+          throw new IllegalArgumentException(arg);
+        }
+      }
+    } catch (RuntimeException e) {
+      System.err.println("Usage: AnimationJobBenchmark [-options]");
+      System.err.println();
+      System.err.println("where options include:");
+      System.err.println("    -m <models>   number of skeletons (default 200)");
+      System.err.println("    -b <bones>    bones per skeleton (default 60)");
+      System.err.println("    -f <frames>   number of frames to run (default 600)");
+      System.err.println("    -t <threads>  posing threads (default available processors)");
+      System.exit(1);
+    }
+
+    // create the shared skeleton and clip
+    Random random = new Random(1L);
+    ArticulatedConfig.Node root = createSkeleton(random, bones);
+    root.updateRefTransforms(new Transform3D());
+    AnimationClip clip = createClip(random, bones, 120);
+    System.out.println("Clip: " + clip.getTrackCount() + " tracks, " + clip.getFrameCount() +
+      " frames, " + clip.getKeyCount() + " keys.");
+
+    // create the instances
+    GlContext ctx = createStubContext();
+    Skeleton[] instances = new Skeleton[skeletons];
+    for (int ii = 0; ii < skeletons; ii++) {
+      instances[ii] = new Skeleton(ctx, root, clip, random.nextFloat() * clip.getFrameCount());
+    }
+
+    // run serially, then through the jobs
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    AnimationJobs jobs = new AnimationJobs(pool);
+    report("Serial", run(instances, null, frames), skeletons, frames);
+    report("Jobs (" + threads + " threads)", run(instances, jobs, frames), skeletons, frames);
+    pool.shutdown();
+  }
+
+  /**
+   * Runs the specified number of frames (plus a warmup) and returns the elapsed nanoseconds.
+   */
+  protected static long run (Skeleton[] instances, AnimationJobs jobs, int frames)
+  {
+    long start = 0L;
+    for (int ii = -frames / 4; ii < frames; ii++) {
+      if (ii == 0) {
+        start = System.nanoTime();
+      }
+      for (Skeleton instance : instances) {
+        instance.tick(FRAME_INTERVAL);
+        if (jobs == null) {
+          instance.pose();
+          instance.finish();
+        } else {
+          jobs.add(instance);
+        }
+      }
+      if (jobs != null) {
+        jobs.run();
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Prints the results of a run.
+   */
+  protected static void report (String label, long elapsed, int skeletons, int frames)
+  {
+    double millis = elapsed / 1000000.0 / frames;
+    System.out.printf("%s: %.3f ms/frame, %.2f us/skeleton%n",
+      label, millis, millis * 1000.0 / skeletons);
+  }
+
+  /**
+   * Creates a random skeleton with the specified number of nodes.
+   */
+  protected static ArticulatedConfig.Node createSkeleton (Random random, int count)
+  {
+    ArrayList<ArrayList<ArticulatedConfig.Node>> children =
+      new ArrayList<ArrayList<ArticulatedConfig.Node>>();
+    ArticulatedConfig.Node[] nodes = new ArticulatedConfig.Node[count];
+    int[] parents = new int[count];
+    for (int ii = 0; ii < count; ii++) {
+      nodes[ii] = new ArticulatedConfig.Node("bone" + ii, new Transform3D(
+        new Vector3f(0f, 0f, 0.2f), randomRotation(random, 0.5f)), null);
+      children.add(new ArrayList<ArticulatedConfig.Node>());
+      if (ii > 0) {
+        // attach to a recent node so that we get chains with some branching
+        parents[ii] = Math.max(0, ii - 1 - random.nextInt(4));
+        children.get(parents[ii]).add(nodes[ii]);
+      }
+    }
+    for (int ii = 0; ii < count; ii++) {
+      ArrayList<ArticulatedConfig.Node> list = children.get(ii);
+      nodes[ii].children = list.toArray(new ArticulatedConfig.Node[list.size()]);
+    }
+    return nodes[0];
+  }
+
+  /**
+   * Creates a random clip for a skeleton with the specified number of nodes.
+   */
+  protected static AnimationClip createClip (Random random, int tracks, int frames)
+  {
+    Transform3D[][] transforms = new Transform3D[frames][tracks];
+    for (int ii = 0; ii < tracks; ii++) {
+      float amplitude = random.nextFloat(), phase = random.nextFloat() * FloatMath.TWO_PI;
+      Vector3f axis = new Vector3f(
+        random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat()).normalizeLocal();
+      for (int jj = 0; jj < frames; jj++) {
+        float angle = amplitude * FloatMath.sin(phase + jj * FloatMath.TWO_PI / frames);
+        transforms[jj][ii] = new Transform3D(
+          new Vector3f(0f, 0f, 0.2f), new Quaternion().fromAngleAxis(angle, axis));
+      }
+    }
+    return new AnimationClip(transforms);
+  }
+
+  /**
+   * Returns a random rotation of up to the specified angle.
+   */
+  protected static Quaternion randomRotation (Random random, float max)
+  {
+    return new Quaternion().fromAngleAxis(random.nextFloat() * max,
+      new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).normalizeLocal());
+  }
+
+  /**
+   * Creates a context whose methods all return null (or the default primitive values).
+   */
+  protected static GlContext createStubContext ()
+  {
+    return (GlContext)Proxy.newProxyInstance(
+      GlContext.class.getClassLoader(), new Class<?>[] { GlContext.class },
+      new InvocationHandler() {
+        public Object invoke (Object proxy, Method method, Object[] args) {
+          Class<?> type = method.getReturnType();
+          if (type == Boolean.TYPE) {
+            return false;
+          } else if (type == Float.TYPE) {
+            return 0f;
+          } else if (type.isPrimitive() && type != Void.TYPE) {
+            return 0;
+          }
+          return null;
+        }
+      });
+  }
+
+  /**
+   * A synthetic skeleton playing a clip.
+   */
+  protected static class Skeleton
+    implements AnimationJobs.Job
+  {
+    /**
+     * Creates a new skeleton.
+     */
+    public Skeleton (
+      GlContext ctx, ArticulatedConfig.Node root, AnimationClip clip, float offset)
+    {
+      ArrayList<Articulated.Node> nodes = new ArrayList<Articulated.Node>();
+      root.getArticulatedNodes(
+        ctx, null, new IdentityHashMap<ArticulatedConfig.Node, Articulated.Node>(),
+        nodes, _worldTransform, _viewTransform);
+      _nodes = nodes.toArray(new Articulated.Node[nodes.size()]);
+      _bones = new Transform3D[_nodes.length];
+      for (int ii = 0; ii < _bones.length; ii++) {
+        _bones[ii] = new Transform3D(Transform3D.AFFINE);
+      }
+      _clip = clip;
+      _time = offset;
+    }
+
+    /**
+     * Advances the animation time.
+     */
+    public void tick (float elapsed)
+    {
+      _time = (_time + elapsed * FRAME_RATE) % _clip.getFrameCount();
+    }
+
+    // documentation inherited from interface AnimationJobs.Job
+    public void pose ()
+    {
+      int frame = (int)_time;
+      float t = _time - frame;
+      for (int ii = 0; ii < _nodes.length; ii++) {
+        Articulated.Node node = _nodes[ii];
+        _clip.sample(ii, frame, t, node.getLocalTransform());
+        node.update();
+        node.getWorldTransform().compose(node.getConfig().invRefTransform, _bones[ii]);
+        _bones[ii].update(Transform3D.AFFINE);
+      }
+    }
+
+    // documentation inherited from interface AnimationJobs.Job
+    public void finish ()
+    {
+      // nothing to do
+    }
+
+    /** The skeleton nodes, in the order of the clip tracks. */
+    protected Articulated.Node[] _nodes;
+
+    /** The bone transforms. */
+    protected Transform3D[] _bones;
+
+    /** The clip being played. */
+    protected AnimationClip _clip;
+
+    /** The current time in frames. */
+    protected float _time;
+
+    /** The skeleton's world transform. */
+    protected Transform3D _worldTransform = new Transform3D();
+
+    /** The skeleton's view transform. */
+    protected Transform3D _viewTransform = new Transform3D(Transform3D.UNIFORM);
+  }
+
+  /** The simulated interval between frames. */
+  protected static final float FRAME_INTERVAL = 1f / 60f;
+
+  /** The frame rate of the synthetic clip. */
+  protected static final float FRAME_RATE = 30f;
+}
@@ -25,6 +25,8 @@
 
 package com.threerings.opengl.renderer;
 
+import java.util.Arrays;
+
 /**
  * A geometry batch that can be queued for rendering.
  */
@@ -49,6 +51,60 @@ public abstract class Batch
     return 0;
   }
 
+  /**
+   * Returns the interned rank of the specified state key: keys that compare equal under
+   * {@link #compareKeys} share a rank, and the ranks of distinct keys order as the keys do.
+   * Looking up a known key is a binary search; a previously unseen key is copied into the
+   * table, shifting the ranks of the keys after it (see {@link #getStateVersion}).  Like the
+   * rest of the renderer, this should only be called from the rendering thread.
+   */
+  public static int getStateRank (int[] key)
+  {
+    int low = 0, high = _stateCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int comp = compareKeys(_stateKeys[mid], key);
+      if (comp < 0) {
+        low = mid + 1;
+      } else if (comp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    if (_stateCount == _stateKeys.length) {
+      _stateKeys = Arrays.copyOf(_stateKeys, _stateCount * 2);
+    }
+    System.arraycopy(_stateKeys, low, _stateKeys, low + 1, _stateCount - low);
+    _stateKeys[low] = (key == null) ? new int[0] : key.clone();
+    _stateCount++;
+    _stateVersion++;
+    return low;
+  }
+
+  /**
+   * Returns a counter that changes whenever the state ranks change, so that callers holding
+   * ranks can tell whether they're still comparable to newly obtained ones.
+   */
+  public static int getStateVersion ()
+  {
+    return _stateVersion;
+  }
+
+  /**
+   * Clears the table of interned state keys if it has grown past its limit (as it will over
+   * time, since the keys include the ids of textures and buffers that come and go).  This
+   * should be called between frames, because it invalidates all ranks.
+   */
+  public static void pruneStateKeys ()
+  {
+    if (_stateCount > MAX_STATE_KEYS) {
+      Arrays.fill(_stateKeys, 0, _stateCount, null);
+      _stateCount = 0;
+      _stateVersion++;
+    }
+  }
+
   /** The batch's eye space z coordinate (negative if in front of the viewer). */
   public float depth;
 
@@ -70,6 +126,29 @@ public abstract class Batch
     return 0;
   }
 
+  /**
+   * Returns the rank of this batch's state key (see {@link #getStateRank(int[])}).  The rank
+   * is cached until the key is replaced or the ranks change; code that modifies the key in
+   * place must call {@link #invalidateStateRank}.
+   */
+  public int getStateRank ()
+  {
+    if (_rankedKey != key || _rankVersion != _stateVersion) {
+      _stateRank = getStateRank(key);
+      _rankedKey = key;
+      _rankVersion = _stateVersion;
+    }
+    return _stateRank;
+  }
+
+  /**
+   * Notes that the batch's state key has been modified in place.
+   */
+  public void invalidateStateRank ()
+  {
+    _rankVersion = -1;
+  }
+
   @Override
   public Batch clone ()
   {
@@ -81,4 +160,25 @@ public abstract class Batch
       throw new AssertionError(e);
     }
   }
+
+  /** The key for which we cached the rank. */
+  protected int[] _rankedKey;
+
+  /** The cached rank of the key. */
+  protected int _stateRank;
+
+  /** The state version at which we cached the rank, or -1 if the cache is invalid. */
+  protected int _rankVersion = -1;
+
+  /** The interned state keys, in sorted order. */
+  protected static int[][] _stateKeys = new int[64][];
+
+  /** The number of interned state keys. */
+  protected static int _stateCount;
+
+  /** Incremented whenever the state ranks change. */
+  protected static int _stateVersion;
+
+  /** The number of interned state keys beyond which we clear the table between frames. */
+  protected static final int MAX_STATE_KEYS = 4096;
 }
@@ -454,6 +454,7 @@ public class SimpleBatch extends Batch
     } else {
       key[idx++] = 0;
     }
+    invalidateStateRank();
   }
 
   @Override
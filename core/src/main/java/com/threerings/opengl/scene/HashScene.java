@@ -36,6 +36,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import com.threerings.math.Box;
+import com.threerings.math.BoxArray;
 import com.threerings.math.FloatMath;
 import com.threerings.math.Frustum;
 import com.threerings.math.Ray3D;
@@ -93,6 +94,18 @@ public class HashScene extends Scene
     // increment the visit counter
     _visit++;
 
+    // if the frustum has moved, the nodes' cached intersection types are no longer valid
+    Vector3f[] vertices = frustum.getVertices();
+    for (int ii = 0; ii < vertices.length; ii++) {
+      if (!_cullVertices[ii].equals(vertices[ii])) {
+        for (int jj = ii; jj < vertices.length; jj++) {
+          _cullVertices[jj].set(vertices[jj]);
+        }
+        _cullEpoch++;
+        break;
+      }
+    }
+
     // visit the intersecting roots
     frustum.getBounds().intersect(_bounds, _box);
     Vector3f min = _box.getMinimumExtent(), max = _box.getMaximumExtent();
@@ -208,14 +221,14 @@ public class HashScene extends Scene
   }
 
   @Override
-  public void boundsWillChange (SceneElement element)
+  public synchronized void boundsWillChange (SceneElement element)
   {
     super.boundsWillChange(element);
     removeFromSpatial(element);
   }
 
   @Override
-  public void boundsDidChange (SceneElement element)
+  public synchronized void boundsDidChange (SceneElement element)
   {
     super.boundsDidChange(element);
     addToSpatial(element);
@@ -474,11 +487,10 @@ public class HashScene extends Scene
    */
   protected <T extends SceneObject> Node<T> getFromNodePool (int levels)
   {
-    if (levels > 1) {
-      return getFromInternalNodePool(levels - 1);
-    } else {
-      return getFromLeafNodePool();
-    }
+    Node<T> node = (levels > 1) ? this.<T>getFromInternalNodePool(levels - 1) :
+      this.<T>getFromLeafNodePool();
+    node._cullEpoch = 0; // the bounds will change
+    return node;
   }
 
   /**
@@ -537,6 +549,7 @@ public class HashScene extends Scene
     public void add (T object, int level)
     {
       _objects.add(object);
+      _objectBounds.add(object.getBounds());
     }
 
     /**
@@ -544,7 +557,11 @@ public class HashScene extends Scene
      */
     public void remove (T object, int level)
     {
-      _objects.remove(object);
+      int idx = _objects.indexOf(object);
+      if (idx != -1) {
+        _objects.remove(idx);
+        _objectBounds.remove(idx);
+      }
     }
 
     /**
@@ -552,7 +569,12 @@ public class HashScene extends Scene
      */
     public void composite (Frustum frustum)
     {
-      Frustum.IntersectionType type = frustum.getIntersectionType(_bounds);
+      // reuse the last intersection type if the frustum hasn't moved since
+      Frustum.IntersectionType type = _cullType;
+      if (_cullEpoch != HashScene.this._cullEpoch) {
+        _cullType = type = frustum.getIntersectionType(_bounds);
+        _cullEpoch = HashScene.this._cullEpoch;
+      }
       if (type == Frustum.IntersectionType.CONTAINS) {
         compositeAll();
       } else if (type == Frustum.IntersectionType.INTERSECTS) {
@@ -615,11 +637,18 @@ public class HashScene extends Scene
      */
     protected void compositeIntersecting (Frustum frustum)
     {
-      for (int ii = 0, nn = _objects.size(); ii < nn; ii++) {
+      int nn = _objects.size();
+      if (nn == 0) {
+        return;
+      }
+      if (_cullTypes.length < nn) {
+        _cullTypes = new Frustum.IntersectionType[Math.max(nn, _cullTypes.length * 2)];
+      }
+      Frustum.IntersectionType[] types = _cullTypes;
+      frustum.getIntersectionTypes(_objectBounds, types);
+      for (int ii = 0; ii < nn; ii++) {
         T object = _objects.get(ii);
-        if (object.updateLastVisit(_visit) &&
-            frustum.getIntersectionType(object.getBounds()) !=
-              Frustum.IntersectionType.NONE) {
+        if (types[ii] != Frustum.IntersectionType.NONE && object.updateLastVisit(_visit)) {
           HashScene.this.composite((SceneElement)object);
         }
       }
@@ -656,6 +685,15 @@ public class HashScene extends Scene
 
     /** The objects in the node. */
     public ArrayList<T> _objects = new ArrayList<T>(4);
+
+    /** The bounds of the objects at the time they were added, in the same order. */
+    public BoxArray _objectBounds = new BoxArray();
+
+    /** The intersection type of the node as of the last cull. */
+    public Frustum.IntersectionType _cullType;
+
+    /** The cull epoch in which {@link #_cullType} was determined. */
+    public int _cullEpoch;
   }
 
   /**
@@ -953,6 +991,17 @@ public class HashScene extends Scene
   /** The visit counter. */
   protected int _visit;
 
+  /** Incremented whenever the frustum moves, invalidating the nodes' cached cull results. */
+  protected int _cullEpoch = 1;
+
+  /** The vertices of the frustum as of the last composite. */
+  protected Vector3f[] _cullVertices = {
+    new Vector3f(), new Vector3f(), new Vector3f(), new Vector3f(),
+    new Vector3f(), new Vector3f(), new Vector3f(), new Vector3f() };
+
+  /** Holds the intersection types of the objects in a node while compositing. */
+  protected Frustum.IntersectionType[] _cullTypes = new Frustum.IntersectionType[0];
+
   /** A reusable coord object for queries. */
   protected Coord _coord = new Coord();
 
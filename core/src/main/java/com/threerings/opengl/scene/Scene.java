@@ -25,17 +25,18 @@
 
 package com.threerings.opengl.scene;
 
-import java.lang.ref.SoftReference;
-
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
-import com.google.common.collect.Maps;
 
 import com.threerings.config.ConfigReference;
 import com.threerings.expr.DynamicScope;
@@ -50,6 +51,7 @@ import com.threerings.math.Vector3f;
 import com.threerings.openal.SoundGroup;
 import com.threerings.openal.SoundClipManager;
 import com.threerings.opengl.compositor.Compositable;
+import com.threerings.opengl.model.AnimationJobs;
 import com.threerings.opengl.model.Model;
 import com.threerings.opengl.model.ModelAdapter;
 import com.threerings.opengl.model.config.ModelConfig;
@@ -159,16 +161,15 @@ public abstract class Scene extends DynamicScope
   @Scoped
   public Transient getFromTransientPool (ConfigReference<ModelConfig> ref)
   {
-    ArrayList<SoftReference<Transient>> list = _transientPool.get(ref);
+    ArrayList<Transient> list = _transientPool.get(ref);
     if (list != null) {
-      for (int ii = list.size() - 1; ii >= 0; ii--) {
-        Transient model = list.remove(ii).get();
-        if (model != null) {
-          model.reset();
-          return model;
-        }
+      Transient model = list.remove(list.size() - 1);
+      if (list.isEmpty()) {
+        _transientPool.remove(ref);
       }
-      _transientPool.remove(ref);
+      _pooledTransients--;
+      model.reset();
+      return model;
     }
     Transient model = new Transient(_ctx, ref);
     model.setParentScope(this);
@@ -187,11 +188,21 @@ public abstract class Scene extends DynamicScope
     model.setUpdater(null);
 
     ConfigReference<?> ref = (ConfigReference<?>)model.getUserObject();
-    ArrayList<SoftReference<Transient>> list = _transientPool.get(ref);
+    ArrayList<Transient> list = _transientPool.get(ref);
     if (list == null) {
-      _transientPool.put(ref, list = new ArrayList<SoftReference<Transient>>());
+      _transientPool.put(ref, list = new ArrayList<Transient>());
+    }
+    list.add(model);
+
+    // if we've exceeded the limit, drop models of the least recently used configs
+    if (++_pooledTransients > MAX_POOLED_TRANSIENTS) {
+      Iterator<ArrayList<Transient>> it = _transientPool.values().iterator();
+      while (_pooledTransients > MAX_POOLED_TRANSIENTS) {
+        ArrayList<Transient> eldest = it.next();
+        _pooledTransients -= eldest.size();
+        it.remove();
+      }
     }
-    list.add(new SoftReference<Transient>(model));
   }
 
   /**
@@ -411,6 +422,61 @@ public abstract class Scene extends DynamicScope
     return _visibleTickTime;
   }
 
+  /**
+   * Sets the pool on which to tick the elements that declare themselves
+   * {@link SceneElement#isTickIsolated isolated}, or null to tick everything on the calling
+   * thread (the default).
+   */
+  public void setTickPool (ForkJoinPool pool)
+  {
+    _tickPool = pool;
+  }
+
+  /**
+   * Returns the pool on which isolated elements are ticked, if any.
+   */
+  public ForkJoinPool getTickPool ()
+  {
+    return _tickPool;
+  }
+
+  /**
+   * Sets the job system to which articulated models directly in the scene may defer their
+   * posing, or null to pose each model as it ticks (the default).  The deferred poses are
+   * computed after all elements have ticked, so models only defer if no other element reads
+   * their node transforms (see {@link Model#getPointWorldTransform}); the rest pose as they
+   * tick, and elements ticked after them see their current pose.
+   */
+  public void setAnimationJobs (AnimationJobs jobs)
+  {
+    _animationJobs = jobs;
+  }
+
+  /**
+   * Returns the animation job system, if any.
+   */
+  public AnimationJobs getAnimationJobs ()
+  {
+    return _animationJobs;
+  }
+
+  /**
+   * Returns the number of isolated elements ticked concurrently on the last tick.
+   */
+  public int getParallelTickCount ()
+  {
+    return _parallelTickCount;
+  }
+
+  /**
+   * Returns the time elapsed to process the isolated elements concurrently and to run the
+   * animation jobs.
+   */
+  public long getParallelTickTime ()
+  {
+    return _parallelTickTime;
+  }
+
   /**
    * Returns the size of the set of elements whose influences must be updated.
    */
@@ -472,15 +538,16 @@ public abstract class Scene extends DynamicScope
    * Notes that the specified scene element's bounds are about to change.  Will be followed by a
    * call to {@link #boundsDidChange(SceneElement)} when the change has been effected.
    */
-  public void boundsWillChange (SceneElement element)
+  public synchronized void boundsWillChange (SceneElement element)
   {
     // nothing by default
   }
 
   /**
-   * Notes that the specified scene element's bounds have changed.
+   * Notes that the specified scene element's bounds have changed.  Synchronized because
+   * isolated elements may call this from the tick pool.
    */
-  public void boundsDidChange (SceneElement element)
+  public synchronized void boundsDidChange (SceneElement element)
   {
     // add to update list
     _updateInfluences.add(element);
@@ -548,10 +615,16 @@ public abstract class Scene extends DynamicScope
       log.info("INFLUENCES!!!");
     }
     // tick the elements that we always tick (in reverse order,
-    // so that they can remove themselves)
+    // so that they can remove themselves), deferring the isolated ones if we have a pool
+    boolean parallel = (_tickPool != null);
     long tick = System.nanoTime();
     for (int ii = _alwaysTick.size() - 1; ii >= 0; ii--) {
-      _alwaysTick.get(ii).tick(elapsed);
+      SceneElement element = _alwaysTick.get(ii);
+      if (parallel && element.isTickIsolated()) {
+        addIsolated(element);
+      } else {
+        element.tick(elapsed);
+      }
     }
     long tock = System.nanoTime();
     _alwaysTickTime = tock - tick;
@@ -559,13 +632,36 @@ public abstract class Scene extends DynamicScope
     // tick the visible tick-when-visible elements
     if (!_visible.isEmpty()) {
       for (SceneElement element : _visible.toArray(new SceneElement[_visible.size()])) {
-        element.tick(elapsed);
+        if (parallel && element.isTickIsolated()) {
+          addIsolated(element);
+        } else {
+          element.tick(elapsed);
+        }
       }
       _visible.clear();
     }
     tick = System.nanoTime();
     _visibleTickTime = tick - tock;
 
+    // tick the isolated elements concurrently
+    _parallelTickCount = _isolatedCount;
+    if (_isolatedCount > 0) {
+      try {
+        _tickPool.invoke(new TickTask(_isolated, 0, _isolatedCount, elapsed));
+      } finally {
+        Arrays.fill(_isolated, 0, _isolatedCount, null);
+        _isolatedCount = 0;
+      }
+    }
+
+    // pose the models that deferred their posing
+    if (_animationJobs != null) {
+      _animationJobs.run();
+    }
+    tock = System.nanoTime();
+    _parallelTickTime = tock - tick;
+    tick = tock;
+
     // find the effects acting on the viewer
     Vector3f location = _ctx.getCameraHandler().getViewerTranslation();
     getEffects(_viewer.set(location, location), _neffects);
@@ -651,6 +747,17 @@ public abstract class Scene extends DynamicScope
     _ctx.getCompositor().setBackgroundColor(_effects.getBackgroundColor(_viewer));
   }
 
+  /**
+   * Adds an element to the list of isolated elements to tick concurrently.
+   */
+  protected void addIsolated (SceneElement element)
+  {
+    if (_isolatedCount == _isolated.length) {
+      _isolated = Arrays.copyOf(_isolated, Math.max(16, _isolated.length * 2));
+    }
+    _isolated[_isolatedCount++] = element;
+  }
+
   /**
    * Adds an element to the scene's tick data structure.
    */
@@ -783,6 +890,44 @@ public abstract class Scene extends DynamicScope
   }
 
 
+  /**
+   * Ticks a range of isolated elements, splitting it between workers.
+   */
+  protected static class TickTask extends RecursiveAction
+  {
+    public TickTask (SceneElement[] elements, int start, int end, float elapsed)
+    {
+      _elements = elements;
+      _start = start;
+      _end = end;
+      _elapsed = elapsed;
+    }
+
+    @Override
+    protected void compute ()
+    {
+      if (_end - _start <= PARALLEL_TICK_GRANULARITY) {
+        for (int ii = _start; ii < _end; ii++) {
+          _elements[ii].tick(_elapsed);
+        }
+      } else {
+        int mid = (_start + _end) >>> 1;
+        invokeAll(
+          new TickTask(_elements, _start, mid, _elapsed),
+          new TickTask(_elements, mid, _end, _elapsed));
+      }
+    }
+
+    /** The elements to tick. */
+    protected SceneElement[] _elements;
+
+    /** The range of elements to tick. */
+    protected int _start, _end;
+
+    /** The elapsed time. */
+    protected float _elapsed;
+  }
+
   /** The application context. */
   protected GlContext _ctx;
 
@@ -792,6 +937,21 @@ public abstract class Scene extends DynamicScope
   /** The visible elements to tick. */
   protected HashSet<SceneElement> _visible = new HashSet<SceneElement>();
 
+  /** The pool on which to tick isolated elements, if any. */
+  protected ForkJoinPool _tickPool;
+
+  /** Holds the isolated elements to tick concurrently. */
+  protected SceneElement[] _isolated = new SceneElement[0];
+
+  /** The number of isolated elements in {@link #_isolated}. */
+  protected int _isolatedCount;
+
+  /** The number of isolated elements ticked concurrently on the last tick. */
+  protected int _parallelTickCount;
+
+  /** The job system to which articulated models may defer their posing, if any. */
+  protected AnimationJobs _animationJobs;
+
   /** The elements whose influence sets must be updated. */
   protected HashSet<SceneElement> _updateInfluences = new HashSet<SceneElement>();
 
@@ -804,9 +964,12 @@ public abstract class Scene extends DynamicScope
   /** The effects currently acting on the viewer. */
   protected ViewerEffectSet _effects = new ViewerEffectSet();
 
-  /** Pooled transient models. */
-  protected HashMap<ConfigReference<?>, ArrayList<SoftReference<Transient>>> _transientPool =
-    Maps.newHashMap();
+  /** Pooled transient models, in order of config access. */
+  protected LinkedHashMap<ConfigReference<?>, ArrayList<Transient>> _transientPool =
+    new LinkedHashMap<ConfigReference<?>, ArrayList<Transient>>(16, 0.75f, true);
+
+  /** The total number of pooled transient models. */
+  protected int _pooledTransients;
 
   /** Removes transient models and returns them to the pool when they complete. */
   protected ModelAdapter _transientObserver = new ModelAdapter() {
@@ -846,9 +1009,18 @@ public abstract class Scene extends DynamicScope
   /** The time delta's during the tick. */
   protected long _alwaysTickTime, _visibleTickTime, _updateInfluencesTime, _viewerEffectTime;
 
+  /** The time spent ticking the isolated elements concurrently. */
+  protected long _parallelTickTime;
+
   /** If transient policies are enabled. */
   protected boolean _transientPolicy;
 
   /** The default number of sound sources to allow. */
   protected static final int DEFAULT_SOURCES = 10;
+
+  /** The maximum number of isolated elements to tick in a single task. */
+  protected static final int PARALLEL_TICK_GRANULARITY = 8;
+
+  /** The maximum number of transient models to keep in the pool. */
+  protected static final int MAX_POOLED_TRANSIENTS = 256;
 }
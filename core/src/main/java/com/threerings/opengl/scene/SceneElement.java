@@ -42,6 +42,16 @@ public interface SceneElement extends SceneObject, Tickable, Intersectable, Comp
    */
   public TickPolicy getTickPolicy ();
 
+  /**
+   * Checks whether this element's {@link #tick} method only touches the element's own state
+   * (aside from notifying the scene of bounds changes), and may therefore be called
+   * concurrently with the ticks of other isolated elements.
+   */
+  public default boolean isTickIsolated ()
+  {
+    return false;
+  }
+
   /**
    * Returns this element's user object reference.
    */
@@ -33,12 +33,17 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.EXTTextureCompressionS3TC;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GLCapabilities;
 
+import com.google.common.collect.Maps;
+
 import com.threerings.opengl.renderer.Texture1D;
 import com.threerings.opengl.renderer.Texture2D;
 import com.threerings.opengl.renderer.Texture3D;
@@ -197,10 +202,74 @@ public class DDSLoader
   }
 
   /**
-   * Loads the entire file into a (direct, little-endian) byte buffer.
+   * Reads the specified file into memory so that a subsequent load from the file needn't touch
+   * the disk.  This may be called from any thread.
+   *
+   * @return the contents read, or <code>null</code> if the file was already prefetched.
+   */
+  public static ByteBuffer prefetch (File file)
+    throws IOException
+  {
+    ByteBuffer buf = read(file);
+    if (_prefetched.putIfAbsent(file, buf) != null) {
+      return null;
+    }
+    _prefetchedBytes.addAndGet(buf.capacity());
+    return buf;
+  }
+
+  /**
+   * Discards the specified prefetched contents of a file, if they have yet to be loaded.  This
+   * may be called from any thread.
+   */
+  public static void discardPrefetched (File file, ByteBuffer buf)
+  {
+    if (_prefetched.remove(file, buf)) {
+      _prefetchedBytes.addAndGet(-buf.capacity());
+    }
+  }
+
+  /**
+   * Returns the number of prefetched bytes that have yet to be loaded.
+   */
+  public static long getPrefetchedBytes ()
+  {
+    return _prefetchedBytes.get();
+  }
+
+  /**
+   * Discards any prefetched data that has yet to be loaded.
+   */
+  public static void clearPrefetched ()
+  {
+    for (File file : _prefetched.keySet()) {
+      ByteBuffer buf = _prefetched.remove(file);
+      if (buf != null) {
+        _prefetchedBytes.addAndGet(-buf.capacity());
+      }
+    }
+  }
+
+  /**
+   * Loads the entire file into a (direct, little-endian) byte buffer, using the prefetched
+   * contents if available.
    */
   protected static ByteBuffer load (File file)
     throws IOException
+  {
+    ByteBuffer buf = _prefetched.remove(file);
+    if (buf != null) {
+      _prefetchedBytes.addAndGet(-buf.capacity());
+      return buf;
+    }
+    return read(file);
+  }
+
+  /**
+   * Reads the entire file into a (direct, little-endian) byte buffer.
+   */
+  protected static ByteBuffer read (File file)
+    throws IOException
   {
     FileInputStream in = new FileInputStream(file);
     try {
@@ -389,4 +458,10 @@ public class DDSLoader
 
   /** Caps flag indicating that the texture is a volume texture. */
   protected static final int DDSCAPS2_VOLUME = 0x00200000;
+
+  /** File contents read ahead of time, mapped by file. */
+  protected static final ConcurrentMap<File, ByteBuffer> _prefetched = Maps.newConcurrentMap();
+
+  /** The total size of the prefetched contents. */
+  protected static final AtomicLong _prefetchedBytes = new AtomicLong();
 }
@@ -30,6 +30,10 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Maps;
 
 import com.threerings.media.image.Colorization;
 import com.threerings.media.image.ImageUtil;
@@ -73,6 +77,73 @@ public class ImageCache extends ResourceCache
     return _buffered.getResource(new ImageKey(path, zations));
   }
 
+  /**
+   * Retrieves a GUI image from the cache and pins it, so that it will not be evicted until
+   * a matching call to {@link #unpinImage}.
+   */
+  public Image pinImage (String path, Colorization... zations)
+  {
+    return _images.pin(new ImageKey(path, zations));
+  }
+
+  /**
+   * Releases a pin obtained through {@link #pinImage}.
+   */
+  public void unpinImage (String path, Colorization... zations)
+  {
+    _images.unpin(new ImageKey(path, zations));
+  }
+
+  /**
+   * Decodes the specified (uncolorized) image ahead of time so that a subsequent request for it
+   * needn't touch the disk.  Unlike the other methods, this may be called from any thread.
+   *
+   * @return the decoded image, or <code>null</code> if it could not be decoded or was already
+   * prefetched.
+   */
+  public BufferedImage prefetch (String path)
+    throws IOException
+  {
+    BufferedImage image = _ctx.getResourceManager().getImageResource(path);
+    if (image == null || _prefetched.putIfAbsent(path, image) != null) {
+      return null;
+    }
+    _prefetchedBytes.addAndGet(getSize(image));
+    return image;
+  }
+
+  /**
+   * Discards the specified prefetched image, if it has yet to be requested.  This may be called
+   * from any thread.
+   */
+  public void discardPrefetched (String path, BufferedImage image)
+  {
+    if (_prefetched.remove(path, image)) {
+      _prefetchedBytes.addAndGet(-getSize(image));
+    }
+  }
+
+  /**
+   * Returns the approximate size of the prefetched images that have yet to be requested.
+   */
+  public long getPrefetchedBytes ()
+  {
+    return _prefetchedBytes.get();
+  }
+
+  /**
+   * Discards any prefetched images that have yet to be requested.
+   */
+  public void clearPrefetched ()
+  {
+    for (String path : _prefetched.keySet()) {
+      BufferedImage image = _prefetched.remove(path);
+      if (image != null) {
+        _prefetchedBytes.addAndGet(-getSize(image));
+      }
+    }
+  }
+
   /**
    * Clears the cache, forcing resources to be reloaded.
    */
@@ -80,6 +151,15 @@ public class ImageCache extends ResourceCache
   {
     _images.clear();
     _buffered.clear();
+    clearPrefetched();
+  }
+
+  /**
+   * Returns the approximate size of the specified image in bytes.
+   */
+  protected static int getSize (BufferedImage image)
+  {
+    return image.getWidth() * image.getHeight() * 4;
   }
 
   /**
@@ -113,8 +193,14 @@ public class ImageCache extends ResourceCache
     }
   }
 
+  /** Images decoded ahead of time, mapped by path. */
+  protected ConcurrentMap<String, BufferedImage> _prefetched = Maps.newConcurrentMap();
+
+  /** The approximate total size of the prefetched images. */
+  protected AtomicLong _prefetchedBytes = new AtomicLong();
+
   /** The GUI image subcache. */
-  protected Subcache<ImageKey, Image> _images = new Subcache<ImageKey, Image>() {
+  protected Subcache<ImageKey, Image> _images = new Subcache<ImageKey, Image>(IMAGE_BUDGET) {
     protected Image loadResource (ImageKey key) {
       if (key.path.endsWith(".dds")) {
         Texture2D texture = new Texture2D(_ctx.getRenderer());
@@ -129,6 +215,9 @@ public class ImageCache extends ResourceCache
       }
       return new Image(_buffered.getResource(key));
     }
+    protected long getSize (Image image) {
+      return (long)image.getWidth() * image.getHeight() * 4;
+    }
     protected String getResourcePath (ImageKey key) {
       return key.path;
     }
@@ -136,12 +225,16 @@ public class ImageCache extends ResourceCache
 
   /** The buffered image subcache. */
   protected Subcache<ImageKey, BufferedImage> _buffered =
-    new Subcache<ImageKey, BufferedImage>() {
+    new Subcache<ImageKey, BufferedImage>(BUFFERED_IMAGE_BUDGET) {
     protected BufferedImage loadResource (ImageKey key) {
       if (key.zations.length > 0) {
         return ImageUtil.recolorImage(getBufferedImage(key.path), key.zations);
       }
-      BufferedImage image = null;
+      BufferedImage image = _prefetched.remove(key.path);
+      if (image != null) {
+        _prefetchedBytes.addAndGet(-ImageCache.getSize(image));
+        return image;
+      }
       try {
         if ((image = _ctx.getResourceManager().getImageResource(key.path)) == null) {
           log.warning("Unknown image format.", "path", key.path);
@@ -151,8 +244,17 @@ public class ImageCache extends ResourceCache
       }
       return (image == null) ? ImageUtil.createErrorImage(64, 64) : image;
     }
+    protected long getSize (BufferedImage image) {
+      return ImageCache.getSize(image);
+    }
     protected String getResourcePath (ImageKey key) {
       return key.path;
     }
   };
+
+  /** The default byte budget for GUI images. */
+  protected static final long IMAGE_BUDGET = 32L * 1024 * 1024;
+
+  /** The default byte budget for buffered images. */
+  protected static final long BUFFERED_IMAGE_BUDGET = 64L * 1024 * 1024;
 }
@@ -60,6 +60,24 @@ public class PreloadableSet extends HashSet<Preloadable>
     return preloadBatch(100L);
   }
 
+  /**
+   * Sets the prefetcher whose work should complete (or fill its budget) before we start
+   * preloading.  Until then, batches simply report its progress, leaving the GL thread free.
+   */
+  public void setPrefetcher (ResourcePrefetcher prefetcher)
+  {
+    _prefetcher = prefetcher;
+  }
+
+  /**
+   * Sets the maximum number of prefetched bytes to consume (that is, to upload) in each batch,
+   * or zero for no limit.  At least one resource is always preloaded per batch.
+   */
+  public void setUploadBudget (long budget)
+  {
+    _uploadBudget = budget;
+  }
+
   /**
    * Preloads a batch of resources in the set.  Any preloadables added to the set after this
    * method is called for the first time will be preloaded immediately.
@@ -72,18 +90,40 @@ public class PreloadableSet extends HashSet<Preloadable>
     if (_remaining != null && _remaining.isEmpty()) {
       return 1f;
     }
+    if (_remaining == null && _prefetcher != null) {
+      float progress = _prefetcher.getProgress();
+      if (progress < 1f && !_prefetcher.isThrottled()) {
+        return progress * PREFETCH_PERCENT;
+      }
+    }
     if (_remaining == null) {
       _remaining = Lists.newArrayList(this);
     }
     long end = System.currentTimeMillis() + duration;
+    long budget = _uploadBudget;
     for (int ii = _remaining.size() - 1; ii >= 0 && System.currentTimeMillis() < end; ii--) {
+      long before = (_prefetcher == null) ? 0L : _prefetcher.getPrefetchedBytes();
       _remaining.remove(ii).preload(_ctx);
       _preloaded++;
+      if (_prefetcher != null && _uploadBudget > 0L &&
+          (budget -= before - _prefetcher.getPrefetchedBytes()) <= 0L) {
+        break;
+      }
+    }
+    if (_prefetcher != null) {
+      // start more prefetches now that we've (perhaps) freed up some of the budget
+      _prefetcher.update();
     }
     if (_remaining.isEmpty()) {
+      if (_prefetcher != null) {
+        // release anything prefetched but not used
+        _prefetcher.clear();
+        _prefetcher = null;
+      }
       return 1f;
     }
-    return (float)_preloaded / size();
+    float pct = (float)_preloaded / size();
+    return (_prefetcher == null) ? pct : PREFETCH_PERCENT + pct * (1f - PREFETCH_PERCENT);
   }
 
   @Override
@@ -142,4 +182,13 @@ public class PreloadableSet extends HashSet<Preloadable>
 
   /** The number of resources preloaded so far. */
   protected int _preloaded;
+
+  /** The prefetcher to wait for, if any. */
+  protected ResourcePrefetcher _prefetcher;
+
+  /** The maximum number of prefetched bytes to consume per batch, or zero for no limit. */
+  protected long _uploadBudget;
+
+  /** The share of progress devoted to prefetching, when there is a prefetcher. */
+  protected static final float PREFETCH_PERCENT = 0.5f;
 }
@@ -27,14 +27,21 @@ package com.threerings.opengl.util;
 
 import java.io.File;
 
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
 
-import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
- * Base class for the resource caches.
+ * Base class for the resource caches.  Each subcache holds its resources strongly up to a byte
+ * budget, evicting the least recently used unpinned resources when it is exceeded.  Evicted
+ * resources are weakly remembered, so that one still in use elsewhere is found again rather
+ * than reloaded.
  */
 public abstract class ResourceCache
 {
@@ -51,11 +58,92 @@ public abstract class ResourceCache
     _checkTimestamps = checkTimestamps;
   }
 
+  /**
+   * Returns the total number of cache hits across all subcaches.
+   */
+  public long getHitCount ()
+  {
+    long count = 0L;
+    for (Subcache<?, ?> subcache : _subcaches) {
+      count += subcache.getHitCount();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the total number of cache misses across all subcaches.
+   */
+  public long getMissCount ()
+  {
+    long count = 0L;
+    for (Subcache<?, ?> subcache : _subcaches) {
+      count += subcache.getMissCount();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the total number of evictions across all subcaches.
+   */
+  public long getEvictionCount ()
+  {
+    long count = 0L;
+    for (Subcache<?, ?> subcache : _subcaches) {
+      count += subcache.getEvictionCount();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the total size in bytes of the resources held across all subcaches.
+   */
+  public long getBytes ()
+  {
+    long bytes = 0L;
+    for (Subcache<?, ?> subcache : _subcaches) {
+      bytes += subcache.getBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns the combined byte budget of all subcaches.
+   */
+  public long getBudget ()
+  {
+    long budget = 0L;
+    for (Subcache<?, ?> subcache : _subcaches) {
+      budget += subcache.getBudget();
+    }
+    return budget;
+  }
+
+  /**
+   * Sets the combined byte budget of all subcaches, dividing it among them in proportion to
+   * their current budgets.
+   */
+  public void setBudget (long budget)
+  {
+    double scale = (double)budget / getBudget();
+    for (Subcache<?, ?> subcache : _subcaches) {
+      subcache.setBudget((long)(subcache.getBudget() * scale));
+    }
+  }
+
   /**
    * A cache for a single type of resource.
    */
   protected abstract class Subcache<K, V>
   {
+    /**
+     * Creates a new subcache with the specified byte budget.
+     */
+    public Subcache (long budget)
+    {
+      _budget = budget;
+      _subcaches.add(this);
+    }
+
     /**
      * Retrieves the resource corresponding to the specified key.
      */
@@ -65,20 +153,114 @@ public abstract class ResourceCache
       if (cached != null) {
         V resource = cached.get();
         if (!(resource == null || (_checkTimestamps && cached.wasModified()))) {
+          _hits++;
           return resource;
         }
+        remove(key);
       }
-      V resource = loadResource(key);
-      _resources.put(key, new CachedResource<V>(resource, getResourceFile(key)));
+      cached = _evicted.remove(key);
+      V resource = (cached == null) ? null : cached.get();
+      if (resource != null && !(_checkTimestamps && cached.wasModified())) {
+        // still in use elsewhere; take it back
+        _hits++;
+        cached.retain(resource);
+        add(key, cached);
+        return resource;
+      }
+      _misses++;
+      resource = loadResource(key);
+      add(key, new CachedResource<V>(resource, getResourceFile(key), getSize(resource)));
+      return resource;
+    }
+
+    /**
+     * Pins the resource corresponding to the specified key, loading it if necessary, so that it
+     * will not be evicted until a matching call to {@link #unpin}.
+     */
+    public V pin (K key)
+    {
+      V resource = getResource(key);
+      _resources.get(key).pins++;
       return resource;
     }
 
+    /**
+     * Releases a pin obtained through {@link #pin}.
+     */
+    public void unpin (K key)
+    {
+      CachedResource<V> cached = _resources.get(key);
+      if (cached != null && cached.pins > 0) {
+        cached.pins--;
+        evict();
+      }
+    }
+
+    /**
+     * Sets the byte budget, evicting resources if necessary.
+     */
+    public void setBudget (long budget)
+    {
+      _budget = budget;
+      evict();
+    }
+
+    /**
+     * Returns the byte budget.
+     */
+    public long getBudget ()
+    {
+      return _budget;
+    }
+
+    /**
+     * Returns the total size in bytes of the resources held.
+     */
+    public long getBytes ()
+    {
+      return _bytes;
+    }
+
+    /**
+     * Returns the number of resources held.
+     */
+    public int getCount ()
+    {
+      return _resources.size();
+    }
+
+    /**
+     * Returns the number of requests satisfied without loading.
+     */
+    public long getHitCount ()
+    {
+      return _hits;
+    }
+
+    /**
+     * Returns the number of requests that required loading.
+     */
+    public long getMissCount ()
+    {
+      return _misses;
+    }
+
+    /**
+     * Returns the number of resources evicted to stay within the budget.
+     */
+    public long getEvictionCount ()
+    {
+      return _evictions;
+    }
+
     /**
      * Clears the subcache, forcing all resources to be reloaded.
      */
     public void clear ()
     {
       _resources.clear();
+      _evicted.clear();
+      _bytes = 0L;
     }
 
     /**
@@ -86,6 +268,14 @@ public abstract class ResourceCache
      */
     protected abstract V loadResource (K key);
 
+    /**
+     * Returns the approximate size of the specified resource in bytes.
+     */
+    protected long getSize (V resource)
+    {
+      return DEFAULT_RESOURCE_SIZE;
+    }
+
     /**
      * Returns the file corresponding to the specified key.
      */
@@ -99,20 +289,122 @@ public abstract class ResourceCache
      */
     protected abstract String getResourcePath (K key);
 
-    /** The cached resources. */
-    protected HashMap<K, CachedResource<V>> _resources = Maps.newHashMap();
+    /**
+     * Adds a resource to the subcache and evicts others as necessary.
+     */
+    protected void add (K key, CachedResource<V> cached)
+    {
+      _resources.put(key, cached);
+      _bytes += cached.bytes;
+      evict();
+    }
+
+    /**
+     * Removes a resource from the subcache.
+     */
+    protected void remove (K key)
+    {
+      CachedResource<V> cached = _resources.remove(key);
+      if (cached != null) {
+        _bytes -= cached.bytes;
+      }
+    }
+
+    /**
+     * Evicts least recently used unpinned resources until we are within the budget.  The most
+     * recently used resource is never evicted.
+     */
+    protected void evict ()
+    {
+      if (_bytes <= _budget) {
+        return;
+      }
+      Iterator<Map.Entry<K, CachedResource<V>>> it = _resources.entrySet().iterator();
+      for (int remaining = _resources.size() - 1; remaining > 0 && _bytes > _budget;
+          remaining--) {
+        Map.Entry<K, CachedResource<V>> entry = it.next();
+        CachedResource<V> cached = entry.getValue();
+        if (cached.pins > 0) {
+          continue;
+        }
+        it.remove();
+        _bytes -= cached.bytes;
+        _evictions++;
+        cached.release();
+        _evicted.put(entry.getKey(), cached);
+      }
+      // prune the references to resources that have since been collected
+      if (_evicted.size() > _resources.size()) {
+        for (Iterator<CachedResource<V>> rit = _evicted.values().iterator();
+            rit.hasNext(); ) {
+          if (rit.next().get() == null) {
+            rit.remove();
+          }
+        }
+      }
+    }
+
+    /** The cached resources, in order of access. */
+    protected LinkedHashMap<K, CachedResource<V>> _resources =
+      new LinkedHashMap<K, CachedResource<V>>(16, 0.75f, true);
+
+    /** Evicted resources, weakly referenced, that may still be in use. */
+    protected Map<K, CachedResource<V>> _evicted = Maps.newHashMap();
+
+    /** The byte budget. */
+    protected long _budget;
+
+    /** The total size of the cached resources. */
+    protected long _bytes;
+
+    /** Request and eviction counts. */
+    protected long _hits, _misses, _evictions;
   }
 
   /**
    * Contains a cached resource.
    */
-  protected static class CachedResource<T> extends SoftReference<T>
+  protected static class CachedResource<T>
   {
-    public CachedResource (T resource, File file)
+    /** The approximate size of the resource in bytes. */
+    public final long bytes;
+
+    /** The number of outstanding pins. */
+    public int pins;
+
+    public CachedResource (T resource, File file, long bytes)
     {
-      super(resource);
+      _resource = resource;
       _file = file;
       _lastModified = file.lastModified();
+      this.bytes = bytes;
+    }
+
+    /**
+     * Returns the cached resource, or <code>null</code> if it was released and has since been
+     * collected.
+     */
+    public T get ()
+    {
+      return (_resource != null) ? _resource : (_released == null ? null : _released.get());
+    }
+
+    /**
+     * Drops the strong reference to the resource, retaining only a weak one.
+     */
+    public void release ()
+    {
+      _released = new WeakReference<T>(_resource);
+      _resource = null;
+    }
+
+    /**
+     * Restores the strong reference to a released resource.
+     */
+    public void retain (T resource)
+    {
+      _resource = resource;
+      _released = null;
     }
 
     /**
@@ -124,6 +416,12 @@ public abstract class ResourceCache
       return _file.lastModified() > _lastModified;
     }
 
+    /** The cached resource, if held strongly. */
+    protected T _resource;
+
+    /** The weak reference to the resource, if released. */
+    protected WeakReference<T> _released;
+
     /** The file corresponding to the resource. */
     protected File _file;
 
@@ -136,4 +434,10 @@ public abstract class ResourceCache
 
   /** Whether or not to check resource file timestamps. */
   protected boolean _checkTimestamps;
+
+  /** The subcaches, for collecting statistics. */
+  protected List<Subcache<?, ?>> _subcaches = Lists.newArrayList();
+
+  /** The size assumed for resources whose subcaches don't estimate it. */
+  protected static final long DEFAULT_RESOURCE_SIZE = 1024L;
 }
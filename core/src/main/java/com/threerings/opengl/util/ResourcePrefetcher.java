@@ -0,0 +1,319 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.util;
+
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static com.threerings.opengl.Log.log;
+
+/**
+ * Reads and decodes image resources on worker threads ahead of their use, so that the GL thread
+ * need only upload them.  Prefetched data is consumed by {@link DDSLoader} and {@link ImageCache}
+ * when the corresponding resources are next loaded.
+ *
+ * <p> To bound memory use, prefetches are only started while the data prefetched but not yet
+ * consumed is under a byte budget; the rest wait in a queue until {@link #update} finds room.
+ * Except where noted, methods should be called from the GL thread.
+ */
+public class ResourcePrefetcher
+{
+  /**
+   * Creates a new prefetcher with the default budget.
+   */
+  public ResourcePrefetcher (GlContext ctx)
+  {
+    this(ctx, DEFAULT_BUDGET);
+  }
+
+  /**
+   * Creates a new prefetcher.
+   *
+   * @param budget the number of prefetched bytes awaiting consumption above which we stop
+   * starting new prefetches.
+   */
+  public ResourcePrefetcher (GlContext ctx, long budget)
+  {
+    _ctx = ctx;
+    _budget = budget;
+  }
+
+  /**
+   * Queues the specified resources for prefetching and starts as many as the budget allows.
+   * Resources of types that we don't know how to decode are ignored.
+   */
+  public void prefetch (Collection<String> paths)
+  {
+    for (String path : paths) {
+      if (path.endsWith(".dds") || isImage(path)) {
+        _queue.add(path);
+        _total++;
+      }
+    }
+    update();
+  }
+
+  /**
+   * Starts queued prefetches as the budget allows.  This is called by {@link #getProgress}, and
+   * should be called periodically while the prefetched data is being consumed.
+   */
+  public void update ()
+  {
+    ExecutorService executor = null;
+    while (!_queue.isEmpty() && _running.get() < MAX_RUNNING &&
+        getPrefetchedBytes() < _budget) {
+      if (executor == null) {
+        executor = getExecutor();
+      }
+      _running.incrementAndGet();
+      Prefetch prefetch = new Prefetch(createTask(_queue.poll(), _generation));
+      _futures.add(prefetch);
+      executor.execute(prefetch);
+    }
+  }
+
+  /**
+   * Checks whether all prefetches have completed.
+   */
+  public boolean isDone ()
+  {
+    return getProgress() == 1f;
+  }
+
+  /**
+   * Checks whether prefetches remain queued because the budget is exhausted, in which case they
+   * will only proceed once some of the prefetched data is consumed.
+   */
+  public boolean isThrottled ()
+  {
+    return !_queue.isEmpty() && getPrefetchedBytes() >= _budget;
+  }
+
+  /**
+   * Returns the fraction of the prefetches that have completed, from zero to one.
+   */
+  public float getProgress ()
+  {
+    update();
+    int size = _futures.size();
+    while (_completed < size && _futures.get(_completed).isDone()) {
+      _completed++;
+    }
+    return (_completed == _total) ? 1f : (float)_completed / _total;
+  }
+
+  /**
+   * Returns the number of prefetched bytes that have yet to be consumed.  This may be called
+   * from any thread.
+   */
+  public long getPrefetchedBytes ()
+  {
+    return DDSLoader.getPrefetchedBytes() + _ctx.getImageCache().getPrefetchedBytes();
+  }
+
+  /**
+   * Cancels any outstanding prefetches and discards any unconsumed data.  Prefetches already
+   * running when this is called discard their results rather than publishing them.
+   */
+  public void clear ()
+  {
+    _generation++;
+    for (Prefetch prefetch : _futures) {
+      // if it hasn't started, it never will, so it's up to us to account for it
+      if (prefetch.claim()) {
+        _running.decrementAndGet();
+      }
+      prefetch.cancel(false);
+    }
+    _futures.clear();
+    _queue.clear();
+    _completed = 0;
+    _total = 0;
+    DDSLoader.clearPrefetched();
+    _ctx.getImageCache().clearPrefetched();
+  }
+
+  /**
+   * Creates the task that prefetches the specified resource.
+   *
+   * @param generation the generation at the time of submission: if the prefetcher has since been
+   * cleared, the result is discarded.
+   */
+  protected Callable<Integer> createTask (final String path, final int generation)
+  {
+    return new Callable<Integer>() {
+      public Integer call () {
+        try {
+          if (generation != _generation) {
+            return 0;
+          }
+          // publish, then check again: either we see the clear, or the clear sees our data
+          if (path.endsWith(".dds")) {
+            File file = _ctx.getResourceManager().getResourceFile(path);
+            ByteBuffer buf = DDSLoader.prefetch(file);
+            if (buf == null) {
+              return 0;
+            }
+            if (generation != _generation) {
+              DDSLoader.discardPrefetched(file, buf);
+              return 0;
+            }
+            return buf.capacity();
+          }
+          ImageCache cache = _ctx.getImageCache();
+          BufferedImage image = cache.prefetch(path);
+          if (image == null) {
+            return 0;
+          }
+          if (generation != _generation) {
+            cache.discardPrefetched(path, image);
+            return 0;
+          }
+          return image.getWidth() * image.getHeight() * 4;
+
+        } catch (IOException e) {
+          // the resource will be loaded (and the failure logged) on the GL thread
+          return 0;
+        } catch (RuntimeException e) {
+          log.warning("Failed to prefetch resource.", "path", path, e);
+          return 0;
+        }
+      }
+    };
+  }
+
+  /**
+   * A prefetch submitted to the executor, which is claimed either by the worker that runs it or
+   * by a {@link #clear} that cancels it first, so that exactly one of them marks it finished.
+   */
+  protected class Prefetch extends FutureTask<Integer>
+  {
+    public Prefetch (Callable<Integer> task)
+    {
+      super(task);
+    }
+
+    /**
+     * Attempts to claim the prefetch.
+     *
+     * @return true if claimed, false if it was already claimed.
+     */
+    public boolean claim ()
+    {
+      return _claimed.compareAndSet(false, true);
+    }
+
+    @Override
+    public void run ()
+    {
+      if (!claim()) {
+        return; // cancelled before it started
+      }
+      try {
+        super.run();
+      } finally {
+        _running.decrementAndGet();
+      }
+    }
+
+    /** Set when the prefetch has been claimed. */
+    protected AtomicBoolean _claimed = new AtomicBoolean();
+  }
+
+  /**
+   * Checks whether the specified path names an image that we can decode.
+   */
+  protected static boolean isImage (String path)
+  {
+    String lpath = path.toLowerCase();
+    return lpath.endsWith(".png") || lpath.endsWith(".jpg") || lpath.endsWith(".jpeg") ||
+      lpath.endsWith(".gif") || lpath.endsWith(".bmp");
+  }
+
+  /**
+   * Returns the shared executor on which resources are prefetched.
+   */
+  protected static synchronized ExecutorService getExecutor ()
+  {
+    if (_executor == null) {
+      _executor = Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+        new ThreadFactoryBuilder().setNameFormat("prefetcher-%d").setDaemon(true).build());
+    }
+    return _executor;
+  }
+
+  /** The application context. */
+  protected GlContext _ctx;
+
+  /** The number of unconsumed prefetched bytes above which we stop starting prefetches. */
+  protected long _budget;
+
+  /** The paths of the resources waiting to be prefetched. */
+  protected ArrayDeque<String> _queue = new ArrayDeque<String>();
+
+  /** The futures of the prefetches started, in order. */
+  protected List<Prefetch> _futures = Lists.newArrayList();
+
+  /** The number of prefetches submitted but neither finished nor cancelled before running. */
+  protected AtomicInteger _running = new AtomicInteger();
+
+  /** The number of leading futures known to have completed. */
+  protected int _completed;
+
+  /** The total number of prefetches queued. */
+  protected int _total;
+
+  /** Incremented when the prefetcher is cleared, so that running prefetches can tell. */
+  protected volatile int _generation;
+
+  /** The shared prefetch executor, created on first use. */
+  protected static ExecutorService _executor;
+
+  /** The default prefetch budget. */
+  protected static final long DEFAULT_BUDGET = 128L * 1024L * 1024L;
+
+  /** The maximum number of prefetches to have running at once (which bounds the amount by
+   * which we may overshoot the budget). */
+  protected static final int MAX_RUNNING = 8;
+}
@@ -191,7 +191,7 @@ public class ShaderCache extends ResourceCache
   }
 
   /** The shader cache. */
-  protected Subcache<ShaderKey, Shader> _shaders = new Subcache<ShaderKey, Shader>() {
+  protected Subcache<ShaderKey, Shader> _shaders = new Subcache<ShaderKey, Shader>(SHADER_BUDGET) {
     protected Shader loadResource (ShaderKey key) {
       String path = key.path;
       String ext = path.substring(path.lastIndexOf('.') + 1);
@@ -225,7 +225,7 @@ public class ShaderCache extends ResourceCache
   };
 
   /** The source file cache. */
-  protected Subcache<String, String> _source = new Subcache<String, String>() {
+  protected Subcache<String, String> _source = new Subcache<String, String>(SOURCE_BUDGET) {
     protected String loadResource (String path) {
       StringBuilder buf = new StringBuilder();
       try {
@@ -241,6 +241,9 @@ public class ShaderCache extends ResourceCache
       }
       return buf.toString();
     }
+    protected long getSize (String source) {
+      return source.length() * 2L;
+    }
     protected String getResourcePath (String path) {
       return path;
     }
@@ -254,6 +257,12 @@ public class ShaderCache extends ResourceCache
     "vert", GL20.GL_VERTEX_SHADER,
     "frag", GL20.GL_FRAGMENT_SHADER);
 
+  /** The default byte budget for compiled shaders (each counted at the default size). */
+  protected static final long SHADER_BUDGET = 4L * 1024 * 1024;
+
+  /** The default byte budget for shader source. */
+  protected static final long SOURCE_BUDGET = 2L * 1024 * 1024;
+
   /** Whether or not we should check the logs even if the shader compiles/links successfully. */
   protected static final boolean CHECK_LOGS = true;
 }
@@ -26,6 +26,7 @@
 package com.threerings.opengl.util;
 
 import com.threerings.opengl.compositor.Compositor;
+import com.threerings.opengl.gui.Root;
 import com.threerings.opengl.gui.config.FontConfig;
 import com.threerings.opengl.gui.text.Text;
 import com.threerings.opengl.gui.text.TextFactory;
@@ -47,6 +48,8 @@ public class Stats extends SimpleOverlay
     // create the label (empty for now)
     _textFactory = FontConfig.NULL.getTextFactory(ctx, FontConfig.Style.PLAIN, 12);
     _stats = _textFactory.createText("", Color4f.WHITE, 0, 0, Color4f.BLACK, true);
+    _cacheStats = _textFactory.createText("", Color4f.WHITE, 0, 0, Color4f.BLACK, true);
+    _guiStats = _textFactory.createText("", Color4f.WHITE, 0, 0, Color4f.BLACK, true);
   }
 
   @Override
@@ -71,6 +74,15 @@ public class Stats extends SimpleOverlay
         renderer.getBufferObjectBytes()/1024 + "k, tx: " + renderer.getTextureCount() +
         "/" + renderer.getTextureBytes()/1024 + "k]",
         Color4f.WHITE, 0, 0, Color4f.BLACK, true);
+      _cacheStats = _textFactory.createText(
+        "[img: " + describe(_ctx.getImageCache()) + "] [shd: " +
+        describe(_ctx.getShaderCache()) + "]", Color4f.WHITE, 0, 0, Color4f.BLACK, true);
+      _guiStats = _textFactory.createText(
+        "[gui: l: " + (Root.getLayoutCount() * 1000L) / interval + "/s, ps: " +
+        percent(Root.getSizeCacheHitCount(), Root.getSizeCacheMissCount()) + "%, wc: " +
+        percent(Root.getRenderCacheHitCount(), Root.getRenderCacheMissCount()) + "%]",
+        Color4f.WHITE, 0, 0, Color4f.BLACK, true);
+      Root.resetStats();
       _lastUpdate = now;
       _frameCount = 0;
     }
@@ -79,7 +91,31 @@ public class Stats extends SimpleOverlay
   @Override
   protected void draw ()
   {
-    _stats.render(_ctx.getRenderer(), 16, getY(), 1f);
+    int y = getY();
+    _stats.render(_ctx.getRenderer(), 16, y, 1f);
+    y += _stats.getSize().height;
+    _cacheStats.render(_ctx.getRenderer(), 16, y, 1f);
+    y += _cacheStats.getSize().height;
+    _guiStats.render(_ctx.getRenderer(), 16, y, 1f);
+  }
+
+  /**
+   * Summarizes the state of the specified resource cache.
+   */
+  protected static String describe (ResourceCache cache)
+  {
+    return cache.getBytes()/1024 + "k/" + cache.getBudget()/1024 + "k, h: " +
+      percent(cache.getHitCount(), cache.getMissCount()) + "%, ev: " +
+      cache.getEvictionCount();
+  }
+
+  /**
+   * Returns the hit percentage for the supplied hit and miss counts.
+   */
+  protected static long percent (long hits, long misses)
+  {
+    long requests = hits + misses;
+    return (requests == 0L) ? 100L : (hits * 100L) / requests;
   }
 
   /**
@@ -96,6 +132,12 @@ public class Stats extends SimpleOverlay
   /** The stats display text. */
   protected Text _stats;
 
+  /** The resource cache stats display text. */
+  protected Text _cacheStats;
+
+  /** The GUI layout and cache stats display text. */
+  protected Text _guiStats;
+
   /** The time at which we last updated the stats. */
   protected long _lastUpdate = System.currentTimeMillis();
 
@@ -25,6 +25,8 @@
 
 package com.threerings.tudey.client;
 
+import java.io.File;
+
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -33,6 +35,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
@@ -40,10 +44,11 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.TreeBasedTable;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.HashIntMap;
-import com.samskivert.util.IntMap.IntEntry;
+import com.samskivert.util.StringUtil;
 
 import com.threerings.crowd.chat.client.ChatDisplay;
 import com.threerings.crowd.chat.data.ChatCodes;
@@ -65,6 +70,7 @@ import com.threerings.math.Ray3D;
 import com.threerings.math.Transform3D;
 import com.threerings.math.Vector2f;
 import com.threerings.math.Vector3f;
+import com.threerings.util.PersistentIntMap;
 
 import com.threerings.opengl.GlView;
 import com.threerings.opengl.camera.OrbitCameraHandler;
@@ -80,6 +86,7 @@ import com.threerings.opengl.scene.HashScene;
 import com.threerings.opengl.scene.SceneElement;
 import com.threerings.opengl.scene.ViewerEffect;
 import com.threerings.opengl.util.PreloadableSet;
+import com.threerings.opengl.util.ResourcePrefetcher;
 import com.threerings.opengl.util.Tickable;
 
 import com.samskivert.util.RunAnywhere;
@@ -230,7 +237,7 @@ public class TudeySceneView extends DynamicScope
 
     // insert the baseline (empty) update record
     _records.add(new UpdateRecord(
-      0, RunAnywhere.currentTimeMillis(), new HashIntMap<Actor>()));
+      0, RunAnywhere.currentTimeMillis(), PersistentIntMap.<Actor>empty()));
   }
 
   /**
@@ -290,6 +297,14 @@ public class TudeySceneView extends DynamicScope
     return _delayedTime;
   }
 
+  /**
+   * Returns the timestamp of the latest update received from the server.
+   */
+  public int getLatestTimestamp ()
+  {
+    return _records.get(_records.size() - 1).getTimestamp();
+  }
+
   /**
    * Returns the delay with which to display information received from the server in order to
    * compensate for network jitter and dropped packets.
@@ -693,6 +708,7 @@ public class TudeySceneView extends DynamicScope
     }
     ActorSprite sprite = new ActorSprite(_ctx, this, timestamp, actor);
     _actorSprites.put(id, sprite);
+    _prespawnedSprites.add(sprite);
     return sprite;
   }
 
@@ -771,21 +787,19 @@ public class TudeySceneView extends DynamicScope
     if (!pruneRecords(event.getReference())) {
       return false;
     }
-    HashIntMap<Actor> oactors = _records.get(0).getActors();
     // start with all the old actors
-    HashIntMap<Actor> actors = oactors.clone();
-    Set<Integer> uids = Sets.newHashSet();
+    PersistentIntMap<Actor> actors = _records.get(0).getActors();
 
     // add any new actors
     Actor[] added = event.getAddedActors();
     if (added != null) {
       for (Actor actor : added) {
         actor.init(_ctx.getConfigManager());
-        Actor oactor = actors.put(actor.getId(), actor);
-        uids.add(actor.getId());
+        Actor oactor = actors.get(actor.getId());
         if (oactor != null) {
           log.warning("Replacing existing actor.", "oactor", oactor, "nactor", actor);
         }
+        actors = actors.put(actor.getId(), actor);
       }
     }
 
@@ -798,8 +812,7 @@ public class TudeySceneView extends DynamicScope
         if (oactor != null) {
           Actor nactor = (Actor)delta.apply(oactor);
           nactor.init(_ctx.getConfigManager());
-          actors.put(id, nactor);
-          uids.add(id);
+          actors = actors.put(id, nactor);
         } else {
           log.warning("Missing actor for delta.", "delta", delta);
         }
@@ -810,75 +823,54 @@ public class TudeySceneView extends DynamicScope
     int[] removed = event.getRemovedActorIds();
     if (removed != null) {
       for (int id : removed) {
-        actors.remove(id);
+        actors = actors.remove(id);
       }
     }
 
     // record the update
+    PersistentIntMap<Actor> lactors = lrecord.getActors();
     _records.add(new UpdateRecord(timestamp, now, actors));
 
     // at this point, if we are to preload, we have enough information to begin
     if (_loadingWindow != null && _preloads == null) {
       ((TudeySceneModel)_ctx.getSceneDirector().getScene().getSceneModel()).getPreloads(
         _preloads = new PreloadableSet(_ctx));
+      _preloads.setPrefetcher(_prefetcher);
+      _preloads.setUploadBudget(UPLOAD_BUDGET);
       ConfigManager cfgmgr = _ctx.getConfigManager();
       for (Actor actor : actors.values()) {
         actor.getPreloads(cfgmgr, _preloads);
       }
-      _loadingActors = actors.clone();
+      _loadingActors = actors.toHashIntMap();
       addExtraPreloads();
       return true;
     }
 
-    // update loading actors, create/update the sprites for actors in the set
-    for (Actor actor : actors.values()) {
-      int id = actor.getId();
-      ActorSprite sprite = _actorSprites.get(id);
-      if (sprite != null) {
-        if (_ctrl.isControlledId(id)) {
-          _ctrl.controlledActorUpdated(timestamp, actor);
-        } else {
-          sprite.update(timestamp, actor, uids.contains(id));
-        }
-
-      } else if (_loadingActors != null) {
-        _loadingActors.put(id, actor);
-
-      } else {
-        addActorSprite(actor);
+    // update the sprites of the actors that differ from the last update; the rest carry
+    // their last received states forward on their own (see ActorSprite.updateActor)
+    _actorUpdater.timestamp = timestamp;
+    _actorUpdater.controlledUpdated = false;
+    lactors.diff(actors, _actorUpdater);
+    int cid = _ctrl.getControlledId();
+    ActorSprite csprite = _actorSprites.get(cid);
+    if (csprite != null && !_actorUpdater.controlledUpdated) {
+      Actor cactor = actors.get(cid);
+      if (cactor != null) {
+        _ctrl.controlledActorUpdated(timestamp, cactor);
       }
     }
 
-    // remove sprites for actors no longer in the set
-    for (Iterator<IntEntry<ActorSprite>> it = _actorSprites.intEntrySet().iterator();
-        it.hasNext(); ) {
-      IntEntry<ActorSprite> entry = it.next();
-      int id = entry.getIntKey();
-      if (id < 0) {
-        ActorSprite sprite = entry.getValue();
-        if (sprite.getActor().getCreated() <= timestamp) {
-          sprite.remove(timestamp);
-          it.remove();
-        }
-      } else if (!actors.containsKey(id)) {
-        ActorSprite sprite = entry.getValue();
+    // remove prespawned sprites whose actors should have arrived by now
+    for (int ii = _prespawnedSprites.size() - 1; ii >= 0; ii--) {
+      ActorSprite sprite = _prespawnedSprites.get(ii);
+      int created = sprite.getActor().getCreated();
+      if (created <= timestamp) {
         sprite.remove(timestamp);
-        if (_controlledSprite == sprite) {
-          _controlledSprite = null;
-          _ctrl.controlledSpriteRemoved(timestamp);
-        }
-        if (_targetSprite == sprite) {
-          _targetSprite = _controlledSprite;
-        }
-        it.remove();
+        _actorSprites.remove(-created);
+        _prespawnedSprites.remove(ii);
       }
     }
 
-    // same deal with loading actors
-    if (_loadingActors != null) {
-      _loadingActors.keySet().retainAll(actors.keySet());
-    }
-
     // create handlers for any effects fired since the last update
     Effect[] fired = event.getEffectsFired();
     if (fired != null) {
@@ -1049,6 +1041,7 @@ public class TudeySceneView extends DynamicScope
     }
     _entrySprites.clear();
     _actorSprites.clear();
+    _prespawnedSprites.clear();
     _mergedSprites.clear();
   }
 
@@ -1073,6 +1066,8 @@ public class TudeySceneView extends DynamicScope
         _loadingWindow = null;
         _loadingEntries = null;
         _loadingMerged = null;
+        _loadingMergeKeys = null;
+        _prefetcher = null;
         _loadingActors = null;
       }
     }
@@ -1159,6 +1154,11 @@ public class TudeySceneView extends DynamicScope
     _ctx.getRoot().addWindow(_loadingWindow);
     updateLoadingWindow(0f);
 
+    // start reading and decoding the scene's resources while we wait
+    Set<String> paths = Sets.newHashSet();
+    model.getResources(paths);
+    (_prefetcher = new ResourcePrefetcher(_ctx)).prefetch(paths);
+
     // suggest garbage collection/finalization here, with the idea that we'll note unused soft
     // references here and dispose of them in setSceneModel's gc call
     System.gc();
@@ -1174,6 +1174,10 @@ public class TudeySceneView extends DynamicScope
     _ctx.getOccupantDirector().removeOccupantObserver(this);
     _ctx.getChatDirector().removeChatDisplay(this);
     _tsobj = null;
+    if (_prefetcher != null) {
+      _prefetcher.clear();
+      _prefetcher = null;
+    }
   }
 
   // documentation inherited from interface TudeySceneModel.Observer
@@ -1454,20 +1458,105 @@ public class TudeySceneView extends DynamicScope
     }
     if (_loadingMerged == null) {
       _loadingMerged = Lists.newArrayList(_mergedSprites.values());
+      _loadingMergeKeys = Lists.newArrayList(_mergedSprites.keySet());
       _suppressMergeUpdates = false;
     }
     long end = System.currentTimeMillis() + BATCH_LOAD_DURATION;
-    for (int ii = _loadingMerged.size() - 1;
+
+    // hand the merges off to the worker threads
+    File cacheDir = _loadingMergeKeys.isEmpty() ? null : getMergeCacheDir();
+    for (int ii = _loadingMergeKeys.size() - 1;
         ii >= 0 && System.currentTimeMillis() < end; ii--) {
-      _loadingMerged.remove(ii).getModel().getConfig().wasUpdated();
+      Coord key = _loadingMergeKeys.remove(ii);
+      Sprite sprite = _mergedSprites.get(key);
+      if (sprite != null) {
+        getMergedConfig(sprite).resolveInBackground(_ctx, getMergeExecutor(),
+          cacheDir, getMergeCacheName(key));
+      }
+    }
+
+    // once all have been started, initialize those that have finished (creating their buffers)
+    if (_loadingMergeKeys.isEmpty()) {
+      for (int ii = _loadingMerged.size() - 1;
+          ii >= 0 && System.currentTimeMillis() < end; ii--) {
+        Sprite sprite = _loadingMerged.get(ii);
+        if (!getMergedConfig(sprite).isResolving()) {
+          _loadingMerged.remove(ii);
+          sprite.getModel().getConfig().wasUpdated();
+        }
+      }
     }
     int size = _loadingMerged.size();
     if (size == 0) {
+      pruneMergeCache();
       return 1f;
     }
     return 1f - (float)size / _mergedSprites.size();
   }
 
+  /**
+   * Returns the merged config of the specified merged sprite.
+   */
+  protected static MergedStaticConfig getMergedConfig (Sprite sprite)
+  {
+    return (MergedStaticConfig)sprite.getModel().getConfig().implementation;
+  }
+
+  /**
+   * Returns the directory in which to cache merged geometry, or <code>null</code> to disable
+   * caching.
+   */
+  protected File getMergeCacheDir ()
+  {
+    String appdir = System.getProperty("appdir");
+    if (StringUtil.isBlank(appdir)) {
+      String home = System.getProperty("user.home");
+      if (StringUtil.isBlank(home)) {
+        return null;
+      }
+      appdir = home + File.separator + ".clyde";
+    }
+    return new File(appdir, "merged");
+  }
+
+  /**
+   * Returns the prefix of the name of the file in which to cache the merged geometry for the
+   * specified block (to which the merged config appends a digest of its contents).
+   */
+  protected String getMergeCacheName (Coord key)
+  {
+    return _sceneModel.sceneId + "-" + _sceneModel.version + "-" + getMergeGranularity() +
+      "-" + key.x + "_" + key.y;
+  }
+
+  /**
+   * Trims the merged geometry cache to its maximum size on a worker thread.
+   */
+  protected void pruneMergeCache ()
+  {
+    final File cacheDir = getMergeCacheDir();
+    if (cacheDir != null) {
+      getMergeExecutor().execute(new Runnable() {
+        public void run () {
+          MergedStaticConfig.pruneCache(cacheDir, MERGE_CACHE_SIZE);
+        }
+      });
+    }
+  }
+
+  /**
+   * Returns the executor on which to merge static geometry.
+   */
+  protected static synchronized ExecutorService getMergeExecutor ()
+  {
+    if (_mergeExecutor == null) {
+      _mergeExecutor = Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+        new ThreadFactoryBuilder().setNameFormat("merger-%d").setDaemon(true).build());
+    }
+    return _mergeExecutor;
+  }
+
   /**
    * Creates a batch of actor sprites as part of the loading process.
    *
@@ -1478,9 +1567,9 @@ public class TudeySceneView extends DynamicScope
     if (_loadingActors != null && _loadingActors.isEmpty()) {
       return 1f;
     }
-    HashIntMap<Actor> actors = _records.get(_records.size() - 1).getActors();
+    PersistentIntMap<Actor> actors = _records.get(_records.size() - 1).getActors();
     if (_loadingActors == null) {
-      _loadingActors = actors.clone();
+      _loadingActors = actors.toHashIntMap();
     }
     long end = System.currentTimeMillis() + BATCH_LOAD_DURATION;
     for (Iterator<Actor> it = _loadingActors.values().iterator();
@@ -1529,6 +1618,7 @@ public class TudeySceneView extends DynamicScope
         ((Prespawnable)actor).getClientOid() == _ctx.getClient().getClientOid()) {
       ActorSprite sprite = _actorSprites.remove(-actor.getCreated());
       if (sprite != null) {
+        _prespawnedSprites.remove(sprite);
         _actorSprites.put(id, sprite);
         sprite.reinit(timestamp, actor);
         return;
@@ -1682,7 +1772,7 @@ public class TudeySceneView extends DynamicScope
     /**
      * Creates a new update record.
      */
-    public UpdateRecord (int timestamp, long received, HashIntMap<Actor> actors)
+    public UpdateRecord (int timestamp, long received, PersistentIntMap<Actor> actors)
     {
       _timestamp = timestamp;
       _received = received;
@@ -1708,7 +1798,7 @@ public class TudeySceneView extends DynamicScope
     /**
      * Returns the map of actors.
      */
-    public HashIntMap<Actor> getActors ()
+    public PersistentIntMap<Actor> getActors ()
     {
       return _actors;
     }
@@ -1720,7 +1810,75 @@ public class TudeySceneView extends DynamicScope
     protected long _received;
 
     /** The states of the actors. */
-    protected HashIntMap<Actor> _actors;
+    protected PersistentIntMap<Actor> _actors;
+  }
+
+  /**
+   * Updates the sprites of the actors that differ between successive updates.
+   */
+  protected class ActorUpdater
+    implements PersistentIntMap.DiffVisitor<Actor>
+  {
+    /** The timestamp of the update being processed. */
+    public int timestamp;
+
+    /** Set when the controlled actor has been handled. */
+    public boolean controlledUpdated;
+
+    // documentation inherited from interface PersistentIntMap.DiffVisitor
+    public void entryAdded (int id, Actor actor)
+    {
+      update(id, actor);
+    }
+
+    // documentation inherited from interface PersistentIntMap.DiffVisitor
+    public void entryChanged (int id, Actor oactor, Actor nactor)
+    {
+      update(id, nactor);
+    }
+
+    // documentation inherited from interface PersistentIntMap.DiffVisitor
+    public void entryRemoved (int id, Actor actor)
+    {
+      if (_loadingActors != null) {
+        _loadingActors.remove(id);
+      }
+      ActorSprite sprite = _actorSprites.remove(id);
+      if (sprite == null) {
+        return;
+      }
+      sprite.remove(timestamp);
+      if (_controlledSprite == sprite) {
+        _controlledSprite = null;
+        _ctrl.controlledSpriteRemoved(timestamp);
+      }
+      if (_targetSprite == sprite) {
+        _targetSprite = _controlledSprite;
+      }
+    }
+
+    /**
+     * Updates or creates the sprite for an added or changed actor.
+     */
+    protected void update (int id, Actor actor)
+    {
+      boolean controlled = _ctrl.isControlledId(id);
+      controlledUpdated |= controlled;
+      ActorSprite sprite = _actorSprites.get(id);
+      if (sprite != null) {
+        if (controlled) {
+          _ctrl.controlledActorUpdated(timestamp, actor);
+        } else {
+          sprite.update(timestamp, actor, true);
+        }
+
+      } else if (_loadingActors != null) {
+        _loadingActors.put(id, actor);
+
+      } else {
+        addActorSprite(actor);
+      }
+    }
   }
 
   /**
@@ -1775,12 +1933,18 @@ public class TudeySceneView extends DynamicScope
   /** The set of resources to preload. */
   protected PreloadableSet _preloads;
 
+  /** Reads and decodes the scene's resources while loading. */
+  protected ResourcePrefetcher _prefetcher;
+
   /** The remaining entries to add during loading. */
   protected List<Entry> _loadingEntries;
 
   /** The remaining merged sprites to be initialized during loading. */
   protected List<Sprite> _loadingMerged;
 
+  /** The keys of the merged sprites whose merges have yet to be started during loading. */
+  protected List<Coord> _loadingMergeKeys;
+
   /** The remaining actors to add during loading. */
   protected HashIntMap<Actor> _loadingActors;
 
@@ -1827,6 +1991,12 @@ public class TudeySceneView extends DynamicScope
   /** Sprites corresponding to the actors in the scene. */
   protected HashIntMap<ActorSprite> _actorSprites = new HashIntMap<ActorSprite>();
 
+  /** The sprites of prespawned actors awaiting confirmation from the server. */
+  protected List<ActorSprite> _prespawnedSprites = Lists.newArrayList();
+
+  /** Updates the actor sprites when we receive a delta. */
+  protected ActorUpdater _actorUpdater = new ActorUpdater();
+
   /** The actor space (used for client-side collision detection). */
   protected HashSpace _actorSpace = new HashSpace(64f, 6);
 
@@ -1884,6 +2054,12 @@ public class TudeySceneView extends DynamicScope
   protected int _tickerCount;
   protected boolean _dumpTickers;
 
+  /** The executor on which static geometry is merged, created on first use. */
+  protected static ExecutorService _mergeExecutor;
+
+  /** The maximum number of prefetched bytes to upload in each batch when loading. */
+  protected static final long UPLOAD_BUDGET = 8L * 1024 * 1024;
+
   /** The amount of time to spend on each batch when loading. */
   protected static final long BATCH_LOAD_DURATION = 50L;
 
@@ -1896,6 +2072,9 @@ public class TudeySceneView extends DynamicScope
   /** The percentage of load progress devoted to merging entries. */
   protected static final float ENTRY_MERGE_PERCENT = 0.2f;
 
+  /** The maximum size of the merged geometry cache, in bytes. */
+  protected static final long MERGE_CACHE_SIZE = 256L * 1024L * 1024L;
+
   /** The percentage of load progress devoted to loading actors. */
   protected static final float ACTOR_LOAD_PERCENT = 0.1f;
 }
@@ -1017,6 +1017,8 @@ public class ActorSprite extends Sprite
     if ((_advancer = _actor.maybeCreateAdvancer(ctx, view, timestamp)) == null) {
       _history = new ActorHistory(timestamp, actor, view.getBufferDelay() * 4);
     }
+    _received = actor;
+    _updated = timestamp;
 
     // create the model and the shape
     _model = new Model(ctx);
@@ -1049,6 +1051,8 @@ public class ActorSprite extends Sprite
    */
   public void reinit (int timestamp, Actor actor)
   {
+    _received = actor;
+    _updated = timestamp;
     actor.copy(_actor);
     if (_actor.isClientControlled(_ctx, _view)) {
       if (_advancer == null) {
@@ -1229,6 +1233,8 @@ public class ActorSprite extends Sprite
    */
   public void update (int timestamp, Actor actor, boolean updated)
   {
+    _received = actor;
+    _updated = timestamp;
     if (_advancer == null) {
       _history.record(timestamp, actor, updated || !isStatic(actor));
     } else {
@@ -1448,6 +1454,13 @@ public class ActorSprite extends Sprite
    */
   protected boolean updateActor ()
   {
+    // the view only passes on changes, so if the actor hasn't changed since we last heard,
+    // carry its state forward to the latest update
+    int latest = _view.getLatestTimestamp();
+    if (latest > _updated && latest < _removed && _actor.getId() > 0 &&
+        !_view.getController().isControlledId(_actor.getId())) {
+      update(latest, _received, false);
+    }
     if (_advancer == null) {
       return _history.get(_view.getDelayedTime(), _actor, isStatic(_actor));
     } else {
@@ -1636,6 +1649,12 @@ public class ActorSprite extends Sprite
   /** The timestamp at which the actor was removed, if any. */
   protected int _removed = Integer.MAX_VALUE;
 
+  /** The last actor state received from the server. */
+  protected Actor _received;
+
+  /** The timestamp of the last state received (or carried forward). */
+  protected int _updated;
+
   /** The actor model. */
   @Scoped
   protected Model _model;
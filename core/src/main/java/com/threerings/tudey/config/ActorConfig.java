@@ -225,6 +225,12 @@ public class ActorConfig extends ParameterizedConfig
     @Strippable
     public int stasisInterval = 5000;
 
+    /** When no client has seen the actor since the last tick, tick it no more frequently than
+     * this (in milliseconds, or zero to always tick at the scene's rate). */
+    @Editable(min=0, hgroup="a")
+    @Strippable
+    public int unseenTickInterval;
+
     /**
      * Default constructor.
      */
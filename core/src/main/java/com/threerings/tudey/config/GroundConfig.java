@@ -26,6 +26,7 @@
 package com.threerings.tudey.config;
 
 import com.samskivert.util.IntTuple;
+import com.samskivert.util.Randoms;
 
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
@@ -123,7 +124,16 @@ public class GroundConfig extends PaintableConfig
     public TileEntry createFloor (
       ConfigManager cfgmgr, int maxWidth, int maxHeight, int elevation)
     {
-      return createRandomEntry(cfgmgr, floor, maxWidth, maxHeight, elevation);
+      return createFloor(cfgmgr, maxWidth, maxHeight, elevation, Randoms.threadLocal());
+    }
+
+    /**
+     * Creates a new floor tile with the supplied maximum dimensions using the given generator.
+     */
+    public TileEntry createFloor (
+      ConfigManager cfgmgr, int maxWidth, int maxHeight, int elevation, Randoms r)
+    {
+      return createRandomEntry(cfgmgr, floor, maxWidth, maxHeight, elevation, r);
     }
 
     /**
@@ -169,10 +179,22 @@ public class GroundConfig extends PaintableConfig
     public TileEntry createEdge (
       ConfigManager cfgmgr, IntTuple caseRotations,
       int maxWidth, int maxHeight, int elevation)
+    {
+      return createEdge(
+        cfgmgr, caseRotations, maxWidth, maxHeight, elevation, Randoms.threadLocal());
+    }
+
+    /**
+     * Creates a new edge tile with the supplied case/rotations and maximum dimensions using the
+     * given generator.
+     */
+    public TileEntry createEdge (
+      ConfigManager cfgmgr, IntTuple caseRotations,
+      int maxWidth, int maxHeight, int elevation, Randoms r)
     {
       return createRandomEntry(
         cfgmgr, edgeCases[caseRotations.left].tiles,
-        caseRotations.right, maxWidth, maxHeight, elevation);
+        caseRotations.right, maxWidth, maxHeight, elevation, r);
     }
 
     @Override
@@ -308,9 +308,9 @@ public abstract class PaintableConfig extends ParameterizedConfig
    * height.
    */
   protected static TileEntry createRandomEntry (
-    ConfigManager cfgmgr, Tile[] tiles, int maxWidth, int maxHeight, int elevation)
+    ConfigManager cfgmgr, Tile[] tiles, int maxWidth, int maxHeight, int elevation, Randoms r)
   {
-    return createRandomEntry(cfgmgr, tiles, 0x0F, maxWidth, maxHeight, elevation);
+    return createRandomEntry(cfgmgr, tiles, 0x0F, maxWidth, maxHeight, elevation, r);
   }
 
   /**
@@ -318,25 +318,27 @@ public abstract class PaintableConfig extends ParameterizedConfig
    * maximum width, and maximum height.
    */
   protected static TileEntry createRandomEntry (
-    ConfigManager cfgmgr, Tile[] tiles, int mask, int maxWidth, int maxHeight, int elevation)
+    ConfigManager cfgmgr, Tile[] tiles, int mask, int maxWidth, int maxHeight, int elevation,
+    Randoms r)
   {
     ArrayList<TileRotation> rotations = new ArrayList<TileRotation>();
     for (Tile tile : tiles) {
       tile.getRotations(cfgmgr, rotations, mask, maxWidth, maxHeight);
     }
-    return createRandomEntry(rotations, elevation);
+    return createRandomEntry(rotations, elevation, r);
   }
 
   /**
    * Creates an entry using one of the supplied tile rotations.
    */
-  protected static TileEntry createRandomEntry (ArrayList<TileRotation> rotations, int elevation)
+  protected static TileEntry createRandomEntry (
+    ArrayList<TileRotation> rotations, int elevation, Randoms r)
   {
     float tweight = 0f;
     for (int ii = 0, nn = rotations.size(); ii < nn; ii++) {
       tweight += rotations.get(ii).weight;
     }
-    float random = Randoms.threadLocal().getFloat(tweight);
+    float random = r.getFloat(tweight);
     tweight = 0f;
     for (int ii = 0, nn = rotations.size(); ii < nn; ii++) {
       TileRotation rotation = rotations.get(ii);
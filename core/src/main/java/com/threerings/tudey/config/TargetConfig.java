@@ -41,6 +41,7 @@ import com.threerings.util.DeepObject;
   TargetConfig.Tagged.class, TargetConfig.InstanceOf.class,
   TargetConfig.Intersecting.class, TargetConfig.RandomSubset.class,
   TargetConfig.NearestSubset.class, TargetConfig.FarthestSubset.class,
+  TargetConfig.WithinDistance.class,
   TargetConfig.Conditional.class, TargetConfig.Compound.class,
   TargetConfig.Behavior.class, TargetConfig.Excluding.class,
   TargetConfig.Randomized.class })
@@ -229,6 +230,37 @@ public abstract class TargetConfig extends DeepObject
     }
   }
 
+  /**
+   * Picks the targets within a distance of a reference target.
+   */
+  public static class WithinDistance extends TargetConfig
+  {
+    /** The maximum distance from the reference location. */
+    @Editable(min=0.0, step=0.1)
+    public float distance = 1f;
+
+    /** The contained target. */
+    @Editable
+    public TargetConfig target = new Source();
+
+    /** The reference location. */
+    @Editable
+    public TargetConfig location = new Source();
+
+    @Override
+    public String getLogicClassName ()
+    {
+      return "com.threerings.tudey.server.logic.TargetLogic$WithinDistance";
+    }
+
+    @Override
+    public void invalidate ()
+    {
+      target.invalidate();
+      location.invalidate();
+    }
+  }
+
   /**
    * Includes only targets that satisfy a condition.
    */
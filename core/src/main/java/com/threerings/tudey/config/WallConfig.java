@@ -26,6 +26,7 @@
 package com.threerings.tudey.config;
 
 import com.samskivert.util.IntTuple;
+import com.samskivert.util.Randoms;
 
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
@@ -111,10 +112,22 @@ public class WallConfig extends PaintableConfig
     public TileEntry createWall (
       ConfigManager cfgmgr, IntTuple caseRotations,
       int maxWidth, int maxHeight, int elevation)
+    {
+      return createWall(
+        cfgmgr, caseRotations, maxWidth, maxHeight, elevation, Randoms.threadLocal());
+    }
+
+    /**
+     * Creates a new wall tile with the supplied case/rotations and maximum dimensions using the
+     * given generator.
+     */
+    public TileEntry createWall (
+      ConfigManager cfgmgr, IntTuple caseRotations,
+      int maxWidth, int maxHeight, int elevation, Randoms r)
     {
       return createRandomEntry(
         cfgmgr, cases[caseRotations.left].tiles,
-        caseRotations.right, maxWidth, maxHeight, elevation);
+        caseRotations.right, maxWidth, maxHeight, elevation, r);
     }
 
     @Override
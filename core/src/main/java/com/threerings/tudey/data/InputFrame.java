@@ -27,13 +27,14 @@ package com.threerings.tudey.data;
 
 import com.threerings.io.Streamable;
 
+import com.threerings.export.Exportable;
 import com.threerings.util.DeepObject;
 
 /**
  * Represents a single frame of user input.
  */
 public class InputFrame extends DeepObject
-  implements Streamable
+  implements Streamable, Exportable
 {
   /** Indicates that the user wants to move. */
   public static final int MOVE = (1 << 0);
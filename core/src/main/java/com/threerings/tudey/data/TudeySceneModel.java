@@ -121,6 +121,7 @@ import com.threerings.tudey.space.HashSpace;
 import com.threerings.tudey.space.Space;
 import com.threerings.tudey.space.SpaceElement;
 import com.threerings.tudey.util.ActorAdvancer;
+import com.threerings.tudey.util.CollisionRects;
 import com.threerings.tudey.util.Coord;
 import com.threerings.tudey.util.CoordIntMap;
 import com.threerings.tudey.util.CoordIntMap.CoordIntEntry;
@@ -1476,6 +1477,14 @@ public class TudeySceneModel extends SceneModel
     return _collisionFlags;
   }
 
+  /**
+   * Returns a reference to the merged rectangles covering the tile collision flags.
+   */
+  public CollisionRects getCollisionRects ()
+  {
+    return _collisionRects;
+  }
+
   /**
    * Returns a reference to the map containing the tile direction flags.
    */
@@ -2173,25 +2182,15 @@ public class TudeySceneModel extends SceneModel
     // check against locations
     Rect bounds = shape.getBounds();
     Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
-    int minx = FloatMath.ifloor(min.x);
-    int maxx = FloatMath.ifloor(max.x);
-    int miny = FloatMath.ifloor(min.y);
-    int maxy = FloatMath.ifloor(max.y);
-    for (int yy = miny; yy <= maxy; yy++) {
-      for (int xx = minx; xx <= maxx; xx++) {
-        if (!actor.canCollide(_collisionFlags.get(xx, yy))) {
-          continue;
-        }
-        float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-        _quad.getVertex(0).set(lx, ly);
-        _quad.getVertex(1).set(ux, ly);
-        _quad.getVertex(2).set(ux, uy);
-        _quad.getVertex(3).set(lx, uy);
-        _quad.getBounds().getMinimumExtent().set(lx, ly);
-        _quad.getBounds().getMaximumExtent().set(ux, uy);
-        if (_quad.intersects(shape)) {
-          return true;
-        }
+    _collisionRects.getIntersecting(FloatMath.ifloor(min.x), FloatMath.ifloor(min.y),
+      FloatMath.ifloor(max.x), FloatMath.ifloor(max.y), _rects);
+    for (int ii = 0, nn = _rects.count * 5; ii < nn; ii += 5) {
+      if (!actor.canCollide(_rects.rects[ii + 4])) {
+        continue;
+      }
+      setQuad(_rects.rects, ii);
+      if (_quad.intersects(shape)) {
+        return true;
       }
     }
 
@@ -2224,25 +2223,15 @@ public class TudeySceneModel extends SceneModel
     // check against locations
     Rect bounds = shape.getBounds();
     Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
-    int minx = FloatMath.ifloor(min.x);
-    int maxx = FloatMath.ifloor(max.x);
-    int miny = FloatMath.ifloor(min.y);
-    int maxy = FloatMath.ifloor(max.y);
-    for (int yy = miny; yy <= maxy; yy++) {
-      for (int xx = minx; xx <= maxx; xx++) {
-        if ((_collisionFlags.get(xx, yy) & mask) == 0) {
-          continue;
-        }
-        float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-        _quad.getVertex(0).set(lx, ly);
-        _quad.getVertex(1).set(ux, ly);
-        _quad.getVertex(2).set(ux, uy);
-        _quad.getVertex(3).set(lx, uy);
-        _quad.getBounds().getMinimumExtent().set(lx, ly);
-        _quad.getBounds().getMaximumExtent().set(ux, uy);
-        if (_quad.intersects(shape)) {
-          return true;
-        }
+    _collisionRects.getIntersecting(FloatMath.ifloor(min.x), FloatMath.ifloor(min.y),
+      FloatMath.ifloor(max.x), FloatMath.ifloor(max.y), _rects);
+    for (int ii = 0, nn = _rects.count * 5; ii < nn; ii += 5) {
+      if ((_rects.rects[ii + 4] & mask) == 0) {
+        continue;
+      }
+      setQuad(_rects.rects, ii);
+      if (_quad.intersects(shape)) {
+        return true;
       }
     }
 
@@ -2276,29 +2265,19 @@ public class TudeySceneModel extends SceneModel
     Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
     Vector2f result = new Vector2f();
     float resultDist = Float.POSITIVE_INFINITY;
-    int minx = FloatMath.ifloor(min.x);
-    int maxx = FloatMath.ifloor(max.x);
-    int miny = FloatMath.ifloor(min.y);
-    int maxy = FloatMath.ifloor(max.y);
-    for (int yy = miny; yy <= maxy; yy++) {
-      for (int xx = minx; xx <= maxx; xx++) {
-        if ((_collisionFlags.get(xx, yy) & mask) == 0) {
-          continue;
-        }
-        float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-        _quad.getVertex(0).set(lx, ly);
-        _quad.getVertex(1).set(ux, ly);
-        _quad.getVertex(2).set(ux, uy);
-        _quad.getVertex(3).set(lx, uy);
-        _quad.getBounds().getMinimumExtent().set(lx, ly);
-        _quad.getBounds().getMaximumExtent().set(ux, uy);
-        if (_quad.intersects(shape)) {
-          _quad.getNearestPoint(origin, result);
-          float dist = result.distanceSquared(origin);
-          if (resultDist > dist) {
-            nearPoint.set(result);
-            resultDist = dist;
-          }
+    _collisionRects.getIntersecting(FloatMath.ifloor(min.x), FloatMath.ifloor(min.y),
+      FloatMath.ifloor(max.x), FloatMath.ifloor(max.y), _rects);
+    for (int ii = 0, nn = _rects.count * 5; ii < nn; ii += 5) {
+      if ((_rects.rects[ii + 4] & mask) == 0) {
+        continue;
+      }
+      setQuad(_rects.rects, ii);
+      if (_quad.intersects(shape)) {
+        _quad.getNearestPoint(origin, result);
+        float dist = result.distanceSquared(origin);
+        if (resultDist > dist) {
+          nearPoint.set(result);
+          resultDist = dist;
         }
       }
     }
@@ -2340,28 +2319,18 @@ public class TudeySceneModel extends SceneModel
     Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
     Vector2f result = new Vector2f();
     float resultDist = length * length;
-    int minx = FloatMath.ifloor(min.x);
-    int maxx = FloatMath.ifloor(max.x);
-    int miny = FloatMath.ifloor(min.y);
-    int maxy = FloatMath.ifloor(max.y);
-    for (int yy = miny; yy <= maxy; yy++) {
-      for (int xx = minx; xx <= maxx; xx++) {
-        if ((_collisionFlags.get(xx, yy) & mask) == 0) {
-          continue;
-        }
-        float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-        _quad.getVertex(0).set(lx, ly);
-        _quad.getVertex(1).set(ux, ly);
-        _quad.getVertex(2).set(ux, uy);
-        _quad.getVertex(3).set(lx, uy);
-        _quad.getBounds().getMinimumExtent().set(lx, ly);
-        _quad.getBounds().getMaximumExtent().set(ux, uy);
-        if (_quad.getIntersection(ray, result)) {
-          float dist = result.distanceSquared(ray.getOrigin());
-          if (resultDist > dist) {
-            intersection.set(result);
-            resultDist = dist;
-          }
+    _collisionRects.getIntersecting(FloatMath.ifloor(min.x), FloatMath.ifloor(min.y),
+      FloatMath.ifloor(max.x), FloatMath.ifloor(max.y), _rects);
+    for (int ii = 0, nn = _rects.count * 5; ii < nn; ii += 5) {
+      if ((_rects.rects[ii + 4] & mask) == 0) {
+        continue;
+      }
+      setQuad(_rects.rects, ii);
+      if (_quad.getIntersection(ray, result)) {
+        float dist = result.distanceSquared(ray.getOrigin());
+        if (resultDist > dist) {
+          intersection.set(result);
+          resultDist = dist;
         }
       }
     }
@@ -2402,27 +2371,17 @@ public class TudeySceneModel extends SceneModel
     // check against locations
     Rect bounds = shape.getBounds();
     Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
-    int minx = FloatMath.ifloor(min.x);
-    int maxx = FloatMath.ifloor(max.x);
-    int miny = FloatMath.ifloor(min.y);
-    int maxy = FloatMath.ifloor(max.y);
-    for (int yy = miny; yy <= maxy; yy++) {
-      for (int xx = minx; xx <= maxx; xx++) {
-        if (!actor.canCollide(_collisionFlags.get(xx, yy))) {
-          continue;
-        }
-        float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-        _quad.getVertex(0).set(lx, ly);
-        _quad.getVertex(1).set(ux, ly);
-        _quad.getVertex(2).set(ux, uy);
-        _quad.getVertex(3).set(lx, uy);
-        _quad.getBounds().getMinimumExtent().set(lx, ly);
-        _quad.getBounds().getMaximumExtent().set(ux, uy);
-        if (_quad.intersects(shape)) {
-          _quad.getPenetration(shape, _penetration);
-          if (_penetration.lengthSquared() > result.lengthSquared()) {
-            result.set(_penetration);
-          }
+    _collisionRects.getIntersecting(FloatMath.ifloor(min.x), FloatMath.ifloor(min.y),
+      FloatMath.ifloor(max.x), FloatMath.ifloor(max.y), _rects);
+    for (int ii = 0, nn = _rects.count * 5; ii < nn; ii += 5) {
+      if (!actor.canCollide(_rects.rects[ii + 4])) {
+        continue;
+      }
+      setQuad(_rects.rects, ii);
+      if (_quad.intersects(shape)) {
+        _quad.getPenetration(shape, _penetration);
+        if (_penetration.lengthSquared() > result.lengthSquared()) {
+          result.set(_penetration);
         }
       }
     }
@@ -2680,6 +2639,7 @@ public class TudeySceneModel extends SceneModel
         }
       }
     }
+    _collisionRects.invalidate(_region.x, _region.y, _region.width, _region.height);
 
     // map the entry by its tags
     mapEntry(entry);
@@ -2703,11 +2663,28 @@ public class TudeySceneModel extends SceneModel
         _directionFlags.remove(xx, yy);
       }
     }
+    _collisionRects.invalidate(_region.x, _region.y, _region.width, _region.height);
 
     // remove the tag mappings
     unmapEntry(entry);
   }
 
+  /**
+   * Sets the shared quad to the rectangle at the specified offset in the supplied
+   * (x, y, width, height, flags) array.
+   */
+  protected void setQuad (int[] rects, int offset)
+  {
+    float lx = rects[offset], ly = rects[offset + 1];
+    float ux = lx + rects[offset + 2], uy = ly + rects[offset + 3];
+    _quad.getVertex(0).set(lx, ly);
+    _quad.getVertex(1).set(ux, ly);
+    _quad.getVertex(2).set(ux, uy);
+    _quad.getVertex(3).set(lx, uy);
+    _quad.getBounds().getMinimumExtent().set(lx, ly);
+    _quad.getBounds().getMaximumExtent().set(ux, uy);
+  }
+
   /**
    * Maps the specified entry according to its tags.
    */
@@ -3065,6 +3042,10 @@ public class TudeySceneModel extends SceneModel
   @DeepOmit
   protected transient CoordIntMap _collisionFlags = new CoordIntMap(3, 0);
 
+  /** Merged rectangles covering the collision flags. */
+  @DeepOmit
+  protected transient CollisionRects _collisionRects = new CollisionRects(_collisionFlags, 4);
+
   /** Direction flags for each location. */
   @DeepOmit
   protected transient CoordIntMap _directionFlags = new CoordIntMap(3, 0);
@@ -3101,6 +3082,10 @@ public class TudeySceneModel extends SceneModel
   @DeepOmit
   protected transient Polygon _quad = new Polygon(4);
 
+  /** (Re)used to store intersecting collision rectangles. */
+  @DeepOmit
+  protected transient CollisionRects.Result _rects = new CollisionRects.Result();
+
   /** (Re)used to store intersecting elements. */
   @DeepOmit
   protected transient ArrayList<SpaceElement> _intersecting = Lists.newArrayList();
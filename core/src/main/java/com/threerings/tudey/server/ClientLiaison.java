@@ -25,6 +25,7 @@
 
 package com.threerings.tudey.server;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -53,6 +54,7 @@ import com.threerings.tudey.dobj.ActorDelta;
 import com.threerings.tudey.dobj.SceneDeltaEvent;
 import com.threerings.tudey.server.logic.ActorLogic;
 import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.server.util.SceneJournal;
 import com.threerings.tudey.util.TruncatedAverage;
 import com.threerings.tudey.util.TudeySceneMetrics;
 
@@ -87,7 +89,7 @@ public class ClientLiaison
     _localInterest = _scenemgr.getDefaultLocalInterest();
 
     // insert the baseline (empty) tick record
-    _records.add(new TickRecord());
+    appendRecord();
   }
 
   /**
@@ -97,10 +99,8 @@ public class ClientLiaison
   {
     if (info.status == OccupantInfo.DISCONNECTED) {
       // if they reconnect, they'll have to start again from the zero reference time
-      _records.clear();
-      _records.add(new TickRecord());
-      _previousVisibleActors.clear();
-      _visibleActors.clear();
+      clearRecords();
+      appendRecord();
       _receiving = false;
     }
   }
@@ -154,6 +154,7 @@ public class ClientLiaison
    */
   public void enteredPlace ()
   {
+    _scenemgr.journal(new SceneJournal.ClientEntered(_bodyobj.getOid()));
     _receiving = true;
   }
 
@@ -164,21 +165,28 @@ public class ClientLiaison
    */
   public void enqueueInput (int acknowledge, int ping, InputFrame[] frames)
   {
+    if (_scenemgr.isRecording()) {
+      _scenemgr.journal(new SceneJournal.ClientInput(
+        _bodyobj.getOid(), acknowledge, ping, frames));
+    }
+
     // ignore input send after disconnect
     if (!_receiving) {
       return;
     }
 
     // remove all tick records up to (but not including) the acknowledgement
-    while (acknowledge > _records.get(0).getTimestamp()) {
-      if (_records.size() > 1) {
-        _records.remove(0);
+    int reference = 0;
+    while (acknowledge > getRecord(reference).timestamp) {
+      if (reference < _recordCount - 1) {
+        reference++;
       } else {
         log.warning("Received invalid acknowledgement.", "who", _bodyobj,
-          "acknowledge", acknowledge, "last", _records.get(0).getTimestamp());
+          "acknowledge", acknowledge, "last", getRecord(reference).timestamp);
         break;
       }
     }
+    advanceReference(reference);
 
     // remember ping
     _pingAverage.record(_ping = ping);
@@ -224,9 +232,9 @@ public class ClientLiaison
     }
 
     // if any deltas were sent with reliable transport, we can consider them received
-    for (int ii = _records.size() - 1; ii > 0; ii--) {
-      if (_records.get(ii).event.getActualTransport() == Transport.RELIABLE_ORDERED) {
-        _records.subList(0, ii).clear();
+    for (int ii = _recordCount - 1; ii > 0; ii--) {
+      if (wasSentReliably(getRecord(ii).event)) {
+        advanceReference(ii);
         break;
       }
     }
@@ -237,100 +245,46 @@ public class ClientLiaison
     _localInterest.getMinimumExtent().add(translation, _worldInterest.getMinimumExtent());
     _localInterest.getMaximumExtent().add(translation, _worldInterest.getMaximumExtent());
 
-    // find all currently visible actors and compare to previous set
-    populateVisibleActors();
-    for (ActorLogic actor : _visibleActors) {
-      if (_previousVisibleActors.remove(actor)) {
-        ActorDelta delta = actor.getSnapshotDelta();
-        if (delta != null) {
-          _actorsUpdated.add(delta);
-        }
-      } else {
-        _actorsAdded.add(actor.getSnapshot());
-      }
-    }
-    for (ActorLogic actor : _previousVisibleActors) {
-      _actorsRemoved.add(actor.getPreviousSnapshot());
-    }
-    _previousVisibleActors.clear();
-
-    // swap the previous and current visible sets
-    Set<ActorLogic> visibleActors = _visibleActors;
-    _visibleActors = _previousVisibleActors;
-    _previousVisibleActors = visibleActors;
-
     // if this is the first recorded tick, we need to add the complete set of static
-    // actors; afterwards, just the delta
-    if (_records.get(_records.size() - 1).getTimestamp() == 0) {
+    // actors; afterwards, just the changes
+    boolean first = (getRecord(_recordCount - 1).timestamp == 0);
+
+    // record the state of the visible actors and the changes to the static actors
+    int timestamp = _scenemgr.getTimestamp();
+    TickRecord record = appendRecord();
+    record.timestamp = timestamp;
+    populateVisibleActors();
+    recordVisibleActors(record);
+    _visibleActors.clear();
+    if (first) {
       for (ActorLogic actor : _scenemgr.getStaticActors()) {
-        _actorsAdded.add(actor.getSnapshot());
+        record.addStaticState(actor.getActor().getId(), actor.getSnapshot());
       }
     } else {
       for (ActorLogic actor : _scenemgr.getStaticActorsAdded()) {
-        _actorsAdded.add(actor.getSnapshot());
+        record.addStaticState(actor.getActor().getId(), actor.getSnapshot());
       }
       for (ActorLogic actor : _scenemgr.getStaticActorsUpdated()) {
-        ActorDelta delta = actor.getSnapshotDelta();
-        if (delta != null) {
-          _actorsUpdated.add(delta);
+        if (actor.getSnapshotDelta() != null) {
+          record.addStaticState(actor.getActor().getId(), actor.getSnapshot());
         }
       }
       for (ActorLogic actor : _scenemgr.getStaticActorsRemoved()) {
-        _actorsRemoved.add(actor.getPreviousSnapshot());
+        record.addStaticState(actor.getActor().getId(), null);
       }
     }
-
-    // record the tick
-    int timestamp = _scenemgr.getTimestamp();
-    TickRecord record = new TickRecord(
-      timestamp,
-      _actorsAdded.toArray(new Actor[_actorsAdded.size()]),
-      _actorsUpdated.toArray(new ActorDelta[_actorsUpdated.size()]),
-      _actorsRemoved.toArray(new Actor[_actorsRemoved.size()]),
-      _scenemgr.getEffectsFired(_target, _worldInterest));
-    _records.add(record);
-    _actorsAdded.clear();
-    _actorsUpdated.clear();
-    _actorsRemoved.clear();
-
-    // the last acknowledged tick is the reference
-    TickRecord reference = _records.get(0);
-
-    // merge actor updates and get all effects fired (not expired)
-    for (int ii = 1, nn = _records.size(); ii < nn; ii++) {
-      TickRecord orecord = _records.get(ii);
-      for (Actor actor : orecord.getActorsAdded()) {
-        int id = actor.getId();
-        Actor removed = _removed.remove(id);
-        if (removed == null) {
-          _added.put(id, actor);
-        } else {
-          ActorDelta delta = new ActorDelta(removed, actor);
-          if (!delta.isEmpty()) {
-            _updated.put(id, delta);
-          }
-        }
-      }
-      for (ActorDelta delta : orecord.getActorsUpdated()) {
-        int id = delta.getId();
-        Actor added = _added.get(id);
-        if (added != null) {
-          _added.put(id, (Actor)delta.apply(added));
-        } else {
-          ActorDelta odelta = _updated.put(id, delta);
-          if (odelta != null) {
-            _updated.put(id, (ActorDelta)odelta.merge(delta));
-          }
-        }
-      }
-      for (Actor actor : orecord.getActorsRemoved()) {
-        int id = actor.getId();
-        if (_added.remove(id) == null) {
-          _updated.remove(id);
-          _removed.put(id, actor);
-        }
-      }
-      for (Effect effect : orecord.getEffectsFired()) {
+    _scenemgr.getEffectsFired(_target, _worldInterest, record.effectsFired);
+
+    // compare the current state to the last acknowledged state
+    TickRecord reference = getRecord(0);
+    compareVisibleActors(reference, record);
+    compareStaticActors();
+
+    // get all effects fired since the reference (and not expired)
+    for (int ii = 1; ii < _recordCount; ii++) {
+      List<Effect> effects = getRecord(ii).effectsFired;
+      for (int jj = 0, nn = effects.size(); jj < nn; jj++) {
+        Effect effect = effects.get(jj);
         if (timestamp < effect.getExpiry()) {
           _fired.add(effect);
         }
@@ -339,34 +293,59 @@ public class ClientLiaison
 
     // if we know that we can't transmit datagrams, we may as well send the delta as reliable
     // and immediately consider it received
-    Transport transport = Transport.UNRELIABLE_UNORDERED;
-    if (_session == null || !_session.getTransmitDatagrams()) {
-      transport = Transport.RELIABLE_ORDERED;
-      _records.subList(0, _records.size() - 1).clear();
-    }
+    Transport transport = canTransmitDatagrams() ?
+      Transport.UNRELIABLE_UNORDERED : Transport.RELIABLE_ORDERED;
 
     // create and post the event
-    int nadded = _added.size();
-    int nupdated = _updated.size();
+    int nadded = _actorsAdded.size();
+    int nupdated = _actorsUpdated.size();
     int nfired = _fired.size();
     record.event = new SceneDeltaEvent(
       _bodyobj.getOid(), _tsobj.getOid(), _lastInput,
-      (short)_ping, reference.getTimestamp(), timestamp,
+      (short)_ping, reference.timestamp, timestamp,
       (short)(timestamp - _scenemgr.getPreviousTimestamp()),
-      (nadded == 0) ? null : _added.values().toArray(new Actor[nadded]),
-      (nupdated == 0) ? null : _updated.values().toArray(new ActorDelta[nupdated]),
-      _removed.isEmpty() ? null : _removed.intKeySet().toIntArray(),
+      (nadded == 0) ? null : _actorsAdded.toArray(new Actor[nadded]),
+      (nupdated == 0) ? null : _actorsUpdated.toArray(new ActorDelta[nupdated]),
+      (_removedCount == 0) ? null : Arrays.copyOf(_removed, _removedCount),
       (nfired == 0) ? null : _fired.toArray(new Effect[nfired]));
     record.event.setTransport(transport);
-    _bodyobj.postEvent(record.event);
+    if (transport == Transport.RELIABLE_ORDERED) {
+      advanceReference(_recordCount - 1);
+    }
+    postDeltaEvent(record.event);
 
-    // clear the arrays
-    _added.clear();
-    _updated.clear();
-    _removed.clear();
+    // clear the lists
+    _actorsAdded.clear();
+    _actorsUpdated.clear();
+    _removedCount = 0;
     _fired.clear();
   }
 
+  /**
+   * Determines whether deltas can be sent to the client as datagrams.
+   */
+  protected boolean canTransmitDatagrams ()
+  {
+    return _session != null && _session.getTransmitDatagrams();
+  }
+
+  /**
+   * Determines whether the specified (posted) delta was actually sent with reliable transport,
+   * in which case we can consider it received.
+   */
+  protected boolean wasSentReliably (SceneDeltaEvent event)
+  {
+    return event.getActualTransport() == Transport.RELIABLE_ORDERED;
+  }
+
+  /**
+   * Delivers a scene delta event to the client.
+   */
+  protected void postDeltaEvent (SceneDeltaEvent event)
+  {
+    _bodyobj.postEvent(event);
+  }
+
   /**
    * Populates the set of visible actors.
    */
@@ -376,89 +355,255 @@ public class ClientLiaison
   }
 
   /**
-   * Contains the state at a single tick.
+   * Stores the snapshots of the visible actors in the supplied record, sorted by id.
    */
-  protected static class TickRecord
+  protected void recordVisibleActors (TickRecord record)
   {
-    /** A reference to the transmitted event. */
-    public SceneDeltaEvent event;
+    int count = _visibleActors.size();
+    if (_sortKeys.length < count) {
+      _sortKeys = new long[Math.max(count, _sortKeys.length * 2)];
+      _unsorted = new ActorLogic[_sortKeys.length];
+      _sorted = new ActorLogic[_sortKeys.length];
+    }
+    int idx = 0;
+    for (ActorLogic actor : _visibleActors) {
+      _unsorted[idx] = actor;
+      _sortKeys[idx] = ((long)actor.getActor().getId() << 32) | idx;
+      idx++;
+    }
+    Arrays.sort(_sortKeys, 0, count);
+    record.ensureCapacity(count);
+    for (int ii = 0; ii < count; ii++) {
+      ActorLogic actor = _sorted[ii] = _unsorted[(int)_sortKeys[ii]];
+      record.ids[ii] = actor.getActor().getId();
+      record.states[ii] = actor.getSnapshot();
+    }
+    record.count = count;
+    Arrays.fill(_unsorted, 0, count, null);
+  }
 
-    /**
-     * Creates an empty reference record.
-     */
-    public TickRecord ()
-    {
-      this(0, new Actor[0], new ActorDelta[0], new Actor[0], new Effect[0]);
+  /**
+   * Compares the visible actors in the reference record to those in the current record (whose
+   * logic objects are in {@link #_sorted}), noting the actors added, updated and removed.
+   */
+  protected void compareVisibleActors (TickRecord reference, TickRecord record)
+  {
+    int[] rids = reference.ids, cids = record.ids;
+    int rcount = reference.count, ccount = record.count;
+    for (int ri = 0, ci = 0; ri < rcount || ci < ccount; ) {
+      int rid = (ri < rcount) ? rids[ri] : Integer.MAX_VALUE;
+      int cid = (ci < ccount) ? cids[ci] : Integer.MAX_VALUE;
+      if (rid == cid) {
+        ActorDelta delta = _sorted[ci].getSnapshotDelta(reference.states[ri]);
+        if (delta != null) {
+          _actorsUpdated.add(delta);
+        }
+        ri++;
+        ci++;
+      } else if (cid < rid) {
+        _actorsAdded.add(record.states[ci++]);
+      } else {
+        addRemoved(rids[ri++]);
+      }
     }
+    Arrays.fill(_sorted, 0, ccount, null);
+  }
 
-    /**
-     * Creates a new record.
-     */
-    public TickRecord (
-      int timestamp, Actor[] actorsAdded, ActorDelta[] actorsUpdated,
-      Actor[] actorsRemoved, Effect[] effectsFired)
-    {
-      _timestamp = timestamp;
-      _actorsAdded = actorsAdded;
-      _actorsUpdated = actorsUpdated;
-      _actorsRemoved = actorsRemoved;
-      _effectsFired = effectsFired;
+  /**
+   * Compares the latest states of the static actors changed since the reference record to their
+   * acknowledged states, noting the actors added, updated and removed.
+   */
+  protected void compareStaticActors ()
+  {
+    // gather the changes in order, then sort by id so that the latest change to each actor
+    // comes last in its run
+    int count = 0;
+    for (int ii = 1; ii < _recordCount; ii++) {
+      TickRecord record = getRecord(ii);
+      if (_staticKeys.length < count + record.staticCount) {
+        int length = Math.max(count + record.staticCount, _staticKeys.length * 2);
+        _staticKeys = Arrays.copyOf(_staticKeys, length);
+        _staticStates = Arrays.copyOf(_staticStates, length);
+      }
+      for (int jj = 0; jj < record.staticCount; jj++) {
+        _staticKeys[count] = ((long)record.staticIds[jj] << 32) | count;
+        _staticStates[count++] = record.staticStates[jj];
+      }
+    }
+    Arrays.sort(_staticKeys, 0, count);
+    for (int ii = 0; ii < count; ii++) {
+      int id = (int)(_staticKeys[ii] >>> 32);
+      if (ii < count - 1 && (int)(_staticKeys[ii + 1] >>> 32) == id) {
+        continue; // superseded by a later change
+      }
+      Actor state = _staticStates[(int)_staticKeys[ii]];
+      Actor baseline = _staticBaseline.get(id);
+      if (state == null) {
+        if (baseline != null) {
+          addRemoved(id);
+        }
+      } else if (baseline == null) {
+        _actorsAdded.add(state);
+      } else if (baseline != state) {
+        ActorDelta delta = new ActorDelta(baseline, state);
+        if (!delta.isEmpty()) {
+          _actorsUpdated.add(delta);
+        }
+      }
     }
+    Arrays.fill(_staticStates, 0, count, null);
+  }
 
-    /**
-     * Returns the timestamp of this record.
-     */
-    public int getTimestamp ()
-    {
-      return _timestamp;
+  /**
+   * Notes that the identified actor has been removed.
+   */
+  protected void addRemoved (int id)
+  {
+    if (_removedCount == _removed.length) {
+      _removed = Arrays.copyOf(_removed, _removed.length * 2);
     }
+    _removed[_removedCount++] = id;
+  }
 
-    /**
-     * Returns the actors added on this tick.
-     */
-    public Actor[] getActorsAdded ()
-    {
-      return _actorsAdded;
+  /**
+   * Returns the record at the specified index, where the record at index zero is the last
+   * acknowledged reference.
+   */
+  protected TickRecord getRecord (int idx)
+  {
+    return _records[(_recordStart + idx) & (_records.length - 1)];
+  }
+
+  /**
+   * Appends a (cleared) record to the end of the buffer, reusing one previously released if
+   * possible.
+   */
+  protected TickRecord appendRecord ()
+  {
+    if (_recordCount == _records.length) {
+      TickRecord[] records = new TickRecord[_records.length * 2];
+      for (int ii = 0; ii < _recordCount; ii++) {
+        records[ii] = getRecord(ii);
+      }
+      _records = records;
+      _recordStart = 0;
+    }
+    int idx = (_recordStart + _recordCount++) & (_records.length - 1);
+    TickRecord record = _records[idx];
+    if (record == null) {
+      _records[idx] = record = new TickRecord();
+    }
+    return record;
+  }
+
+  /**
+   * Makes the record at the specified index the new reference, updating the acknowledged
+   * static actor states and releasing the records before it.
+   */
+  protected void advanceReference (int idx)
+  {
+    for (int ii = 1; ii <= idx; ii++) {
+      TickRecord record = getRecord(ii);
+      for (int jj = 0; jj < record.staticCount; jj++) {
+        Actor state = record.staticStates[jj];
+        if (state == null) {
+          _staticBaseline.remove(record.staticIds[jj]);
+        } else {
+          _staticBaseline.put(record.staticIds[jj], state);
+        }
+      }
+    }
+    for (int ii = 0; ii < idx; ii++) {
+      getRecord(ii).clear();
     }
+    _recordStart = (_recordStart + idx) & (_records.length - 1);
+    _recordCount -= idx;
+  }
+
+  /**
+   * Releases all records and clears the acknowledged static actor states.
+   */
+  protected void clearRecords ()
+  {
+    for (int ii = 0; ii < _recordCount; ii++) {
+      getRecord(ii).clear();
+    }
+    _recordStart = _recordCount = 0;
+    _staticBaseline.clear();
+  }
+
+  /**
+   * Contains the state at a single tick.  Records are reused once released, so their arrays
+   * are only reallocated when they need to grow.
+   */
+  protected static class TickRecord
+  {
+    /** A reference to the transmitted event. */
+    public SceneDeltaEvent event;
+
+    /** The timestamp of this record. */
+    public int timestamp;
+
+    /** The ids of the visible actors, in ascending order. */
+    public int[] ids = new int[16];
+
+    /** The snapshots of the visible actors. */
+    public Actor[] states = new Actor[16];
+
+    /** The number of visible actors. */
+    public int count;
+
+    /** The ids of the static actors added, updated or removed on this tick. */
+    public int[] staticIds = new int[0];
+
+    /** The new snapshots of the static actors changed (or <code>null</code> if removed). */
+    public Actor[] staticStates = new Actor[0];
+
+    /** The number of static actors changed. */
+    public int staticCount;
+
+    /** The effects fired on this tick. */
+    public List<Effect> effectsFired = Lists.newArrayList();
 
     /**
-     * Returns the deltas of actors updated on this tick.
+     * Ensures that the visible actor arrays can hold the specified number of actors.
      */
-    public ActorDelta[] getActorsUpdated ()
+    public void ensureCapacity (int capacity)
     {
-      return _actorsUpdated;
+      if (ids.length < capacity) {
+        int length = Math.max(capacity, ids.length * 2);
+        ids = new int[length];
+        states = new Actor[length];
+      }
     }
 
     /**
-     * Returns the states on the previous tick of actors removed on this tick.
+     * Records the change of a static actor.
      */
-    public Actor[] getActorsRemoved ()
+    public void addStaticState (int id, Actor state)
     {
-      return _actorsRemoved;
+      if (staticCount == staticIds.length) {
+        int length = Math.max(16, staticCount * 2);
+        staticIds = Arrays.copyOf(staticIds, length);
+        staticStates = Arrays.copyOf(staticStates, length);
+      }
+      staticIds[staticCount] = id;
+      staticStates[staticCount++] = state;
     }
 
     /**
-     * Returns the effects fired on this tick.
+     * Clears the record for reuse.
      */
-    public Effect[] getEffectsFired ()
+    public void clear ()
     {
-      return _effectsFired;
+      event = null;
+      timestamp = 0;
+      Arrays.fill(states, 0, count, null);
+      count = 0;
+      Arrays.fill(staticStates, 0, staticCount, null);
+      staticCount = 0;
+      effectsFired.clear();
     }
-
-    /** The timestamp of this record. */
-    protected int _timestamp;
-
-    /** The actors added on this tick. */
-    protected Actor[] _actorsAdded;
-
-    /** The deltas of actors updated on this tick. */
-    protected ActorDelta[] _actorsUpdated;
-
-    /** The states on the previous tick of actors removed on this tick. */
-    protected Actor[] _actorsRemoved;
-
-    /** The effects fired on this tick. */
-    protected Effect[] _effectsFired;
   }
 
   /** The scene manager that created the liaison. */
@@ -485,8 +630,18 @@ public class ClientLiaison
   /** The translated area of interest. */
   protected Rect _worldInterest = new Rect();
 
-  /** Records of each update transmitted to the client. */
-  protected List<TickRecord> _records = Lists.newArrayList();
+  /** Records of each update transmitted to the client, in a ring buffer whose length is a
+   * power of two. */
+  protected TickRecord[] _records = new TickRecord[8];
+
+  /** The index of the reference record within the ring buffer. */
+  protected int _recordStart;
+
+  /** The number of records in the ring buffer. */
+  protected int _recordCount;
+
+  /** The acknowledged states of the static actors. */
+  protected IntMap<Actor> _staticBaseline = IntMaps.newHashIntMap();
 
   /** Set when we know that the client will be receiving on the client object. */
   protected boolean _receiving;
@@ -500,29 +655,35 @@ public class ClientLiaison
   /** The timestamp of the last input frame received from the client. */
   protected int _lastInput;
 
-  /** The actors in the area of interest at the last update. */
-  protected Set<ActorLogic> _previousVisibleActors = Sets.newHashSet();
-
   /** The actors in the area of interest on the current update. */
   protected Set<ActorLogic> _visibleActors = Sets.newHashSet();
 
-  /** Holds actors added on the current tick. */
-  protected List<Actor> _actorsAdded = Lists.newArrayList();
+  /** Used to sort the visible actors by id (the id in the high word, the index in the low). */
+  protected long[] _sortKeys = new long[16];
 
-  /** Holds actors updated on the current tick. */
-  protected List<ActorDelta> _actorsUpdated = Lists.newArrayList();
+  /** The visible actors in iteration order. */
+  protected ActorLogic[] _unsorted = new ActorLogic[16];
+
+  /** The visible actors in id order. */
+  protected ActorLogic[] _sorted = new ActorLogic[16];
 
-  /** Holds actors removed on the current tick. */
-  protected List<Actor> _actorsRemoved = Lists.newArrayList();
+  /** Used to sort the static actor changes by id. */
+  protected long[] _staticKeys = new long[16];
 
-  /** Stores added actors. */
-  protected IntMap<Actor> _added = IntMaps.newHashIntMap();
+  /** The static actor states corresponding to the sort keys. */
+  protected Actor[] _staticStates = new Actor[16];
+
+  /** Holds actors added since the reference. */
+  protected List<Actor> _actorsAdded = Lists.newArrayList();
+
+  /** Holds deltas of actors updated since the reference. */
+  protected List<ActorDelta> _actorsUpdated = Lists.newArrayList();
 
-  /** Stores updated actor deltas. */
-  protected IntMap<ActorDelta> _updated = IntMaps.newHashIntMap();
+  /** Holds the ids of actors removed since the reference. */
+  protected int[] _removed = new int[16];
 
-  /** Stores removed actor. */
-  protected IntMap<Actor> _removed = IntMaps.newHashIntMap();
+  /** The number of removed actor ids. */
+  protected int _removedCount;
 
   /** Stores effects fired. */
   protected List<Effect> _fired = Lists.newArrayList();
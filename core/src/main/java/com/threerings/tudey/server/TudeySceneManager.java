@@ -25,12 +25,24 @@
 
 package com.threerings.tudey.server;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import com.google.common.base.Predicate;
@@ -39,6 +51,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.google.inject.Inject;
 import com.google.inject.Injector;
@@ -96,7 +109,11 @@ import com.threerings.tudey.server.logic.EffectLogic;
 import com.threerings.tudey.server.logic.EntryLogic;
 import com.threerings.tudey.server.logic.Logic;
 import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.server.util.LogicIndex;
+import com.threerings.tudey.server.util.MobileBatch;
 import com.threerings.tudey.server.util.Pathfinder;
+import com.threerings.tudey.server.util.SceneJournal;
+import com.threerings.tudey.server.util.SceneMetrics;
 import com.threerings.tudey.server.util.SceneTicker;
 import com.threerings.tudey.shape.Segment;
 import com.threerings.tudey.shape.Shape;
@@ -130,6 +147,56 @@ public class TudeySceneManager extends SceneManager
     public boolean tick (int timestamp);
   }
 
+  /**
+   * An interface for tick participants that may be ticked at a reduced rate (or not at all)
+   * when they're outside of every client's area of interest.
+   */
+  public interface LodTickParticipant extends TickParticipant
+  {
+    /** Indicates that the participant should be ticked normally. */
+    public static final int FULL_TICK = 0;
+
+    /** Indicates that the participant should be ticked, but is running at a reduced rate. */
+    public static final int REDUCED_TICK = 1;
+
+    /** Indicates that the participant should not be ticked at all this time around. */
+    public static final int SKIP_TICK = 2;
+
+    /**
+     * Returns the level of detail at which to tick the participant.
+     *
+     * @param timestamp the timestamp of the current tick.
+     * @return {@link #FULL_TICK}, {@link #REDUCED_TICK}, or {@link #SKIP_TICK}.
+     */
+    public int getTickLevel (int timestamp);
+  }
+
+  /**
+   * An interface for tick participants that split their work into a read-only query phase,
+   * which may run in parallel with the queries of other participants, and the usual serial
+   * tick, in which they apply the results.
+   *
+   * <p> Note that the scene manager's spatial queries (and the collision checks made by the
+   * pathfinder) hold the {@link #getQueryLock query lock}, because the spaces mark the elements
+   * they visit and the scene model keeps scratch state, so only the work done outside of them
+   * (such as the pathfinder's search) actually proceeds in parallel.  At present that makes
+   * pathfinding behaviors the ones worth splitting.  The time taken by the phase and the total
+   * time spent in queries are recorded under {@link SceneMetrics.Category#QUERY} as "phase" and
+   * "work"; their ratio is the effective parallelism.
+   */
+  public interface QueryingTickParticipant extends TickParticipant
+  {
+    /**
+     * Performs the read-only portion of the tick, storing the results in the participant for
+     * use in {@link #tick}.  This may be called on a worker thread concurrently with the
+     * queries of other participants: implementations may use the scene manager's spatial
+     * queries and the pathfinder, but must not modify anything outside of themselves.
+     *
+     * @param timestamp the timestamp of the current tick.
+     */
+    public void query (int timestamp);
+  }
+
   /**
    * An interface for objects to notify when actors are added or removed.
    */
@@ -216,6 +283,23 @@ public class TudeySceneManager extends SceneManager
     return _tickProfInterval;
   }
 
+  /**
+   * Sets the number of worker threads used to run the query phase in parallel (zero to run all
+   * queries on the tick thread).  Must be called before the first tick of any scene.
+   */
+  public static void setQueryThreads (int threads)
+  {
+    _queryThreads = threads;
+  }
+
+  /**
+   * Returns the number of worker threads used to run the query phase.
+   */
+  public static int getQueryThreads ()
+  {
+    return _queryThreads;
+  }
+
   /**
    * Dumps the current set of tick profiles to the log.
    */
@@ -228,6 +312,14 @@ public class TudeySceneManager extends SceneManager
     log.info(buf.toString());
   }
 
+  /**
+   * Returns a reference to the current set of tick profiles, mapped by participant name.
+   */
+  public static Map<String, TickProfile> getTickProfiles ()
+  {
+    return Collections.unmodifiableMap(_profiles);
+  }
+
   /**
    * Clears the current set of tick profiles.
    */
@@ -236,6 +328,23 @@ public class TudeySceneManager extends SceneManager
     _profiles.clear();
   }
 
+  /**
+   * Sets the directory in which to record journals of newly started scenes (or null to disable
+   * recording).
+   */
+  public static void setJournalDirectory (File dir)
+  {
+    _journalDir = dir;
+  }
+
+  /**
+   * Returns the directory in which we record scene journals, if any.
+   */
+  public static File getJournalDirectory ()
+  {
+    return _journalDir;
+  }
+
   /**
    * Returns the delay with which the clients display information received from the server in
    * order to compensate for network jitter and dropped packets.
@@ -258,6 +367,9 @@ public class TudeySceneManager extends SceneManager
    */
   public int getTickInterval ()
   {
+    if (_replayInterval > 0) {
+      return _replayInterval;
+    }
     return (_ticker == null) ? DEFAULT_TICK_INTERVAL : _ticker.getActualInterval();
   }
 
@@ -282,6 +394,7 @@ public class TudeySceneManager extends SceneManager
    */
   public void addTickParticipant (TickParticipant participant)
   {
+    checkApplyPhase();
     _tickParticipants.add(participant);
   }
 
@@ -308,9 +421,22 @@ public class TudeySceneManager extends SceneManager
    */
   public void removeTickParticipant (TickParticipant participant)
   {
+    checkApplyPhase();
     _tickParticipants.remove(participant);
   }
 
+  /**
+   * Returns the batch that advances simple mobiles together, creating it (and adding it to the
+   * tick) if necessary.
+   */
+  public MobileBatch getMobileBatch ()
+  {
+    if (_mobileBatch == null) {
+      addTickParticipant(_mobileBatch = new MobileBatch(this));
+    }
+    return _mobileBatch;
+  }
+
   /**
    * Adds an observer for actor events.
    */
@@ -343,6 +469,37 @@ public class TudeySceneManager extends SceneManager
     _shutdownObservers.remove(observer);
   }
 
+  /**
+   * Checks whether we're currently in the read-only query phase of the tick.
+   */
+  public boolean isQueryPhase ()
+  {
+    return _queryPhase;
+  }
+
+  /**
+   * Returns the lock that serializes access to the shared state of the spatial queries, which
+   * may be called from several threads during the query phase.  Code running in the query
+   * phase should hold it only around the queries themselves, since everything done while
+   * holding it is serialized.
+   */
+  public Object getQueryLock ()
+  {
+    return _queryLock;
+  }
+
+  /**
+   * Throws an exception if query checking is enabled (via the
+   * <code>com.threerings.tudey.check_queries</code> system property) and we're in the query
+   * phase.  Called from the methods that modify scene state.
+   */
+  public void checkApplyPhase ()
+  {
+    if (CHECK_QUERIES && _queryPhase) {
+      throw new IllegalStateException("Scene state modified during query phase.");
+    }
+  }
+
   /**
    * Returns the timestamp of the current tick.
    */
@@ -375,6 +532,122 @@ public class TudeySceneManager extends SceneManager
     return _tickDuration;
   }
 
+  /**
+   * Returns the scene's random number generator.  Logic should use this (rather than a
+   * thread-local generator) so that journaled scenes replay deterministically.
+   */
+  public Random getRandom ()
+  {
+    return _random;
+  }
+
+  /**
+   * Returns a {@link Randoms} wrapper around the scene's random number generator.
+   */
+  public Randoms getRandoms ()
+  {
+    return _randoms;
+  }
+
+  /**
+   * Reseeds the scene's random number generator.  When replaying a journal, this should be
+   * called with the journaled seed before the scene starts up.
+   */
+  public void setRandomSeed (long seed)
+  {
+    _random.setSeed(_seed = seed);
+  }
+
+  /**
+   * Starts recording a journal of the scene to the supplied stream.  This should be called
+   * before any logic has run, as the journal's header contains the initial scene model.
+   */
+  public void startRecording (OutputStream out)
+    throws IOException
+  {
+    stopRecording();
+    _journal = new SceneJournal.Writer(out, new SceneJournal.Header(
+      (TudeySceneModel)_scene.getSceneModel(), _seed));
+  }
+
+  /**
+   * Stops recording the scene journal, if we were recording.
+   */
+  public void stopRecording ()
+  {
+    if (_journal == null) {
+      return;
+    }
+    try {
+      _journal.close();
+    } catch (IOException e) {
+      log.warning("Failed to close scene journal.", "where", where(), e);
+    }
+    _journal = null;
+  }
+
+  /**
+   * Checks whether we're recording a journal of the scene.
+   */
+  public boolean isRecording ()
+  {
+    return _journal != null;
+  }
+
+  /**
+   * Records an event in the scene journal, if we're recording.  Events arising during the tick
+   * are ignored, as they will be reproduced by replaying the tick itself.
+   */
+  public void journal (SceneJournal.Event event)
+  {
+    if (_journal != null && !_ticking) {
+      _journal.record(event);
+    }
+  }
+
+  /**
+   * Replays a journaled tick.
+   *
+   * @param elapsed the time elapsed since the previous tick.
+   * @param interval the tick interval at the time of the tick.
+   */
+  public void replayTick (int elapsed, int interval)
+  {
+    _replayInterval = interval;
+    advanceTick(_lastTick + elapsed);
+  }
+
+  /**
+   * Computes a checksum of the state of all actors in the scene, which the journal records
+   * after each tick so that replays can verify that they reproduce the recorded run.
+   */
+  public int getStateChecksum ()
+  {
+    int[] ids = _actors.intKeySet().toIntArray();
+    Arrays.sort(ids);
+    int hash = _timestamp;
+    for (int id : ids) {
+      hash = 31*hash + _actors.get(id).getActor().hashCode();
+    }
+    return hash;
+  }
+
+  /**
+   * Returns a reference to the scene's metrics.
+   */
+  public SceneMetrics getMetrics ()
+  {
+    return _metrics;
+  }
+
+  /**
+   * Returns a reference to the statistics on ticks skipped by level-of-detail participants.
+   */
+  public TickLodStats getTickLodStats ()
+  {
+    return _tickLodStats;
+  }
+
   /**
    * Returns the list of logic objects with the supplied tag.
    */
@@ -394,6 +667,24 @@ public class TudeySceneManager extends SceneManager
     return (list == null) ? ImmutableList.<L>of() : list;
   }
 
+  /**
+   * Returns a spatial index of the logic objects with the supplied tag, built from their
+   * translations at the time of the first request on the current tick.
+   */
+  public LogicIndex getTaggedIndex (String tag)
+  {
+    return getIndex(tag, getTagged(tag));
+  }
+
+  /**
+   * Returns a spatial index of the logic objects that are instances of the supplied class,
+   * built from their translations at the time of the first request on the current tick.
+   */
+  public LogicIndex getInstanceIndex (Class<? extends Logic> clazz)
+  {
+    return getIndex(clazz, getInstances(clazz));
+  }
+
   /**
    * Returns a reference to the actor space.
    */
@@ -495,6 +786,8 @@ public class TudeySceneManager extends SceneManager
     int timestamp, Vector2f translation, float rotation,
     ConfigReference<ActorConfig> ref, Actor actor, Consumer<? super ActorLogic> preStartup)
   {
+    checkApplyPhase();
+
     // return immediately if the place has shut down
     if (!_plobj.isActive()) {
       return null;
@@ -649,14 +942,16 @@ public class TudeySceneManager extends SceneManager
    */
   public void getVisibleActors (PawnLogic target, Rect bounds, Collection<ActorLogic> results)
   {
-    _actorSpace.getElements(bounds, _elements);
-    for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-      ActorLogic actor = (ActorLogic)_elements.get(ii).getUserObject();
-      if (!actor.isStatic() && (target == null || actor.isVisible(target))) {
-        results.add(actor);
+    synchronized (_queryLock) {
+      _actorSpace.getElements(bounds, _elements);
+      for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
+        ActorLogic actor = (ActorLogic)_elements.get(ii).getUserObject();
+        if (!actor.isStatic() && (target == null || actor.isVisible(target))) {
+          results.add(actor);
+        }
       }
+      _elements.clear();
     }
-    _elements.clear();
   }
 
   /**
@@ -696,17 +991,26 @@ public class TudeySceneManager extends SceneManager
    * intersect the provided bounds.
    */
   public Effect[] getEffectsFired (PawnLogic target, Rect bounds)
+  {
+    getEffectsFired(target, bounds, _effects);
+    Effect[] array = _effects.toArray(new Effect[_effects.size()]);
+    _effects.clear();
+    return array;
+  }
+
+  /**
+   * Adds all effects fired on the current tick whose influence regions intersect the provided
+   * bounds to the supplied collection.
+   */
+  public void getEffectsFired (PawnLogic target, Rect bounds, Collection<? super Effect> results)
   {
     for (int ii = 0, nn = _effectsFired.size(); ii < nn; ii++) {
       EffectLogic logic = _effectsFired.get(ii);
       if (logic.getShape().getBounds().intersects(bounds) &&
           (target == null || logic.isVisible(target))) {
-        _effects.add(logic.getEffect());
+        results.add(logic.getEffect());
       }
     }
-    Effect[] array = _effects.toArray(new Effect[_effects.size()]);
-    _effects.clear();
-    return array;
   }
 
   /**
@@ -723,6 +1027,7 @@ public class TudeySceneManager extends SceneManager
    */
   public void removeActorLogic (int id)
   {
+    checkApplyPhase();
     final ActorLogic logic = _actors.remove(id);
     if (logic == null) {
       log.warning("Missing actor to remove.", "where", where(), "id", id);
@@ -783,7 +1088,14 @@ public class TudeySceneManager extends SceneManager
     for (SpaceElement element : elements) {
       Sensor sensor = (Sensor)element.getUserObject();
       if (type.isInstance(sensor) && (flags & sensor.getMask()) != 0) {
-        sensor.trigger(timestamp, actor);
+        if (_metrics.sample(SceneMetrics.Category.SENSOR)) {
+          long started = System.nanoTime();
+          sensor.trigger(timestamp, actor);
+          _metrics.record(SceneMetrics.Category.SENSOR,
+            getProfileName(sensor), System.nanoTime() - started);
+        } else {
+          sensor.trigger(timestamp, actor);
+        }
         count++;
       }
     }
@@ -819,25 +1131,27 @@ public class TudeySceneManager extends SceneManager
    */
   public boolean collides (Actor actor, Shape shape, int timestamp)
   {
-    // check the scene model
-    if (((TudeySceneModel)_scene.getSceneModel()).collides(actor, shape)) {
-      return true;
-    }
+    synchronized (_queryLock) {
+      // check the scene model
+      if (((TudeySceneModel)_scene.getSceneModel()).collides(actor, shape)) {
+        return true;
+      }
 
-    // look for intersecting elements
-    _actorSpace.getIntersecting(shape, _elements);
-    try {
-      for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-        SpaceElement element = _elements.get(ii);
-        Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
-        if (timestamp < oactor.getDestroyed() && actor.canCollide(oactor)) {
-          return true;
+      // look for intersecting elements
+      _actorSpace.getIntersecting(shape, _elements);
+      try {
+        for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
+          SpaceElement element = _elements.get(ii);
+          Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
+          if (timestamp < oactor.getDestroyed() && actor.canCollide(oactor)) {
+            return true;
+          }
         }
+      } finally {
+        _elements.clear();
       }
-    } finally {
-      _elements.clear();
+      return false;
     }
-    return false;
   }
 
   /**
@@ -862,32 +1176,34 @@ public class TudeySceneManager extends SceneManager
   public boolean collides (
       int mask, Shape shape, int timestamp, Predicate<? super Actor> canCollidePred)
   {
-    // make sure we can actually collide with anything
-    if (mask == 0) {
-      return false;
-    }
+    synchronized (_queryLock) {
+      // make sure we can actually collide with anything
+      if (mask == 0) {
+        return false;
+      }
 
-    // check the scene model
-    if (((TudeySceneModel)_scene.getSceneModel()).collides(mask, shape)) {
-      return true;
-    }
+      // check the scene model
+      if (((TudeySceneModel)_scene.getSceneModel()).collides(mask, shape)) {
+        return true;
+      }
 
-    // look for intersecting elements
-    _actorSpace.getIntersecting(shape, _elements);
-    try {
-      for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-        SpaceElement element = _elements.get(ii);
-        Actor actor = ((ActorLogic)element.getUserObject()).getActor();
-        if ((timestamp < actor.getDestroyed()) &&
-            ((actor.getCollisionFlags() & mask) != 0) &&
-            canCollidePred.apply(actor)) {
-          return true;
+      // look for intersecting elements
+      _actorSpace.getIntersecting(shape, _elements);
+      try {
+        for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
+          SpaceElement element = _elements.get(ii);
+          Actor actor = ((ActorLogic)element.getUserObject()).getActor();
+          if ((timestamp < actor.getDestroyed()) &&
+              ((actor.getCollisionFlags() & mask) != 0) &&
+              canCollidePred.apply(actor)) {
+            return true;
+          }
         }
+      } finally {
+        _elements.clear();
       }
-    } finally {
-      _elements.clear();
+      return false;
     }
-    return false;
   }
 
   /**
@@ -971,6 +1287,9 @@ public class TudeySceneManager extends SceneManager
   @Override // from PlaceManager
   public void bodyWillEnter (BodyObject body)
   {
+    ConfigReference<ActorConfig> ref = getPawnConfig(body);
+    journal(new SceneJournal.Enter(body, ref, _entering.get(body.getOid())));
+
     // configure the client's message throttle to 1.5 times the absolute minimum
     PresentsSession client = _clmgr.getClient(body.username);
     if (client != null) {
@@ -978,7 +1297,6 @@ public class TudeySceneManager extends SceneManager
     }
 
     // add the pawn and configure a local to provide its id
-    ConfigReference<ActorConfig> ref = getPawnConfig(body);
     if (ref != null) {
       Object portalKey = _entering.remove(body.getOid());
       Transform2D transform = getPortalTransform(portalKey);
@@ -993,7 +1311,8 @@ public class TudeySceneManager extends SceneManager
           rotation = entrance.getRotation();
         }
       }
-      final ActorLogic logic = spawnActor(getNextTimestamp(), translation, rotation, ref);
+      int timestamp = getNextTimestamp();
+      final ActorLogic logic = spawnActor(timestamp, translation, rotation, ref);
       if (logic != null) {
         logic.bodyWillEnter(body);
         ((TudeyBodyObject)body).setPawnId(logic.getActor().getId());
@@ -1018,7 +1337,7 @@ public class TudeySceneManager extends SceneManager
         return entrance.getPortalTransform();
       }
     } else if (portalKey instanceof String) {
-      Logic entrance = Randoms.threadLocal().pick(getTagged((String)portalKey), null);
+      Logic entrance = _randoms.pick(getTagged((String)portalKey), null);
       if (entrance != null) {
         return new Transform2D(entrance.getTranslation(), entrance.getRotation());
       }
@@ -1040,6 +1359,7 @@ public class TudeySceneManager extends SceneManager
   @Override // from PlaceManager
   public void bodyWillLeave (BodyObject body)
   {
+    journal(new SceneJournal.Leave(body.getOid()));
     super.bodyWillLeave(body);
     TudeyBodyObject tbody = (TudeyBodyObject)body;
     if (tbody.pawnId != 0) {
@@ -1095,6 +1415,7 @@ public class TudeySceneManager extends SceneManager
         "who", caller, "where", where());
       return;
     }
+    journal(new SceneJournal.SetTarget(cloid, pawnId));
 
     // retrieve the actor and ensure it's a pawn
     ActorLogic target = _actors.get(pawnId);
@@ -1120,6 +1441,7 @@ public class TudeySceneManager extends SceneManager
     // forward to client liaison
     ClientLiaison client = _clients.get(caller.getOid());
     if (client != null) {
+      journal(new SceneJournal.SetCameraParams(caller.getOid(), config, aspect));
       client.setCameraParams(config, aspect);
     } else {
       log.warning("Received camera params from unknown client.",
@@ -1138,6 +1460,7 @@ public class TudeySceneManager extends SceneManager
         "who", caller, "where", where());
       return;
     }
+    journal(new SceneJournal.ActorRequest(cloid, actorId, name));
 
     // get their pawn logic to act as a source
     int pawnId = _tsobj.getPawnId(cloid);
@@ -1169,6 +1492,7 @@ public class TudeySceneManager extends SceneManager
         "who", caller, "where", where());
       return;
     }
+    journal(new SceneJournal.EntryRequest(cloid, key, name));
 
     // get their pawn logic to act as a source
     int pawnId = _tsobj.getPawnId(cloid);
@@ -1217,28 +1541,30 @@ public class TudeySceneManager extends SceneManager
   // documentation inherited from interface ActorAdvancer.Environment
   public boolean getPenetration (Actor actor, Shape shape, Vector2f result)
   {
-    // start with zero penetration
-    result.set(Vector2f.ZERO);
+    synchronized (_queryLock) {
+      // start with zero penetration
+      result.set(Vector2f.ZERO);
 
-    // check the scene model
-    ((TudeySceneModel)_scene.getSceneModel()).getPenetration(actor, shape, result);
+      // check the scene model
+      ((TudeySceneModel)_scene.getSceneModel()).getPenetration(actor, shape, result);
 
-    // get the intersecting elements
-    _actorSpace.getIntersecting(shape, _elements);
-    for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-      SpaceElement element = _elements.get(ii);
-      Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
-      if (actor.canCollide(oactor)) {
-        ((ShapeElement)element).getWorldShape().getPenetration(shape, _penetration);
-        if (_penetration.lengthSquared() > result.lengthSquared()) {
-          result.set(_penetration);
+      // get the intersecting elements
+      _actorSpace.getIntersecting(shape, _elements);
+      for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
+        SpaceElement element = _elements.get(ii);
+        Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
+        if (actor.canCollide(oactor)) {
+          ((ShapeElement)element).getWorldShape().getPenetration(shape, _penetration);
+          if (_penetration.lengthSquared() > result.lengthSquared()) {
+            result.set(_penetration);
+          }
         }
       }
-    }
-    _elements.clear();
+      _elements.clear();
 
-    // if our vector is non-zero, we penetrated
-    return !result.equals(Vector2f.ZERO);
+      // if our vector is non-zero, we penetrated
+      return !result.equals(Vector2f.ZERO);
+    }
   }
 
   // documentation inherited from interface ActorAdvancer.Environment
@@ -1250,7 +1576,9 @@ public class TudeySceneManager extends SceneManager
   // documentation inherited from interface ActorAdvancer.Environment
   public int getDirections (Actor actor, Shape shape)
   {
-    return ((TudeySceneModel)_scene.getSceneModel()).getDirections(actor, shape);
+    synchronized (_queryLock) {
+      return ((TudeySceneModel)_scene.getSceneModel()).getDirections(actor, shape);
+    }
   }
 
   // documentation inherited from interface RunQueue
@@ -1258,6 +1586,11 @@ public class TudeySceneManager extends SceneManager
   {
     synchronized (_runnables) {
       _runnables.add(runnable);
+
+      // runnables posted during the tick will be posted again on replay
+      if (!_ticking) {
+        journal(new SceneJournal.PostedRunnable(runnable));
+      }
     }
   }
 
@@ -1305,9 +1638,23 @@ public class TudeySceneManager extends SceneManager
     // create the pathfinder
     _pathfinder = new Pathfinder(this);
 
+    // export our metrics
+    _metrics.register(_scene.getId(), _scene.getName());
+
     // get a reference to the ticker
     _ticker = getTicker();
 
+    // start recording if so configured
+    if (_journalDir != null) {
+      File file = new File(_journalDir,
+        _scene.getId() + "-" + RunAnywhere.currentTimeMillis() + ".journal");
+      try {
+        startRecording(new FileOutputStream(file));
+      } catch (IOException e) {
+        log.warning("Failed to start scene journal.", "where", where(), "file", file, e);
+      }
+    }
+
     // create logic objects for scene entries and listen for changes
     createEntryLogics(sceneModel);
     sceneModel.addObserver(this);
@@ -1338,6 +1685,9 @@ public class TudeySceneManager extends SceneManager
     // stop listening to the scene model
     ((TudeySceneModel)_scene.getSceneModel()).removeObserver(this);
 
+    // stop exporting our metrics
+    _metrics.unregister();
+
     // flag the spaces as disposed to avoid extra unnecessary removal computation
     _actorSpace.dispose();
     _sensorSpace.dispose();
@@ -1358,6 +1708,11 @@ public class TudeySceneManager extends SceneManager
 
     _shutdownObservers.apply(_shutdownOp);
 
+    // report on the ticks we avoided
+    if (_tickLodStats.getSkippedTicks() > 0) {
+      log.info("Scene tick level-of-detail stats.", "where", where(), "stats", _tickLodStats);
+    }
+
     // remove from the ticker
     _ticker.remove(this);
     _ticker = null;
@@ -1365,11 +1720,15 @@ public class TudeySceneManager extends SceneManager
     // shut down the pathfinder
     _pathfinder.shutdown();
     _pathfinder = null;
+
+    // finish the journal
+    stopRecording();
   }
 
   @Override
   protected void bodyEntered (int bodyOid)
   {
+    journal(new SceneJournal.BodyEntered(bodyOid));
     super.bodyEntered(bodyOid);
 
     // create and map the client liaison
@@ -1387,6 +1746,7 @@ public class TudeySceneManager extends SceneManager
   @Override
   protected void bodyLeft (int bodyOid)
   {
+    journal(new SceneJournal.BodyLeft(bodyOid));
     super.bodyLeft(bodyOid);
 
     // remove the client liaison
@@ -1405,6 +1765,7 @@ public class TudeySceneManager extends SceneManager
   @Override
   protected void bodyUpdated (OccupantInfo info)
   {
+    journal(new SceneJournal.BodyUpdated(info.getBodyOid(), info.status));
     super.bodyUpdated(info);
 
     // pass the information on to the liaison
@@ -1426,7 +1787,7 @@ public class TudeySceneManager extends SceneManager
    */
   protected Logic getDefaultEntrance (BodyObject body)
   {
-    return Randoms.threadLocal().pick(_defaultEntrances, null);
+    return _randoms.pick(_defaultEntrances, null);
   }
 
   /**
@@ -1468,6 +1829,7 @@ public class TudeySceneManager extends SceneManager
    */
   protected void removeLogic (Object key)
   {
+    checkApplyPhase();
     EntryLogic logic = _entries.remove(key);
     if (logic != null) {
       removeMappings(logic);
@@ -1480,6 +1842,7 @@ public class TudeySceneManager extends SceneManager
    */
   public void addMappings (Logic logic)
   {
+    invalidateIndices(logic);
     for (String tag : logic.getTags()) {
       ArrayList<Logic> list = _tagged.get(tag);
       if (list == null) {
@@ -1503,6 +1866,7 @@ public class TudeySceneManager extends SceneManager
    */
   public void removeMappings (Logic logic)
   {
+    invalidateIndices(logic);
     for (String tag : logic.getTags()) {
       ArrayList<Logic> list = _tagged.get(tag);
       if (list == null || !list.remove(logic)) {
@@ -1529,6 +1893,42 @@ public class TudeySceneManager extends SceneManager
     }
   }
 
+  /**
+   * Returns the index for the supplied key, (re)building it if it's out of date.
+   */
+  protected LogicIndex getIndex (Object key, List<? extends Logic> logics)
+  {
+    LogicIndex index = _indices.get(key);
+    boolean stale = _staleIndices.remove(key);
+    if (index == null) {
+      _indices.put(key, index = new LogicIndex(logics, _timestamp));
+    } else if (stale || index.getTimestamp() != _timestamp) {
+      index.rebuild(logics, _timestamp);
+    }
+    return index;
+  }
+
+  /**
+   * Marks the indices covering the specified logic as stale.
+   */
+  protected void invalidateIndices (Logic logic)
+  {
+    if (_indices.isEmpty()) {
+      return;
+    }
+    for (String tag : logic.getTags()) {
+      if (_indices.containsKey(tag)) {
+        _staleIndices.add(tag);
+      }
+    }
+    for (Class<?> clazz = logic.getClass(); Logic.class.isAssignableFrom(clazz);
+        clazz = clazz.getSuperclass()) {
+      if (_indices.containsKey(clazz)) {
+        _staleIndices.add(clazz);
+      }
+    }
+  }
+
   /**
    * Updates the scene.
    */
@@ -1541,7 +1941,115 @@ public class TudeySceneManager extends SceneManager
       return;
     }
 
+    advanceTick(now);
+  }
+
+  /**
+   * Runs a runnable as part of the tick, timing it if sampled.
+   */
+  protected void run (Runnable runnable)
+  {
+    if (!_metrics.sample(SceneMetrics.Category.RUNNABLE)) {
+      runnable.run();
+      return;
+    }
+    long started = System.nanoTime();
+    runnable.run();
+    _metrics.record(SceneMetrics.Category.RUNNABLE,
+      getProfileName(runnable), System.nanoTime() - started);
+  }
+
+  /**
+   * Posts the delta for a client as part of the tick, timing it if sampled.
+   */
+  protected void postDelta (ClientLiaison client)
+  {
+    if (!_metrics.sample(SceneMetrics.Category.DELTA)) {
+      client.postDelta();
+      return;
+    }
+    long started = System.nanoTime();
+    client.postDelta();
+    _metrics.record(SceneMetrics.Category.DELTA,
+      getProfileName(client), System.nanoTime() - started);
+  }
+
+  /**
+   * Runs the read-only query phase of the tick, dividing the querying participants among the
+   * query threads when there are enough of them to make it worthwhile.
+   */
+  protected void runQueryPhase (final int timestamp)
+  {
+    _queryOp.init(timestamp);
+    _tickParticipants.apply(_queryOp);
+    int count = _queriers.size();
+    if (count == 0) {
+      return;
+    }
+    boolean timed = _metrics.sample(SceneMetrics.Category.QUERY);
+    long started = timed ? System.nanoTime() : 0L;
+    _queryWork.set(0L);
+    _queryPhase = true;
+    try {
+      ExecutorService executor = getQueryExecutor();
+      if (executor == null || count < MIN_PARALLEL_QUERIES) {
+        query(0, count, timestamp);
+        return;
+      }
+      // the tick thread takes the first chunk itself
+      int size = (count + _queryThreads) / (_queryThreads + 1);
+      for (int start = size; start < count; start += size) {
+        final int fstart = start, fend = Math.min(start + size, count);
+        _queryFutures.add(executor.submit(new Runnable() {
+          public void run () {
+            query(fstart, fend, timestamp);
+          }
+        }));
+      }
+      query(0, size, timestamp);
+      for (int ii = 0, nn = _queryFutures.size(); ii < nn; ii++) {
+        try {
+          _queryFutures.get(ii).get();
+        } catch (Exception e) {
+          log.warning("Failed to complete query phase.", "where", where(), e);
+        }
+      }
+    } finally {
+      _queryPhase = false;
+      _queryFutures.clear();
+      _queriers.clear();
+      if (timed) {
+        _metrics.record(SceneMetrics.Category.QUERY, "phase", System.nanoTime() - started);
+        _metrics.record(SceneMetrics.Category.QUERY, "work", _queryWork.get());
+      }
+    }
+  }
+
+  /**
+   * Runs the queries of the participants in the specified range.
+   */
+  protected void query (int start, int end, int timestamp)
+  {
+    long started = System.nanoTime();
+    for (int ii = start; ii < end; ii++) {
+      QueryingTickParticipant participant = _queriers.get(ii);
+      try {
+        participant.query(timestamp);
+      } catch (Throwable t) {
+        log.warning("Caught throwable querying participant.",
+          "where", where(), "participant", participant, t);
+      }
+    }
+    _queryWork.addAndGet(System.nanoTime() - started);
+  }
+
+  /**
+   * Advances the scene to the specified system time.
+   */
+  protected void advanceTick (long now)
+  {
     // update the scene timestamp
+    int elapsed = (int)(now - _lastTick), interval = getTickInterval();
     _previousTimestamp = _timestamp;
     _timestamp += (int)(now - _lastTick);
     _lastTick = now;
@@ -1552,9 +2060,10 @@ public class TudeySceneManager extends SceneManager
       _runnables.clear();
     }
     _ticking = true;
+    runQueryPhase(_timestamp);
     if (_tickProfEnabled) {
       // tick the participants
-      _profileTickOp.init(_timestamp);
+      _profileTickOp.init(_timestamp, _tickLodStats, _metrics);
       _tickParticipants.apply(_profileTickOp);
 
       // process the runnables in the list
@@ -1563,10 +2072,10 @@ public class TudeySceneManager extends SceneManager
         try {
           if (_tickParticipantCount++ % _tickProfInterval == 0) {
             long started = System.nanoTime();
-            runnable.run();
+            run(runnable);
             updateTickProfile(runnable, started);
           } else {
-            runnable.run();
+            run(runnable);
           }
         } catch (Throwable t) {
           log.warning("Caught throwable executing runnable.",
@@ -1580,10 +2089,10 @@ public class TudeySceneManager extends SceneManager
         try {
           if (_tickParticipantCount++ % _tickProfInterval == 0) {
             long started = System.nanoTime();
-            client.postDelta();
+            postDelta(client);
             updateTickProfile(client, started);
           } else {
-            client.postDelta();
+            postDelta(client);
           }
         } catch (Throwable t) {
           log.warning("Caught throwable posting delta.",
@@ -1592,14 +2101,14 @@ public class TudeySceneManager extends SceneManager
       }
     } else {
       // tick the participants
-      _tickOp.init(_timestamp);
+      _tickOp.init(_timestamp, _tickLodStats, _metrics);
       _tickParticipants.apply(_tickOp);
 
       // process the runnables in the list
       for (int ii = 0, nn = _runlist.size(); ii < nn; ii++) {
         Runnable runnable = _runlist.get(ii);
         try {
-          runnable.run();
+          run(runnable);
         } catch (Throwable t) {
           log.warning("Caught throwable executing runnable.",
             "where", where(), "runnable", runnable, t);
@@ -1610,7 +2119,7 @@ public class TudeySceneManager extends SceneManager
       // post deltas for all clients
       for (ClientLiaison client : _clients.values()) {
         try {
-          client.postDelta();
+          postDelta(client);
         } catch (Throwable t) {
           log.warning("Caught throwable posting delta.",
             "where", where(), "client", client, t);
@@ -1627,6 +2136,16 @@ public class TudeySceneManager extends SceneManager
 
     // note how long the tick took
     _tickDuration = (RunAnywhere.currentTimeMillis() - _lastTick);
+
+    // record the tick and its result in the journal
+    if (_journal != null) {
+      try {
+        _journal.recordTick(new SceneJournal.Tick(elapsed, interval, getStateChecksum()));
+      } catch (IOException e) {
+        log.warning("Failed to write scene journal.", "where", where(), e);
+        stopRecording();
+      }
+    }
   }
 
   /**
@@ -1661,6 +2180,20 @@ public class TudeySceneManager extends SceneManager
   protected static void updateTickProfile (Object participant, long started)
   {
     long elapsed = (System.nanoTime() - started) / 1000L;
+    String cname = getProfileName(participant);
+    TickProfile tprof = _profiles.get(cname);
+    if (tprof == null) {
+      _profiles.put(cname, tprof = new TickProfile());
+    }
+    tprof.record(elapsed);
+  }
+
+  /**
+   * Returns the name under which to profile the specified participant, runnable, or other
+   * object: its class name, followed by the name of its config if it has one.
+   */
+  public static String getProfileName (Object participant)
+  {
     String cname;
     if (participant instanceof Interval.RunBuddy) {
       cname = StringUtil.shortClassName(
@@ -1682,11 +2215,51 @@ public class TudeySceneManager extends SceneManager
       String rname = ref.getName();
       cname += ":" + rname.substring(rname.lastIndexOf('/') + 1);
     }
-    TickProfile tprof = _profiles.get(cname);
-    if (tprof == null) {
-      _profiles.put(cname, tprof = new TickProfile());
+    return cname;
+  }
+
+  /**
+   * Returns the executor used to run the query phase in parallel, or null if the query phase
+   * should run on the tick thread.
+   */
+  protected static synchronized ExecutorService getQueryExecutor ()
+  {
+    if (_queryExecutor == null && _queryThreads > 0) {
+      _queryExecutor = Executors.newFixedThreadPool(_queryThreads,
+        new ThreadFactoryBuilder().setNameFormat("scene-query-%d").setDaemon(true).build());
     }
-    tprof.record(elapsed);
+    return _queryExecutor;
+  }
+
+  /**
+   * (Re)used to collect the participants taking part in the query phase.
+   */
+  protected class QueryOp
+    implements ObserverList.ObserverOp<TickParticipant>
+  {
+    /**
+     * (Re)initializes the op with the current timestamp.
+     */
+    public void init (int timestamp)
+    {
+      _timestamp = timestamp;
+    }
+
+    // documentation inherited from interface ObserverList.ObserverOp
+    public boolean apply (TickParticipant participant)
+    {
+      // skip level-of-detail participants that won't be ticked
+      if (participant instanceof QueryingTickParticipant && !(
+          participant instanceof LodTickParticipant &&
+          ((LodTickParticipant)participant).getTickLevel(_timestamp) ==
+            LodTickParticipant.SKIP_TICK)) {
+        _queriers.add((QueryingTickParticipant)participant);
+      }
+      return true;
+    }
+
+    /** The timestamp of the current tick. */
+    protected int _timestamp;
   }
 
   /**
@@ -1699,15 +2272,39 @@ public class TudeySceneManager extends SceneManager
      * (Re)initializes the op with the current timestamp.
      */
     public void init (int timestamp)
+    {
+      init(timestamp, null);
+    }
+
+    /**
+     * (Re)initializes the op with the current timestamp and the stats object in which to
+     * record level-of-detail activity.
+     */
+    public void init (int timestamp, TickLodStats lodStats)
+    {
+      init(timestamp, lodStats, null);
+    }
+
+    /**
+     * (Re)initializes the op with the current timestamp, the stats object in which to record
+     * level-of-detail activity, and the metrics in which to record participant ticks.
+     */
+    public void init (int timestamp, TickLodStats lodStats, SceneMetrics metrics)
     {
       _timestamp = timestamp;
+      _lodStats = lodStats;
+      _metrics = metrics;
     }
 
     // documentation inherited from interface ObserverList.ObserverOp
     public boolean apply (TickParticipant participant)
     {
       try {
-        return participant.tick(_timestamp);
+        if (participant instanceof LodTickParticipant) {
+          return applyLod((LodTickParticipant)participant);
+        }
+        return tick(participant);
+
       } catch (Throwable t) {
         log.warning("Caught throwable ticking participant.",
           "participant", participant, t);
@@ -1715,8 +2312,56 @@ public class TudeySceneManager extends SceneManager
       }
     }
 
+    /**
+     * Ticks a level-of-detail participant according to the level it requests.
+     */
+    protected boolean applyLod (LodTickParticipant participant)
+    {
+      switch (participant.getTickLevel(_timestamp)) {
+        case LodTickParticipant.SKIP_TICK:
+          if (_lodStats != null) {
+            _lodStats._skipped++;
+          }
+          return true;
+
+        case LodTickParticipant.REDUCED_TICK:
+          if (_lodStats == null) {
+            return tick(participant);
+          }
+          long started = System.nanoTime();
+          boolean result = tick(participant);
+          _lodStats._reduced++;
+          _lodStats._reducedNanos += (System.nanoTime() - started);
+          return result;
+
+        default:
+          return tick(participant);
+      }
+    }
+
+    /**
+     * Actually ticks the participant.
+     */
+    protected boolean tick (TickParticipant participant)
+    {
+      if (_metrics == null || !_metrics.sample(SceneMetrics.Category.TICK)) {
+        return participant.tick(_timestamp);
+      }
+      long started = System.nanoTime();
+      boolean result = participant.tick(_timestamp);
+      _metrics.record(SceneMetrics.Category.TICK,
+        getProfileName(participant), System.nanoTime() - started);
+      return result;
+    }
+
     /** The timestamp of the current tick. */
     protected int _timestamp;
+
+    /** The stats in which to record level-of-detail activity, if any. */
+    protected TickLodStats _lodStats;
+
+    /** The metrics in which to record participant ticks, if any. */
+    protected SceneMetrics _metrics;
   }
 
   /**
@@ -1725,30 +2370,93 @@ public class TudeySceneManager extends SceneManager
   protected static class ProfileTickOp extends TickOp
   {
     @Override
-    public boolean apply (TickParticipant participant)
+    protected boolean tick (TickParticipant participant)
     {
-      try {
-        if (_tickParticipantCount++ % _tickProfInterval != 0) {
-          return participant.tick(_timestamp);
-        }
-        long started = System.nanoTime();
-        boolean result = participant.tick(_timestamp);
-        updateTickProfile(participant, started);
-        return result;
-
-      } catch (Throwable t) {
-        log.warning("Caught throwable ticking participant.",
-          "participant", participant, t);
-        return false;
+      if (_tickParticipantCount++ % _tickProfInterval != 0) {
+        return super.tick(participant);
       }
+      long started = System.nanoTime();
+      boolean result = super.tick(participant);
+      updateTickProfile(participant, started);
+      return result;
     }
   }
 
+  /**
+   * Tracks the ticks skipped or reduced by level-of-detail participants.
+   */
+  public static class TickLodStats
+  {
+    /**
+     * Returns the number of participant ticks skipped.
+     */
+    public long getSkippedTicks ()
+    {
+      return _skipped;
+    }
+
+    /**
+     * Returns the number of participant ticks run at a reduced rate.
+     */
+    public long getReducedTicks ()
+    {
+      return _reduced;
+    }
+
+    /**
+     * Returns an estimate of the processing time saved by skipping ticks, in microseconds,
+     * based on the average duration of the reduced-rate ticks.
+     */
+    public long getEstimatedSavedMicros ()
+    {
+      return (_reduced == 0) ? 0L : (_skipped * _reducedNanos / _reduced) / 1000L;
+    }
+
+    /**
+     * Resets the stats.
+     */
+    public void clear ()
+    {
+      _skipped = _reduced = _reducedNanos = 0L;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return _skipped + " skipped, " + _reduced + " reduced, ~" +
+        getEstimatedSavedMicros() + "us saved";
+    }
+
+    /** The number of ticks skipped and run at reduced rates. */
+    protected long _skipped, _reduced;
+
+    /** The total time spent in reduced-rate ticks. */
+    protected long _reducedNanos;
+  }
+
   /**
    * Records information about a tick participant.
    */
-  protected static class TickProfile
+  public static class TickProfile
   {
+    /**
+     * Creates a profile with the default (coarse) histogram.
+     */
+    public TickProfile ()
+    {
+      this(20000, 10);
+    }
+
+    /**
+     * Creates a profile whose histogram has the specified bucket width (in microseconds) and
+     * bucket count.
+     */
+    public TickProfile (int bucketWidth, int bucketCount)
+    {
+      _bucketWidth = bucketWidth;
+      _histo = new Histogram(0, bucketWidth, bucketCount);
+    }
+
     public void record (long elapsed)
     {
       _totalElapsed += elapsed;
@@ -1756,6 +2464,50 @@ public class TudeySceneManager extends SceneManager
       _longest = Math.max(elapsed, _longest);
     }
 
+    /**
+     * Returns the number of samples recorded.
+     */
+    public int getCount ()
+    {
+      return _histo.size();
+    }
+
+    /**
+     * Returns the average sample in microseconds.
+     */
+    public long getAverage ()
+    {
+      int count = _histo.size();
+      return (count == 0) ? 0L : (_totalElapsed / count);
+    }
+
+    /**
+     * Returns the longest sample in microseconds.
+     */
+    public long getLongest ()
+    {
+      return _longest;
+    }
+
+    /**
+     * Returns an upper bound (to the resolution of the histogram) on the specified percentile
+     * of the samples, in microseconds.
+     *
+     * @param percentile the percentile, from zero to one hundred.
+     */
+    public long getPercentile (float percentile)
+    {
+      int[] buckets = _histo.getBuckets();
+      long target = (long)Math.ceil(_histo.size() * percentile / 100f);
+      long total = 0L;
+      for (int ii = 0; ii < buckets.length - 1; ii++) {
+        if ((total += buckets[ii]) >= target) {
+          return Math.min((long)(ii + 1) * _bucketWidth, _longest);
+        }
+      }
+      return _longest; // the last bucket holds everything above the range
+    }
+
     @Override
     public String toString ()
     {
@@ -1765,7 +2517,8 @@ public class TudeySceneManager extends SceneManager
     }
 
     protected long _totalElapsed, _longest;
-    protected Histogram _histo = new Histogram(0, 20000, 10);
+    protected int _bucketWidth;
+    protected Histogram _histo;
   }
 
   /** The injector that we use to create and initialize our logic objects. */
@@ -1792,6 +2545,21 @@ public class TudeySceneManager extends SceneManager
   /** The timestamp of the current and previous ticks. */
   protected int _timestamp, _previousTimestamp;
 
+  /** The tick interval to report while replaying a journal, or zero if not replaying. */
+  protected int _replayInterval;
+
+  /** The seed of the scene's random number generator. */
+  protected long _seed = System.nanoTime();
+
+  /** The scene's random number generator. */
+  protected Random _random = new Random(_seed);
+
+  /** A {@link Randoms} wrapper for the random number generator. */
+  protected Randoms _randoms = Randoms.with(_random);
+
+  /** The journal being recorded, if any. */
+  protected SceneJournal.Writer _journal;
+
   /** The time at which the last occupant left. */
   protected long _emptyTime;
 
@@ -1810,6 +2578,9 @@ public class TudeySceneManager extends SceneManager
   /** Set when we're actually in the process of ticking. */
   protected boolean _ticking;
 
+  /** The batch of simple mobiles advanced together (created on demand). */
+  protected MobileBatch _mobileBatch;
+
   /** The list of actor observers. */
   protected ObserverList<ActorObserver> _actorObservers = ObserverList.newFastUnsafe();
 
@@ -1831,6 +2602,12 @@ public class TudeySceneManager extends SceneManager
   /** Maps logic classes to lists of logic instances. */
   protected HashMap<Class<?>, ArrayList<Logic>> _instances = Maps.newHashMap();
 
+  /** Spatial indices of tagged logics and logic instances, mapped by tag or class. */
+  protected HashMap<Object, LogicIndex> _indices = Maps.newHashMap();
+
+  /** The keys of indices whose membership has changed since they were built. */
+  protected Set<Object> _staleIndices = Sets.newHashSet();
+
   /** The logic objects corresponding to default entrances. */
   protected ArrayList<Logic> _defaultEntrances = Lists.newArrayList();
 
@@ -1876,9 +2653,36 @@ public class TudeySceneManager extends SceneManager
   /** The tick op used when profiling. */
   protected ProfileTickOp _profileTickOp = new ProfileTickOp();
 
+  /** Statistics on the ticks skipped by level-of-detail participants. */
+  protected TickLodStats _tickLodStats = new TickLodStats();
+
+  /** The scene's metrics. */
+  protected SceneMetrics _metrics = new SceneMetrics();
+
+  /** Used to collect the participants taking part in the query phase. */
+  protected QueryOp _queryOp = new QueryOp();
+
+  /** Holds the participants taking part in the query phase. */
+  protected List<QueryingTickParticipant> _queriers = Lists.newArrayList();
+
+  /** Holds the futures of the query chunks running on the worker threads. */
+  protected List<Future<?>> _queryFutures = Lists.newArrayList();
+
+  /** Set while we're in the query phase. */
+  protected volatile boolean _queryPhase;
+
+  /** Serializes access to the spatial queries during the query phase. */
+  protected Object _queryLock = new Object();
+
+  /** The total time spent running queries in the current query phase, in nanoseconds. */
+  protected AtomicLong _queryWork = new AtomicLong();
+
   /** Stores penetration vector during queries. */
   protected Vector2f _penetration = new Vector2f();
 
+  /** The directory in which to record scene journals, if any. */
+  protected static File _journalDir;
+
   /** Whether or not we're profiling tick participants. */
   protected static boolean _tickProfEnabled;
 
@@ -1891,6 +2695,21 @@ public class TudeySceneManager extends SceneManager
   /** Incremented on each participant tick when profiling. */
   protected static long _tickParticipantCount;
 
+  /** The number of worker threads used to run the query phase.  Zero by default, because the
+   * queries share the scene's query lock, so worker threads only pay off for logic whose queries
+   * spend most of their time outside of it. */
+  protected static int _queryThreads;
+
+  /** The executor that runs the query phase, if created. */
+  protected static ExecutorService _queryExecutor;
+
+  /** Whether or not to check that scene state isn't modified during the query phase. */
+  protected static final boolean CHECK_QUERIES =
+    Boolean.getBoolean("com.threerings.tudey.check_queries");
+
+  /** The minimum number of querying participants for which we run the query phase in parallel. */
+  protected static final int MIN_PARALLEL_QUERIES = 16;
+
   /** Shutdown observer op. */
   protected static final ObserverList.ObserverOp<ShutdownObserver> _shutdownOp = observer -> {
     observer.didShutdown();
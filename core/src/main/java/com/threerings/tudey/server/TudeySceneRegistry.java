@@ -52,6 +52,7 @@ import com.threerings.config.ConfigManager;
 
 import com.threerings.tudey.data.TudeyCodes;
 import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.server.util.MetricsEndpoint;
 import com.threerings.tudey.server.util.SceneTicker;
 
 /**
@@ -75,6 +76,9 @@ public class TudeySceneRegistry extends SceneRegistry
         // create the default scene ticker
         _defaultTicker = createDefaultTicker();
 
+        // serve the scene metrics if so configured
+        MetricsEndpoint.startIfConfigured();
+
         // create the interval to prune the portal mappings
         new Interval(_omgr) {
           public void expired () {
@@ -83,6 +87,12 @@ public class TudeySceneRegistry extends SceneRegistry
         }.schedule(PORTAL_PRUNE_INTERVAL, true);
       }
     });
+    lifecycle.addComponent(new Lifecycle.ShutdownComponent() {
+      public void shutdown () {
+        // stop serving the scene metrics
+        MetricsEndpoint.stop();
+      }
+    });
   }
 
   /**
@@ -197,7 +197,7 @@ public abstract class ActionLogic extends Logic
       ActionConfig.SpawnRotatedActor config = (ActionConfig.SpawnRotatedActor)_config;
       float rotation = config.rotation;
       if (config.rotationVariance > 0) {
-        rotation += config.rotationVariance * (FloatMath.random() - 0.5f);
+        rotation += config.rotationVariance * (_scenemgr.getRandoms().getFloat(1f) - 0.5f);
       }
       return FloatMath.normalizeAngle(
         (config.relative ? target.getRotation() : 0f) + rotation);
@@ -239,7 +239,7 @@ public abstract class ActionLogic extends Logic
           translation = getTranslation(cTargets.get(0));
         }
       }
-      Randoms r = Randoms.threadLocal();
+      Randoms r = _scenemgr.getRandoms();
       for (int ii = 0; ii < config.count; ii++) {
         for (int jj = 0; jj < COLLISION_ATTEMPTS; jj++) {
           Vector2f location = getTranslation(target).add(
@@ -434,7 +434,7 @@ public abstract class ActionLogic extends Logic
         if (_locations.isEmpty()) {
           continue;
         }
-        Logic location = Randoms.threadLocal().pick(_locations, null);
+        Logic location = _scenemgr.getRandoms().pick(_locations, null);
         _locations.clear();
         ActorLogic actorTarget = (ActorLogic)target;
         warp(actorTarget, location);
@@ -932,7 +932,7 @@ public abstract class ActionLogic extends Logic
     @Override
     public boolean execute (int timestamp, Logic activator)
     {
-      int idx = RandomUtil.getWeightedIndex(_weights);
+      int idx = RandomUtil.getWeightedIndex(_weights, _scenemgr.getRandom());
       if (idx >= 0) {
         return _actions[idx].execute(timestamp, activator);
       }
@@ -1001,7 +1001,7 @@ public abstract class ActionLogic extends Logic
       int delay = (config.variance == 0)
         ? config.delay
         : Math.max(0, config.delay +
-            Randoms.threadLocal().getInt(config.variance * 2) - config.variance);
+            _scenemgr.getRandoms().getInt(config.variance * 2) - config.variance);
       new ActionInterval(_scenemgr.getTimestamp() + delay, activator);
       return true;
     }
@@ -237,6 +237,28 @@ public class ActorLogic extends Logic
     return _snapshotDelta;
   }
 
+  /**
+   * Returns the delta between the supplied earlier snapshot of the actor and the current
+   * snapshot, or <code>null</code> if they are the same.  The last such delta is cached, so
+   * clients that share a baseline share the work of computing it.
+   */
+  public ActorDelta getSnapshotDelta (Actor baseline)
+  {
+    updateSnapshot();
+    if (baseline == _snapshot) {
+      return null;
+    } else if (baseline == _previousSnapshot) {
+      return _snapshotDelta;
+    }
+    if (baseline != _baselineSnapshot || _baselineRevised != _snapshot) {
+      ActorDelta delta = new ActorDelta(baseline, _snapshot);
+      _baselineDelta = delta.isEmpty() ? null : delta;
+      _baselineSnapshot = baseline;
+      _baselineRevised = _snapshot;
+    }
+    return _baselineDelta;
+  }
+
   /**
    * Returns a reference to the actor's shape element.
    */
@@ -652,6 +674,8 @@ public class ActorLogic extends Logic
    */
   protected void updateShape ()
   {
+    _scenemgr.checkApplyPhase();
+
     // notify observers that the shape will change
     _shapeObservers.apply(_shapeWillChangeOp);
 
@@ -764,6 +788,12 @@ public class ActorLogic extends Logic
   /** The delta between the current and previous snapshots (if any). */
   protected ActorDelta _snapshotDelta;
 
+  /** The baseline and revised snapshots of the last delta computed from an earlier baseline. */
+  protected Actor _baselineSnapshot, _baselineRevised;
+
+  /** The last delta computed from an earlier baseline (or <code>null</code> if empty). */
+  protected ActorDelta _baselineDelta;
+
   /** The timestamp of the actor snapshot. */
   protected int _snaptime;
 
@@ -35,6 +35,7 @@ import com.threerings.tudey.config.ActorConfig;
 import com.threerings.tudey.config.BehaviorConfig;
 import com.threerings.tudey.data.actor.Agent;
 import com.threerings.tudey.data.actor.Mobile;
+import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.util.ActiveAdvancer;
 
 import static com.threerings.tudey.Log.log;
@@ -43,6 +44,7 @@ import static com.threerings.tudey.Log.log;
  * Controls an autonomous agent.
  */
 public class AgentLogic extends ActiveLogic
+  implements TudeySceneManager.QueryingTickParticipant
 {
   /**
    * Checks whether we can move.
@@ -219,6 +221,12 @@ public class AgentLogic extends ActiveLogic
     _behavior.transfer(asource._behavior, refs);
   }
 
+  // documentation inherited from interface TudeySceneManager.QueryingTickParticipant
+  public void query (int timestamp)
+  {
+    _behavior.query(timestamp);
+  }
+
   @Override
   public boolean tick (int timestamp)
   {
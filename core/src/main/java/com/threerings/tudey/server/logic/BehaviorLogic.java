@@ -32,7 +32,6 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import com.samskivert.util.ArrayUtil;
-import com.samskivert.util.Randoms;
 
 import com.threerings.math.FloatMath;
 import com.threerings.math.Vector2f;
@@ -43,6 +42,7 @@ import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.Mobile;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.Pathfinder;
 
 import static com.threerings.tudey.Log.log;
 
@@ -78,11 +78,20 @@ public abstract class BehaviorLogic extends Logic
       advanceEvaluation();
     }
 
+    @Override
+    public void query (int timestamp)
+    {
+      // if scheduled to evaluate, give subclasses a chance to prepare in advance
+      if (isEvaluationDue(timestamp)) {
+        queryEvaluation(timestamp);
+      }
+    }
+
     @Override
     public void tick (int timestamp)
     {
       // if scheduled to do so, evaluate
-      if (_agent.canThink() && timestamp >= _nextEvaluation) {
+      if (isEvaluationDue(timestamp)) {
         evaluate();
       }
     }
@@ -94,6 +103,23 @@ public abstract class BehaviorLogic extends Logic
       _nextEvaluation = ((Evaluating)source)._nextEvaluation;
     }
 
+    /**
+     * Determines whether we're due to evaluate at the specified time.
+     */
+    protected boolean isEvaluationDue (int timestamp)
+    {
+      return _agent.canThink() && timestamp >= _nextEvaluation;
+    }
+
+    /**
+     * Performs the read-only portion of an evaluation due on the upcoming tick (see
+     * {@link #query}).  Default implementation does nothing.
+     */
+    protected void queryEvaluation (int timestamp)
+    {
+      // nothing by default
+    }
+
     /**
      * Performs an evaluation.  Default implementation simply schedules the next evaluation.
      */
@@ -410,7 +436,7 @@ public abstract class BehaviorLogic extends Logic
         rotation -= FloatMath.HALF_PI;
         break;
       case RANDOM:
-        rotation += Randoms.threadLocal().getBoolean()
+        rotation += _scenemgr.getRandoms().getBoolean()
           ? FloatMath.HALF_PI : -FloatMath.HALF_PI;
         break;
       }
@@ -638,7 +664,7 @@ public abstract class BehaviorLogic extends Logic
       if (_path != null) {
         _candidates.add(null); // represents the current path
       }
-      PathCandidate candidate = Randoms.threadLocal().pick(_candidates, null);
+      PathCandidate candidate = _scenemgr.getRandoms().pick(_candidates, null);
       _candidates.clear();
 
       // set off on that path
@@ -700,6 +726,20 @@ public abstract class BehaviorLogic extends Logic
       _target.transfer(((Follow)source)._target, refs);
     }
 
+    @Override
+    public void startup ()
+    {
+      super.startup();
+      _queried = false; // any path queried before we were (re)started is stale
+    }
+
+    @Override
+    public void query (int timestamp)
+    {
+      _queried = false;
+      super.query(timestamp);
+    }
+
     @Override
     protected void didInit ()
     {
@@ -707,6 +747,22 @@ public abstract class BehaviorLogic extends Logic
       _target = createTarget(((BehaviorConfig.Follow)_config).target, _agent);
     }
 
+    @Override
+    protected void queryEvaluation (int timestamp)
+    {
+      // compute the path to our current target in advance (the evaluation will use it if the
+      // target doesn't change and neither of us moves too far)
+      if (_currentTarget == null) {
+        return;
+      }
+      _queriedTarget = _currentTarget;
+      _queriedFrom.set(_agent.getTranslation());
+      _queriedTo.set(_currentTarget.getTranslation());
+      _queriedPath = _scenemgr.getPathfinder().getPath(
+        _agent, MAX_FOLLOW_PATH_LENGTH, _queriedTo.x, _queriedTo.y, true, true);
+      _queried = true;
+    }
+
     @Override
     protected void evaluate ()
     {
@@ -740,10 +796,18 @@ public abstract class BehaviorLogic extends Logic
         return;
       }
 
-      // compute a path to the target
+      // compute a path to the target (or use the one computed in the query phase)
       Vector2f loc = _currentTarget.getTranslation();
-      Vector2f[] path = _scenemgr.getPathfinder().getPath(
-        _agent, MAX_FOLLOW_PATH_LENGTH, loc.x, loc.y, true, true);
+      Vector2f[] path;
+      if (_queried && _queriedTarget == _currentTarget &&
+          Pathfinder.inSameCell(_queriedFrom, trans) && Pathfinder.inSameCell(_queriedTo, loc)) {
+        path = _queriedPath;
+      } else {
+        path = _scenemgr.getPathfinder().getPath(
+          _agent, MAX_FOLLOW_PATH_LENGTH, loc.x, loc.y, true, true);
+      }
+      _queried = false;
+      _queriedPath = null;
       if (path == null) {
         clearPath();
         _agent.face(_currentTarget);
@@ -762,6 +826,18 @@ public abstract class BehaviorLogic extends Logic
 
     /** The current target. */
     protected Logic _currentTarget;
+
+    /** Whether or not we computed a path in the query phase. */
+    protected boolean _queried;
+
+    /** The target for which we computed the path. */
+    protected Logic _queriedTarget;
+
+    /** The agent and target locations for which we computed the path. */
+    protected Vector2f _queriedFrom = new Vector2f(), _queriedTo = new Vector2f();
+
+    /** The path computed in the query phase. */
+    protected Vector2f[] _queriedPath;
   }
 
   /**
@@ -769,6 +845,15 @@ public abstract class BehaviorLogic extends Logic
    */
   public static class Random extends Evaluating
   {
+    @Override
+    public void query (int timestamp)
+    {
+      super.query(timestamp);
+      if (_active != null) {
+        _active.query(timestamp);
+      }
+    }
+
     @Override
     public void tick (int timestamp)
     {
@@ -842,7 +927,7 @@ public abstract class BehaviorLogic extends Logic
     protected void evaluate ()
     {
       super.evaluate();
-      BehaviorLogic nactive = Randoms.threadLocal().pick(_behaviorWeights, null);
+      BehaviorLogic nactive = _scenemgr.getRandoms().pick(_behaviorWeights, null);
       if (nactive == _active) {
         return;
       }
@@ -985,6 +1070,17 @@ public abstract class BehaviorLogic extends Logic
       }
     }
 
+    @Override
+    public void query (int timestamp)
+    {
+      if (_first != null) {
+        _first.query(timestamp);
+      }
+      if (_second != null) {
+        _second.query(timestamp);
+      }
+    }
+
     @Override
     public void tick (int timestamp)
     {
@@ -1104,6 +1200,15 @@ public abstract class BehaviorLogic extends Logic
     // nothing by default
   }
 
+  /**
+   * Performs the read-only portion of the behavior's tick, which may run concurrently with
+   * those of other behaviors (see {@link TudeySceneManager.QueryingTickParticipant#query}).
+   */
+  public void query (int timestamp)
+  {
+    // nothing by default
+  }
+
   /**
    * Ticks the behavior.
    */
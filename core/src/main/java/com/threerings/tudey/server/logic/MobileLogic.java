@@ -37,12 +37,13 @@ import com.threerings.tudey.data.actor.Mobile;
 import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.util.ActorAdvancer;
+import com.threerings.tudey.util.MobileAdvancer;
 
 /**
  * Controls the state of a mobile actor.
  */
 public class MobileLogic extends ActorLogic
-  implements TudeySceneManager.TickParticipant, ActorAdvancer.Environment
+  implements TudeySceneManager.LodTickParticipant, ActorAdvancer.Environment
 {
   /**
    * Returns the direction of the mobile.
@@ -52,19 +53,46 @@ public class MobileLogic extends ActorLogic
     return ((Mobile)getActor()).getDirection();
   }
 
+  /**
+   * Returns the timestamp of the last tick in which we actually advanced.
+   */
+  public int getLastTick ()
+  {
+    return _lastTick;
+  }
+
+  /**
+   * Called by the scene manager's {@link com.threerings.tudey.server.util.MobileBatch} after it
+   * has moved the actor to its position at the specified timestamp without contacting anything.
+   */
+  public void batchAdvanced (int timestamp)
+  {
+    ((MobileAdvancer)_advancer).moved(timestamp);
+    _lastTick = timestamp;
+
+    // update the actor's shape, notify any sensors
+    updateShape();
+    _scenemgr.triggerIntersectionSensors(timestamp, this);
+  }
+
   // documentation inherited from interface TudeySceneManager.TickParticipant
   public boolean tick (int timestamp)
   {
     // if enough time has elapsed without our being seen, enter stasis
     int stasisInterval = ((ActorConfig.Mobile)_config).stasisInterval;
     if (stasisInterval > 0 && timestamp - _snaptime > stasisInterval) {
-      _scenemgr.removeTickParticipant(this);
+      stopTicking();
       _inStasis = true;
       enteredStasis();
     }
 
-    // advance to the current timestamp
-    _advancer.advance(timestamp);
+    // advance to the current timestamp, catching up if we've skipped ticks
+    if (_lastTick < _scenemgr.getPreviousTimestamp()) {
+      _advancer.catchUp(timestamp);
+    } else {
+      _advancer.advance(timestamp);
+    }
+    _lastTick = timestamp;
 
     // note and clear penetration
     if (_penetrationCount > 0) {
@@ -80,6 +108,17 @@ public class MobileLogic extends ActorLogic
     return true;
   }
 
+  // documentation inherited from interface TudeySceneManager.LodTickParticipant
+  public int getTickLevel (int timestamp)
+  {
+    // if we were seen on the last tick, or have no reduced rate, tick normally
+    int interval = ((ActorConfig.Mobile)_config).unseenTickInterval;
+    if (interval <= 0 || _snaptime >= _scenemgr.getPreviousTimestamp()) {
+      return FULL_TICK;
+    }
+    return (timestamp - _lastTick < interval) ? SKIP_TICK : REDUCED_TICK;
+  }
+
   // documentation inherited from ActorAdvancer.Environment
   public TudeySceneModel getSceneModel ()
   {
@@ -121,9 +160,10 @@ public class MobileLogic extends ActorLogic
   {
     // wake the actor up if it's in stasis
     if (_inStasis) {
-      _scenemgr.addTickParticipant(this);
+      startTicking();
       _inStasis = false;
       _advancer.jump(_scenemgr.getTimestamp());
+      _lastTick = _scenemgr.getTimestamp();
       leftStasis();
     }
     return super.getSnapshot();
@@ -136,14 +176,15 @@ public class MobileLogic extends ActorLogic
 
     MobileLogic msource = (MobileLogic)source;
     _advancer.transfer(msource._advancer);
+    _lastTick = msource._lastTick;
     if (_inStasis == msource._inStasis) {
       return;
     }
     if (_inStasis = msource._inStasis) {
-      _scenemgr.removeTickParticipant(this);
+      stopTicking();
       enteredStasis();
     } else {
-      _scenemgr.addTickParticipant(this);
+      startTicking();
       leftStasis();
     }
   }
@@ -153,11 +194,12 @@ public class MobileLogic extends ActorLogic
   {
     // create advancer
     _advancer = createAdvancer();
+    _lastTick = _actor.getCreated();
 
     // start ticking immediately if we don't start out in stasis
     ActorConfig.Mobile config = (ActorConfig.Mobile)_config;
     if (!(_inStasis = config.startInStasis)) {
-      _scenemgr.addTickParticipant(this);
+      startTicking();
       leftStasis();
     }
   }
@@ -168,7 +210,48 @@ public class MobileLogic extends ActorLogic
     super.wasDestroyed();
 
     // deregister as tick participant
-    _scenemgr.removeTickParticipant(this);
+    stopTicking();
+  }
+
+  /**
+   * Starts advancing the actor on each tick, either as part of the scene manager's
+   * {@link com.threerings.tudey.server.util.MobileBatch} or as a tick participant in its own
+   * right.  All registrations go through here so that {@link #stopTicking} can undo them.
+   */
+  protected void startTicking ()
+  {
+    if (_batched = canBatch()) {
+      _scenemgr.getMobileBatch().add(this);
+    } else {
+      _scenemgr.addTickParticipant(this);
+    }
+  }
+
+  /**
+   * Stops advancing the actor on each tick, removing it from wherever {@link #startTicking}
+   * last registered it.
+   */
+  protected void stopTicking ()
+  {
+    if (_batched) {
+      _scenemgr.getMobileBatch().remove(this);
+    } else {
+      _scenemgr.removeTickParticipant(this);
+    }
+  }
+
+  /**
+   * Determines whether the actor is simple enough to be advanced by the scene manager's
+   * {@link com.threerings.tudey.server.util.MobileBatch} rather than ticking on its own: that
+   * is, whether this logic, its actor, and its advancer are all of the base types, and the
+   * actor never enters stasis or ticks at a reduced rate.
+   */
+  protected boolean canBatch ()
+  {
+    ActorConfig.Mobile config = (ActorConfig.Mobile)_config;
+    return getClass() == MobileLogic.class && _actor.getClass() == Mobile.class &&
+      _advancer.getClass() == MobileAdvancer.class && config.stasisInterval <= 0 &&
+      config.unseenTickInterval <= 0;
   }
 
   /**
@@ -217,9 +300,15 @@ public class MobileLogic extends ActorLogic
   /** Used to advance the state of the actor. */
   protected ActorAdvancer _advancer;
 
+  /** The timestamp of the last tick in which we actually advanced. */
+  protected int _lastTick;
+
   /** Whether or not the actor is in stasis. */
   protected boolean _inStasis;
 
+  /** Whether the actor was last registered with the mobile batch. */
+  protected boolean _batched;
+
   /** The number of penetrations. */
   protected int _penetrationCount;
 
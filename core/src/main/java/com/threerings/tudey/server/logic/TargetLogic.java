@@ -28,14 +28,10 @@ package com.threerings.tudey.server.logic;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Map;
 
 import com.google.common.collect.Lists;
 
-import com.samskivert.util.CollectionUtil;
-import com.samskivert.util.QuickSort;
-import com.samskivert.util.Randoms;
 
 import com.threerings.math.Vector2f;
 
@@ -44,6 +40,7 @@ import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.TudeySceneModel;
 import com.threerings.tudey.data.TudeySceneModel.Entry;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.LogicIndex;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.space.SpaceElement;
 
@@ -126,6 +123,18 @@ public abstract class TargetLogic extends Logic
       TargetConfig.Tagged config = (TargetConfig.Tagged)_config;
       results.addAll(_scenemgr.getTagged(config.tag));
     }
+
+    @Override
+    public LogicIndex getIndex ()
+    {
+      return _scenemgr.getTaggedIndex(((TargetConfig.Tagged)_config).tag);
+    }
+
+    @Override
+    public boolean isShared ()
+    {
+      return true;
+    }
   }
 
   /**
@@ -139,6 +148,18 @@ public abstract class TargetLogic extends Logic
       results.addAll(_scenemgr.getInstances(_logicClass));
     }
 
+    @Override
+    public LogicIndex getIndex ()
+    {
+      return _scenemgr.getInstanceIndex(_logicClass);
+    }
+
+    @Override
+    public boolean isShared ()
+    {
+      return true;
+    }
+
     @Override
     protected void didInit ()
     {
@@ -272,9 +293,10 @@ public abstract class TargetLogic extends Logic
     protected void selectSubset (int size, Logic activator, Collection<Logic> results)
     {
       if (size == 1) {
-        results.add(Randoms.threadLocal().pick(_targets, null));
+        results.add(_scenemgr.getRandoms().pick(_targets, null));
       } else {
-        results.addAll(CollectionUtil.selectRandomSubset(_targets, size));
+        Collections.shuffle(_targets, _scenemgr.getRandom());
+        results.addAll(_targets.subList(0, size));
       }
     }
   }
@@ -283,7 +305,6 @@ public abstract class TargetLogic extends Logic
    * Superclass of the distance-based subsets.
    */
   public static abstract class DistanceSubset extends Subset
-    implements Comparator<Logic>
   {
     @Override
     protected void didInit ()
@@ -299,24 +320,12 @@ public abstract class TargetLogic extends Logic
       _location.transfer(((DistanceSubset)source)._location, refs);
     }
 
-    @Override
-    protected void selectSubset (int size, Logic activator, Collection<Logic> results)
+    /**
+     * Sets the reference point to the average of the resolved locations.
+     */
+    protected void computeReference (Logic activator)
     {
-      // average the locations
-      _location.resolve(activator, _locations);
-      int nlocs = _locations.size();
-      _reference.set(Vector2f.ZERO);
-      for (int ii = 0; ii < nlocs; ii++) {
-        _reference.addLocal(_locations.get(ii).getTranslation());
-      }
-      _reference.multLocal(1f / nlocs);
-      _locations.clear();
-
-      // sort
-      QuickSort.sort(_targets, this);
-
-      // add first size elements
-      results.addAll(_targets.subList(0, size));
+      getAverageTranslation(_location, activator, _locations, _reference);
     }
 
     /** The reference location. */
@@ -334,12 +343,34 @@ public abstract class TargetLogic extends Logic
    */
   public static class NearestSubset extends DistanceSubset
   {
-    // documentation inherited from interface Comparator
-    public int compare (Logic l1, Logic l2)
+    @Override
+    public void resolve (Logic activator, Collection<Logic> results)
     {
-      return Float.compare(
-        l1.getTranslation().distance(_reference),
-        l2.getTranslation().distance(_reference));
+      // if the target can be spatially indexed, query the index rather than sorting
+      LogicIndex index = _target.getIndex();
+      if (index == null) {
+        super.resolve(activator, results);
+        return;
+      }
+      int size = ((TargetConfig.Subset)_config).size;
+      if (index.size() <= size) {
+        index.getAll(results);
+      } else {
+        // references that are the same for every logic can share their results
+        computeReference(activator);
+        if (_location.isShared()) {
+          index.getSharedNearest(_reference, size, results);
+        } else {
+          index.getNearest(_reference, size, results);
+        }
+      }
+    }
+
+    @Override
+    protected void selectSubset (int size, Logic activator, Collection<Logic> results)
+    {
+      computeReference(activator);
+      LogicIndex.select(_targets, _reference, size, false, results);
     }
   }
 
@@ -348,15 +379,76 @@ public abstract class TargetLogic extends Logic
    */
   public static class FarthestSubset extends DistanceSubset
   {
-    // documentation inherited from interface Comparator
-    public int compare (Logic l1, Logic l2)
+    @Override
+    protected void selectSubset (int size, Logic activator, Collection<Logic> results)
     {
-      return Float.compare(
-        l2.getTranslation().distance(_reference),
-        l1.getTranslation().distance(_reference));
+      computeReference(activator);
+      LogicIndex.select(_targets, _reference, size, true, results);
     }
   }
 
+  /**
+   * Limits targets to those within a distance of a reference target.
+   */
+  public static class WithinDistance extends TargetLogic
+  {
+    @Override
+    public void resolve (Logic activator, Collection<Logic> results)
+    {
+      float distance = ((TargetConfig.WithinDistance)_config).distance;
+      getAverageTranslation(_location, activator, _locations, _reference);
+
+      // if the target can be spatially indexed, query the index rather than checking each one
+      LogicIndex index = _target.getIndex();
+      if (index != null) {
+        index.getWithin(_reference, distance, results);
+        return;
+      }
+      _target.resolve(activator, _targets);
+      float dsq = distance * distance;
+      for (int ii = 0, nn = _targets.size(); ii < nn; ii++) {
+        Logic target = _targets.get(ii);
+        if (target.getTranslation().distanceSquared(_reference) <= dsq) {
+          results.add(target);
+        }
+      }
+      _targets.clear();
+    }
+
+    @Override
+    public void transfer (Logic source, Map<Object, Object> refs)
+    {
+      super.transfer(source, refs);
+
+      WithinDistance wsource = (WithinDistance)source;
+      _target.transfer(wsource._target, refs);
+      _location.transfer(wsource._location, refs);
+    }
+
+    @Override
+    protected void didInit ()
+    {
+      TargetConfig.WithinDistance config = (TargetConfig.WithinDistance)_config;
+      _target = createTarget(config.target, _source);
+      _location = createTarget(config.location, _source);
+    }
+
+    /** The contained target. */
+    protected TargetLogic _target;
+
+    /** The reference location. */
+    protected TargetLogic _location;
+
+    /** Holds the targets during processing. */
+    protected ArrayList<Logic> _targets = Lists.newArrayList();
+
+    /** Holds the locations during processing. */
+    protected ArrayList<Logic> _locations = Lists.newArrayList();
+
+    /** Holds the reference point. */
+    protected Vector2f _reference = new Vector2f();
+  }
+
   /**
    * Limits targets to those satisfying a condition.
    */
@@ -543,7 +635,7 @@ public abstract class TargetLogic extends Logic
     public void resolve (Logic activator, Collection<Logic> results)
     {
       _target.resolve(activator, _targets);
-      Collections.shuffle(_targets);
+      Collections.shuffle(_targets, _scenemgr.getRandom());
       results.addAll(_targets);
       _targets.clear();
     }
@@ -588,6 +680,24 @@ public abstract class TargetLogic extends Logic
    */
   public abstract void resolve (Logic activator, Collection<Logic> results);
 
+  /**
+   * Returns a spatial index of this target's (activator-independent) results, if such an index
+   * is available.
+   */
+  public LogicIndex getIndex ()
+  {
+    return null;
+  }
+
+  /**
+   * Checks whether this target resolves to the same logics regardless of its source and
+   * activator, so that results computed from it may be shared between logics.
+   */
+  public boolean isShared ()
+  {
+    return false;
+  }
+
   @Override
   public boolean isActive ()
   {
@@ -620,6 +730,25 @@ public abstract class TargetLogic extends Logic
     // nothing by default
   }
 
+  /**
+   * Resolves the supplied location target and stores the average of its translations in the
+   * result.
+   *
+   * @param locations a list to hold the resolved locations (cleared before returning).
+   */
+  protected static void getAverageTranslation (
+    TargetLogic location, Logic activator, ArrayList<Logic> locations, Vector2f result)
+  {
+    location.resolve(activator, locations);
+    int nlocs = locations.size();
+    result.set(Vector2f.ZERO);
+    for (int ii = 0; ii < nlocs; ii++) {
+      result.addLocal(locations.get(ii).getTranslation());
+    }
+    result.multLocal(1f / nlocs);
+    locations.clear();
+  }
+
   /** The target configuration. */
   protected TargetConfig _config;
 
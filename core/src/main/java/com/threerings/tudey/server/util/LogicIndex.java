@@ -0,0 +1,482 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Vector2f;
+import com.threerings.util.ArrayKey;
+
+import com.threerings.tudey.server.logic.Logic;
+
+/**
+ * A point index over a set of logic objects (for instance, all of those bearing a tag), built
+ * from a snapshot of their translations and supporting k-nearest and radius queries.  The
+ * scene manager rebuilds its indices at most once per tick, and nearest-neighbor results for
+ * reference points that do not depend on the querying logic are memoized for the tick, so that
+ * many logics evaluating the same target configuration share the work.
+ */
+public class LogicIndex
+{
+  /**
+   * Selects the <code>count</code> logics nearest to (or farthest from) the reference point,
+   * placing them in the results in order of distance.  Runs in O(n log k) time rather than
+   * sorting the entire list.
+   */
+  public static void select (
+    List<? extends Logic> logics, Vector2f ref, int count, boolean farthest,
+    Collection<? super Logic> results)
+  {
+    int size = logics.size();
+    if (count <= 0 || size == 0) {
+      return;
+    }
+    Selector selector = new Selector(Math.min(count, size));
+    float sign = farthest ? -1f : +1f;
+    for (int ii = 0; ii < size; ii++) {
+      selector.offer(sign * logics.get(ii).getTranslation().distanceSquared(ref), ii);
+    }
+    for (int idx : selector.drain()) {
+      results.add(logics.get(idx));
+    }
+  }
+
+  /**
+   * Creates a new index for the supplied logics.
+   */
+  public LogicIndex (List<? extends Logic> logics, int timestamp)
+  {
+    rebuild(logics, timestamp);
+  }
+
+  /**
+   * Rebuilds the index with the supplied logics, reusing storage where possible.
+   */
+  public void rebuild (List<? extends Logic> logics, int timestamp)
+  {
+    _timestamp = timestamp;
+    _memo.clear();
+    int size = _size = logics.size();
+    if (_logics.length < size) {
+      _logics = new Logic[size];
+      _xs = new float[size];
+      _ys = new float[size];
+      _order = new int[size];
+    } else {
+      Arrays.fill(_logics, size, _logics.length, null);
+    }
+    if (size == 0) {
+      _columns = _rows = 0;
+      return;
+    }
+
+    // snapshot the translations and find the bounds
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+    for (int ii = 0; ii < size; ii++) {
+      Logic logic = _logics[ii] = logics.get(ii);
+      Vector2f translation = logic.getTranslation();
+      float x = _xs[ii] = translation.x, y = _ys[ii] = translation.y;
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+    }
+
+    // size the cells so as to hold a handful of logics each, on average
+    float extent = Math.max(maxX - minX, maxY - minY);
+    int cells = Math.max(1, (int)FloatMath.sqrt(size / (float)LOGICS_PER_CELL));
+    _cellSize = Math.max(extent / cells, MIN_CELL_SIZE);
+    _minX = minX;
+    _minY = minY;
+    _columns = Math.min(cells, (int)((maxX - minX) / _cellSize) + 1);
+    _rows = Math.min(cells, (int)((maxY - minY) / _cellSize) + 1);
+
+    // counting sort the logics by cell
+    int ncells = _columns * _rows;
+    if (_cellStarts.length < ncells + 1) {
+      _cellStarts = new int[ncells + 1];
+    } else {
+      Arrays.fill(_cellStarts, 0, ncells + 1, 0);
+    }
+    for (int ii = 0; ii < size; ii++) {
+      _cellStarts[getCell(_xs[ii], _ys[ii]) + 1]++;
+    }
+    for (int ii = 1; ii <= ncells; ii++) {
+      _cellStarts[ii] += _cellStarts[ii - 1];
+    }
+    int[] fill = new int[ncells];
+    for (int ii = 0; ii < size; ii++) {
+      int cell = getCell(_xs[ii], _ys[ii]);
+      _order[_cellStarts[cell] + fill[cell]++] = ii;
+    }
+  }
+
+  /**
+   * Returns the timestamp at which the index was built.
+   */
+  public int getTimestamp ()
+  {
+    return _timestamp;
+  }
+
+  /**
+   * Returns the number of logics in the index.
+   */
+  public int size ()
+  {
+    return _size;
+  }
+
+  /**
+   * Adds all of the indexed logics to the supplied collection, in their original order.
+   */
+  public void getAll (Collection<? super Logic> results)
+  {
+    for (int ii = 0; ii < _size; ii++) {
+      results.add(_logics[ii]);
+    }
+  }
+
+  /**
+   * Finds the <code>count</code> logics nearest to the reference point and places them in the
+   * results in order of increasing distance.
+   */
+  public void getNearest (Vector2f ref, int count, Collection<? super Logic> results)
+  {
+    count = Math.min(count, _size);
+    if (count > 0) {
+      Collections.addAll(results, findNearest(ref.x, ref.y, count));
+    }
+  }
+
+  /**
+   * Finds the <code>count</code> logics nearest to the reference point, reusing the result of
+   * any identical query made since the index was built.  This should only be used for reference
+   * points that many logics will share (such as the location of a tagged entity); there's no
+   * point in memoizing queries that won't be repeated.
+   */
+  public void getSharedNearest (Vector2f ref, int count, Collection<? super Logic> results)
+  {
+    count = Math.min(count, _size);
+    if (count <= 0) {
+      return;
+    }
+    ArrayKey key = new ArrayKey(ref.x, ref.y, count);
+    Logic[] memo = _memo.get(key);
+    if (memo == null) {
+      _memo.put(key, memo = findNearest(ref.x, ref.y, count));
+    }
+    Collections.addAll(results, memo);
+  }
+
+  /**
+   * Finds all logics within the specified distance of the reference point, placing them in the
+   * results in their original order.
+   */
+  public void getWithin (Vector2f ref, float radius, Collection<? super Logic> results)
+  {
+    if (_size == 0 || !(radius >= 0f)) {
+      return;
+    }
+    float rsq = radius * radius;
+    int c1 = clampColumn(ref.x - radius), c2 = clampColumn(ref.x + radius);
+    int r1 = clampRow(ref.y - radius), r2 = clampRow(ref.y + radius);
+    int count = 0;
+    for (int rr = r1; rr <= r2; rr++) {
+      for (int cc = c1; cc <= c2; cc++) {
+        int cell = rr * _columns + cc;
+        for (int ii = _cellStarts[cell], nn = _cellStarts[cell + 1]; ii < nn; ii++) {
+          int idx = _order[ii];
+          if (distanceSquared(idx, ref.x, ref.y) <= rsq) {
+            if (_found.length == count) {
+              _found = Arrays.copyOf(_found, Math.max(8, count * 2));
+            }
+            _found[count++] = idx;
+          }
+        }
+      }
+    }
+    Arrays.sort(_found, 0, count);
+    for (int ii = 0; ii < count; ii++) {
+      results.add(_logics[_found[ii]]);
+    }
+  }
+
+  /**
+   * Returns the number of results currently memoized.
+   */
+  public int getMemoSize ()
+  {
+    return _memo.size();
+  }
+
+  /**
+   * Performs an expanding ring search of the grid for the nearest logics.
+   */
+  protected Logic[] findNearest (float x, float y, int count)
+  {
+    Selector selector = new Selector(count);
+    int col = clampColumn(x), row = clampRow(y);
+    int maxRing = Math.max(Math.max(col, _columns - 1 - col), Math.max(row, _rows - 1 - row));
+    for (int ring = 0; ring <= maxRing; ring++) {
+      // every cell in this ring is at least (ring - 1) cells away
+      if (selector.isFull()) {
+        float bound = Math.max(ring - 1, 0) * _cellSize;
+        if (bound * bound > selector.getWorst()) {
+          break;
+        }
+      }
+      int r1 = row - ring, r2 = row + ring, c1 = col - ring, c2 = col + ring;
+      for (int rr = Math.max(r1, 0), rn = Math.min(r2, _rows - 1); rr <= rn; rr++) {
+        if (rr == r1 || rr == r2) {
+          for (int cc = Math.max(c1, 0), cn = Math.min(c2, _columns - 1); cc <= cn; cc++) {
+            offerCell(selector, rr * _columns + cc, x, y);
+          }
+        } else {
+          if (c1 >= 0) {
+            offerCell(selector, rr * _columns + c1, x, y);
+          }
+          if (c2 < _columns && c2 != c1) {
+            offerCell(selector, rr * _columns + c2, x, y);
+          }
+        }
+      }
+    }
+    int[] indices = selector.drain();
+    Logic[] nearest = new Logic[indices.length];
+    for (int ii = 0; ii < indices.length; ii++) {
+      nearest[ii] = _logics[indices[ii]];
+    }
+    return nearest;
+  }
+
+  /**
+   * Offers all of the logics in the specified cell to the selector.
+   */
+  protected void offerCell (Selector selector, int cell, float x, float y)
+  {
+    for (int ii = _cellStarts[cell], nn = _cellStarts[cell + 1]; ii < nn; ii++) {
+      int idx = _order[ii];
+      selector.offer(distanceSquared(idx, x, y), idx);
+    }
+  }
+
+  /**
+   * Returns the squared distance from the indexed logic to the specified point.
+   */
+  protected float distanceSquared (int idx, float x, float y)
+  {
+    float dx = _xs[idx] - x, dy = _ys[idx] - y;
+    return dx*dx + dy*dy;
+  }
+
+  /**
+   * Returns the index of the cell containing the specified point.
+   */
+  protected int getCell (float x, float y)
+  {
+    return clampRow(y) * _columns + clampColumn(x);
+  }
+
+  /**
+   * Returns the (clamped) column containing the specified x coordinate.
+   */
+  protected int clampColumn (float x)
+  {
+    return Math.max(0, Math.min(_columns - 1, (int)FloatMath.floor((x - _minX) / _cellSize)));
+  }
+
+  /**
+   * Returns the (clamped) row containing the specified y coordinate.
+   */
+  protected int clampRow (float y)
+  {
+    return Math.max(0, Math.min(_rows - 1, (int)FloatMath.floor((y - _minY) / _cellSize)));
+  }
+
+  /**
+   * Keeps the k smallest keys offered in a bounded max-heap.  Ties are broken by index so that
+   * results are deterministic.
+   */
+  protected static class Selector
+  {
+    /**
+     * Creates a selector that will keep the specified number of entries.
+     */
+    public Selector (int capacity)
+    {
+      _keys = new float[capacity];
+      _indices = new int[capacity];
+    }
+
+    /**
+     * Checks whether the selector holds its full complement of entries.
+     */
+    public boolean isFull ()
+    {
+      return _size == _keys.length;
+    }
+
+    /**
+     * Returns the largest key retained.
+     */
+    public float getWorst ()
+    {
+      return _keys[0];
+    }
+
+    /**
+     * Offers an entry to the selector.
+     */
+    public void offer (float key, int idx)
+    {
+      if (_size < _keys.length) {
+        // sift up
+        int ii = _size++;
+        while (ii > 0) {
+          int parent = (ii - 1) / 2;
+          if (!greater(key, idx, _keys[parent], _indices[parent])) {
+            break;
+          }
+          _keys[ii] = _keys[parent];
+          _indices[ii] = _indices[parent];
+          ii = parent;
+        }
+        _keys[ii] = key;
+        _indices[ii] = idx;
+
+      } else if (greater(_keys[0], _indices[0], key, idx)) {
+        siftDown(key, idx, _size);
+      }
+    }
+
+    /**
+     * Empties the selector, returning the retained indices in order of increasing key.
+     */
+    public int[] drain ()
+    {
+      int[] result = new int[_size];
+      for (int ii = _size - 1; ii >= 0; ii--) {
+        result[ii] = _indices[0];
+        float key = _keys[ii];
+        int idx = _indices[ii];
+        siftDown(key, idx, ii);
+      }
+      _size = 0;
+      return result;
+    }
+
+    /**
+     * Places the supplied entry at the root of the heap of the given size and sifts it down.
+     */
+    protected void siftDown (float key, int idx, int size)
+    {
+      int ii = 0;
+      while (true) {
+        int child = 2*ii + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size &&
+            greater(_keys[child + 1], _indices[child + 1], _keys[child], _indices[child])) {
+          child++;
+        }
+        if (!greater(_keys[child], _indices[child], key, idx)) {
+          break;
+        }
+        _keys[ii] = _keys[child];
+        _indices[ii] = _indices[child];
+        ii = child;
+      }
+      _keys[ii] = key;
+      _indices[ii] = idx;
+    }
+
+    /**
+     * Determines whether the first entry orders after the second.
+     */
+    protected static boolean greater (float k1, int i1, float k2, int i2)
+    {
+      return k1 > k2 || (k1 == k2 && i1 > i2);
+    }
+
+    /** The heap keys. */
+    protected float[] _keys;
+
+    /** The heap indices. */
+    protected int[] _indices;
+
+    /** The number of entries in the heap. */
+    protected int _size;
+  }
+
+  /** The timestamp at which the index was built. */
+  protected int _timestamp;
+
+  /** The number of indexed logics. */
+  protected int _size;
+
+  /** The indexed logics, in their original order. */
+  protected Logic[] _logics = new Logic[0];
+
+  /** The snapshotted translations of the logics. */
+  protected float[] _xs = new float[0], _ys = new float[0];
+
+  /** The logic indices sorted by cell. */
+  protected int[] _order = new int[0];
+
+  /** The offset of each cell's logics within the order array. */
+  protected int[] _cellStarts = new int[0];
+
+  /** The origin of the grid. */
+  protected float _minX, _minY;
+
+  /** The size of the grid cells. */
+  protected float _cellSize;
+
+  /** The dimensions of the grid. */
+  protected int _columns, _rows;
+
+  /** Holds the indices of the logics found by radius queries. */
+  protected int[] _found = new int[0];
+
+  /** Memoized nearest-neighbor results for the current build. */
+  protected Map<ArrayKey, Logic[]> _memo = Maps.newHashMap();
+
+  /** The average number of logics per cell we aim for. */
+  protected static final int LOGICS_PER_CELL = 4;
+
+  /** The smallest cell size we'll use. */
+  protected static final float MIN_CELL_SIZE = 1f;
+}
@@ -0,0 +1,137 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * A minimal HTTP endpoint from which monitoring systems may pull the metrics of all registered
+ * scenes (see {@link SceneMetrics#writeAll}) in the Prometheus text format.
+ */
+public class MetricsEndpoint
+{
+  /**
+   * Starts serving metrics on the specified port of the loopback interface, if not already
+   * doing so.
+   */
+  public static void start (int port)
+    throws IOException
+  {
+    start(InetAddress.getLoopbackAddress(), port);
+  }
+
+  /**
+   * Starts serving metrics on the specified address and port, if not already doing so.
+   */
+  public static synchronized void start (InetAddress address, int port)
+    throws IOException
+  {
+    if (_server != null) {
+      return;
+    }
+    _server = HttpServer.create(new InetSocketAddress(address, port), 0);
+    _server.createContext(PATH, new HttpHandler() {
+      public void handle (HttpExchange exchange) throws IOException {
+        try {
+          StringBuilder buf = new StringBuilder();
+          SceneMetrics.writeAll(buf);
+          byte[] bytes = buf.toString().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+          exchange.sendResponseHeaders(200, bytes.length);
+          OutputStream out = exchange.getResponseBody();
+          try {
+            out.write(bytes);
+          } finally {
+            out.close();
+          }
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+    _server.start();
+    log.info("Serving scene metrics.", "address", address, "port", port, "path", PATH);
+  }
+
+  /**
+   * Starts serving metrics on the port given by the <code>com.threerings.tudey.metrics_port</code>
+   * system property, if set.  The endpoint listens on the loopback interface unless another
+   * address (such as <code>0.0.0.0</code> for all interfaces) is given by the
+   * <code>com.threerings.tudey.metrics_address</code> property.
+   */
+  public static void startIfConfigured ()
+  {
+    int port = Integer.getInteger(PORT_PROPERTY, 0);
+    if (port <= 0) {
+      return;
+    }
+    String host = System.getProperty(ADDRESS_PROPERTY);
+    try {
+      start((host == null) ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host),
+        port);
+    } catch (IOException e) {
+      log.warning("Failed to start metrics endpoint.", "address", host, "port", port, e);
+    }
+  }
+
+  /**
+   * Stops serving metrics.
+   */
+  public static synchronized void stop ()
+  {
+    if (_server != null) {
+      _server.stop(0);
+      _server = null;
+    }
+  }
+
+  /** The server, if running. */
+  protected static HttpServer _server;
+
+  /** The system property that specifies the port on which to serve metrics. */
+  protected static final String PORT_PROPERTY = "com.threerings.tudey.metrics_port";
+
+  /** The system property that specifies the address on which to serve metrics. */
+  protected static final String ADDRESS_PROPERTY = "com.threerings.tudey.metrics_address";
+
+  /** The path at which we serve metrics. */
+  protected static final String PATH = "/metrics";
+
+  /** The content type of the response. */
+  protected static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+}
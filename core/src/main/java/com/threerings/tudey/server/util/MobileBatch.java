@@ -0,0 +1,259 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.data.actor.Mobile;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.MobileLogic;
+import com.threerings.tudey.shape.Shape;
+import com.threerings.tudey.util.MobileAdvancer;
+
+/**
+ * Advances a set of simple mobiles (those with no behavior, turning, stasis, or reduced-rate
+ * ticking) together in a single tick participant.  Each tick, the mobiles' motion state is
+ * gathered into primitive arrays, integrated in one pass, and checked against the environment
+ * with a single swept-shape query per mobile.  Mobiles whose paths are clear are moved directly;
+ * the rest (along with any that are catching up) fall back to their own tick.
+ */
+public class MobileBatch
+  implements TudeySceneManager.TickParticipant
+{
+  /**
+   * Creates a new batch for the specified scene manager.
+   */
+  public MobileBatch (TudeySceneManager scenemgr)
+  {
+    _scenemgr = scenemgr;
+  }
+
+  /**
+   * Adds a logic to the batch.
+   */
+  public void add (MobileLogic logic)
+  {
+    if (_indices.containsKey(logic)) {
+      return;
+    }
+    ensureCapacity(_size + 1);
+    _indices.put(logic, _size);
+    _logics[_size++] = logic;
+  }
+
+  /**
+   * Removes a logic from the batch.
+   */
+  public void remove (MobileLogic logic)
+  {
+    Integer idx = _indices.remove(logic);
+    if (idx == null) {
+      return;
+    }
+    if (_ticking) {
+      // clear the slot now and compact once the tick is done
+      _logics[idx] = null;
+      _removed++;
+      return;
+    }
+    MobileLogic last = _logics[--_size];
+    _logics[_size] = null;
+    if (idx != _size) {
+      _logics[idx] = last;
+      _indices.put(last, idx);
+    }
+  }
+
+  /**
+   * Returns the number of logics in the batch.
+   */
+  public int size ()
+  {
+    return _size - _removed;
+  }
+
+  // documentation inherited from interface TudeySceneManager.TickParticipant
+  public boolean tick (int timestamp)
+  {
+    int count = _size;
+    if (count == 0) {
+      return true;
+    }
+    _ticking = true;
+    try {
+      // gather the motion state into the arrays
+      int previous = _scenemgr.getPreviousTimestamp();
+      for (int ii = 0; ii < count; ii++) {
+        MobileLogic logic = _logics[ii];
+        int lastTick = logic.getLastTick();
+        Mobile mobile = (Mobile)logic.getActor();
+        if (lastTick < previous || !mobile.isSet(Mobile.MOVING)) {
+          // catching up (or not moving); flag to tick individually or simply jump
+          _elapsed[ii] = (lastTick < previous) ? -1f : 0f;
+          _vx[ii] = _vy[ii] = 0f;
+          continue;
+        }
+        float speed = mobile.getSpeed(), direction = mobile.getDirection();
+        _elapsed[ii] = (timestamp - lastTick) / 1000f;
+        _vx[ii] = speed * FloatMath.cos(direction);
+        _vy[ii] = speed * FloatMath.sin(direction);
+      }
+
+      // integrate all at once
+      for (int ii = 0; ii < count; ii++) {
+        _dx[ii] = _vx[ii] * _elapsed[ii];
+        _dy[ii] = _vy[ii] * _elapsed[ii];
+      }
+
+      // check the paths against the environment and apply the clear ones
+      for (int ii = 0; ii < count; ii++) {
+        MobileLogic logic = _logics[ii];
+        if (logic == null) {
+          continue; // removed during the tick
+        }
+        float elapsed = _elapsed[ii];
+        if (elapsed < 0f) {
+          logic.tick(timestamp);
+          continue;
+        }
+        float dx = _dx[ii], dy = _dy[ii];
+        if ((dx == 0f && dy == 0f) || moveClear(logic, elapsed, dx, dy)) {
+          logic.batchAdvanced(timestamp);
+        } else {
+          logic.tick(timestamp);
+        }
+      }
+    } finally {
+      _ticking = false;
+    }
+    if (_removed > 0) {
+      compact();
+    }
+    return true;
+  }
+
+  /**
+   * Moves the specified logic's actor along the given displacement if its swept path neither
+   * crosses any direction flags nor collides with anything.
+   *
+   * @return true if the actor was moved, false if it must be advanced individually.
+   */
+  protected boolean moveClear (MobileLogic logic, float elapsed, float dx, float dy)
+  {
+    // substeps would never carry the mobile farther than this
+    Mobile mobile = (Mobile)logic.getActor();
+    float maxStep = mobile.getMaxStep() * FloatMath.ceil(elapsed / MobileAdvancer.MAX_SUBSTEP);
+    if (dx*dx + dy*dy > maxStep*maxStep) {
+      return false;
+    }
+    _delta.set(dx, dy);
+    _swept = logic.getShape().sweep(_delta, _swept);
+    if (_scenemgr.getDirections(mobile, _swept) != 0 ||
+        _scenemgr.collides(mobile, _swept, _scenemgr.getTimestamp())) {
+      return false;
+    }
+    mobile.getTranslation().addLocal(_delta);
+    mobile.setDirty(true);
+    return true;
+  }
+
+  /**
+   * Makes sure the arrays can hold at least the specified number of logics.
+   */
+  protected void ensureCapacity (int capacity)
+  {
+    if (capacity <= _logics.length) {
+      return;
+    }
+    int ncapacity = Math.max(capacity, _logics.length * 2);
+    _logics = Arrays.copyOf(_logics, ncapacity);
+    _elapsed = Arrays.copyOf(_elapsed, ncapacity);
+    _vx = Arrays.copyOf(_vx, ncapacity);
+    _vy = Arrays.copyOf(_vy, ncapacity);
+    _dx = Arrays.copyOf(_dx, ncapacity);
+    _dy = Arrays.copyOf(_dy, ncapacity);
+  }
+
+  /**
+   * Removes the slots cleared during the tick, preserving the order of the remaining logics.
+   */
+  protected void compact ()
+  {
+    int nsize = 0;
+    for (int ii = 0; ii < _size; ii++) {
+      MobileLogic logic = _logics[ii];
+      if (logic != null) {
+        _indices.put(logic, nsize);
+        _logics[nsize++] = logic;
+      }
+    }
+    Arrays.fill(_logics, nsize, _size, null);
+    _size = nsize;
+    _removed = 0;
+  }
+
+  /** The owning scene manager. */
+  protected TudeySceneManager _scenemgr;
+
+  /** The logics in the batch. */
+  protected MobileLogic[] _logics = new MobileLogic[INITIAL_CAPACITY];
+
+  /** Maps logics to their indices in the arrays. */
+  protected Map<MobileLogic, Integer> _indices = Maps.newHashMap();
+
+  /** The number of occupied slots. */
+  protected int _size;
+
+  /** The number of slots cleared during the current tick. */
+  protected int _removed;
+
+  /** Set while we're ticking. */
+  protected boolean _ticking;
+
+  /** The time elapsed for each mobile (zero if not moving, negative if catching up). */
+  protected float[] _elapsed = new float[INITIAL_CAPACITY];
+
+  /** The velocity components of each mobile. */
+  protected float[] _vx = new float[INITIAL_CAPACITY], _vy = new float[INITIAL_CAPACITY];
+
+  /** The displacement components of each mobile. */
+  protected float[] _dx = new float[INITIAL_CAPACITY], _dy = new float[INITIAL_CAPACITY];
+
+  /** Holds the current displacement. */
+  protected Vector2f _delta = new Vector2f();
+
+  /** Holds the swept shape. */
+  protected Shape _swept;
+
+  /** The initial capacity of the arrays. */
+  protected static final int INITIAL_CAPACITY = 16;
+}
@@ -27,6 +27,8 @@ package com.threerings.tudey.server.util;
 
 import java.awt.Point;
 
+import java.util.Arrays;
+
 import java.util.List;
 
 import com.google.common.collect.Lists;
@@ -160,6 +162,16 @@ public class Pathfinder
     return getPath(true, actor, longest, ax, ay, bx, by, partial, shortcut);
   }
 
+  /**
+   * Determines whether the two locations fall within the same cell of the (subdivided) actor
+   * collision map, and thus would produce essentially the same path.
+   */
+  public static boolean inSameCell (Vector2f p1, Vector2f p2)
+  {
+    return FloatMath.ifloor(p1.x * SUBDIVISION) == FloatMath.ifloor(p2.x * SUBDIVISION) &&
+      FloatMath.ifloor(p1.y * SUBDIVISION) == FloatMath.ifloor(p2.y * SUBDIVISION);
+  }
+
   // documentation inherited from interface TudeySceneModel.Observer
   public void entryAdded (Entry entry)
   {
@@ -269,6 +281,26 @@ public class Pathfinder
    * @return the computed path, or null if unreachable.
    */
   protected Vector2f[] getPath (
+    boolean collideActor, ActorLogic logic, float longest, float ax, float ay,
+    float bx, float by, boolean partial, boolean shortcut)
+  {
+    SceneMetrics metrics = _scenemgr.getMetrics();
+    if (!metrics.sample(SceneMetrics.Category.PATH)) {
+      return computePath(collideActor, logic, longest, ax, ay, bx, by, partial, shortcut);
+    }
+    long started = System.nanoTime();
+    try {
+      return computePath(collideActor, logic, longest, ax, ay, bx, by, partial, shortcut);
+    } finally {
+      metrics.record(SceneMetrics.Category.PATH,
+        TudeySceneManager.getProfileName(logic), System.nanoTime() - started);
+    }
+  }
+
+  /**
+   * Computes a path for the specified actor (see {@link #getPath}).
+   */
+  protected Vector2f[] computePath (
     final boolean collideActor, ActorLogic logic, float longest, float ax, float ay,
     float bx, float by, boolean partial, boolean shortcut)
   {
@@ -293,6 +325,13 @@ public class Pathfinder
     AStarPathUtil.TraversalPred pred;
     final Actor actor = logic.getActor();
     final int collisionMask = actor.getCollisionMask();
+
+    // if the actor is in the space and can collide with its own flags, find the flags of the
+    // cells it occupies without its own contribution (rather than removing and restoring them,
+    // so that paths may be computed concurrently during the query phase)
+    final ExcludedFlags excluded =
+      (!logic.isRemoved() && collideActor && actor.canCollide(logic.getCollisionFlags())) ?
+        getFlagsExcluding(logic) : null;
     if (width == 1 && height == 1) {
       // simpler predicates for the common case of 1x1 actors
       if (collideActor) {
@@ -301,7 +340,7 @@ public class Pathfinder
             return (collisionMask & _entryFlags.get(
               MathUtil.floorDiv(x, SUBDIVISION),
               MathUtil.floorDiv(y, SUBDIVISION))) == 0 &&
-                (collisionMask & _actorFlags.get(x, y)) == 0;
+                (collisionMask & getActorFlags(excluded, x, y)) == 0;
           }
         };
       } else {
@@ -324,7 +363,7 @@ public class Pathfinder
                 if ((collisionMask & _entryFlags.get(
                     MathUtil.floorDiv(xx, SUBDIVISION),
                     MathUtil.floorDiv(yy, SUBDIVISION))) != 0 ||
-                      (collisionMask & _actorFlags.get(xx, yy)) != 0) {
+                      (collisionMask & getActorFlags(excluded, xx, yy)) != 0) {
                   return false;
                 }
               }
@@ -358,24 +397,11 @@ public class Pathfinder
     bx *= SUBDIVISION;
     by *= SUBDIVISION;
 
-    // if the actor is in the space and can collide with its own flags,
-    // remove them before we compute the path
-    boolean remove = (!logic.isRemoved() && collideActor &&
-      actor.canCollide(logic.getCollisionFlags()));
-    if (remove) {
-      removeFlags(logic);
-    }
-
     // compute the path
     List<Point> path = AStarPathUtil.getPath(
       pred, actor, (int)longest, Math.round(ax - xoff), Math.round(ay - yoff),
       Math.round(bx - xoff), Math.round(by - yoff), partial);
 
-    // add the flags back if we removed them
-    if (remove) {
-      addFlags(logic);
-    }
-
     // convert to fractional coordinates
     if (path == null) {
       return null;
@@ -390,20 +416,19 @@ public class Pathfinder
     if (!shortcut) {
       return waypoints;
     }
+    List<Vector2f> shortcuts = Lists.newArrayList();
     Vector2f current = start;
     for (int ii = 0; ii < waypoints.length; ) {
       for (int jj = waypoints.length - 1; jj >= ii; jj--) {
         Vector2f waypoint = waypoints[jj];
         if (jj == ii || !sweptShapeCollides(collideActor, logic, current, waypoint)) {
-          _waypoints.add(current = waypoint);
+          shortcuts.add(current = waypoint);
           ii = jj + 1;
           break;
         }
       }
     }
-    waypoints = _waypoints.toArray(new Vector2f[_waypoints.size()]);
-    _waypoints.clear();
-    return waypoints;
+    return shortcuts.toArray(new Vector2f[shortcuts.size()]);
   }
 
   /**
@@ -412,17 +437,91 @@ public class Pathfinder
   protected boolean sweptShapeCollides (
     boolean collideActor, ActorLogic logic, Vector2f start, Vector2f end)
   {
-    _worldShape = logic.getShapeElement().getLocalShape().transform(
-      _transform.set(start, logic.getRotation()), _worldShape);
-    _sweptShape = _worldShape.sweep(end.subtract(start, _translation), _sweptShape);
+    PathScratch scratch = _scratch.get();
+    scratch.worldShape = logic.getShapeElement().getLocalShape().transform(
+      scratch.transform.set(start, logic.getRotation()), scratch.worldShape);
+    scratch.sweptShape = scratch.worldShape.sweep(
+      end.subtract(start, scratch.translation), scratch.sweptShape);
     if (!collideActor) {
-      return ((TudeySceneModel)_scenemgr.getScene().getSceneModel()).collides(
-        logic.getActor(), _sweptShape);
+      synchronized (_scenemgr.getQueryLock()) {
+        return ((TudeySceneModel)_scenemgr.getScene().getSceneModel()).collides(
+          logic.getActor(), scratch.sweptShape);
+      }
     } else {
-      return _scenemgr.collides(logic, _sweptShape);
+      return _scenemgr.collides(logic, scratch.sweptShape);
     }
   }
 
+  /**
+   * Returns the combined actor flags at the specified (subdivided) location.
+   *
+   * @param excluded if non-null, overriding flags for the locations occupied by the actor
+   * whose flags are to be excluded.
+   */
+  protected int getActorFlags (ExcludedFlags excluded, int x, int y)
+  {
+    return (excluded != null && excluded.contains(x, y)) ?
+      excluded.get(x, y) : _actorFlags.get(x, y);
+  }
+
+  /**
+   * Computes the combined actor flags of the locations occupied by the specified actor, as
+   * they would be if its own flags were removed.
+   *
+   * @return the flags in (subdivided) coordinates, held in this thread's scratch grid and
+   * valid until the next call.
+   */
+  protected ExcludedFlags getFlagsExcluding (ActorLogic logic)
+  {
+    PathScratch scratch = _scratch.get();
+    ExcludedFlags excluded = scratch.excluded;
+    int flags = logic.getCollisionFlags();
+    if (flags == 0) {
+      excluded.reset(0, 0, 0, 0);
+      return excluded;
+    }
+    Shape shape = logic.getShape();
+    Polygon quad = scratch.quad;
+    Rect bounds = shape.getBounds();
+    Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+    int minx = FloatMath.ifloor(min.x);
+    int maxx = FloatMath.ifloor(max.x);
+    int miny = FloatMath.ifloor(min.y);
+    int maxy = FloatMath.ifloor(max.y);
+    excluded.reset(minx * SUBDIVISION, miny * SUBDIVISION,
+      (maxx - minx + 1) * SUBDIVISION, (maxy - miny + 1) * SUBDIVISION);
+    for (int yy = miny; yy <= maxy; yy++) {
+      for (int xx = minx; xx <= maxx; xx++) {
+        for (int ys = 0; ys < SUBDIVISION; ys++) {
+          for (int xs = 0; xs < SUBDIVISION; xs++) {
+            updateQuadSubdivision(quad, xx, yy, xs, ys);
+            if (!shape.intersects(quad)) {
+              continue;
+            }
+            int x = xx * SUBDIVISION + xs, y = yy * SUBDIVISION + ys;
+            List<Integer> list = _actorFlagLists.get(Coord.encode(x, y));
+            if (list == null) {
+              continue;
+            }
+            // combine all but (one instance of) the actor's flags
+            int combined = 0;
+            boolean skipped = false;
+            for (int ii = 0, nn = list.size(); ii < nn; ii++) {
+              int lflags = list.get(ii);
+              if (!skipped && lflags == flags) {
+                skipped = true;
+              } else {
+                combined |= lflags;
+              }
+            }
+            excluded.put(x, y, combined);
+          }
+        }
+      }
+    }
+    return excluded;
+  }
+
   /**
    * Adds the specified entry's flags to the flag maps.
    */
@@ -497,6 +596,7 @@ public class Pathfinder
    */
   protected void addFlags (Shape shape, int flags, boolean entry)
   {
+    _scenemgr.checkApplyPhase();
     if (flags == 0) {
       return; // nothing to do
     }
@@ -544,6 +644,7 @@ public class Pathfinder
    */
   protected void removeFlags (Shape shape, int flags, boolean entry, SpaceElement skip)
   {
+    _scenemgr.checkApplyPhase();
     if (flags == 0) {
       return; // nothing to do
     }
@@ -607,7 +708,16 @@ public class Pathfinder
    */
   protected void updateQuadSubdivision (int x, int y, int xs, int ys)
   {
-    updateQuad(x + (float)xs / SUBDIVISION, y + (float)ys / SUBDIVISION,
+    updateQuadSubdivision(_quad, x, y, xs, ys);
+  }
+
+  /**
+   * Updates the coordinates of the supplied quad to encompass the subdivided section of the
+   * specified grid cell.
+   */
+  protected void updateQuadSubdivision (Polygon quad, int x, int y, int xs, int ys)
+  {
+    updateQuad(quad, x + (float)xs / SUBDIVISION, y + (float)ys / SUBDIVISION,
         x + (float)(xs + 1) / SUBDIVISION, y + (float)(ys + 1) / SUBDIVISION);
   }
 
@@ -615,18 +725,26 @@ public class Pathfinder
    * Updates the coordinates of the quad.
    */
   protected void updateQuad (float lx, float ly, float ux, float uy)
+  {
+    updateQuad(_quad, lx, ly, ux, uy);
+  }
+
+  /**
+   * Updates the coordinates of the supplied quad.
+   */
+  protected void updateQuad (Polygon quad, float lx, float ly, float ux, float uy)
   {
     // Reduce out quad by double our epsilon so we don't intersect edge colliders
     lx += FloatMath.EPSILON * 2;
     ly += FloatMath.EPSILON * 2;
     ux -= FloatMath.EPSILON * 2;
     uy -= FloatMath.EPSILON * 2;
-    _quad.getVertex(0).set(lx, ly);
-    _quad.getVertex(1).set(ux, ly);
-    _quad.getVertex(2).set(ux, uy);
-    _quad.getVertex(3).set(lx, uy);
-    _quad.getBounds().getMinimumExtent().set(lx, ly);
-    _quad.getBounds().getMaximumExtent().set(ux, uy);
+    quad.getVertex(0).set(lx, ly);
+    quad.getVertex(1).set(ux, ly);
+    quad.getVertex(2).set(ux, uy);
+    quad.getVertex(3).set(lx, uy);
+    quad.getBounds().getMinimumExtent().set(lx, ly);
+    quad.getBounds().getMaximumExtent().set(ux, uy);
   }
 
   /**
@@ -653,6 +771,92 @@ public class Pathfinder
     _entryFlags.put(x, y, flags);
   }
 
+  /**
+   * Scratch objects used in computing paths, kept per thread so that paths may be computed
+   * concurrently during the query phase.
+   */
+  protected static class PathScratch
+  {
+    /** Transform to reuse. */
+    public Transform2D transform = new Transform2D();
+
+    /** World shape to reuse. */
+    public Shape worldShape;
+
+    /** Translation vector to reuse. */
+    public Vector2f translation = new Vector2f();
+
+    /** Swept shape to reuse. */
+    public Shape sweptShape;
+
+    /** Used to store cell shapes for intersection testing. */
+    public Polygon quad = new Polygon(4);
+
+    /** Holds the flags excluding those of the actor whose path is being computed. */
+    public ExcludedFlags excluded = new ExcludedFlags();
+  }
+
+  /**
+   * A reusable grid holding the combined actor flags of the locations occupied by an actor as
+   * they would be without its own flags.
+   */
+  protected static class ExcludedFlags
+  {
+    /**
+     * Clears the grid and sizes it to cover the specified (subdivided) region.
+     */
+    public void reset (int x, int y, int width, int height)
+    {
+      _x = x;
+      _y = y;
+      _width = width;
+      _height = height;
+      int size = width * height;
+      if (_flags.length < size) {
+        _flags = new int[size];
+        _set = new boolean[size];
+      } else {
+        Arrays.fill(_set, 0, size, false);
+      }
+    }
+
+    /**
+     * Sets the flags at the specified location, which must lie within the grid.
+     */
+    public void put (int x, int y, int flags)
+    {
+      int idx = (y - _y) * _width + (x - _x);
+      _flags[idx] = flags;
+      _set[idx] = true;
+    }
+
+    /**
+     * Checks whether flags have been set for the specified location.
+     */
+    public boolean contains (int x, int y)
+    {
+      int dx = x - _x, dy = y - _y;
+      return dx >= 0 && dy >= 0 && dx < _width && dy < _height && _set[dy * _width + dx];
+    }
+
+    /**
+     * Returns the flags at the specified location, which must have been set.
+     */
+    public int get (int x, int y)
+    {
+      return _flags[(y - _y) * _width + (x - _x)];
+    }
+
+    /** The origin and dimensions of the grid. */
+    protected int _x, _y, _width, _height;
+
+    /** The flags in each location. */
+    protected int[] _flags = new int[0];
+
+    /** Whether the flags have been set in each location. */
+    protected boolean[] _set = new boolean[0];
+  }
+
   /** The owning scene manager. */
   protected TudeySceneManager _scenemgr;
 
@@ -671,23 +875,15 @@ public class Pathfinder
   /** Holds elements during intersection testing. */
   protected List<SpaceElement> _elements = Lists.newArrayList();
 
-  /** Holds waypoints during shortcut processing. */
-  protected List<Vector2f> _waypoints = Lists.newArrayList();
-
   /** Region object to reuse. */
   protected Rectangle _region = new Rectangle();
 
-  /** Transform to reuse. */
-  protected Transform2D _transform = new Transform2D();
-
-  /** World shape to reuse. */
-  protected Shape _worldShape;
-
-  /** Translation vector to reuse. */
-  protected Vector2f _translation = new Vector2f();
-
-  /** Swept shape to reuse. */
-  protected Shape _sweptShape;
+  /** Scratch objects for path computations, one set per thread. */
+  protected ThreadLocal<PathScratch> _scratch = new ThreadLocal<PathScratch>() {
+    @Override protected PathScratch initialValue () {
+      return new PathScratch();
+    }
+  };
 
   /** The subdivision of the actor collision map. */
   protected static final int SUBDIVISION = 2;
@@ -0,0 +1,892 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+package com.threerings.tudey.server.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.List;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.crowd.data.BodyObject;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.export.BinaryExporter;
+import com.threerings.export.BinaryImporter;
+import com.threerings.export.Exportable;
+import com.threerings.export.Streams;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.config.CameraConfig;
+import com.threerings.tudey.data.EntityKey;
+import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.server.ClientLiaison;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.EntryLogic;
+import com.threerings.tudey.server.logic.Logic;
+
+/**
+ * A journal of everything that feeds into a scene's ticks: its initial model and random seed,
+ * the bodies entering and leaving, the calls made by their clients (including the delta
+ * acknowledgements that drive the actors' snapshot times), externally posted runnables, and the
+ * timing of each tick.  Each tick also records a checksum of the resulting actor state, so that
+ * a replay can verify that it reproduces the recorded run and report the first tick at which it
+ * does not.
+ *
+ * <p>Events are recorded at the points where they enter the scene manager and are keyed by the
+ * oid of the body they concern.  A {@link Replayer} stands in for the distributed object
+ * manager on replay, creating a body for each journaled one and delivering the occupant
+ * notifications at the journaled points.
+ *
+ * <p>The journal is a gzipped sequence of length-prefixed chunks (see {@link Streams}), each
+ * written by its own {@link BinaryExporter}: one for the header, then one per tick containing
+ * the events that preceded it, ending with the tick itself.
+ */
+public class SceneJournal
+{
+  /**
+   * Thrown when a journal can't be replayed or the replay diverges from the recorded run.
+   */
+  public static class ReplayException extends IOException
+  {
+    /**
+     * Creates a new replay exception.
+     */
+    public ReplayException (String message)
+    {
+      super(message);
+    }
+  }
+
+  /**
+   * Provides the replayed events with access to the scene and the bodies standing in for the
+   * journaled ones.
+   */
+  public interface Replayer
+  {
+    /**
+     * Returns the scene manager to which the events are replayed.
+     */
+    public TudeySceneManager getSceneManager ();
+
+    /**
+     * Creates the body that will stand in for a journaled body.
+     *
+     * @param pawn the configuration to report for the body's pawn.
+     */
+    public BodyObject createBody (
+      int bodyOid, String username, ConfigReference<ActorConfig> pawn);
+
+    /**
+     * Returns the body standing in for the identified journaled body, or null if none.
+     */
+    public BodyObject getBody (int bodyOid);
+
+    /**
+     * Returns the liaison of the identified journaled body, or null if none.
+     */
+    public ClientLiaison getClient (int bodyOid);
+
+    /**
+     * Delivers the notification that the identified body has entered the scene.
+     */
+    public void replayBodyEntered (int bodyOid)
+      throws ReplayException;
+
+    /**
+     * Delivers the notification that the identified body has left the scene.
+     */
+    public void replayBodyLeft (int bodyOid)
+      throws ReplayException;
+
+    /**
+     * Delivers the notification that the status of the identified body has changed.
+     */
+    public void replayBodyUpdated (int bodyOid, byte status)
+      throws ReplayException;
+  }
+
+  /**
+   * Base class for journaled events.
+   */
+  public static abstract class Event
+    implements Exportable
+  {
+    /**
+     * Applies the event to the scene.
+     */
+    public abstract void replay (Replayer replayer)
+      throws ReplayException;
+  }
+
+  /**
+   * Base class for events concerning a single body.
+   */
+  public static abstract class BodyEvent extends Event
+  {
+    /** The oid of the body at the time of recording. */
+    public int bodyOid;
+
+    /**
+     * Creates a new body event.
+     */
+    public BodyEvent (int bodyOid)
+    {
+      this.bodyOid = bodyOid;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public BodyEvent ()
+    {
+    }
+
+    /**
+     * Returns the body standing in for the journaled one.
+     */
+    protected BodyObject getBody (Replayer replayer)
+      throws ReplayException
+    {
+      BodyObject body = replayer.getBody(bodyOid);
+      if (body == null) {
+        throw new ReplayException("Missing body for journaled event [event=" +
+          getClass().getSimpleName() + ", bodyOid=" + bodyOid + "].");
+      }
+      return body;
+    }
+
+    /**
+     * Returns the liaison of the journaled body.
+     */
+    protected ClientLiaison getClient (Replayer replayer)
+      throws ReplayException
+    {
+      ClientLiaison client = replayer.getClient(bodyOid);
+      if (client == null) {
+        throw new ReplayException("Missing client for journaled event [event=" +
+          getClass().getSimpleName() + ", bodyOid=" + bodyOid + "].");
+      }
+      return client;
+    }
+  }
+
+  /**
+   * The first entry in the journal, describing the initial state of the scene.
+   */
+  public static class Header
+    implements Exportable
+  {
+    /** The scene model at startup. */
+    public TudeySceneModel model;
+
+    /** The seed of the scene's random number generator at startup. */
+    public long seed;
+
+    /**
+     * Creates a new header.
+     */
+    public Header (TudeySceneModel model, long seed)
+    {
+      this.model = model;
+      this.seed = seed;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public Header ()
+    {
+    }
+  }
+
+  /**
+   * Marks a tick of the scene.
+   */
+  public static class Tick extends Event
+  {
+    /** The time elapsed since the previous tick. */
+    public int elapsed;
+
+    /** The tick interval reported by the scene at the time of the tick. */
+    public int interval;
+
+    /** The checksum of the actor state after the tick. */
+    public int checksum;
+
+    /**
+     * Creates a new tick event.
+     */
+    public Tick (int elapsed, int interval, int checksum)
+    {
+      this.elapsed = elapsed;
+      this.interval = interval;
+      this.checksum = checksum;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public Tick ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      TudeySceneManager scenemgr = replayer.getSceneManager();
+      scenemgr.replayTick(elapsed, interval);
+      int actual = scenemgr.getStateChecksum();
+      if (actual != checksum) {
+        throw new ReplayException("Replayed actor state differs from journal [expected=" +
+          checksum + ", actual=" + actual + "].");
+      }
+    }
+  }
+
+  /**
+   * Records a body about to enter the scene.
+   */
+  public static class Enter extends BodyEvent
+  {
+    /** The username of the body. */
+    public String username;
+
+    /** The configuration of the body's pawn, if any. */
+    public ConfigReference<ActorConfig> pawn;
+
+    /** The id of the actor through which the body is entering, if any. */
+    public int portalActor;
+
+    /** The key of the entry whose logic the body is entering through, if any. */
+    public Object portalEntry;
+
+    /** The portal key (tag, transform, or entry key) if not one of the above. */
+    public Object portal;
+
+    /** The class of the portal key if it couldn't be journaled. */
+    public String unjournaledPortal;
+
+    /**
+     * Creates a new enter event.
+     *
+     * @param portalKey the key of the portal through which the body is entering, if any.
+     */
+    public Enter (BodyObject body, ConfigReference<ActorConfig> pawn, Object portalKey)
+    {
+      super(body.getOid());
+      username = body.username.toString();
+      this.pawn = pawn;
+
+      // logic portals are journaled by their keys and resolved to the logic on replay
+      EntityKey key = (portalKey instanceof Logic) ?
+        ((Logic)portalKey).getEntityKey() : null;
+      if (portalKey instanceof EntityKey.Actor || key instanceof EntityKey.Actor) {
+        portalActor = ((EntityKey.Actor)(key == null ? portalKey : key)).getId();
+      } else if (portalKey instanceof EntryLogic && key instanceof EntityKey.Entry) {
+        portalEntry = ((EntityKey.Entry)key).getKey();
+      } else if (portalKey instanceof EntityKey.Entry) {
+        portal = ((EntityKey.Entry)portalKey).getKey();
+      } else if (portalKey instanceof Logic) {
+        unjournaledPortal = portalKey.getClass().getName();
+      } else {
+        portal = portalKey;
+      }
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public Enter ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      if (unjournaledPortal != null) {
+        throw new ReplayException("Can't replay entrance through unjournaled portal [class=" +
+          unjournaledPortal + "].");
+      }
+      TudeySceneManager scenemgr = replayer.getSceneManager();
+      BodyObject body = replayer.createBody(bodyOid, username, pawn);
+      Object portalKey = (portalActor != 0) ? new EntityKey.Actor(portalActor) :
+        (portalEntry != null ? scenemgr.getEntryLogic(portalEntry) : portal);
+      if (portalKey != null) {
+        scenemgr.mapEnteringBody(body, portalKey);
+      }
+      scenemgr.bodyWillEnter(body);
+    }
+  }
+
+  /**
+   * Records a body about to leave the scene.
+   */
+  public static class Leave extends BodyEvent
+  {
+    /**
+     * Creates a new leave event.
+     */
+    public Leave (int bodyOid)
+    {
+      super(bodyOid);
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public Leave ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      replayer.getSceneManager().bodyWillLeave(getBody(replayer));
+    }
+  }
+
+  /**
+   * Records the notification that a body has entered the scene, at which point its client
+   * liaison is created.
+   */
+  public static class BodyEntered extends BodyEvent
+  {
+    /**
+     * Creates a new body entered event.
+     */
+    public BodyEntered (int bodyOid)
+    {
+      super(bodyOid);
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public BodyEntered ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      replayer.replayBodyEntered(bodyOid);
+    }
+  }
+
+  /**
+   * Records the notification that a body has left the scene, at which point its client liaison
+   * is removed.
+   */
+  public static class BodyLeft extends BodyEvent
+  {
+    /**
+     * Creates a new body left event.
+     */
+    public BodyLeft (int bodyOid)
+    {
+      super(bodyOid);
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public BodyLeft ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      replayer.replayBodyLeft(bodyOid);
+    }
+  }
+
+  /**
+   * Records a change in the status of a body.
+   */
+  public static class BodyUpdated extends BodyEvent
+  {
+    /** The new status of the body. */
+    public byte status;
+
+    /**
+     * Creates a new body updated event.
+     */
+    public BodyUpdated (int bodyOid, byte status)
+    {
+      super(bodyOid);
+      this.status = status;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public BodyUpdated ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      replayer.replayBodyUpdated(bodyOid, status);
+    }
+  }
+
+  /**
+   * Records a client's notification that it has entered the scene.
+   */
+  public static class ClientEntered extends BodyEvent
+  {
+    /**
+     * Creates a new client entered event.
+     */
+    public ClientEntered (int bodyOid)
+    {
+      super(bodyOid);
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public ClientEntered ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      getClient(replayer).enteredPlace();
+    }
+  }
+
+  /**
+   * Records a transmission of input from a client, which includes the timestamp of the last
+   * delta it received.
+   */
+  public static class ClientInput extends BodyEvent
+  {
+    /** The timestamp of the last delta received by the client. */
+    public int acknowledge;
+
+    /** The ping calculated from the time of receipt. */
+    public int ping;
+
+    /** The input frames transmitted. */
+    public InputFrame[] frames;
+
+    /**
+     * Creates a new client input event.
+     */
+    public ClientInput (int bodyOid, int acknowledge, int ping, InputFrame[] frames)
+    {
+      super(bodyOid);
+      this.acknowledge = acknowledge;
+      this.ping = ping;
+      this.frames = frames;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public ClientInput ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      getClient(replayer).enqueueInput(acknowledge, ping, frames);
+    }
+  }
+
+  /**
+   * Records a client's request to change its target.
+   */
+  public static class SetTarget extends BodyEvent
+  {
+    /** The id of the requested target. */
+    public int pawnId;
+
+    /**
+     * Creates a new set target event.
+     */
+    public SetTarget (int bodyOid, int pawnId)
+    {
+      super(bodyOid);
+      this.pawnId = pawnId;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public SetTarget ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      replayer.getSceneManager().setTarget(getBody(replayer), pawnId);
+    }
+  }
+
+  /**
+   * Records a client's camera parameters.
+   */
+  public static class SetCameraParams extends BodyEvent
+  {
+    /** The camera configuration. */
+    public CameraConfig config;
+
+    /** The aspect ratio. */
+    public float aspect;
+
+    /**
+     * Creates a new set camera params event.
+     */
+    public SetCameraParams (int bodyOid, CameraConfig config, float aspect)
+    {
+      super(bodyOid);
+      this.config = config;
+      this.aspect = aspect;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public SetCameraParams ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      replayer.getSceneManager().setCameraParams(getBody(replayer), config, aspect);
+    }
+  }
+
+  /**
+   * Records a request submitted by a client to an actor.
+   */
+  public static class ActorRequest extends BodyEvent
+  {
+    /** The id of the target actor. */
+    public int actorId;
+
+    /** The name of the request. */
+    public String name;
+
+    /**
+     * Creates a new actor request event.
+     */
+    public ActorRequest (int bodyOid, int actorId, String name)
+    {
+      super(bodyOid);
+      this.actorId = actorId;
+      this.name = name;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public ActorRequest ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      replayer.getSceneManager().submitActorRequest(getBody(replayer), actorId, name);
+    }
+  }
+
+  /**
+   * Records a request submitted by a client to a scene entry.
+   */
+  public static class EntryRequest extends BodyEvent
+  {
+    /** The key of the target entry. */
+    public Object key;
+
+    /** The name of the request. */
+    public String name;
+
+    /**
+     * Creates a new entry request event.
+     */
+    public EntryRequest (int bodyOid, Object key, String name)
+    {
+      super(bodyOid);
+      this.key = key;
+      this.name = name;
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public EntryRequest ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      replayer.getSceneManager().submitEntryRequest(getBody(replayer), key, name);
+    }
+  }
+
+  /**
+   * Records a runnable posted to the scene from outside of its tick.  Only {@link Exportable}
+   * runnables can be journaled; for others, we record the class name and the replay fails when
+   * it reaches them, since it can't reproduce the recorded run past that point.
+   */
+  public static class PostedRunnable extends Event
+  {
+    /** The runnable, if exportable. */
+    public Runnable runnable;
+
+    /** The class name of the runnable. */
+    public String className;
+
+    /**
+     * Creates a new posted runnable event.
+     */
+    public PostedRunnable (Runnable runnable)
+    {
+      this.runnable = (runnable instanceof Exportable) ? runnable : null;
+      this.className = runnable.getClass().getName();
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public PostedRunnable ()
+    {
+    }
+
+    @Override
+    public void replay (Replayer replayer)
+      throws ReplayException
+    {
+      if (runnable == null) {
+        throw new ReplayException("Can't replay non-exportable runnable [class=" +
+          className + "].");
+      }
+      replayer.getSceneManager().postRunnable(runnable);
+    }
+  }
+
+  /**
+   * Writes a journal.
+   */
+  public static class Writer
+    implements Closeable
+  {
+    /**
+     * Creates a writer that will write to the supplied stream, starting with the header.
+     */
+    public Writer (OutputStream out, Header header)
+      throws IOException
+    {
+      _out = new GZIPOutputStream(out);
+      writeChunk(header);
+    }
+
+    /**
+     * Adds an event to the batch that will be written with the next tick.
+     */
+    public synchronized void record (Event event)
+    {
+      _pending.add(event);
+    }
+
+    /**
+     * Records a tick, writing out the batch of events that preceded it.
+     */
+    public synchronized void recordTick (Tick tick)
+      throws IOException
+    {
+      _pending.add(tick);
+      Event[] events = _pending.toArray(new Event[_pending.size()]);
+      _pending.clear();
+      writeChunk(events);
+    }
+
+    // documentation inherited from interface Closeable
+    public void close ()
+      throws IOException
+    {
+      _out.close();
+    }
+
+    /**
+     * Writes a single length-prefixed chunk.
+     */
+    protected void writeChunk (Object object)
+      throws IOException
+    {
+      // each chunk gets its own exporter so that we don't retain references to everything
+      // we've ever written
+      OutputStream chunk = Streams.output(_out);
+      BinaryExporter exporter = new BinaryExporter(chunk, false);
+      exporter.writeObject(object);
+      exporter.close();
+    }
+
+    /** The underlying stream. */
+    protected OutputStream _out;
+
+    /** The events recorded since the last tick. */
+    protected List<Event> _pending = Lists.newArrayList();
+  }
+
+  /**
+   * Reads a journal.
+   */
+  public static class Reader
+    implements Closeable
+  {
+    /**
+     * Creates a reader for the supplied stream, reading the header immediately.
+     */
+    public Reader (InputStream in)
+      throws IOException
+    {
+      _in = new GZIPInputStream(in);
+      _header = (Header)readChunk();
+      if (_header == null) {
+        throw new IOException("Missing journal header.");
+      }
+    }
+
+    /**
+     * Returns the journal header.
+     */
+    public Header getHeader ()
+    {
+      return _header;
+    }
+
+    /**
+     * Returns the number of ticks read so far.
+     */
+    public int getTickCount ()
+    {
+      return _ticks;
+    }
+
+    /**
+     * Reads the next batch of events (ending with a tick), or returns null if we've reached
+     * the end of the journal.
+     */
+    public Event[] readTick ()
+      throws IOException
+    {
+      Event[] events = (Event[])readChunk();
+      if (events != null) {
+        _ticks++;
+      }
+      return events;
+    }
+
+    /**
+     * Reads the next tick and replays it along with the events that preceded it, verifying
+     * the resulting actor state against the journal.  The scene must have been started with
+     * the header's model and seed, and the caller should yield to the event queue between
+     * ticks so that distributed object events are dispatched as they were when recording.
+     *
+     * @return true if a tick was replayed, false if we've reached the end of the journal.
+     * @throws ReplayException if the tick couldn't be replayed or its result differs from
+     * the recorded one.
+     */
+    public boolean replayTick (Replayer replayer)
+      throws IOException
+    {
+      Event[] events = readTick();
+      if (events == null) {
+        return false;
+      }
+      for (Event event : events) {
+        try {
+          event.replay(replayer);
+        } catch (ReplayException e) {
+          throw new ReplayException("Replay failed at tick " + _ticks + ": " + e.getMessage());
+        }
+      }
+      return true;
+    }
+
+    // documentation inherited from interface Closeable
+    public void close ()
+      throws IOException
+    {
+      _in.close();
+    }
+
+    /**
+     * Reads a single length-prefixed chunk.
+     */
+    protected Object readChunk ()
+      throws IOException
+    {
+      InputStream chunk = Streams.input(_in);
+      if (chunk == null) {
+        return null;
+      }
+      try (BinaryImporter importer = new BinaryImporter(chunk)) {
+        return importer.readObject();
+      }
+    }
+
+    /** The underlying stream. */
+    protected InputStream _in;
+
+    /** The journal header. */
+    protected Header _header;
+
+    /** The number of ticks read so far. */
+    protected int _ticks;
+  }
+}
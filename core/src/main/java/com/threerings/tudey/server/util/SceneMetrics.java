@@ -0,0 +1,490 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.ObjectName;
+
+import com.google.common.collect.Maps;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * Collects the instrumentation for a single scene.  For each category of work (participant
+ * ticks, runnables, client deltas, pathfinding, sensor triggers, and query phases), we count
+ * every event and time a sample of them, recording the latencies in histograms keyed by the
+ * name of the object responsible (generally its class and config).  Registered instances are
+ * exported through JMX and served in text form by the {@link MetricsEndpoint}.
+ */
+public class SceneMetrics
+  implements SceneMetricsMXBean
+{
+  /** The categories of events that we track. */
+  public enum Category { TICK, RUNNABLE, DELTA, PATH, SENSOR, QUERY };
+
+  /**
+   * A latency histogram in the style of HdrHistogram: values are placed in buckets whose width
+   * grows with the magnitude of the value, so that every bucket has roughly the same relative
+   * precision (about six percent) over the entire range.  Recording is lock-free.
+   */
+  public static class LatencyHistogram
+  {
+    /**
+     * Records a value.
+     */
+    public void record (long value)
+    {
+      value = Math.max(0L, Math.min(value, MAX_VALUE));
+      _counts.incrementAndGet(getIndex(value));
+      _count.incrementAndGet();
+      _total.addAndGet(value);
+      for (long longest = _longest.get(); value > longest; longest = _longest.get()) {
+        if (_longest.compareAndSet(longest, value)) {
+          break;
+        }
+      }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long getCount ()
+    {
+      return _count.get();
+    }
+
+    /**
+     * Returns the sum of the values recorded.
+     */
+    public long getTotal ()
+    {
+      return _total.get();
+    }
+
+    /**
+     * Returns the largest value recorded.
+     */
+    public long getLongest ()
+    {
+      return _longest.get();
+    }
+
+    /**
+     * Returns an upper bound (to the precision of the histogram) on the specified percentile of
+     * the values recorded.
+     *
+     * @param percentile the percentile, from zero to one hundred.
+     */
+    public long getPercentile (double percentile)
+    {
+      long target = (long)Math.ceil(_count.get() * percentile / 100.0);
+      long total = 0L;
+      for (int ii = 0, nn = _counts.length(); ii < nn; ii++) {
+        if ((total += _counts.get(ii)) >= Math.max(target, 1L)) {
+          return Math.min(getUpperBound(ii), _longest.get());
+        }
+      }
+      return _longest.get();
+    }
+
+    /**
+     * Clears the histogram.
+     */
+    public void clear ()
+    {
+      for (int ii = 0, nn = _counts.length(); ii < nn; ii++) {
+        _counts.set(ii, 0L);
+      }
+      _count.set(0L);
+      _total.set(0L);
+      _longest.set(0L);
+    }
+
+    /**
+     * Returns the index of the bucket containing the specified value.
+     */
+    protected static int getIndex (long value)
+    {
+      if (value < SUB_BUCKETS) {
+        return (int)value;
+      }
+      int exp = 63 - Long.numberOfLeadingZeros(value);
+      int sub = (int)(value >> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value that falls into the specified bucket.
+     */
+    protected static long getUpperBound (int idx)
+    {
+      if (idx < SUB_BUCKETS) {
+        return idx;
+      }
+      int shift = idx / SUB_BUCKETS - 1;
+      long lower = (long)(SUB_BUCKETS + idx % SUB_BUCKETS) << shift;
+      return lower + (1L << shift) - 1L;
+    }
+
+    /** The count in each bucket. */
+    protected AtomicLongArray _counts = new AtomicLongArray(getIndex(MAX_VALUE) + 1);
+
+    /** The number of values recorded. */
+    protected AtomicLong _count = new AtomicLong();
+
+    /** The sum of the values recorded. */
+    protected AtomicLong _total = new AtomicLong();
+
+    /** The largest value recorded. */
+    protected AtomicLong _longest = new AtomicLong();
+
+    /** The number of bits used to subdivide each power of two. */
+    protected static final int SUB_BUCKET_BITS = 4;
+
+    /** The number of buckets per power of two. */
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** The largest value we distinguish (larger values are clamped). */
+    protected static final long MAX_VALUE = (1L << 36) - 1L;
+  }
+
+  /**
+   * Sets the interval at which events are sampled for timing (one in every
+   * <code>interval</code> events), or zero to disable timing altogether.
+   */
+  public static void setSampleInterval (int interval)
+  {
+    _sampleInterval = interval;
+  }
+
+  /**
+   * Returns the interval at which events are sampled for timing.
+   */
+  public static int getSampleInterval ()
+  {
+    return _sampleInterval;
+  }
+
+  /**
+   * Returns a snapshot of the currently registered metrics.
+   */
+  public static Set<SceneMetrics> getRegistered ()
+  {
+    return Collections.unmodifiableSet(_registered);
+  }
+
+  /**
+   * Writes all of the registered metrics in text form.
+   */
+  public static void writeAll (Appendable out)
+    throws IOException
+  {
+    writeHeader(out);
+    for (SceneMetrics metrics : _registered) {
+      metrics.writeMetrics(out);
+    }
+  }
+
+  /**
+   * Creates a new set of metrics.
+   */
+  public SceneMetrics ()
+  {
+    for (Category category : Category.values()) {
+      _histograms.put(category, new ConcurrentHashMap<String, LatencyHistogram>());
+    }
+  }
+
+  /**
+   * Registers the metrics under the specified scene, both with the platform MBean server and
+   * with the set of metrics served by the endpoint.
+   */
+  public void register (int sceneId, String sceneName)
+  {
+    _sceneId = sceneId;
+    _sceneName = sceneName;
+    _registered.add(this);
+    try {
+      _objectName = new ObjectName("com.threerings.tudey:type=SceneMetrics,scene=" + sceneId +
+        ",instance=" + _nextInstance.incrementAndGet());
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, _objectName);
+    } catch (Exception e) {
+      log.warning("Failed to register scene metrics.", "scene", sceneId, e);
+      _objectName = null;
+    }
+  }
+
+  /**
+   * Unregisters the metrics.
+   */
+  public void unregister ()
+  {
+    _registered.remove(this);
+    if (_objectName == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(_objectName);
+    } catch (Exception e) {
+      log.warning("Failed to unregister scene metrics.", "scene", _sceneId, e);
+    }
+    _objectName = null;
+  }
+
+  /**
+   * Counts an event in the specified category and determines whether it should be timed.
+   *
+   * @return true if the caller should time the event and pass the result to {@link #record}.
+   */
+  public boolean sample (Category category)
+  {
+    long count = _counts.incrementAndGet(category.ordinal());
+    int interval = _sampleInterval;
+    return interval > 0 && count % interval == 0;
+  }
+
+  /**
+   * Records the duration of a sampled event.
+   *
+   * @param name the name of the object responsible for the event.
+   * @param nanos the duration of the event in nanoseconds.
+   */
+  public void record (Category category, String name, long nanos)
+  {
+    ConcurrentMap<String, LatencyHistogram> histograms = _histograms.get(category);
+    LatencyHistogram histogram = histograms.get(name);
+    if (histogram == null) {
+      LatencyHistogram ohistogram = histograms.putIfAbsent(
+        name, histogram = new LatencyHistogram());
+      if (ohistogram != null) {
+        histogram = ohistogram;
+      }
+    }
+    histogram.record(nanos / 1000L);
+  }
+
+  /**
+   * Returns the histograms for the specified category, mapped by name.
+   */
+  public Map<String, LatencyHistogram> getHistograms (Category category)
+  {
+    return Collections.unmodifiableMap(_histograms.get(category));
+  }
+
+  /**
+   * Returns the total number of events counted in the specified category.
+   */
+  public long getEventCount (Category category)
+  {
+    return _counts.get(category.ordinal());
+  }
+
+  // documentation inherited from interface SceneMetricsMXBean
+  public int getSceneId ()
+  {
+    return _sceneId;
+  }
+
+  // documentation inherited from interface SceneMetricsMXBean
+  public String getSceneName ()
+  {
+    return _sceneName;
+  }
+
+  // documentation inherited from interface SceneMetricsMXBean
+  public Map<String, Long> getEventCounts ()
+  {
+    Map<String, Long> counts = Maps.newTreeMap();
+    for (Category category : Category.values()) {
+      counts.put(getName(category), getEventCount(category));
+    }
+    return counts;
+  }
+
+  // documentation inherited from interface SceneMetricsMXBean
+  public Map<String, Long> getSampleCounts (String category)
+  {
+    Map<String, Long> counts = Maps.newTreeMap();
+    for (Map.Entry<String, LatencyHistogram> entry : getHistograms(category).entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().getCount());
+    }
+    return counts;
+  }
+
+  // documentation inherited from interface SceneMetricsMXBean
+  public Map<String, Long> getPercentiles (String category, double percentile)
+  {
+    Map<String, Long> values = Maps.newTreeMap();
+    for (Map.Entry<String, LatencyHistogram> entry : getHistograms(category).entrySet()) {
+      values.put(entry.getKey(), entry.getValue().getPercentile(percentile));
+    }
+    return values;
+  }
+
+  // documentation inherited from interface SceneMetricsMXBean
+  public Map<String, Long> getLongest (String category)
+  {
+    Map<String, Long> values = Maps.newTreeMap();
+    for (Map.Entry<String, LatencyHistogram> entry : getHistograms(category).entrySet()) {
+      values.put(entry.getKey(), entry.getValue().getLongest());
+    }
+    return values;
+  }
+
+  // documentation inherited from interface SceneMetricsMXBean
+  public String getReport ()
+  {
+    StringBuilder buf = new StringBuilder();
+    try {
+      writeHeader(buf);
+      writeMetrics(buf);
+    } catch (IOException e) {
+      // StringBuilder doesn't throw
+    }
+    return buf.toString();
+  }
+
+  // documentation inherited from interface SceneMetricsMXBean
+  public void reset ()
+  {
+    for (Category category : Category.values()) {
+      _counts.set(category.ordinal(), 0L);
+      for (LatencyHistogram histogram : _histograms.get(category).values()) {
+        histogram.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes this scene's metrics in text form (the Prometheus exposition format).
+   */
+  public void writeMetrics (Appendable out)
+    throws IOException
+  {
+    String scene = "scene=\"" + _sceneId + "\",scene_name=\"" + escape(_sceneName) + "\"";
+    for (Category category : Category.values()) {
+      String labels = scene + ",category=\"" + getName(category) + "\"";
+      out.append("tudey_scene_events_total{").append(labels).append("} ")
+        .append(String.valueOf(getEventCount(category))).append('\n');
+      Map<String, LatencyHistogram> histograms =
+        new TreeMap<String, LatencyHistogram>(_histograms.get(category));
+      for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+        LatencyHistogram histogram = entry.getValue();
+        String nlabels = labels + ",name=\"" + escape(entry.getKey()) + "\"";
+        for (double quantile : QUANTILES) {
+          out.append("tudey_scene_latency_micros{").append(nlabels)
+            .append(",quantile=\"").append(String.valueOf(quantile)).append("\"} ")
+            .append(String.valueOf(histogram.getPercentile(quantile * 100.0))).append('\n');
+        }
+        out.append("tudey_scene_latency_micros_sum{").append(nlabels).append("} ")
+          .append(String.valueOf(histogram.getTotal())).append('\n');
+        out.append("tudey_scene_latency_micros_count{").append(nlabels).append("} ")
+          .append(String.valueOf(histogram.getCount())).append('\n');
+      }
+    }
+  }
+
+  /**
+   * Returns the histograms for the named category.
+   */
+  protected Map<String, LatencyHistogram> getHistograms (String category)
+  {
+    try {
+      return getHistograms(Category.valueOf(category.toUpperCase()));
+    } catch (IllegalArgumentException e) {
+      return Collections.emptyMap();
+    }
+  }
+
+  /**
+   * Writes the type information that precedes the metrics.
+   */
+  protected static void writeHeader (Appendable out)
+    throws IOException
+  {
+    out.append("# TYPE tudey_scene_events_total counter\n");
+    out.append("# TYPE tudey_scene_latency_micros summary\n");
+  }
+
+  /**
+   * Returns the external name of the specified category.
+   */
+  protected static String getName (Category category)
+  {
+    return category.name().toLowerCase();
+  }
+
+  /**
+   * Escapes a label value.
+   */
+  protected static String escape (String value)
+  {
+    return (value == null) ? "" :
+      value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /** The id of the scene. */
+  protected int _sceneId;
+
+  /** The name of the scene. */
+  protected String _sceneName;
+
+  /** The name under which we're registered with the MBean server, if any. */
+  protected ObjectName _objectName;
+
+  /** The number of events counted in each category. */
+  protected AtomicLongArray _counts = new AtomicLongArray(Category.values().length);
+
+  /** The histograms in each category, mapped by name. */
+  protected Map<Category, ConcurrentMap<String, LatencyHistogram>> _histograms =
+    Maps.newEnumMap(Category.class);
+
+  /** The interval at which we sample events for timing. */
+  protected static volatile int _sampleInterval = 16;
+
+  /** The currently registered metrics. */
+  protected static Set<SceneMetrics> _registered =
+    Collections.newSetFromMap(new ConcurrentHashMap<SceneMetrics, Boolean>());
+
+  /** Used to distinguish multiple instances of the same scene. */
+  protected static AtomicInteger _nextInstance = new AtomicInteger();
+
+  /** The quantiles reported in the text format. */
+  protected static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+}
@@ -0,0 +1,77 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Map;
+
+/**
+ * The management interface exported for each {@link SceneMetrics} instance.  Category names
+ * are the lower-case names of the {@link SceneMetrics.Category} constants; latencies are in
+ * microseconds.
+ */
+public interface SceneMetricsMXBean
+{
+  /**
+   * Returns the id of the scene.
+   */
+  public int getSceneId ();
+
+  /**
+   * Returns the name of the scene.
+   */
+  public String getSceneName ();
+
+  /**
+   * Returns the total number of events recorded in each category.
+   */
+  public Map<String, Long> getEventCounts ();
+
+  /**
+   * Returns the number of sampled events recorded for each name in the specified category.
+   */
+  public Map<String, Long> getSampleCounts (String category);
+
+  /**
+   * Returns the specified percentile (from zero to one hundred) of the sampled latencies for
+   * each name in the specified category.
+   */
+  public Map<String, Long> getPercentiles (String category, double percentile);
+
+  /**
+   * Returns the longest sampled latency for each name in the specified category.
+   */
+  public Map<String, Long> getLongest (String category);
+
+  /**
+   * Returns all of the metrics in the text format served by {@link MetricsEndpoint}.
+   */
+  public String getReport ();
+
+  /**
+   * Clears all of the counts and histograms.
+   */
+  public void reset ();
+}
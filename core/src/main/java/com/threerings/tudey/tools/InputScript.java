@@ -0,0 +1,96 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.util.Random;
+
+import com.samskivert.util.Randoms;
+
+import com.threerings.math.FloatMath;
+
+import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.server.logic.PawnLogic;
+
+/**
+ * Generates the input frames sent by a synthetic load test client.
+ */
+public interface InputScript
+{
+  /**
+   * Wanders about at random, changing direction every so often and occasionally stopping.
+   */
+  public static class Wander
+    implements InputScript
+  {
+    /**
+     * Creates a new wandering script.
+     *
+     * @param random the generator to use for all choices, which should be seeded for repeatable
+     * runs.
+     */
+    public Wander (Random random)
+    {
+      _randoms = Randoms.with(random);
+    }
+
+    // documentation inherited from interface InputScript
+    public InputFrame getFrame (PawnLogic pawn, int timestamp)
+    {
+      if (timestamp >= _nextChange) {
+        _nextChange = timestamp + _randoms.getInRange(MIN_LEG, MAX_LEG);
+        _direction = _randoms.getFloat(FloatMath.TWO_PI) - FloatMath.PI;
+        _moving = !_randoms.getChance(STOP_CHANCE);
+      }
+      return new InputFrame(timestamp, _direction, _direction, _moving ? InputFrame.MOVE : 0);
+    }
+
+    /** The source of our choices. */
+    protected Randoms _randoms;
+
+    /** The timestamp at which we next change course. */
+    protected int _nextChange;
+
+    /** The current direction of travel. */
+    protected float _direction;
+
+    /** Whether or not we're currently moving. */
+    protected boolean _moving;
+
+    /** The minimum and maximum durations of each leg, in milliseconds. */
+    protected static final int MIN_LEG = 500, MAX_LEG = 3000;
+
+    /** The one-in-n chance that we stand still for any given leg. */
+    protected static final int STOP_CHANCE = 5;
+  }
+
+  /**
+   * Returns the input frame to enqueue for the specified timestamp, or <code>null</code> for
+   * none.
+   *
+   * @param pawn the pawn controlled by the client.
+   */
+  public InputFrame getFrame (PawnLogic pawn, int timestamp);
+}
@@ -0,0 +1,299 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
+
+import com.threerings.util.Name;
+
+import com.threerings.crowd.data.BodyObject;
+import com.threerings.crowd.data.OccupantInfo;
+import com.threerings.crowd.server.CrowdSession;
+
+import com.threerings.config.ConfigReference;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.TudeyBodyObject;
+import com.threerings.tudey.dobj.SceneDeltaEvent;
+import com.threerings.tudey.server.ClientLiaison;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.SceneJournal;
+
+/**
+ * Scene manager for load tests: hosts synthetic clients and advances in simulated time at the
+ * request of the {@link LoadTester} rather than with the scene ticker.  Also replays scene
+ * journals, standing in for the distributed object manager by creating a body for each
+ * journaled one and delivering its occupant notifications at the journaled points.
+ */
+public class LoadTestSceneManager extends TudeySceneManager
+  implements SceneJournal.Replayer
+{
+  /**
+   * Sets the seed of the random number generator with which scenes start up.  When replaying
+   * a journal, this should be the journaled seed.
+   */
+  public static void setStartupSeed (long seed)
+  {
+    _startupSeed = seed;
+  }
+
+  /**
+   * Configures the test.
+   *
+   * @param pawn the configuration of the synthetic clients' pawns.
+   * @param rtt the simulated round trip time of the synthetic clients.
+   */
+  public void configure (ConfigReference<ActorConfig> pawn, int rtt)
+  {
+    _pawn = pawn;
+    _rtt = rtt;
+  }
+
+  /**
+   * Adds a synthetic client to the scene.  The client's liaison will be created once the
+   * occupant addition has been dispatched.
+   */
+  public void addSyntheticClient (Name name, InputScript script)
+  {
+    TudeyBodyObject body = _omgr.registerObject(new TudeyBodyObject());
+    body.username = name;
+    _scripts.put(body.getOid(), script);
+    bodyWillEnter(body);
+  }
+
+  /**
+   * Prepares to replay a journal.  From here on, the scene ignores the occupant notifications
+   * dispatched by the object manager in favor of those in the journal.
+   */
+  public void startReplay ()
+  {
+    _replaying = true;
+  }
+
+  /**
+   * Returns the list of synthetic clients in the scene.
+   */
+  public List<SyntheticClient> getSyntheticClients ()
+  {
+    return _synthetic;
+  }
+
+  /**
+   * Generates the synthetic clients' input and advances the scene by the specified interval.
+   */
+  public void simulateTick (int interval)
+  {
+    for (int ii = 0, nn = _synthetic.size(); ii < nn; ii++) {
+      _synthetic.get(ii).generateInput();
+    }
+    replayTick(interval, interval);
+  }
+
+  @Override
+  public void tick ()
+  {
+    // our ticks are driven by the load tester
+  }
+
+  // documentation inherited from interface SceneJournal.Replayer
+  public TudeySceneManager getSceneManager ()
+  {
+    return this;
+  }
+
+  // documentation inherited from interface SceneJournal.Replayer
+  public BodyObject createBody (int bodyOid, String username, ConfigReference<ActorConfig> pawn)
+  {
+    TudeyBodyObject body = _omgr.registerObject(new TudeyBodyObject());
+    body.username = new Name(username);
+    _bodies.put(bodyOid, body);
+    _pawns.put(body.getOid(), pawn);
+    return body;
+  }
+
+  // documentation inherited from interface SceneJournal.Replayer
+  public BodyObject getBody (int bodyOid)
+  {
+    return _bodies.get(bodyOid);
+  }
+
+  // documentation inherited from interface SceneJournal.Replayer
+  public ClientLiaison getClient (int bodyOid)
+  {
+    BodyObject body = _bodies.get(bodyOid);
+    return (body == null) ? null : _clients.get(body.getOid());
+  }
+
+  // documentation inherited from interface SceneJournal.Replayer
+  public void replayBodyEntered (int bodyOid)
+    throws SceneJournal.ReplayException
+  {
+    super.bodyEntered(requireBody(bodyOid).getOid());
+  }
+
+  // documentation inherited from interface SceneJournal.Replayer
+  public void replayBodyLeft (int bodyOid)
+    throws SceneJournal.ReplayException
+  {
+    BodyObject body = requireBody(bodyOid);
+    super.bodyLeft(body.getOid());
+    _bodies.remove(bodyOid);
+    _pawns.remove(body.getOid());
+    _omgr.destroyObject(body.getOid());
+  }
+
+  // documentation inherited from interface SceneJournal.Replayer
+  public void replayBodyUpdated (int bodyOid, byte status)
+    throws SceneJournal.ReplayException
+  {
+    OccupantInfo info = _plobj.occupantInfo.get(requireBody(bodyOid).getOid());
+    if (info == null) {
+      throw new SceneJournal.ReplayException(
+        "Missing occupant info for journaled update [bodyOid=" + bodyOid + "].");
+    }
+    info = info.clone();
+    info.status = status;
+    super.bodyUpdated(info);
+  }
+
+  @Override
+  protected void didStartup ()
+  {
+    setRandomSeed(_startupSeed);
+    super.didStartup();
+  }
+
+  @Override
+  protected void bodyEntered (int bodyOid)
+  {
+    // when replaying, the notification is delivered at the journaled point
+    if (!_replaying) {
+      super.bodyEntered(bodyOid);
+    }
+  }
+
+  @Override
+  protected void bodyLeft (int bodyOid)
+  {
+    if (!_replaying) {
+      super.bodyLeft(bodyOid);
+    }
+  }
+
+  @Override
+  protected void bodyUpdated (OccupantInfo info)
+  {
+    if (!_replaying) {
+      super.bodyUpdated(info);
+    }
+  }
+
+  @Override
+  protected ConfigReference<ActorConfig> getPawnConfig (BodyObject body)
+  {
+    return _replaying ? _pawns.get(body.getOid()) : _pawn;
+  }
+
+  @Override
+  protected ClientLiaison createClientLiaison (BodyObject bodyobj, CrowdSession session)
+  {
+    if (_replaying) {
+      return new ReplayClient(this, bodyobj);
+    }
+    InputScript script = _scripts.remove(bodyobj.getOid());
+    if (script == null) {
+      return super.createClientLiaison(bodyobj, session);
+    }
+    SyntheticClient client = new SyntheticClient(this, bodyobj, script, _rtt);
+    client.enteredPlace();
+    _synthetic.add(client);
+    return client;
+  }
+
+  /**
+   * Returns the body standing in for the identified journaled body, throwing an exception if
+   * there isn't one.
+   */
+  protected BodyObject requireBody (int bodyOid)
+    throws SceneJournal.ReplayException
+  {
+    BodyObject body = _bodies.get(bodyOid);
+    if (body == null) {
+      throw new SceneJournal.ReplayException(
+        "Missing body for journaled notification [bodyOid=" + bodyOid + "].");
+    }
+    return body;
+  }
+
+  /**
+   * The liaison for a replayed body, whose deltas have nowhere to go.
+   */
+  protected static class ReplayClient extends ClientLiaison
+  {
+    /**
+     * Creates a new replay client.
+     */
+    public ReplayClient (TudeySceneManager scenemgr, BodyObject bodyobj)
+    {
+      super(scenemgr, bodyobj, null);
+    }
+
+    @Override
+    protected void postDeltaEvent (SceneDeltaEvent event)
+    {
+      // no-op
+    }
+  }
+
+  /** The configuration of the synthetic clients' pawns. */
+  protected ConfigReference<ActorConfig> _pawn;
+
+  /** The simulated round trip time. */
+  protected int _rtt;
+
+  /** The scripts of the synthetic clients awaiting their liaisons, mapped by body oid. */
+  protected HashIntMap<InputScript> _scripts = IntMaps.newHashIntMap();
+
+  /** The synthetic clients in the scene. */
+  protected List<SyntheticClient> _synthetic = Lists.newArrayList();
+
+  /** Whether or not we're replaying a journal. */
+  protected boolean _replaying;
+
+  /** The bodies standing in for the journaled ones, mapped by journaled oid. */
+  protected HashIntMap<BodyObject> _bodies = IntMaps.newHashIntMap();
+
+  /** The pawn configurations of the replayed bodies, mapped by (actual) oid. */
+  protected HashIntMap<ConfigReference<ActorConfig>> _pawns = IntMaps.newHashIntMap();
+
+  /** The seed with which scenes start up. */
+  protected static long _startupSeed = 1L;
+}
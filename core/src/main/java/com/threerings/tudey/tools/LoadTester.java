@@ -0,0 +1,471 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import java.util.function.Consumer;
+
+import com.google.common.collect.Lists;
+
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Singleton;
+
+import com.threerings.util.Name;
+
+import com.threerings.crowd.data.PlaceConfig;
+
+import com.threerings.whirled.data.SceneModel;
+import com.threerings.whirled.server.SceneManager;
+import com.threerings.whirled.server.SceneRegistry;
+import com.threerings.whirled.server.persist.SceneRepository;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.export.BinaryImporter;
+import com.threerings.export.Importer;
+import com.threerings.export.XMLImporter;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.TudeySceneManager.TickProfile;
+import com.threerings.tudey.server.TudeyServer;
+import com.threerings.tudey.server.util.SceneJournal;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * A headless server that loads a scene, populates it with synthetic clients, advances it in
+ * simulated time as fast as it can, and reports on tick times, delta bandwidth and allocation.
+ * It can also record a journal of the test and replay a scene journal (whether recorded here or
+ * on a live server), verifying after every tick that the replay reproduces the recorded actor
+ * state.  Run from the directory containing the resource directory, as with the other tools.
+ */
+@Singleton
+public class LoadTester extends TudeyServer
+{
+  /** Configures dependencies needed by the load tester. */
+  public static class LoadTestModule extends TudeyModule
+  {
+    @Override protected void configure ()
+    {
+      super.configure();
+      bind(TudeyServer.class).to(LoadTester.class);
+      bind(SceneRepository.class).to(ToolSceneRepository.class);
+      bind(SceneRegistry.ConfigFactory.class).toInstance(new SceneRegistry.ConfigFactory() {
+        public PlaceConfig createPlaceConfig (SceneModel model) {
+          return new LoadTestSceneConfig();
+        }
+      });
+    }
+  }
+
+  /**
+   * The parameters of a load test.
+   */
+  public static class Parameters
+  {
+    /** The number of synthetic clients. */
+    public int clients = 16;
+
+    /** The simulated duration of the test in seconds, not including the warmup. */
+    public int duration = 60;
+
+    /** The simulated duration of the warmup in seconds. */
+    public int warmup = 5;
+
+    /** The tick interval in milliseconds (or zero to use the scene's configured interval). */
+    public int interval;
+
+    /** The simulated round trip time in milliseconds. */
+    public int rtt = 100;
+
+    /** The seed for the scene and client scripts. */
+    public long seed = 1L;
+
+    /** The configuration of the clients' pawns. */
+    public String pawn = "Character/PC/Editor";
+
+    /** Whether or not to profile the individual tick participants. */
+    public boolean profile;
+  }
+
+  /**
+   * Program entry point.
+   */
+  public static void main (String[] args)
+    throws Exception
+  {
+    Parameters params = new Parameters();
+    String scene = null;
+    File journal = null;
+    try {
+      for (int ii = 0; ii < args.length; ii++) {
+        String arg = args[ii];
+        if (arg.equals("-c")) {
+          params.clients = Integer.parseInt(args[++ii]);
+        } else if (arg.equals("-t")) {
+          params.duration = Integer.parseInt(args[++ii]);
+        } else if (arg.equals("-w")) {
+          params.warmup = Integer.parseInt(args[++ii]);
+        } else if (arg.equals("-i")) {
+          params.interval = Integer.parseInt(args[++ii]);
+        } else if (arg.equals("-r")) {
+          params.rtt = Integer.parseInt(args[++ii]);
+        } else if (arg.equals("-s")) {
+          params.seed = Long.parseLong(args[++ii]);
+        } else if (arg.equals("-p")) {
+          params.pawn = args[++ii];
+        } else if (arg.equals("-P")) {
+          params.profile = true;
+        } else if (arg.equals("-J")) {
+          TudeySceneManager.setJournalDirectory(new File(args[++ii]));
+        } else if (arg.equals("-j")) {
+          journal = new File(args[++ii]);
+        } else if (scene == null && !arg.startsWith("-")) {
+          scene = arg;
+        } else {
+          throw new IllegalArgumentException(arg);
+        }
+      }
+    } catch (RuntimeException e) {
+      scene = null;
+      journal = null;
+    }
+    if (scene == null && journal == null) {
+      System.err.println("Usage: LoadTester [-options] <scene file>");
+      System.err.println("       LoadTester -j <journal file>");
+      System.err.println();
+      System.err.println("where options include:");
+      System.err.println("    -c <clients>  number of synthetic clients (default 16)");
+      System.err.println("    -t <seconds>  simulated duration (default 60)");
+      System.err.println("    -w <seconds>  simulated warmup, not reported (default 5)");
+      System.err.println("    -i <millis>   tick interval (default from scene config)");
+      System.err.println("    -r <millis>   simulated round trip time (default 100)");
+      System.err.println("    -s <seed>     random seed (default 1)");
+      System.err.println("    -p <config>   pawn actor config (default Character/PC/Editor)");
+      System.err.println("    -P            profile individual tick participants");
+      System.err.println("    -J <dir>      record a journal of the test in the directory");
+      System.err.println("    -j <journal>  replay a journal, verifying each tick");
+      System.exit(1);
+    }
+
+    Injector injector = Guice.createInjector(new LoadTestModule());
+    LoadTester tester = injector.getInstance(LoadTester.class);
+    tester.init(injector);
+    if (journal != null) {
+      tester.replay(new SceneJournal.Reader(new FileInputStream(journal)));
+    } else {
+      tester.start(readScene(new File(scene)), params);
+    }
+    tester.run();
+  }
+
+  /**
+   * Reads a scene model from a binary or XML export file.
+   */
+  public static TudeySceneModel readScene (File file)
+    throws IOException
+  {
+    FileInputStream fin = new FileInputStream(file);
+    Importer in = file.getName().endsWith(".xml") ?
+      new XMLImporter(fin) : new BinaryImporter(fin);
+    try {
+      return (TudeySceneModel)in.readObject();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Queues up a load test of the specified scene, shutting down the server when it completes.
+   */
+  public void start (TudeySceneModel model, final Parameters params)
+  {
+    TudeySceneManager.setTickProfEnabled(params.profile);
+    LoadTestSceneManager.setStartupSeed(params.seed);
+    resolve(model, scenemgr -> populate(scenemgr, params));
+  }
+
+  /**
+   * Queues up a replay of the journal read by the supplied reader, shutting down the server
+   * when it completes.
+   */
+  public void replay (final SceneJournal.Reader reader)
+  {
+    SceneJournal.Header header = reader.getHeader();
+    LoadTestSceneManager.setStartupSeed(header.seed);
+    resolve(header.model, scenemgr -> {
+      scenemgr.startReplay();
+      _omgr.postRunnable(new Replay(scenemgr, reader));
+    });
+  }
+
+  /**
+   * Resolves the scene for the specified model and passes its manager to the supplied op.
+   */
+  protected void resolve (final TudeySceneModel model, final Consumer<LoadTestSceneManager> op)
+  {
+    _scenerepo.setSceneModel(model);
+    _omgr.postRunnable(new Runnable() {
+      public void run () {
+        _scenereg.resolveScene(model.sceneId, new SceneRegistry.ResolutionListener() {
+          public void sceneWasResolved (SceneManager scmgr) {
+            op.accept((LoadTestSceneManager)scmgr);
+          }
+          public void sceneFailedToResolve (int sceneId, Exception reason) {
+            log.warning("Failed to resolve scene.", "sceneId", sceneId, reason);
+            queueShutdown();
+          }
+        });
+      }
+    });
+  }
+
+  @Override
+  protected int[] getListenPorts ()
+  {
+    return new int[0]; // our clients never connect
+  }
+
+  @Override
+  protected int[] getDatagramPorts ()
+  {
+    return new int[0];
+  }
+
+  /**
+   * Adds the synthetic clients to the scene and queues up the first tick.
+   */
+  protected void populate (LoadTestSceneManager scenemgr, Parameters params)
+  {
+    scenemgr.configure(new ConfigReference<ActorConfig>(params.pawn), params.rtt);
+    Random random = new Random(params.seed);
+    for (int ii = 0; ii < params.clients; ii++) {
+      scenemgr.addSyntheticClient(new Name("synthetic" + ii),
+        new InputScript.Wander(new Random(random.nextLong())));
+    }
+
+    // the liaisons are created when the occupant additions are dispatched, which happens
+    // before any runnable we post now
+    _omgr.postRunnable(new Simulation(scenemgr, params));
+  }
+
+  /**
+   * Prints the results of a test.
+   */
+  protected void report (
+    Simulation sim, long wallMillis, long deltaCount, long deltaBytes, long allocated)
+  {
+    Parameters params = sim.params;
+    float seconds = params.duration;
+    int ticks = sim.profile.getCount();
+    System.out.println("Clients: " + params.clients + ", ticks: " + ticks + " (" + sim.interval +
+      "ms), simulated: " + params.duration + "s, elapsed: " + wallMillis + "ms (" +
+      String.format("%.1fx", params.duration * 1000f / Math.max(wallMillis, 1L)) + " real time)");
+    System.out.println(formatProfile("Tick", sim.profile));
+    System.out.println(String.format(
+      "Deltas: %d per client/s, %d bytes per client/s, %d bytes avg",
+      Math.round(deltaCount / seconds / params.clients),
+      Math.round(deltaBytes / seconds / params.clients),
+      deltaBytes / Math.max(deltaCount, 1L)));
+    System.out.println(String.format(
+      "Allocated: %d KB/s simulated, %d KB/s elapsed, %d bytes per tick",
+      Math.round(allocated / seconds / 1024f),
+      Math.round(allocated * 1000f / Math.max(wallMillis, 1L) / 1024f),
+      allocated / Math.max(ticks, 1)));
+
+    // report on the individual participants, busiest first
+    if (params.profile) {
+      List<Map.Entry<String, TickProfile>> entries =
+        Lists.newArrayList(TudeySceneManager.getTickProfiles().entrySet());
+      entries.sort((e1, e2) -> Long.compare(
+        e2.getValue().getAverage() * e2.getValue().getCount(),
+        e1.getValue().getAverage() * e1.getValue().getCount()));
+      for (Map.Entry<String, TickProfile> entry : entries) {
+        System.out.println("  " + formatProfile(entry.getKey(), entry.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Formats a tick profile for the report.
+   */
+  protected static String formatProfile (String name, TickProfile profile)
+  {
+    return String.format("%s: %d samples, avg %dus, p50 %dus, p90 %dus, p99 %dus, max %dus",
+      name, profile.getCount(), profile.getAverage(), profile.getPercentile(50f),
+      profile.getPercentile(90f), profile.getPercentile(99f), profile.getLongest());
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread, or zero if unsupported.
+   */
+  protected static long getAllocatedBytes ()
+  {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    return (bean instanceof com.sun.management.ThreadMXBean) ?
+      ((com.sun.management.ThreadMXBean)bean).getCurrentThreadAllocatedBytes() : 0L;
+  }
+
+  /**
+   * Advances the scene one tick at a time, yielding to the event queue between ticks so that
+   * distributed object events are dispatched as they would be normally.
+   */
+  protected class Simulation
+    implements Runnable
+  {
+    /** The parameters of the test. */
+    public final Parameters params;
+
+    /** The interval of each tick. */
+    public final int interval;
+
+    /** The tick times, in microseconds, with a resolution of 100us. */
+    public final TickProfile profile = new TickProfile(100, 1000);
+
+    public Simulation (LoadTestSceneManager scenemgr, Parameters params)
+    {
+      _scenemgr = scenemgr;
+      this.params = params;
+      interval = (params.interval > 0) ? params.interval : scenemgr.getTickInterval();
+      _warmupTicks = params.warmup * 1000 / interval;
+      _totalTicks = _warmupTicks + params.duration * 1000 / interval;
+    }
+
+    // documentation inherited from interface Runnable
+    public void run ()
+    {
+      if (_ticks == _warmupTicks) {
+        begin();
+      }
+      long allocated = getAllocatedBytes();
+      long started = System.nanoTime();
+      _scenemgr.simulateTick(interval);
+      if (_ticks >= _warmupTicks) {
+        profile.record((System.nanoTime() - started) / 1000L);
+        _allocated += getAllocatedBytes() - allocated;
+      }
+      if (++_ticks < _totalTicks) {
+        _omgr.postRunnable(this);
+        return;
+      }
+      long deltaCount = -_deltaCount, deltaBytes = -_deltaBytes;
+      for (SyntheticClient client : _scenemgr.getSyntheticClients()) {
+        deltaCount += client.getDeltaCount();
+        deltaBytes += client.getDeltaBytes();
+      }
+      report(this, (System.nanoTime() - _started) / 1000000L,
+        deltaCount, deltaBytes, _allocated);
+      queueShutdown();
+    }
+
+    /**
+     * Notes the baseline values at the end of the warmup.
+     */
+    protected void begin ()
+    {
+      for (SyntheticClient client : _scenemgr.getSyntheticClients()) {
+        _deltaCount += client.getDeltaCount();
+        _deltaBytes += client.getDeltaBytes();
+      }
+      TudeySceneManager.clearTickProfiles();
+      _started = System.nanoTime();
+    }
+
+    /** The scene being tested. */
+    protected LoadTestSceneManager _scenemgr;
+
+    /** The number of ticks in the warmup and in total. */
+    protected int _warmupTicks, _totalTicks;
+
+    /** The number of ticks simulated so far. */
+    protected int _ticks;
+
+    /** The delta counts at the start of the test proper. */
+    protected long _deltaCount, _deltaBytes;
+
+    /** The system time at the start of the test proper. */
+    protected long _started;
+
+    /** The number of bytes allocated during the ticks of the test proper. */
+    protected long _allocated;
+  }
+
+  /**
+   * Replays a journal one tick at a time, yielding to the event queue between ticks.
+   */
+  protected class Replay
+    implements Runnable
+  {
+    public Replay (LoadTestSceneManager scenemgr, SceneJournal.Reader reader)
+    {
+      _scenemgr = scenemgr;
+      _reader = reader;
+    }
+
+    // documentation inherited from interface Runnable
+    public void run ()
+    {
+      try {
+        if (_reader.replayTick(_scenemgr)) {
+          _omgr.postRunnable(this);
+          return;
+        }
+        System.out.println("Replayed " + _reader.getTickCount() +
+          " ticks; actor state matched the journal after each.");
+      } catch (IOException e) {
+        System.err.println(e.getMessage());
+      }
+      try {
+        _reader.close();
+      } catch (IOException e) {
+        log.warning("Failed to close journal.", e);
+      }
+      queueShutdown();
+    }
+
+    /** The scene being replayed. */
+    protected LoadTestSceneManager _scenemgr;
+
+    /** The journal reader. */
+    protected SceneJournal.Reader _reader;
+  }
+
+  /** The scene repository. */
+  @Inject protected ToolSceneRepository _scenerepo;
+}
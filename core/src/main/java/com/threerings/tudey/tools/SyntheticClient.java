@@ -0,0 +1,169 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
+
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.crowd.data.BodyObject;
+
+import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.dobj.SceneDeltaEvent;
+import com.threerings.tudey.server.ClientLiaison;
+import com.threerings.tudey.server.TudeySceneManager;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * A client liaison that stands in for a remote client: it generates input from a script,
+ * acknowledges deltas after a simulated round trip, and measures the deltas it would have sent
+ * rather than posting them.  Deltas are "sent" as datagrams, so, as with a real client, each is
+ * computed against the last delta acknowledged rather than the last one sent.
+ */
+public class SyntheticClient extends ClientLiaison
+{
+  /**
+   * Creates a new synthetic client.
+   *
+   * @param rtt the simulated round trip time in milliseconds.
+   */
+  public SyntheticClient (
+    TudeySceneManager scenemgr, BodyObject bodyobj, InputScript script, int rtt)
+  {
+    super(scenemgr, bodyobj, null);
+    _script = script;
+    _rtt = rtt;
+    try {
+      _oout = new ObjectOutputStream(_counter);
+    } catch (IOException e) {
+      throw new RuntimeException(e); // not going to happen with an in-memory stream
+    }
+  }
+
+  /**
+   * Generates the input for the upcoming tick and, if the transmit interval has elapsed,
+   * "transmits" it along with the acknowledgement of the deltas that would have arrived by now.
+   */
+  public void generateInput ()
+  {
+    int timestamp = _scenemgr.getTimestamp();
+    if (_controlled != null) {
+      InputFrame frame = _script.getFrame(_controlled, timestamp + _scenemgr.getTickInterval());
+      if (frame != null) {
+        _input.add(frame);
+      }
+    }
+    if (timestamp - _lastTransmit < _scenemgr.getTransmitInterval()) {
+      return;
+    }
+    _lastTransmit = timestamp;
+
+    // find the latest delta the client would have received and acknowledged by now
+    while (!_posted.isEmpty() && _posted.peek() <= timestamp - _rtt) {
+      _acknowledge = _posted.poll();
+    }
+    enqueueInput(_acknowledge, _rtt, _input.toArray(new InputFrame[_input.size()]));
+    _input.clear();
+  }
+
+  /**
+   * Returns the number of deltas posted to this client.
+   */
+  public int getDeltaCount ()
+  {
+    return _deltaCount;
+  }
+
+  /**
+   * Returns the total number of bytes that the posted deltas occupied in serialized form.
+   */
+  public long getDeltaBytes ()
+  {
+    return _counter.getCount();
+  }
+
+  @Override
+  protected boolean canTransmitDatagrams ()
+  {
+    return true;
+  }
+
+  @Override
+  protected boolean wasSentReliably (SceneDeltaEvent event)
+  {
+    return false; // we only learn of receipt through our (delayed) acknowledgements
+  }
+
+  @Override
+  protected void postDeltaEvent (SceneDeltaEvent event)
+  {
+    _deltaCount++;
+    _posted.add(event.getTimestamp());
+    try {
+      _oout.writeObject(event);
+      _oout.flush();
+    } catch (IOException e) {
+      log.warning("Failed to measure delta.", "event", event, e);
+    }
+  }
+
+  /** Generates our input. */
+  protected InputScript _script;
+
+  /** The simulated round trip time. */
+  protected int _rtt;
+
+  /** The input generated since the last transmission. */
+  protected List<InputFrame> _input = Lists.newArrayList();
+
+  /** The timestamp of the last transmission. */
+  protected int _lastTransmit;
+
+  /** The timestamps of the deltas posted but not yet acknowledged. */
+  protected ArrayDeque<Integer> _posted = new ArrayDeque<Integer>();
+
+  /** The timestamp of the last delta acknowledged. */
+  protected int _acknowledge;
+
+  /** The number of deltas posted. */
+  protected int _deltaCount;
+
+  /** Counts the bytes written to the stream. */
+  protected CountingOutputStream _counter =
+    new CountingOutputStream(OutputStream.nullOutputStream());
+
+  /** The stream to which we write the deltas (which, like the client connection, retains its
+   * class mappings between writes). */
+  protected ObjectOutputStream _oout;
+}
@@ -133,6 +133,15 @@ public class ActorAdvancer
     step(elapsed);
   }
 
+  /**
+   * Advances the actor to the specified timestamp after a period in which it was advanced
+   * infrequently (or not at all).  Subclasses may take coarser steps than usual.
+   */
+  public void catchUp (int timestamp)
+  {
+    advance(timestamp);
+  }
+
   /**
    * Jumps to the specified timestamp without actually taking a step.
    */
@@ -0,0 +1,233 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Covers the locations in a map of collision flags with rectangles, each formed by merging
+ * adjacent locations that have identical flags, so that collision queries can test a few
+ * rectangles rather than every location under a shape.  Rectangles are confined to square blocks
+ * of locations, which are rebuilt as soon as their flags change so that queries never modify the
+ * object and may be made from several threads at once (provided none of them are invalidating).
+ */
+public class CollisionRects
+{
+  /**
+   * Holds the results of a query as (x, y, width, height, flags) quintuples.
+   */
+  public static class Result
+  {
+    /** The rectangle data. */
+    public int[] rects = new int[5 * 8];
+
+    /** The number of rectangles. */
+    public int count;
+
+    /**
+     * Adds a rectangle to the result.
+     */
+    public void add (int[] source, int offset)
+    {
+      int idx = count * 5;
+      if (idx + 5 > rects.length) {
+        rects = Arrays.copyOf(rects, rects.length * 2);
+      }
+      System.arraycopy(source, offset, rects, idx, 5);
+      count++;
+    }
+  }
+
+  /**
+   * Creates a new set of rectangles for the supplied flags.
+   *
+   * @param granularity the size of the blocks, expressed as a power of two.
+   */
+  public CollisionRects (CoordIntMap flags, int granularity)
+  {
+    _flags = flags;
+    _granularity = granularity;
+    _values = new int[1 << (granularity * 2)];
+  }
+
+  /**
+   * Notes that the flags in the specified region may have changed, rebuilding the blocks that
+   * intersect it.
+   */
+  public void invalidate (int x, int y, int width, int height)
+  {
+    for (int by = y >> _granularity, bymax = (y + height - 1) >> _granularity;
+        by <= bymax; by++) {
+      for (int bx = x >> _granularity, bxmax = (x + width - 1) >> _granularity;
+          bx <= bxmax; bx++) {
+        Coord coord = new Coord(bx, by);
+        Block block = _blocks.get(coord);
+        if (block == null) {
+          _blocks.put(coord, block = new Block(bx, by));
+        }
+        block.rebuild();
+      }
+    }
+  }
+
+  /**
+   * Finds the rectangles intersecting the specified (inclusive) range of locations.
+   *
+   * @param result the object in which to store the rectangles (after clearing it).
+   */
+  public void getIntersecting (int minx, int miny, int maxx, int maxy, Result result)
+  {
+    result.count = 0;
+    Coord coord = new Coord();
+    for (int by = miny >> _granularity, bymax = maxy >> _granularity; by <= bymax; by++) {
+      for (int bx = minx >> _granularity, bxmax = maxx >> _granularity; bx <= bxmax; bx++) {
+        coord.set(bx, by);
+        Block block = _blocks.get(coord);
+        if (block == null) {
+          continue;
+        }
+        int[] rects = block.rects;
+        for (int ii = 0, nn = block.count * 5; ii < nn; ii += 5) {
+          int x = rects[ii], y = rects[ii + 1];
+          if (x <= maxx && y <= maxy && x + rects[ii + 2] > minx && y + rects[ii + 3] > miny) {
+            result.add(rects, ii);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the total number of rectangles.
+   */
+  public int getRectCount ()
+  {
+    int count = 0;
+    for (Block block : _blocks.values()) {
+      count += block.count;
+    }
+    return count;
+  }
+
+  /**
+   * Removes all rectangles.
+   */
+  public void clear ()
+  {
+    _blocks.clear();
+  }
+
+  /**
+   * A square block of locations.
+   */
+  protected class Block
+  {
+    /** The rectangles in the block as (x, y, width, height, flags) quintuples. */
+    public int[] rects = EMPTY_RECTS;
+
+    /** The number of rectangles. */
+    public int count;
+
+    public Block (int bx, int by)
+    {
+      _x = bx << _granularity;
+      _y = by << _granularity;
+    }
+
+    /**
+     * Rebuilds the rectangles from the flags by greedily growing each unclaimed location
+     * first horizontally, then vertically.
+     */
+    public void rebuild ()
+    {
+      int size = 1 << _granularity;
+      int[] values = _values;
+      for (int yy = 0; yy < size; yy++) {
+        for (int xx = 0; xx < size; xx++) {
+          values[yy * size + xx] = _flags.get(_x + xx, _y + yy);
+        }
+      }
+      count = 0;
+      for (int yy = 0; yy < size; yy++) {
+        for (int xx = 0; xx < size; xx++) {
+          int flags = values[yy * size + xx];
+          if (flags == 0) {
+            continue;
+          }
+          int width = 1;
+          while (xx + width < size && values[yy * size + xx + width] == flags) {
+            width++;
+          }
+          int height = 1;
+          for (; yy + height < size; height++) {
+            int row = (yy + height) * size + xx;
+            int ww = 0;
+            while (ww < width && values[row + ww] == flags) {
+              ww++;
+            }
+            if (ww < width) {
+              break;
+            }
+          }
+          for (int ry = yy; ry < yy + height; ry++) {
+            Arrays.fill(values, ry * size + xx, ry * size + xx + width, 0);
+          }
+          int idx = count * 5;
+          if (idx + 5 > rects.length) {
+            rects = Arrays.copyOf(rects, Math.max(5 * 4, rects.length * 2));
+          }
+          rects[idx] = _x + xx;
+          rects[idx + 1] = _y + yy;
+          rects[idx + 2] = width;
+          rects[idx + 3] = height;
+          rects[idx + 4] = flags;
+          count++;
+        }
+      }
+    }
+
+    /** The coordinates of the block's lower left location. */
+    protected int _x, _y;
+  }
+
+  /** The flags from which we build the rectangles. */
+  protected CoordIntMap _flags;
+
+  /** The size of the blocks, expressed as a power of two. */
+  protected int _granularity;
+
+  /** Holds the flags of the block being rebuilt. */
+  protected int[] _values;
+
+  /** The blocks, mapped by block coordinates. */
+  protected HashMap<Coord, Block> _blocks = Maps.newHashMap();
+
+  /** The initial (empty) rectangle array. */
+  protected static final int[] EMPTY_RECTS = new int[0];
+}
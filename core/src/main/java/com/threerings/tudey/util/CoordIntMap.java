@@ -162,7 +162,9 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
    */
   public int get (int x, int y)
   {
-    Cell cell = getCell(x, y);
+    // look up the cell with a per-thread coordinate rather than the shared scratch one, so that
+    // the map may be read by several threads at once
+    Cell cell = _cells.get(_lookupCoord.get().set(x >> _granularity, y >> _granularity));
     return (cell == null) ? _empty : cell.get(x & _mask, y & _mask);
   }
 
@@ -583,4 +585,11 @@ public class CoordIntMap extends AbstractMap<Coord, Integer>
 
   /** A coord to reuse for queries. */
   protected transient Coord _coord = new Coord();
+
+  /** Per-thread coords to reuse for lookups in {@link #get}. */
+  protected static final ThreadLocal<Coord> _lookupCoord = new ThreadLocal<Coord>() {
+    @Override protected Coord initialValue () {
+      return new Coord();
+    }
+  };
 }
@@ -212,10 +212,21 @@ public class CoordSet extends AbstractSet<Coord>
    * @return a reference to the result object, for chaining.
    */
   public Coord pickRandom (int width, int height, Coord result)
+  {
+    return pickRandom(width, height, result, Randoms.threadLocal());
+  }
+
+  /**
+   * Selects a random coordinate that is the origin of a region within the set with the
+   * supplied dimensions using the given generator and places it in the provided object.
+   *
+   * @return a reference to the result object, for chaining.
+   */
+  public Coord pickRandom (int width, int height, Coord result, Randoms r)
   {
     if (width == 1 && height == 1) {
       Interator it = _coords.interator();
-      for (int ii = 0, nn = Randoms.threadLocal().getInt(size()); ii < nn; ii++) {
+      for (int ii = 0, nn = r.getInt(size()); ii < nn; ii++) {
         it.nextInt();
       }
       return result.set(it.nextInt());
@@ -226,7 +237,7 @@ public class CoordSet extends AbstractSet<Coord>
         origins.add(coord);
       }
     }
-    return origins.pickRandom(result);
+    return origins.pickRandom(1, 1, result, r);
   }
 
   /**
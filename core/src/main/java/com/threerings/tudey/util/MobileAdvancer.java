@@ -25,11 +25,13 @@
 
 package com.threerings.tudey.util;
 
+import com.threerings.math.FloatMath;
 import com.threerings.math.Vector2f;
 
 import com.threerings.tudey.config.ActorConfig;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.Mobile;
+import com.threerings.tudey.shape.Shape;
 
 /**
  * Advancer for mobile actors.
@@ -58,6 +60,27 @@ public class MobileAdvancer extends ActorAdvancer
     }
   }
 
+  @Override
+  public void catchUp (int timestamp)
+  {
+    _catchingUp = true;
+    try {
+      advance(timestamp);
+    } finally {
+      _catchingUp = false;
+    }
+  }
+
+  /**
+   * Notes that the mobile has been moved externally (as by a batch advance) up to the
+   * specified timestamp.
+   */
+  public void moved (int timestamp)
+  {
+    jump(timestamp);
+    updateShape();
+  }
+
   @Override
   protected void step (float elapsed)
   {
@@ -69,13 +92,28 @@ public class MobileAdvancer extends ActorAdvancer
    */
   protected void takeSubsteps (float elapsed)
   {
+    float maxSubstep = getMaxSubstep();
+    if (elapsed > maxSubstep && sweepStep(elapsed, maxSubstep)) {
+      return;
+    }
     while (elapsed > 0f) {
-      float nelapsed = Math.max(elapsed - MAX_SUBSTEP, 0f);
+      float nelapsed = Math.max(elapsed - maxSubstep, 0f);
       substep(elapsed - nelapsed, _timestamp - (int)(nelapsed*1000f));
       elapsed = nelapsed;
     }
   }
 
+  /**
+   * Returns the length, in seconds, of the longest substep to take.  When catching up, this
+   * is as long as we can go without exceeding the mobile's maximum step distance.
+   */
+  protected float getMaxSubstep ()
+  {
+    float speed = _mobile.getSpeed();
+    return (_catchingUp && speed > 0f) ?
+      Math.max(MAX_SUBSTEP, _mobile.getMaxStep() / speed) : MAX_SUBSTEP;
+  }
+
   /**
    * Executes a substep of the specified duration.
    *
@@ -117,6 +155,99 @@ public class MobileAdvancer extends ActorAdvancer
     _mobile.getTranslation().set(_otrans);
   }
 
+  /**
+   * Attempts to advance the mobile through the entire step at once by sweeping its shape along
+   * its (straight) path, stopping at the first contact and sliding along the contact surface
+   * for the remainder.  This requires a handful of environment queries where substepping would
+   * require two per substep.
+   *
+   * @return true if the step was taken, false if the mobile should be advanced by substeps
+   * (because its path isn't straight, crosses direction flags, or starts in contact).  The
+   * mobile is only modified if the step is taken.
+   */
+  protected boolean sweepStep (float elapsed, float maxSubstep)
+  {
+    if (!_mobile.isSet(Mobile.MOVING) || _mobile.getTurnDirection() != 0) {
+      return false;
+    }
+    // make sure the path doesn't cross anything that would alter the step
+    updateShape();
+    float direction = _mobile.getDirection(), length = _mobile.getSpeed() * elapsed;
+    _delta.set(length * FloatMath.cos(direction), length * FloatMath.sin(direction));
+    _swept = _shape.sweep(_delta, _swept);
+    if (_environment.getDirections(_mobile, _swept) != 0) {
+      return false;
+    }
+    // likewise make sure it doesn't start in contact (the shortest sweep we'd bisect to)
+    _swept = _shape.sweep(_delta.mult(1f / (1 << TOI_ITERATIONS), _step), _swept);
+    if (_environment.collides(_mobile, _swept)) {
+      return false;
+    }
+
+    // take the step, limiting it to the distance that the substeps would allow
+    _otrans.set(_mobile.getTranslation());
+    mobileStep(elapsed, _timestamp);
+    Vector2f translation = _mobile.getTranslation();
+    if (translation.equals(_otrans)) {
+      return true;
+    }
+    translation.subtract(_otrans, _delta);
+    float maxStep = _mobile.getMaxStep() * FloatMath.ceil(elapsed / maxSubstep);
+    if (_delta.lengthSquared() > maxStep * maxStep) {
+      _delta.normalizeLocal().multLocal(maxStep);
+    }
+    _mobile.setDirty(true);
+
+    // if the path is clear, we're done
+    _swept = _shape.sweep(_delta, _swept);
+    if (!_environment.collides(_mobile, _swept)) {
+      _otrans.add(_delta, translation);
+      updateShape();
+      return true;
+    }
+
+    // find the time of impact by bisection, keeping the last clear fraction
+    float lower = 0f, upper = 1f;
+    for (int ii = 0; ii < TOI_ITERATIONS; ii++) {
+      float mid = (lower + upper) * 0.5f;
+      _swept = _shape.sweep(_delta.mult(mid, _step), _swept);
+      if (_environment.collides(_mobile, _swept)) {
+        upper = mid;
+      } else {
+        lower = mid;
+      }
+    }
+    // (if the step was limited, the contact may be closer than we checked above, in which
+    // case we stay where we are and just slide)
+
+    // find the contact normal from the penetration just past the point of impact
+    _otrans.addScaled(_delta, upper, translation);
+    updateShape();
+    _otrans.addScaled(_delta, lower, translation);
+    if (!_environment.getPenetration(_mobile, _shape, _penetration) ||
+        _penetration.lengthSquared() == 0f) {
+      updateShape();
+      return true;
+    }
+    _penetration.normalizeLocal();
+
+    // slide along the contact surface for the remainder of the step, if the way is clear
+    _delta.mult(1f - lower, _step);
+    float dot = _step.dot(_penetration);
+    if (dot < 0f) {
+      _step.addScaledLocal(_penetration, -dot);
+    }
+    updateShape();
+    if (_step.lengthSquared() > 0f) {
+      _swept = _shape.sweep(_step, _swept);
+      if (!_environment.collides(_mobile, _swept)) {
+        translation.addLocal(_step);
+        updateShape();
+      }
+    }
+    return true;
+  }
+
   /**
    * Executes a step on the mobile.
    */
@@ -134,6 +265,21 @@ public class MobileAdvancer extends ActorAdvancer
   /** Used to store the mobile's original translation. */
   protected Vector2f _otrans = new Vector2f();
 
+  /** Holds the translation of a swept step. */
+  protected Vector2f _delta = new Vector2f();
+
+  /** Holds a partial or sliding step. */
+  protected Vector2f _step = new Vector2f();
+
+  /** Holds the swept shape (also available to subclasses as scratch). */
+  protected Shape _swept;
+
+  /** Set while we're catching up after a period of reduced-rate advancement. */
+  protected boolean _catchingUp;
+
   /** The length, in seconds, of the longest substep we're willing to take. */
-  protected static final float MAX_SUBSTEP = 1f / 60f;
+  public static final float MAX_SUBSTEP = 1f / 60f;
+
+  /** The number of bisection iterations used to find the time of impact. */
+  protected static final int TOI_ITERATIONS = 6;
 }
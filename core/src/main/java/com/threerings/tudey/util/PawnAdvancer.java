@@ -29,7 +29,6 @@ import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.Mobile;
 import com.threerings.tudey.data.actor.Pawn;
 import com.threerings.tudey.data.InputFrame;
-import com.threerings.tudey.shape.Shape;
 
 /**
  * Used on the client and the server to advance the state of a pawn based on its inputs and
@@ -107,7 +106,4 @@ public class PawnAdvancer extends ActiveAdvancer
 
   /** The most current input frame. */
   protected InputFrame _frame;
-
-  /** Holds the actor's swept shape. */
-  protected Shape _swept;
 }
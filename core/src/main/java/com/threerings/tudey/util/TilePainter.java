@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.Map;
 
 import com.samskivert.util.IntTuple;
+import com.samskivert.util.Randoms;
 
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
@@ -53,10 +54,21 @@ public class TilePainter
    * Creates a new tile painter.
    */
   public TilePainter (ConfigManager cfgmgr, TudeySceneModel scene, EntryManipulator manipulator)
+  {
+    this(cfgmgr, scene, manipulator, null);
+  }
+
+  /**
+   * Creates a new tile painter that picks tiles using the supplied generator (for instance,
+   * that of a scene whose painting must be reproducible), or a thread-local one if null.
+   */
+  public TilePainter (
+    ConfigManager cfgmgr, TudeySceneModel scene, EntryManipulator manipulator, Randoms randoms)
   {
     _cfgmgr = cfgmgr;
     _scene = scene;
     _manipulator = manipulator;
+    _randoms = randoms;
   }
 
   /**
@@ -217,12 +229,12 @@ public class TilePainter
       while (!set.isEmpty()) {
         set.getLargestRegion(region);
         TileEntry tentry = original.createWall(
-          _cfgmgr, tuple, region.width, region.height, elevation);
+          _cfgmgr, tuple, region.width, region.height, elevation, getRandoms());
         if (tentry == null) {
           continue OUTER; // no appropriate tiles
         }
         Coord coord = tentry.getLocation();
-        set.pickRandom(region.width, region.height, coord);
+        set.pickRandom(region.width, region.height, coord, getRandoms());
         TileConfig.Original tconfig = tentry.getConfig(_cfgmgr);
         int twidth = tentry.getWidth(tconfig);
         int theight = tentry.getHeight(tconfig);
@@ -253,12 +265,12 @@ public class TilePainter
     while (!coords.isEmpty()) {
       coords.getLargestRegion(region);
       TileEntry entry = original.createFloor(
-        _cfgmgr, region.width, region.height, elevation);
+        _cfgmgr, region.width, region.height, elevation, getRandoms());
       if (entry == null) {
         break; // no appropriate tiles
       }
       Coord coord = entry.getLocation();
-      coords.pickRandom(region.width, region.height, coord);
+      coords.pickRandom(region.width, region.height, coord, getRandoms());
       TileConfig.Original tconfig = entry.getConfig(_cfgmgr);
       int twidth = entry.getWidth(tconfig);
       int theight = entry.getHeight(tconfig);
@@ -322,12 +334,12 @@ public class TilePainter
       while (!set.isEmpty()) {
         set.getLargestRegion(region);
         TileEntry tentry = original.createEdge(
-          _cfgmgr, tuple, region.width, region.height, elevation);
+          _cfgmgr, tuple, region.width, region.height, elevation, getRandoms());
         if (tentry == null) {
           continue OUTER; // no appropriate tiles
         }
         Coord coord = tentry.getLocation();
-        set.pickRandom(region.width, region.height, coord);
+        set.pickRandom(region.width, region.height, coord, getRandoms());
         TileConfig.Original tconfig = tentry.getConfig(_cfgmgr);
         int twidth = tentry.getWidth(tconfig);
         int theight = tentry.getHeight(tconfig);
@@ -379,6 +391,14 @@ public class TilePainter
     _manipulator.removeEntries(list);
   }
 
+  /**
+   * Returns the generator to use when picking tiles.
+   */
+  protected Randoms getRandoms ()
+  {
+    return (_randoms == null) ? Randoms.threadLocal() : _randoms;
+  }
+
   /** The config manager used to resolve configuration references. */
   protected ConfigManager _cfgmgr;
 
@@ -387,4 +407,7 @@ public class TilePainter
 
   /** The object used to modify the entries. */
   protected EntryManipulator _manipulator;
+
+  /** The generator used to pick tiles, or null to use a thread-local one. */
+  protected Randoms _randoms;
 }
@@ -0,0 +1,495 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.samskivert.util.HashIntMap;
+
+/**
+ * An immutable map from ints to values, stored as a hash array mapped trie keyed directly on the
+ * bits of the key.  Modifications return new maps that share all unmodified branches with the
+ * original, so keeping many versions is cheap and two versions can be compared in time
+ * proportional to the number of branches that differ.
+ */
+public final class PersistentIntMap<V>
+{
+  /**
+   * Receives the differences between two maps.
+   */
+  public interface DiffVisitor<V>
+  {
+    /**
+     * Notes an entry present only in the new map.
+     */
+    public void entryAdded (int key, V value);
+
+    /**
+     * Notes an entry whose value differs (by identity) between the maps.
+     */
+    public void entryChanged (int key, V ovalue, V nvalue);
+
+    /**
+     * Notes an entry present only in the old map.
+     */
+    public void entryRemoved (int key, V value);
+  }
+
+  /**
+   * Returns the empty map.
+   */
+  @SuppressWarnings("unchecked")
+  public static <V> PersistentIntMap<V> empty ()
+  {
+    return (PersistentIntMap<V>)EMPTY;
+  }
+
+  /**
+   * Returns the number of entries in the map.
+   */
+  public int size ()
+  {
+    return _size;
+  }
+
+  /**
+   * Checks whether the map is empty.
+   */
+  public boolean isEmpty ()
+  {
+    return _size == 0;
+  }
+
+  /**
+   * Checks whether the map contains an entry for the specified key.
+   */
+  public boolean containsKey (int key)
+  {
+    return getEntry(key) != null;
+  }
+
+  /**
+   * Returns the value mapped to the specified key, or <code>null</code> for none.
+   */
+  public V get (int key)
+  {
+    Entry<V> entry = getEntry(key);
+    return (entry == null) ? null : entry.value;
+  }
+
+  /**
+   * Returns a map with the specified key mapped to the specified value.  If the mapping already
+   * exists, this map is returned.
+   */
+  public PersistentIntMap<V> put (int key, V value)
+  {
+    Entry<V> oentry = getEntry(key);
+    if (oentry != null && oentry.value == value) {
+      return this;
+    }
+    return new PersistentIntMap<V>(
+      put(_root, 0, new Entry<V>(key, value)), (oentry == null) ? _size + 1 : _size);
+  }
+
+  /**
+   * Returns a map without a mapping for the specified key.  If there is no such mapping, this
+   * map is returned.
+   */
+  public PersistentIntMap<V> remove (int key)
+  {
+    return (getEntry(key) == null) ?
+      this : new PersistentIntMap<V>(remove(_root, 0, key), _size - 1);
+  }
+
+  /**
+   * Returns an iterable over the values in the map (in no particular order).
+   */
+  public Iterable<V> values ()
+  {
+    return new Iterable<V>() {
+      public Iterator<V> iterator () {
+        return new ValueIterator<V>(_root);
+      }
+    };
+  }
+
+  /**
+   * Copies the contents of this map into a new mutable map.
+   */
+  public HashIntMap<V> toHashIntMap ()
+  {
+    HashIntMap<V> map = new HashIntMap<V>();
+    addAll(_root, map);
+    return map;
+  }
+
+  /**
+   * Reports the differences between this (old) map and the specified new map to the supplied
+   * visitor.  Branches shared between the two are skipped without being examined.
+   */
+  public void diff (PersistentIntMap<V> nmap, DiffVisitor<V> visitor)
+  {
+    diff(_root, nmap._root, 0, visitor);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return toHashIntMap().toString();
+  }
+
+  /**
+   * A node in the trie.
+   */
+  protected static final class Node
+  {
+    /** The bits corresponding to the indices of the children present. */
+    public final int bitmap;
+
+    /** The children (each either an {@link Entry} or a {@link Node}), in index order. */
+    public final Object[] children;
+
+    public Node (int bitmap, Object[] children)
+    {
+      this.bitmap = bitmap;
+      this.children = children;
+    }
+
+    /**
+     * Returns the child at the specified index, or <code>null</code> if none.
+     */
+    public Object getChild (int idx)
+    {
+      int bit = 1 << idx;
+      return ((bitmap & bit) == 0) ? null : children[Integer.bitCount(bitmap & (bit - 1))];
+    }
+  }
+
+  /**
+   * A single mapping.
+   */
+  protected static final class Entry<V>
+  {
+    /** The key of the mapping. */
+    public final int key;
+
+    /** The value of the mapping. */
+    public final V value;
+
+    public Entry (int key, V value)
+    {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Iterates over the values in the trie using an explicit stack.
+   */
+  protected static final class ValueIterator<V>
+    implements Iterator<V>
+  {
+    public ValueIterator (Object root)
+    {
+      if (root instanceof Node) {
+        _nodes[0] = (Node)root;
+        _depth = 1;
+      } else {
+        _next = asEntry(root);
+      }
+      advance();
+    }
+
+    // documentation inherited from interface Iterator
+    public boolean hasNext ()
+    {
+      return _next != null;
+    }
+
+    // documentation inherited from interface Iterator
+    public V next ()
+    {
+      if (_next == null) {
+        throw new NoSuchElementException();
+      }
+      V value = _next.value;
+      _next = null;
+      advance();
+      return value;
+    }
+
+    // documentation inherited from interface Iterator
+    public void remove ()
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Finds the next entry, if we don't already have one.
+     */
+    protected void advance ()
+    {
+      while (_next == null && _depth > 0) {
+        Node node = _nodes[_depth - 1];
+        int idx = _indices[_depth - 1];
+        if (idx == node.children.length) {
+          _indices[--_depth] = 0;
+          continue;
+        }
+        _indices[_depth - 1]++;
+        Object child = node.children[idx];
+        if (child instanceof Node) {
+          _nodes[_depth++] = (Node)child;
+        } else {
+          _next = asEntry(child);
+        }
+      }
+    }
+
+    /** The stack of nodes being traversed. */
+    protected Node[] _nodes = new Node[MAX_DEPTH];
+
+    /** The index of the next child to visit in each node. */
+    protected int[] _indices = new int[MAX_DEPTH];
+
+    /** The depth of the stack. */
+    protected int _depth;
+
+    /** The next entry to return, if any. */
+    protected Entry<V> _next;
+  }
+
+  /**
+   * Creates a new map.
+   */
+  protected PersistentIntMap (Object root, int size)
+  {
+    _root = root;
+    _size = size;
+  }
+
+  /**
+   * Finds the entry for the specified key.
+   */
+  protected Entry<V> getEntry (int key)
+  {
+    Object node = _root;
+    for (int shift = 0; node instanceof Node; shift += BITS) {
+      node = ((Node)node).getChild((key >>> shift) & MASK);
+    }
+    Entry<V> entry = asEntry(node);
+    return (entry != null && entry.key == key) ? entry : null;
+  }
+
+  /**
+   * Returns a copy of the given (sub)trie with the entry added or replaced.
+   */
+  protected static Object put (Object node, int shift, Entry<?> entry)
+  {
+    if (node == null) {
+      return entry;
+    }
+    if (node instanceof Entry) {
+      Entry<?> oentry = (Entry<?>)node;
+      return (oentry.key == entry.key) ? entry : merge(oentry, entry, shift);
+    }
+    Node onode = (Node)node;
+    int bit = 1 << ((entry.key >>> shift) & MASK);
+    int pos = Integer.bitCount(onode.bitmap & (bit - 1));
+    Object[] ochildren = onode.children;
+    if ((onode.bitmap & bit) == 0) {
+      Object[] children = new Object[ochildren.length + 1];
+      System.arraycopy(ochildren, 0, children, 0, pos);
+      children[pos] = entry;
+      System.arraycopy(ochildren, pos, children, pos + 1, ochildren.length - pos);
+      return new Node(onode.bitmap | bit, children);
+    }
+    Object[] children = ochildren.clone();
+    children[pos] = put(ochildren[pos], shift + BITS, entry);
+    return new Node(onode.bitmap, children);
+  }
+
+  /**
+   * Creates a (sub)trie containing the two entries, whose keys must differ.
+   */
+  protected static Object merge (Entry<?> e1, Entry<?> e2, int shift)
+  {
+    int idx1 = (e1.key >>> shift) & MASK, idx2 = (e2.key >>> shift) & MASK;
+    if (idx1 == idx2) {
+      return new Node(1 << idx1, new Object[] { merge(e1, e2, shift + BITS) });
+    }
+    return new Node((1 << idx1) | (1 << idx2),
+      (idx1 < idx2) ? new Object[] { e1, e2 } : new Object[] { e2, e1 });
+  }
+
+  /**
+   * Returns a copy of the given (sub)trie with the entry for the key (which must be present)
+   * removed.  Nodes left with a single entry are collapsed into that entry.
+   */
+  protected static Object remove (Object node, int shift, int key)
+  {
+    if (node instanceof Entry) {
+      return null;
+    }
+    Node onode = (Node)node;
+    int bit = 1 << ((key >>> shift) & MASK);
+    int pos = Integer.bitCount(onode.bitmap & (bit - 1));
+    Object[] ochildren = onode.children;
+    Object child = remove(ochildren[pos], shift + BITS, key);
+    if (child == null) {
+      if (ochildren.length == 1) {
+        return null;
+      }
+      if (ochildren.length == 2 && ochildren[1 - pos] instanceof Entry) {
+        return ochildren[1 - pos];
+      }
+      Object[] children = new Object[ochildren.length - 1];
+      System.arraycopy(ochildren, 0, children, 0, pos);
+      System.arraycopy(ochildren, pos + 1, children, pos, children.length - pos);
+      return new Node(onode.bitmap & ~bit, children);
+    }
+    if (ochildren.length == 1 && child instanceof Entry) {
+      return child;
+    }
+    Object[] children = ochildren.clone();
+    children[pos] = child;
+    return new Node(onode.bitmap, children);
+  }
+
+  /**
+   * Reports the differences between two (sub)tries.
+   */
+  protected static <V> void diff (Object onode, Object nnode, int shift, DiffVisitor<V> visitor)
+  {
+    if (onode == nnode) {
+      return; // shared
+    }
+    if (onode == null) {
+      visitAll(nnode, visitor, true);
+
+    } else if (nnode == null) {
+      visitAll(onode, visitor, false);
+
+    } else if (onode instanceof Entry && nnode instanceof Entry) {
+      Entry<V> oentry = asEntry(onode), nentry = asEntry(nnode);
+      if (oentry.key != nentry.key) {
+        visitor.entryRemoved(oentry.key, oentry.value);
+        visitor.entryAdded(nentry.key, nentry.value);
+      } else if (oentry.value != nentry.value) {
+        visitor.entryChanged(oentry.key, oentry.value, nentry.value);
+      }
+    } else {
+      // treat an entry opposite a node as a node containing just the entry
+      int obitmap = getBitmap(onode, shift), nbitmap = getBitmap(nnode, shift);
+      for (int bits = obitmap | nbitmap; bits != 0; bits &= (bits - 1)) {
+        int idx = Integer.numberOfTrailingZeros(bits);
+        diff(getChild(onode, shift, idx), getChild(nnode, shift, idx), shift + BITS, visitor);
+      }
+    }
+  }
+
+  /**
+   * Returns the bitmap of the given node or entry at the specified level.
+   */
+  protected static int getBitmap (Object node, int shift)
+  {
+    return (node instanceof Node) ?
+      ((Node)node).bitmap : (1 << ((((Entry<?>)node).key >>> shift) & MASK));
+  }
+
+  /**
+   * Returns the child of the given node or entry at the specified level and index.
+   */
+  protected static Object getChild (Object node, int shift, int idx)
+  {
+    if (node instanceof Node) {
+      return ((Node)node).getChild(idx);
+    }
+    return (((((Entry<?>)node).key >>> shift) & MASK) == idx) ? node : null;
+  }
+
+  /**
+   * Reports all entries in a (sub)trie as added or removed.
+   */
+  protected static <V> void visitAll (Object node, DiffVisitor<V> visitor, boolean added)
+  {
+    if (node instanceof Node) {
+      for (Object child : ((Node)node).children) {
+        visitAll(child, visitor, added);
+      }
+    } else {
+      Entry<V> entry = asEntry(node);
+      if (added) {
+        visitor.entryAdded(entry.key, entry.value);
+      } else {
+        visitor.entryRemoved(entry.key, entry.value);
+      }
+    }
+  }
+
+  /**
+   * Adds all entries in a (sub)trie to the supplied map.
+   */
+  protected static <V> void addAll (Object node, HashIntMap<V> map)
+  {
+    if (node instanceof Node) {
+      for (Object child : ((Node)node).children) {
+        addAll(child, map);
+      }
+    } else if (node != null) {
+      Entry<V> entry = asEntry(node);
+      map.put(entry.key, entry.value);
+    }
+  }
+
+  /**
+   * Casts the given object (which must be an entry or <code>null</code>) to an entry.
+   */
+  @SuppressWarnings("unchecked")
+  protected static <V> Entry<V> asEntry (Object node)
+  {
+    return (Entry<V>)node;
+  }
+
+  /** The root of the trie: <code>null</code>, an {@link Entry}, or a {@link Node}. */
+  protected final Object _root;
+
+  /** The number of entries in the map. */
+  protected final int _size;
+
+  /** The number of key bits consumed at each level. */
+  protected static final int BITS = 5;
+
+  /** The mask for the key bits at each level. */
+  protected static final int MASK = (1 << BITS) - 1;
+
+  /** The maximum depth of the trie. */
+  protected static final int MAX_DEPTH = (32 + BITS - 1) / BITS;
+
+  /** The empty map. */
+  protected static final PersistentIntMap<Object> EMPTY = new PersistentIntMap<Object>(null, 0);
+}
@@ -0,0 +1,155 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the streaming XML exporter against the DOM-based one and reads the results back in.
+ */
+public class XMLStreamingTest extends TestCase
+{
+  /** A simple exportable object graph node. */
+  public static class Node
+    implements Exportable
+  {
+    /** The node's name. */
+    public String name = "";
+
+    /** A numeric value. */
+    public int count;
+
+    /** A reference to another node. */
+    public Node next;
+
+    /** Some child nodes. */
+    public Node[] children;
+
+    /** A list of assorted values. */
+    public List<Object> values = Lists.newArrayList();
+  }
+
+  public XMLStreamingTest (String name)
+  {
+    super(name);
+  }
+
+  public void testMatchesDOMExporter ()
+    throws IOException
+  {
+    Node root = createGraph();
+    ByteArrayOutputStream dom = new ByteArrayOutputStream();
+    XMLExporter xout = new XMLExporter(dom);
+    xout.writeObject(root);
+    xout.close();
+
+    assertTrue(Arrays.equals(dom.toByteArray(), export(root)));
+  }
+
+  public void testRoundTrip ()
+    throws IOException
+  {
+    Node root = createGraph(), other = new Node();
+    other.next = root.next;
+    XMLImporter in = new XMLImporter(new ByteArrayInputStream(export(root, other)));
+    Node nroot = (Node)in.readObject();
+    Node nother = (Node)in.readObject();
+    try {
+      in.readObject();
+      fail();
+    } catch (EOFException e) {
+      // expected
+    }
+    assertEquals("root & \"friends\" <\r\n>", nroot.name);
+    assertEquals(42, nroot.count);
+    assertSame(nroot.next, nroot.children[1]);
+    assertSame(nroot.next, nroot.values.get(0));
+    assertSame(nroot, nroot.children[0].next);
+    assertSame(nroot.next, nother.next);
+    assertNull(nroot.children[2]);
+    assertEquals(Arrays.asList(nroot.next, null, "", 7), nroot.values);
+  }
+
+  public void testOutOfOrderFields ()
+    throws IOException
+  {
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+      "<java class=\"com.threerings.export.XMLImporter\" version=\"1.0\">\n" +
+      "<object class=\"" + Node.class.getName() + "\">\n" +
+      "  <unknown><entry><count>1</count></entry></unknown>\n" +
+      "  <count>3</count>\n" +
+      "  <name>out of order</name>\n" +
+      "</object>\n" +
+      "</java>\n";
+    Node node = (Node)new XMLImporter(new ByteArrayInputStream(xml.getBytes("UTF-8"))).readObject();
+    assertEquals("out of order", node.name);
+    assertEquals(3, node.count);
+  }
+
+  /**
+   * Creates a small graph with shared and circular references.
+   */
+  protected static Node createGraph ()
+  {
+    Node root = new Node(), shared = new Node(), child = new Node();
+    root.name = "root & \"friends\" <\r\n>";
+    root.count = 42;
+    root.next = shared;
+    shared.name = "shared";
+    child.next = root;
+    root.children = new Node[] { child, shared, null };
+    root.values.add(shared);
+    root.values.add(null);
+    root.values.add("");
+    root.values.add(7);
+    return root;
+  }
+
+  /**
+   * Exports the supplied objects with the streaming exporter.
+   */
+  protected static byte[] export (Object... objects)
+    throws IOException
+  {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    StreamingXMLExporter out = new StreamingXMLExporter(bout);
+    for (Object object : objects) {
+      out.writeObject(object);
+    }
+    out.close();
+    return bout.toByteArray();
+  }
+}
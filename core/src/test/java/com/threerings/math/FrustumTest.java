@@ -0,0 +1,93 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+package com.threerings.math;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.threerings.math.Frustum.IntersectionType;
+
+/**
+ * Tests the {@link Frustum} intersection tests.
+ */
+public class FrustumTest extends TestCase
+{
+  public FrustumTest (String name)
+  {
+    super(name);
+  }
+
+  public void testBatchMatchesSingle ()
+  {
+    // use a fixed seed so that our results are reproducible
+    Random random = new Random(1199325877849L);
+    Frustum local = new Frustum(), frustum = new Frustum();
+    EnumSet<IntersectionType> seen = EnumSet.noneOf(IntersectionType.class);
+    for (int ii = 0; ii < 50; ii++) {
+      if (random.nextBoolean()) {
+        local.setToPerspective(0.5f + random.nextFloat(), 0.5f + random.nextFloat() * 1.5f,
+          0.1f + random.nextFloat(), 20f + random.nextFloat() * 100f);
+      } else {
+        local.setToOrtho(-10f, 10f, -5f, 5f, 0.5f, 50f + random.nextFloat() * 50f);
+      }
+      local.transform(new Transform3D(randomVector(random, 20f), new Quaternion().fromAngles(
+        random.nextFloat() * FloatMath.TWO_PI, random.nextFloat() * FloatMath.TWO_PI,
+        random.nextFloat() * FloatMath.TWO_PI)), frustum);
+
+      // vary the batch size so that the scratch flags are both grown and reused
+      int count = 1 + random.nextInt(500);
+      BoxArray boxes = new BoxArray();
+      Box[] single = new Box[count];
+      for (int jj = 0; jj < count; jj++) {
+        Vector3f min = randomVector(random, 80f);
+        float size = (jj % 10 == 0) ? 200f : random.nextFloat() * 10f;
+        Vector3f max = new Vector3f(min.x + random.nextFloat() * size,
+          min.y + random.nextFloat() * size, min.z + random.nextFloat() * size);
+        boxes.add(single[jj] = new Box(min, max));
+      }
+      IntersectionType[] results = new IntersectionType[count];
+      frustum.getIntersectionTypes(boxes, results);
+      for (int jj = 0; jj < count; jj++) {
+        IntersectionType expected = frustum.getIntersectionType(single[jj]);
+        assertEquals("box " + single[jj], expected, results[jj]);
+        seen.add(expected);
+      }
+    }
+
+    // make sure that we exercised every outcome
+    assertEquals(EnumSet.allOf(IntersectionType.class), seen);
+  }
+
+  /**
+   * Returns a vector with components in [-range, +range).
+   */
+  protected static Vector3f randomVector (Random random, float range)
+  {
+    return new Vector3f((random.nextFloat() * 2f - 1f) * range,
+      (random.nextFloat() * 2f - 1f) * range, (random.nextFloat() * 2f - 1f) * range);
+  }
+}
@@ -0,0 +1,143 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.compositor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.threerings.opengl.compositor.config.RenderQueueConfig.SortMode;
+import com.threerings.opengl.renderer.Batch;
+import com.threerings.opengl.renderer.Renderer;
+
+/**
+ * Tests the {@link BatchSorter}.
+ */
+public class BatchSorterTest extends TestCase
+{
+  public BatchSorterTest (String name)
+  {
+    super(name);
+  }
+
+  /**
+   * Makes sure that sorting by state orders the batches exactly as the comparator does.
+   */
+  public void testByState ()
+  {
+    // use a fixed seed so that our results are reproducible
+    Random random = new Random(1199325877849L);
+    BatchSorter sorter = new BatchSorter();
+    for (int ii = 0; ii < 20; ii++) {
+      List<Batch> batches = new ArrayList<Batch>();
+      for (int jj = 0, nn = random.nextInt(500); jj < nn; jj++) {
+        TestBatch batch = new TestBatch();
+        int textures = random.nextInt(3);
+        batch.key = new int[4 + textures];
+        batch.key[0] = random.nextInt(4);
+        batch.key[1] = random.nextInt(4) * 10000;
+        for (int kk = 0; kk < textures; kk++) {
+          batch.key[2 + kk] = random.nextInt(70000);
+        }
+        batch.key[2 + textures] = -1;
+        batch.key[3 + textures] = random.nextInt(3);
+
+        // use coarse depths so that the quantized depth doesn't lose any order
+        batch.depth = -random.nextInt(100);
+        batches.add(batch);
+      }
+      List<Batch> expected = new ArrayList<Batch>(batches);
+      SortMode.BY_STATE.sort(expected);
+      sorter.sort(batches, SortMode.BY_STATE);
+      for (int jj = 0, nn = batches.size(); jj < nn; jj++) {
+        Batch b1 = expected.get(jj), b2 = batches.get(jj);
+        assertEquals(0, Batch.compareKeys(b1.key, b2.key));
+        assertEquals(b1.depth, b2.depth);
+      }
+    }
+  }
+
+  /**
+   * Makes sure that the cached state ranks order as the keys do and are recomputed when the
+   * keys or the ranks change.
+   */
+  public void testStateRanks ()
+  {
+    TestBatch b1 = createBatch(1, 2), b2 = createBatch(1, 3);
+    b2.getStateRank();
+    int r1 = b1.getStateRank(); // shifts the rank of b2
+    assertTrue(r1 < b2.getStateRank());
+
+    // known keys (including those differing only in trailing zeros) don't change the ranks
+    int version = Batch.getStateVersion();
+    assertEquals(r1, b1.getStateRank());
+    assertEquals(r1, Batch.getStateRank(new int[] { 1, 2, 0 }));
+    assertEquals(version, Batch.getStateVersion());
+
+    // a new key in between shifts the later rank
+    assertTrue(createBatch(1, 2, 5).getStateRank() < b2.getStateRank());
+
+    // in-place changes are noticed once the rank is invalidated
+    b1.key[1] = 4;
+    b1.invalidateStateRank();
+    assertTrue(b1.getStateRank() > b2.getStateRank());
+
+    // pruning an overgrown table keeps the ranks consistent
+    for (int ii = 0; ii < 5000; ii++) {
+      createBatch(2, ii).getStateRank();
+    }
+    version = Batch.getStateVersion();
+    Batch.pruneStateKeys();
+    assertTrue(version != Batch.getStateVersion());
+    b1.getStateRank();
+    b2.getStateRank();
+    assertTrue(b1.getStateRank() > b2.getStateRank());
+  }
+
+  /**
+   * Creates a test batch with the specified key.
+   */
+  protected static TestBatch createBatch (int... key)
+  {
+    TestBatch batch = new TestBatch();
+    batch.key = key;
+    return batch;
+  }
+
+  /**
+   * A batch that draws nothing.
+   */
+  protected static class TestBatch extends Batch
+  {
+    @Override
+    public boolean draw (Renderer renderer)
+    {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.gui.text;
+
+import junit.framework.TestCase;
+
+import com.threerings.opengl.renderer.Renderer;
+import com.threerings.opengl.renderer.TextureUnit;
+
+/**
+ * Tests the {@link GlyphMesh} builder.
+ */
+public class GlyphMeshTest extends TestCase
+{
+  public GlyphMeshTest (String name)
+  {
+    super(name);
+  }
+
+  public void testBatching ()
+  {
+    TestPage p1 = new TestPage(), p2 = new TestPage();
+    GlyphMesh mesh = new GlyphMesh.Builder()
+      .beginPass(GlyphMesh.EFFECT_COLOR)
+        .addQuad(p1, 0f, 0f, 1f, 1f, 0f, 0f, 0.5f, 0.5f)
+        .addQuad(p2, 1f, 0f, 2f, 1f, 0f, 0f, 0.5f, 0.5f)
+        .addQuad(p1, 2f, 0f, 3f, 1f, 0.5f, 0.5f, 1f, 1f)
+      .beginPass(GlyphMesh.TEXT_COLOR)
+        .addQuad(p2, 0f, 0f, 1f, 1f, 0f, 0f, 1f, 1f)
+      .build();
+
+    // quads are grouped by page within each pass, and passes keep their order
+    assertEquals(3, mesh.getBatchCount());
+    assertEquals(16, mesh.getVertexCount());
+    assertBatch(mesh, 0, GlyphMesh.EFFECT_COLOR, p1, 0, 8);
+    assertBatch(mesh, 1, GlyphMesh.EFFECT_COLOR, p2, 8, 4);
+    assertBatch(mesh, 2, GlyphMesh.TEXT_COLOR, p2, 12, 4);
+
+    // the vertices are interleaved (s, t, x, y) in counter-clockwise order
+    float[] vertices = mesh.getVertices();
+    assertEquals(16 * GlyphMesh.VERTEX_SIZE, vertices.length);
+    float[] expected = {
+      0.5f, 0.5f, 2f, 0f,
+      1f, 0.5f, 3f, 0f,
+      1f, 1f, 3f, 1f,
+      0.5f, 1f, 2f, 1f };
+    for (int ii = 0; ii < expected.length; ii++) {
+      assertEquals(expected[ii], vertices[4 * GlyphMesh.VERTEX_SIZE + ii], 0f);
+    }
+  }
+
+  public void testEmpty ()
+  {
+    GlyphMesh mesh = new GlyphMesh.Builder().beginPass(GlyphMesh.TEXT_COLOR).build();
+    assertEquals(0, mesh.getBatchCount());
+    assertEquals(0, mesh.getVertexCount());
+  }
+
+  protected static void assertBatch (
+    GlyphMesh mesh, int idx, int color, GlyphMesh.Page page, int start, int count)
+  {
+    assertEquals(color, mesh.getBatchColor(idx));
+    assertSame(page, mesh.getBatchPage(idx));
+    assertEquals(start, mesh.getBatchStart(idx));
+    assertEquals(count, mesh.getBatchVertexCount(idx));
+  }
+
+  /**
+   * A page that never touches GL.
+   */
+  protected static class TestPage
+    implements GlyphMesh.Page
+  {
+    // documentation inherited from interface GlyphMesh.Page
+    public TextureUnit[] getUnits (Renderer renderer)
+    {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+package com.threerings.opengl.model.config;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Matrix4f;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+/**
+ * Tests the quantization and keyframe reduction of {@link AnimationClip}.
+ */
+public class AnimationClipTest extends TestCase
+{
+  public AnimationClipTest (String name)
+  {
+    super(name);
+  }
+
+  @Override
+  public void setUp ()
+  {
+    // use a fixed seed so that our results are reproducible
+    Random random = new Random(1199325877849L);
+    _transforms = new Transform3D[FRAMES][TRACKS];
+    Quaternion constant = new Quaternion().fromAngleAxis(0.3f, Vector3f.UNIT_Z);
+    for (int ii = 0; ii < FRAMES; ii++) {
+      Transform3D[] frame = _transforms[ii];
+      frame[0] = new Transform3D();
+      frame[1] = new Transform3D(new Vector3f(1f, 2f, 3f), constant);
+
+      // steady motion, which reduces to a few keys
+      frame[2] = new Transform3D(new Vector3f(ii * 0.05f, 1f, -ii * 0.02f),
+        new Quaternion().fromAngleAxis(ii * 0.03f, Vector3f.UNIT_Y));
+
+      // jittery motion and scale, which doesn't reduce
+      frame[3] = new Transform3D(
+        new Vector3f(random.nextFloat() * 4f, random.nextFloat(), -random.nextFloat() * 2f),
+        new Quaternion().fromAngleAxis(random.nextFloat() * FloatMath.TWO_PI, Vector3f.UNIT_X),
+        0.5f + random.nextFloat());
+
+      // a shear, stored as raw matrices
+      float s = FloatMath.sin(ii * 0.2f);
+      frame[4] = new Transform3D(new Matrix4f(
+        1f, s, 0f, 0f,
+        0f, 1f, 0f, 0f,
+        0.5f * s, 0f, 1f, 0f,
+        s, 2f, 0f, 1f), true);
+    }
+  }
+
+  public void testRoundTrip ()
+  {
+    AnimationClip clip = new AnimationClip(_transforms);
+    AnimationClip unreduced = new AnimationClip(_transforms, false);
+    assertEquals(FRAMES, clip.getFrameCount());
+    assertEquals(TRACKS, clip.getTrackCount());
+
+    // the constant tracks have a single key, and the steady one a small fraction of its frames
+    assertEquals(2 + 3*FRAMES, unreduced.getKeyCount());
+    assertTrue(clip.getKeyCount() - (2 + 2*FRAMES) <= FRAMES/8);
+
+    Transform3D[][] decoded = clip.decode();
+    for (int ii = 0; ii < FRAMES; ii++) {
+      for (int jj = 0; jj < TRACKS; jj++) {
+        assertClose(_transforms[ii][jj], decoded[ii][jj]);
+      }
+    }
+  }
+
+  public void testWrapAround ()
+  {
+    AnimationClip clip = new AnimationClip(_transforms);
+    for (int jj = 0; jj < TRACKS; jj++) {
+      assertClose(midpoint(_transforms[FRAMES - 1][jj], _transforms[0][jj]),
+        clip.sample(jj, FRAMES - 1, 0.5f, new Transform3D()));
+    }
+  }
+
+  public void testReverse ()
+  {
+    AnimationClip clip = new AnimationClip(_transforms);
+    AnimationClip reversed = clip.reverse();
+    assertEquals(clip.getKeyCount(), reversed.getKeyCount());
+    for (int ii = 0; ii < FRAMES; ii++) {
+      for (int jj = 0; jj < TRACKS; jj++) {
+        assertClose(_transforms[FRAMES - 1 - ii][jj],
+          reversed.sample(jj, ii, 0f, new Transform3D()));
+
+        // between frames, we should get the same result as going forwards
+        if (ii < FRAMES - 1) {
+          assertClose(clip.sample(jj, FRAMES - 2 - ii, 0.5f, new Transform3D()),
+            reversed.sample(jj, ii, 0.5f, new Transform3D()));
+        }
+      }
+    }
+
+    // the reversed clip wraps around from the original's first frame to its last
+    for (int jj = 0; jj < TRACKS; jj++) {
+      assertClose(midpoint(_transforms[0][jj], _transforms[FRAMES - 1][jj]),
+        reversed.sample(jj, FRAMES - 1, 0.5f, new Transform3D()));
+    }
+  }
+
+  /**
+   * Returns the transform halfway between the two provided, interpolated as the clip does.
+   */
+  protected static Transform3D midpoint (Transform3D t1, Transform3D t2)
+  {
+    if (t1.getType() < Transform3D.AFFINE) {
+      return t1.lerp(t2, 0.5f); // slerp matches normalized lerp at the midpoint
+    }
+    return new Transform3D(t1.getMatrix().lerp(t2.getMatrix(), 0.5f), true);
+  }
+
+  /**
+   * Verifies that two transforms are equivalent within the tolerance of the packing.
+   */
+  protected static void assertClose (Transform3D expected, Transform3D actual)
+  {
+    Matrix4f m1 = new Transform3D(expected).promote(Transform3D.GENERAL).getMatrix();
+    Matrix4f m2 = new Transform3D(actual).promote(Transform3D.GENERAL).getMatrix();
+    assertTrue(expected + " != " + actual, m1.epsilonEquals(m2, TOLERANCE));
+  }
+
+  /** The transforms from which we create the clips. */
+  protected Transform3D[][] _transforms;
+
+  /** The number of frames in the test clip. */
+  protected static final int FRAMES = 200;
+
+  /** The number of tracks in the test clip. */
+  protected static final int TRACKS = 5;
+
+  /** The tolerance for matrix elements. */
+  protected static final float TOLERANCE = 0.002f;
+}
@@ -0,0 +1,195 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.logic;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.config.ArgumentMap;
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ConfigReference;
+import com.threerings.config.ManagedConfig;
+import com.threerings.expr.Scope;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.data.actor.Mobile;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.MobileBatch;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the registration of mobile logics for ticking.
+ */
+public class MobileLogicTest extends TestCase
+{
+  public MobileLogicTest (String name)
+  {
+    super(name);
+  }
+
+  @Override
+  protected void setUp ()
+  {
+    _config = new ActorConfig.Mobile();
+    _scenemgr = new TestSceneManager();
+  }
+
+  /**
+   * Makes sure that a batchable mobile woken from stasis is removed from the batch when
+   * destroyed.
+   */
+  public void testWakeAndDestroyBatched ()
+  {
+    _config.startInStasis = true;
+    _config.stasisInterval = 0;
+    _config.unseenTickInterval = 0;
+
+    MobileLogic logic = createLogic();
+    assertEquals(0, _scenemgr.getMobileBatch().size());
+    assertFalse(_scenemgr.participants.contains(logic));
+
+    logic.getSnapshot();
+    assertEquals(1, _scenemgr.getMobileBatch().size());
+    assertFalse(_scenemgr.participants.contains(logic));
+
+    logic.wasDestroyed();
+    assertEquals(0, _scenemgr.getMobileBatch().size());
+    assertFalse(_scenemgr.participants.contains(logic));
+  }
+
+  /**
+   * Makes sure that a mobile that can't be batched is woken from stasis and destroyed as a tick
+   * participant.
+   */
+  public void testWakeAndDestroyUnbatched ()
+  {
+    _config.startInStasis = true;
+    _config.stasisInterval = 5000;
+
+    MobileLogic logic = createLogic();
+    assertFalse(_scenemgr.participants.contains(logic));
+
+    logic.getSnapshot();
+    assertTrue(_scenemgr.participants.contains(logic));
+    assertEquals(0, _scenemgr.getMobileBatch().size());
+
+    logic.wasDestroyed();
+    assertFalse(_scenemgr.participants.contains(logic));
+    assertEquals(0, _scenemgr.getMobileBatch().size());
+  }
+
+  /**
+   * Creates and initializes a logic for a mobile using the test config.
+   */
+  protected MobileLogic createLogic ()
+  {
+    ActorConfig config = new ActorConfig();
+    config.implementation = _config;
+    Mobile mobile = new Mobile(
+      new ConfigReference<ActorConfig>("Test"), 1, 0, new Vector2f(), 0f);
+    mobile.init(new TestConfigManager(config));
+
+    MobileLogic logic = new MobileLogic();
+    logic.init(_scenemgr);
+    logic._config = _config;
+    logic._actor = mobile;
+    logic.didInit();
+    return logic;
+  }
+
+  /**
+   * A scene manager that records its tick participants without requiring a running scene.
+   */
+  protected static class TestSceneManager extends TudeySceneManager
+  {
+    /** The registered tick participants. */
+    public List<TickParticipant> participants = Lists.newArrayList();
+
+    @Override
+    public void addTickParticipant (TickParticipant participant)
+    {
+      participants.add(participant);
+    }
+
+    @Override
+    public void removeTickParticipant (TickParticipant participant)
+    {
+      participants.remove(participant);
+    }
+
+    @Override
+    public MobileBatch getMobileBatch ()
+    {
+      if (_batch == null) {
+        _batch = new MobileBatch(this);
+      }
+      return _batch;
+    }
+
+    @Override
+    public TudeySceneModel getSceneModel ()
+    {
+      return _model;
+    }
+
+    /** The mobile batch. */
+    protected MobileBatch _batch;
+
+    /** An empty scene model. */
+    protected TudeySceneModel _model = new TudeySceneModel();
+  }
+
+  /**
+   * A config manager that returns the same actor config for every request.
+   */
+  protected static class TestConfigManager extends ConfigManager
+  {
+    public TestConfigManager (ActorConfig config)
+    {
+      _config = config;
+    }
+
+    @Override
+    public <T extends ManagedConfig> T getConfig (
+      Class<T> clazz, String name, Scope scope, ArgumentMap args)
+    {
+      return (clazz == ActorConfig.class) ? clazz.cast(_config) : null;
+    }
+
+    /** The config to return. */
+    protected ActorConfig _config;
+  }
+
+  /** The mobile config under test. */
+  protected ActorConfig.Mobile _config;
+
+  /** The scene manager. */
+  protected TestSceneManager _scenemgr;
+}
@@ -0,0 +1,155 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.server.logic.Logic;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the logic index's queries against exhaustive searches.
+ */
+public class LogicIndexTest extends TestCase
+{
+  public LogicIndexTest (String name)
+  {
+    super(name);
+  }
+
+  @Override
+  protected void setUp ()
+  {
+    Random random = new Random(1L);
+    for (int ii = 0; ii < 200; ii++) {
+      _logics.add(new PointLogic(random.nextFloat() * 100f - 50f, random.nextFloat() * 60f));
+    }
+    _index = new LogicIndex(_logics, 1);
+  }
+
+  public void testNearest ()
+  {
+    Random random = new Random(2L);
+    List<Logic> expected = Lists.newArrayList(), actual = Lists.newArrayList();
+    for (int ii = 0; ii < 100; ii++) {
+      // include references outside the bounds of the grid
+      Vector2f ref = new Vector2f(random.nextFloat() * 160f - 80f, random.nextFloat() * 120f - 30f);
+      int count = 1 + random.nextInt(20);
+      LogicIndex.select(_logics, ref, count, false, expected);
+      _index.getNearest(ref, count, actual);
+      assertEquals(expected, actual);
+      expected.clear();
+      actual.clear();
+    }
+
+    // asking for more than there are returns them all
+    _index.getNearest(Vector2f.ZERO, 1000, actual);
+    assertEquals(_logics.size(), actual.size());
+  }
+
+  public void testWithin ()
+  {
+    Random random = new Random(3L);
+    List<Logic> expected = Lists.newArrayList(), actual = Lists.newArrayList();
+    for (int ii = 0; ii < 100; ii++) {
+      Vector2f ref = new Vector2f(random.nextFloat() * 160f - 80f, random.nextFloat() * 120f - 30f);
+      float radius = random.nextFloat() * 40f;
+      for (Logic logic : _logics) {
+        if (logic.getTranslation().distanceSquared(ref) <= radius * radius) {
+          expected.add(logic);
+        }
+      }
+      _index.getWithin(ref, radius, actual);
+      assertEquals(expected, actual);
+      expected.clear();
+      actual.clear();
+    }
+  }
+
+  public void testMemo ()
+  {
+    Vector2f ref = new Vector2f(10f, 20f);
+    List<Logic> first = Lists.newArrayList(), second = Lists.newArrayList();
+
+    // unshared queries are not memoized
+    _index.getNearest(ref, 5, first);
+    assertEquals(0, _index.getMemoSize());
+
+    // identical shared queries share a single result
+    _index.getSharedNearest(ref, 5, second);
+    assertEquals(first, second);
+    assertEquals(1, _index.getMemoSize());
+    second.clear();
+    _index.getSharedNearest(new Vector2f(ref), 5, second);
+    assertEquals(first, second);
+    assertEquals(1, _index.getMemoSize());
+
+    // different counts and references do not
+    _index.getSharedNearest(ref, 6, second);
+    _index.getSharedNearest(new Vector2f(-10f, 20f), 5, second);
+    assertEquals(3, _index.getMemoSize());
+
+    // rebuilding invalidates the memo
+    _logics.get(0).getTranslation().set(ref);
+    _index.rebuild(_logics, 2);
+    assertEquals(0, _index.getMemoSize());
+    second.clear();
+    _index.getSharedNearest(ref, 1, second);
+    assertSame(_logics.get(0), second.get(0));
+  }
+
+  /**
+   * A logic at a fixed location.
+   */
+  protected static class PointLogic extends Logic
+  {
+    public PointLogic (float x, float y)
+    {
+      _translation.set(x, y);
+    }
+
+    @Override
+    public Vector2f getTranslation ()
+    {
+      return _translation;
+    }
+
+    /** The logic's translation. */
+    protected Vector2f _translation = new Vector2f();
+  }
+
+  /** The indexed logics. */
+  protected List<Logic> _logics = Lists.newArrayList();
+
+  /** The index under test. */
+  protected LogicIndex _index;
+}
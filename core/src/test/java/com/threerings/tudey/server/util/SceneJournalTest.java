@@ -0,0 +1,299 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+package com.threerings.tudey.server.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.util.Name;
+
+import com.threerings.crowd.data.BodyObject;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Transform2D;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.EntityKey;
+import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.server.ClientLiaison;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActionLogic;
+import com.threerings.tudey.server.logic.Logic;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the scene journal's writer and reader.
+ */
+public class SceneJournalTest extends TestCase
+{
+  public SceneJournalTest (String name)
+  {
+    super(name);
+  }
+
+  public void testRoundTrip ()
+    throws IOException
+  {
+    BodyObject body = new BodyObject();
+    body.username = new Name("tester");
+    ConfigReference<ActorConfig> pawn = new ConfigReference<ActorConfig>("Character/PC/Editor");
+    InputFrame[] frames = { new InputFrame(100, 0.5f, 0.5f, InputFrame.MOVE) };
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SceneJournal.Writer writer = new SceneJournal.Writer(out, new SceneJournal.Header(null, 42L));
+    writer.record(new SceneJournal.Enter(body, pawn, new EntityKey.Actor(7)));
+    writer.record(new SceneJournal.BodyEntered(body.getOid()));
+    writer.recordTick(new SceneJournal.Tick(50, 50, 1234));
+    writer.record(new SceneJournal.ClientInput(body.getOid(), 50, 80, frames));
+    writer.recordTick(new SceneJournal.Tick(50, 50, 5678));
+    writer.close();
+
+    SceneJournal.Reader reader = read(out);
+    assertEquals(42L, reader.getHeader().seed);
+
+    SceneJournal.Event[] events = reader.readTick();
+    assertEquals(3, events.length);
+    SceneJournal.Enter enter = (SceneJournal.Enter)events[0];
+    assertEquals("tester", enter.username);
+    assertEquals(pawn, enter.pawn);
+    assertEquals(7, enter.portalActor);
+    assertTrue(events[1] instanceof SceneJournal.BodyEntered);
+    assertEquals(1234, ((SceneJournal.Tick)events[2]).checksum);
+
+    events = reader.readTick();
+    assertEquals(2, events.length);
+    SceneJournal.ClientInput input = (SceneJournal.ClientInput)events[0];
+    assertEquals(50, input.acknowledge);
+    assertEquals(80, input.ping);
+    assertEquals(frames[0], input.frames[0]);
+    assertEquals(5678, ((SceneJournal.Tick)events[1]).checksum);
+
+    assertNull(reader.readTick());
+    assertEquals(2, reader.getTickCount());
+    reader.close();
+  }
+
+  public void testPortals ()
+  {
+    BodyObject body = new BodyObject();
+    body.username = new Name("tester");
+    Transform2D transform = new Transform2D(new Vector2f(1f, 2f), 0.5f);
+    assertEquals(transform, new SceneJournal.Enter(body, null, transform).portal);
+    assertEquals("spawn", new SceneJournal.Enter(body, null, "spawn").portal);
+    assertEquals(3, new SceneJournal.Enter(body, null, new EntityKey.Entry(3)).portal);
+    assertNull(new SceneJournal.Enter(body, null, null).portal);
+  }
+
+  public void testUnreplayableRunnable ()
+    throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SceneJournal.Writer writer = new SceneJournal.Writer(out, new SceneJournal.Header(null, 0L));
+    writer.recordTick(new SceneJournal.Tick(50, 50, 0));
+    writer.record(new SceneJournal.PostedRunnable(new Runnable() {
+      public void run () {
+        // no-op
+      }
+    }));
+    writer.recordTick(new SceneJournal.Tick(50, 50, 0));
+    writer.close();
+
+    // the replay must stop at the runnable rather than silently diverging
+    SceneJournal.Reader reader = read(out);
+    reader.readTick();
+    try {
+      reader.replayTick(new NullReplayer());
+      fail();
+    } catch (SceneJournal.ReplayException e) {
+      assertTrue(e.getMessage().startsWith("Replay failed at tick 2"));
+    }
+    reader.close();
+  }
+
+  public void testReplayRandomAction ()
+    throws IOException
+  {
+    // record a run whose state depends on the branches taken by a random action
+    RandomSceneManager recorded = new RandomSceneManager();
+    recorded.setRandomSeed(42L);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SceneJournal.Writer writer = new SceneJournal.Writer(out, new SceneJournal.Header(null, 42L));
+    for (int ii = 0; ii < 32; ii++) {
+      recorded.replayTick(50, 50);
+      writer.recordTick(new SceneJournal.Tick(50, 50, recorded.getStateChecksum()));
+    }
+    writer.close();
+
+    // replaying from the journaled seed must take the same branches, tick for tick
+    SceneJournal.Reader reader = read(out);
+    final RandomSceneManager replayed = new RandomSceneManager();
+    replayed.setRandomSeed(reader.getHeader().seed);
+    SceneJournal.Replayer replayer = new NullReplayer() {
+      @Override public TudeySceneManager getSceneManager () {
+        return replayed;
+      }
+    };
+    int ticks = 0;
+    while (reader.replayTick(replayer)) {
+      ticks++;
+    }
+    assertEquals(32, ticks);
+    assertEquals(recorded.getStateChecksum(), replayed.getStateChecksum());
+    reader.close();
+  }
+
+  /**
+   * Creates a reader for the contents of the supplied stream.
+   */
+  protected static SceneJournal.Reader read (ByteArrayOutputStream out)
+    throws IOException
+  {
+    return new SceneJournal.Reader(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  /**
+   * A scene manager whose ticks execute a random action and whose state is the sequence of
+   * branches taken.
+   */
+  protected static class RandomSceneManager extends TudeySceneManager
+  {
+    public RandomSceneManager ()
+    {
+      _action = new RandomAction(this, 4);
+    }
+
+    /**
+     * Notes that the random action took the specified branch.
+     */
+    public void branchTaken (int index)
+    {
+      _branches.add(index);
+    }
+
+    @Override
+    public void replayTick (int elapsed, int interval)
+    {
+      _action.execute(_branches.size(), null);
+    }
+
+    @Override
+    public int getStateChecksum ()
+    {
+      return _branches.hashCode();
+    }
+
+    /** The action executed on each tick. */
+    protected ActionLogic _action;
+
+    /** The branches taken so far. */
+    protected List<Integer> _branches = Lists.newArrayList();
+  }
+
+  /**
+   * A random action choosing evenly between branches that report to the scene.
+   */
+  protected static class RandomAction extends ActionLogic.Random
+  {
+    public RandomAction (RandomSceneManager scenemgr, int branches)
+    {
+      init(scenemgr);
+      _actions = new ActionLogic[branches];
+      _weights = new float[branches];
+      for (int ii = 0; ii < branches; ii++) {
+        _actions[ii] = new Branch(scenemgr, ii);
+        _weights[ii] = 1f;
+      }
+    }
+  }
+
+  /**
+   * An action that reports its index to the scene when executed.
+   */
+  protected static class Branch extends ActionLogic
+  {
+    public Branch (RandomSceneManager scenemgr, int index)
+    {
+      init(scenemgr);
+      _index = index;
+    }
+
+    @Override
+    public boolean execute (int timestamp, Logic activator)
+    {
+      ((RandomSceneManager)_scenemgr).branchTaken(_index);
+      return true;
+    }
+
+    /** The index of the branch. */
+    protected int _index;
+  }
+
+  /**
+   * A replayer with no scene or bodies.
+   */
+  protected static class NullReplayer
+    implements SceneJournal.Replayer
+  {
+    public TudeySceneManager getSceneManager ()
+    {
+      return null;
+    }
+
+    public BodyObject createBody (
+      int bodyOid, String username, ConfigReference<ActorConfig> pawn)
+    {
+      return null;
+    }
+
+    public BodyObject getBody (int bodyOid)
+    {
+      return null;
+    }
+
+    public ClientLiaison getClient (int bodyOid)
+    {
+      return null;
+    }
+
+    public void replayBodyEntered (int bodyOid)
+    {
+    }
+
+    public void replayBodyLeft (int bodyOid)
+    {
+    }
+
+    public void replayBodyUpdated (int bodyOid, byte status)
+    {
+    }
+  }
+}
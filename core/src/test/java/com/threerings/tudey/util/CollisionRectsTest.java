@@ -0,0 +1,319 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.util.Random;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Ray2D;
+import com.threerings.math.Rect;
+import com.threerings.math.Vector2f;
+
+import com.threerings.opengl.gui.util.Rectangle;
+
+import com.threerings.tudey.config.TileConfig;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.data.TudeySceneModel.TileEntry;
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.shape.Circle;
+import com.threerings.tudey.shape.Polygon;
+import com.threerings.tudey.shape.Shape;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the merged collision rectangles against the per-location flags they cover.
+ */
+public class CollisionRectsTest extends TestCase
+{
+  public CollisionRectsTest (String name)
+  {
+    super(name);
+  }
+
+  public void testCoverage ()
+  {
+    Random random = new Random(1L);
+    CoordIntMap flags = new CoordIntMap(3, 0);
+    for (int yy = -20; yy < 20; yy++) {
+      for (int xx = -20; xx < 20; xx++) {
+        // use runs of identical flags so that there is something to merge
+        int value = random.nextInt(3);
+        if (value != 0 && ((xx >> 2) + (yy >> 2) & 1) == 0) {
+          flags.put(xx, yy, value);
+        }
+      }
+    }
+    CollisionRects rects = new CollisionRects(flags, 4);
+    rects.invalidate(-20, -20, 40, 40);
+    assertTrue(rects.getRectCount() < flags.size());
+
+    // each location must be covered by exactly one rectangle with its flags
+    CollisionRects.Result result = new CollisionRects.Result();
+    for (int yy = -24; yy < 24; yy++) {
+      for (int xx = -24; xx < 24; xx++) {
+        rects.getIntersecting(xx, yy, xx, yy, result);
+        int value = flags.get(xx, yy);
+        assertEquals(value == 0 ? 0 : 1, result.count);
+        if (value != 0) {
+          assertEquals(value, result.rects[4]);
+        }
+      }
+    }
+  }
+
+  public void testQueries ()
+  {
+    TestModel model = new TestModel();
+    Random random = new Random(2L);
+    for (int ii = 0; ii < 40; ii++) {
+      model.addTile(random.nextInt(32) - 16, random.nextInt(32) - 16,
+        1 + random.nextInt(4), 1 + random.nextInt(4), 1 + random.nextInt(2));
+    }
+    CoordIntMap flags = model.getCollisionFlags();
+    TestActor actor = new TestActor(1);
+    Vector2f penetration = new Vector2f(), expectedPenetration = new Vector2f();
+    Vector2f intersection = new Vector2f(), expectedIntersection = new Vector2f();
+    for (int ii = 0; ii < 500; ii++) {
+      Vector2f center = new Vector2f(
+        random.nextFloat() * 40f - 20f, random.nextFloat() * 40f - 20f);
+      Circle circle = new Circle(center, 0.25f + random.nextFloat() * 2f);
+      int mask = 1 + random.nextInt(3);
+      assertEquals(collidesPerCell(flags, mask, circle), model.collides(mask, circle));
+
+      // penetration is now taken against whole rectangles, so it is at least as deep
+      boolean expected = getPenetrationPerCell(flags, 1, circle, expectedPenetration);
+      assertEquals(expected, model.getPenetration(actor, circle, penetration));
+      assertTrue(penetration.length() >= expectedPenetration.length() - 0.001f);
+
+      // starting inside a location reports the origin either way, so start outside
+      if (flags.get(FloatMath.ifloor(center.x), FloatMath.ifloor(center.y)) != 0) {
+        continue;
+      }
+      float angle = random.nextFloat() * FloatMath.TWO_PI;
+      Ray2D ray = new Ray2D(center, new Vector2f(FloatMath.cos(angle), FloatMath.sin(angle)));
+      float length = random.nextFloat() * 20f;
+      expected = getIntersectionPerCell(flags, ray, length, mask, expectedIntersection);
+      assertEquals(expected, model.getIntersection(ray, length, mask, intersection));
+      if (expected) {
+        assertTrue(intersection.distance(expectedIntersection) < 0.001f);
+      }
+    }
+  }
+
+  public void testShadowInvalidation ()
+  {
+    TestModel model = new TestModel();
+    CollisionRects rects = model.getCollisionRects();
+    Circle circle = new Circle(new Vector2f(3.5f, 3.5f), 0.25f);
+    assertFalse(model.collides(0x03, circle));
+
+    // creating a shadow must rebuild the block, including across block boundaries
+    FlagTile tile = model.addTile(-2, -2, 8, 8, 0x01);
+    assertTrue(model.collides(0x01, circle));
+    assertFalse(model.collides(0x02, circle));
+    assertEquals(4, rects.getRectCount());
+
+    // deleting it must remove its rectangles
+    model.removeTile(tile);
+    assertFalse(model.collides(0x01, circle));
+    assertEquals(0, rects.getRectCount());
+
+    // and replacing it with different flags must pick up the new flags
+    model.addTile(3, 3, 1, 1, 0x02);
+    assertFalse(model.collides(0x01, circle));
+    assertTrue(model.collides(0x02, circle));
+    assertEquals(1, rects.getRectCount());
+  }
+
+  /**
+   * Checks for a collision by testing every flagged location under the shape.
+   */
+  protected static boolean collidesPerCell (CoordIntMap flags, int mask, Shape shape)
+  {
+    Rect bounds = shape.getBounds();
+    Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+    for (int yy = FloatMath.ifloor(min.y), yymax = FloatMath.ifloor(max.y); yy <= yymax; yy++) {
+      for (int xx = FloatMath.ifloor(min.x), xxmax = FloatMath.ifloor(max.x); xx <= xxmax; xx++) {
+        if ((flags.get(xx, yy) & mask) != 0 && createQuad(xx, yy).intersects(shape)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds the deepest penetration into any flagged location under the shape.
+   */
+  protected static boolean getPenetrationPerCell (
+    CoordIntMap flags, int mask, Shape shape, Vector2f result)
+  {
+    result.set(Vector2f.ZERO);
+    Vector2f penetration = new Vector2f();
+    Rect bounds = shape.getBounds();
+    Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+    for (int yy = FloatMath.ifloor(min.y), yymax = FloatMath.ifloor(max.y); yy <= yymax; yy++) {
+      for (int xx = FloatMath.ifloor(min.x), xxmax = FloatMath.ifloor(max.x); xx <= xxmax; xx++) {
+        if ((flags.get(xx, yy) & mask) == 0) {
+          continue;
+        }
+        Polygon quad = createQuad(xx, yy);
+        if (quad.intersects(shape)) {
+          quad.getPenetration(shape, penetration);
+          if (penetration.lengthSquared() > result.lengthSquared()) {
+            result.set(penetration);
+          }
+        }
+      }
+    }
+    return !result.equals(Vector2f.ZERO);
+  }
+
+  /**
+   * Finds the nearest intersection of the ray with any flagged location.
+   */
+  protected static boolean getIntersectionPerCell (
+    CoordIntMap flags, Ray2D ray, float length, int mask, Vector2f intersection)
+  {
+    Vector2f end = ray.getOrigin().add(ray.getDirection().mult(length));
+    Vector2f origin = ray.getOrigin(), result = new Vector2f();
+    float resultDist = length * length;
+    for (int yy = FloatMath.ifloor(Math.min(origin.y, end.y)),
+        yymax = FloatMath.ifloor(Math.max(origin.y, end.y)); yy <= yymax; yy++) {
+      for (int xx = FloatMath.ifloor(Math.min(origin.x, end.x)),
+          xxmax = FloatMath.ifloor(Math.max(origin.x, end.x)); xx <= xxmax; xx++) {
+        if ((flags.get(xx, yy) & mask) != 0 && createQuad(xx, yy).getIntersection(ray, result)) {
+          float dist = result.distanceSquared(origin);
+          if (resultDist > dist) {
+            intersection.set(result);
+            resultDist = dist;
+          }
+        }
+      }
+    }
+    return resultDist < length * length;
+  }
+
+  /**
+   * Creates the quad covering the specified location.
+   */
+  protected static Polygon createQuad (int x, int y)
+  {
+    float lx = x, ly = y, ux = lx + 1f, uy = ly + 1f;
+    return new Polygon(
+      new Vector2f(lx, ly), new Vector2f(ux, ly), new Vector2f(ux, uy), new Vector2f(lx, uy));
+  }
+
+  /**
+   * A scene model that exposes tile shadow creation and deletion.
+   */
+  protected static class TestModel extends TudeySceneModel
+  {
+    /**
+     * Creates the shadow of a tile covering the specified region with uniform flags.
+     */
+    public FlagTile addTile (int x, int y, int width, int height, int flags)
+    {
+      FlagTile tile = new FlagTile(x, y, width, height, flags);
+      createShadow(tile);
+      return tile;
+    }
+
+    /**
+     * Deletes the shadow of the specified tile.
+     */
+    public void removeTile (FlagTile tile)
+    {
+      deleteShadow(tile);
+    }
+  }
+
+  /**
+   * A tile with a fixed size and uniform collision flags that requires no configuration.
+   */
+  protected static class FlagTile extends TileEntry
+  {
+    public FlagTile (int x, int y, int width, int height, int flags)
+    {
+      _location.set(x, y);
+      _width = width;
+      _height = height;
+      _flags = flags;
+    }
+
+    @Override
+    public TileConfig.Original getConfig (ConfigManager cfgmgr)
+    {
+      return TileConfig.NULL_ORIGINAL;
+    }
+
+    @Override
+    public void getRegion (TileConfig.Original config, Rectangle result)
+    {
+      result.set(_location.x, _location.y, _width, _height);
+    }
+
+    @Override
+    public int getCollisionFlags (TileConfig.Original config, int x, int y)
+    {
+      return _flags;
+    }
+
+    @Override
+    public int getDirectionFlags (TileConfig.Original config, int x, int y)
+    {
+      return 0;
+    }
+
+    /** The size of the tile. */
+    protected int _width, _height;
+
+    /** The tile's collision flags. */
+    protected int _flags;
+  }
+
+  /**
+   * An actor with a fixed collision mask.
+   */
+  protected static class TestActor extends Actor
+  {
+    public TestActor (int mask)
+    {
+      _mask = mask;
+    }
+
+    @Override
+    public int getCollisionMask ()
+    {
+      return _mask;
+    }
+
+    /** The actor's collision mask. */
+    protected int _mask;
+  }
+}
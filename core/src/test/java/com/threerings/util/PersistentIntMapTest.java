@@ -0,0 +1,153 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+package com.threerings.util;
+
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Maps;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link PersistentIntMap} against a mutable map.
+ */
+public class PersistentIntMapTest extends TestCase
+{
+  public PersistentIntMapTest (String name)
+  {
+    super(name);
+  }
+
+  public void testBasics ()
+  {
+    PersistentIntMap<String> empty = PersistentIntMap.empty();
+    PersistentIntMap<String> map = empty.put(1, "one").put(-1, "minus one").put(33, "thirty-three");
+    assertEquals(3, map.size());
+    assertEquals("one", map.get(1));
+    assertEquals("minus one", map.get(-1));
+    assertEquals("thirty-three", map.get(33));
+    assertNull(map.get(65));
+    assertFalse(map.containsKey(2));
+
+    // the original map is unaffected, and no-op updates return the same map
+    assertTrue(empty.isEmpty());
+    assertSame(map, map.put(1, map.get(1)));
+    assertSame(map, map.remove(2));
+
+    PersistentIntMap<String> removed = map.remove(1);
+    assertEquals(2, removed.size());
+    assertNull(removed.get(1));
+    assertEquals("one", map.get(1));
+    assertTrue(removed.remove(-1).remove(33).isEmpty());
+  }
+
+  public void testRandomOperations ()
+  {
+    // use a fixed seed so that our results are reproducible
+    Random random = new Random(1199325877849L);
+    Map<Integer, Integer> expected = Maps.newHashMap();
+    PersistentIntMap<Integer> map = PersistentIntMap.empty();
+    for (int ii = 0; ii < 20000; ii++) {
+      // mix dense keys (sharing trie prefixes) with keys spread across the whole range
+      int key = random.nextBoolean() ? random.nextInt(256) : random.nextInt();
+      PersistentIntMap<Integer> omap = map;
+      Map<Integer, Integer> oexpected = Maps.newHashMap(expected);
+      if (random.nextInt(3) == 0) {
+        map = map.remove(key);
+        expected.remove(key);
+      } else {
+        Integer value = random.nextInt(4);
+        map = map.put(key, value);
+        expected.put(key, value);
+      }
+      assertEquals(expected.size(), map.size());
+      assertEquals(expected.get(key), map.get(key));
+      if (ii % 1000 == 0) {
+        assertContents(expected, map);
+      }
+      assertDiff(oexpected, expected, omap, map);
+    }
+    assertContents(expected, map);
+  }
+
+  public void testDiffSkipsSharedBranches ()
+  {
+    PersistentIntMap<Integer> map = PersistentIntMap.empty();
+    for (int ii = 0; ii < 1000; ii++) {
+      map = map.put(ii * 7919, ii);
+    }
+    map.diff(map, new PersistentIntMap.DiffVisitor<Integer>() {
+      public void entryAdded (int key, Integer value) {
+        fail();
+      }
+      public void entryChanged (int key, Integer ovalue, Integer nvalue) {
+        fail();
+      }
+      public void entryRemoved (int key, Integer value) {
+        fail();
+      }
+    });
+  }
+
+  /**
+   * Verifies that the map contains exactly the expected mappings.
+   */
+  protected static void assertContents (
+    Map<Integer, Integer> expected, PersistentIntMap<Integer> map)
+  {
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+    int count = 0;
+    for (Integer value : map.values()) {
+      assertNotNull(value);
+      count++;
+    }
+    assertEquals(expected.size(), count);
+  }
+
+  /**
+   * Verifies that diffing the two maps reproduces the differences between the expected maps.
+   */
+  protected static void assertDiff (
+    Map<Integer, Integer> oexpected, Map<Integer, Integer> nexpected,
+    PersistentIntMap<Integer> omap, PersistentIntMap<Integer> nmap)
+  {
+    final Map<Integer, Integer> result = Maps.newHashMap(oexpected);
+    omap.diff(nmap, new PersistentIntMap.DiffVisitor<Integer>() {
+      public void entryAdded (int key, Integer value) {
+        assertNull(result.put(key, value));
+      }
+      public void entryChanged (int key, Integer ovalue, Integer nvalue) {
+        assertSame(ovalue, result.put(key, nvalue));
+      }
+      public void entryRemoved (int key, Integer value) {
+        assertSame(value, result.remove(key));
+      }
+    });
+    assertEquals(nexpected, result);
+  }
+}